@@ -0,0 +1,61 @@
+package york.pharmacy.jmh;
+
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.orders.Order;
+import york.pharmacy.orders.OrderStatus;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+// Detached entity graphs for the mapper and serialization benchmarks, shaped like the demo data:
+// a few dozen medicines, each with one inventory row, orders and many prescriptions
+final class BenchmarkData {
+
+    static final int MEDICINES = 50;
+
+    private BenchmarkData() {
+    }
+
+    static List<Medicine> medicines() {
+        List<Medicine> medicines = new ArrayList<>(MEDICINES);
+        Instant now = Instant.parse("2025-01-06T21:09:42.689349Z");
+        for (int i = 0; i < MEDICINES; i++) {
+            medicines.add(new Medicine((long) i + 1, "Medicine " + i, String.format("MED-%03d", i), now, now));
+        }
+        return medicines;
+    }
+
+    static List<Inventory> inventories(List<Medicine> medicines) {
+        List<Inventory> inventories = new ArrayList<>(medicines.size());
+        for (Medicine medicine : medicines) {
+            inventories.add(new Inventory(medicine.getId(), medicine, 100, null));
+        }
+        return inventories;
+    }
+
+    static List<Order> orders(List<Inventory> inventories, int count) {
+        List<Order> orders = new ArrayList<>(count);
+        Instant now = Instant.parse("2025-01-06T21:09:42.857667Z");
+        for (int i = 0; i < count; i++) {
+            Inventory inventory = inventories.get(i % inventories.size());
+            orders.add(new Order((long) i + 1, inventory, 100, LocalDate.of(2025, 1, 11).plusDays(i % 30),
+                    OrderStatus.ORDERED, now, now));
+        }
+        return orders;
+    }
+
+    static List<Prescription> prescriptions(List<Medicine> medicines, int count) {
+        List<Prescription> prescriptions = new ArrayList<>(count);
+        PrescriptionStatus[] statuses = PrescriptionStatus.values();
+        for (int i = 0; i < count; i++) {
+            prescriptions.add(new Prescription((long) i + 1, "PID-" + (i % 5000), medicines.get(i % medicines.size()),
+                    "RX-" + i, 30, "Take once daily", statuses[i % statuses.length], null, null));
+        }
+        return prescriptions;
+    }
+}
@@ -0,0 +1,57 @@
+package york.pharmacy.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryMapper;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.orders.Order;
+import york.pharmacy.orders.OrderMapper;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionMapper;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Entity -> response mapping, per element of a list the size of a typical list endpoint response
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class MapperBenchmark {
+
+    @Param({"1000"})
+    public int rows;
+
+    private List<Prescription> prescriptions;
+    private List<Order> orders;
+    private List<Inventory> inventories;
+
+    @Setup
+    public void setUp() {
+        List<Medicine> medicines = BenchmarkData.medicines();
+        inventories = BenchmarkData.inventories(medicines);
+        orders = BenchmarkData.orders(inventories, rows);
+        prescriptions = BenchmarkData.prescriptions(medicines, rows);
+    }
+
+    @Benchmark
+    public void prescriptionToResponse(Blackhole blackhole) {
+        for (Prescription prescription : prescriptions) {
+            blackhole.consume(PrescriptionMapper.toResponse(prescription));
+        }
+    }
+
+    @Benchmark
+    public void orderToResponse(Blackhole blackhole) {
+        for (Order order : orders) {
+            blackhole.consume(OrderMapper.toResponse(order));
+        }
+    }
+
+    @Benchmark
+    public void inventoryToResponse(Blackhole blackhole) {
+        for (Inventory inventory : inventories) {
+            blackhole.consume(InventoryMapper.toResponse(inventory));
+        }
+    }
+}
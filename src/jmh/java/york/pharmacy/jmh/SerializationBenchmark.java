@@ -0,0 +1,75 @@
+package york.pharmacy.jmh;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.openjdk.jmh.annotations.*;
+import york.pharmacy.inventory.InventoryMapper;
+import york.pharmacy.inventory.dto.InventoryResponse;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.orders.OrderMapper;
+import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.prescriptions.PrescriptionMapper;
+import york.pharmacy.prescriptions.dto.PrescriptionResponse;
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Jackson serialization of the list endpoint responses. Uses the same module discovery as the
+// Spring Boot ObjectMapper (JavaTimeModule for the Instant / LocalDate fields)
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SerializationBenchmark {
+
+    @Param({"100", "1000", "10000"})
+    public int rows;
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    private List<PrescriptionResponse> prescriptions;
+    private List<PrescriptionSummary> prescriptionSummaries;
+    private List<OrderResponse> orders;
+    private List<InventoryResponse> inventories;
+
+    @Setup
+    public void setUp() {
+        List<Medicine> medicines = BenchmarkData.medicines();
+        prescriptions = BenchmarkData.prescriptions(medicines, rows).stream()
+                .map(PrescriptionMapper::toResponse)
+                .toList();
+        prescriptionSummaries = BenchmarkData.prescriptions(medicines, rows).stream()
+                .map(p -> new PrescriptionSummary(p.getId(), p.getPrescriptionNumber(), p.getPatientId(),
+                        p.getMedicine().getCode(), p.getMedicine().getName(), p.getQuantity(),
+                        p.getInstructions(), p.getStatus()))
+                .toList();
+        orders = BenchmarkData.orders(BenchmarkData.inventories(medicines), rows).stream()
+                .map(OrderMapper::toResponse)
+                .toList();
+        inventories = BenchmarkData.inventories(medicines).stream()
+                .map(InventoryMapper::toResponse)
+                .toList();
+    }
+
+    @Benchmark
+    public byte[] prescriptionList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(prescriptions);
+    }
+
+    @Benchmark
+    public byte[] prescriptionSummaryList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(prescriptionSummaries);
+    }
+
+    @Benchmark
+    public byte[] orderList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(orders);
+    }
+
+    // One row per medicine, so the size parameter doesn't apply
+    @Benchmark
+    public byte[] inventoryList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(inventories);
+    }
+}
@@ -0,0 +1,77 @@
+package york.pharmacy.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import york.pharmacy.PharmacyApplication;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineRepository;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.util.concurrent.TimeUnit;
+
+// ServiceUtility.updatePrescriptionsWithNewStock against an in-memory H2 database holding N pending
+// prescriptions for one medicine. Each invocation alternates between enough stock for every
+// prescription and stock for just over half of them, so the second half flips between STOCK_RECEIVED
+// and OUT_OF_STOCK every time and each call does the same read + bulk update + demand update work.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StockUpdateBenchmark {
+
+    private static final int QUANTITY = 30;
+
+    @Param({"1000", "10000", "100000"})
+    public int prescriptions;
+
+    private ConfigurableApplicationContext context;
+    private ServiceUtility serviceUtility;
+    private TransactionTemplate transactionTemplate;
+    private Long medicineId;
+    private boolean fullStock;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(PharmacyApplication.class)
+                .web(WebApplicationType.NONE)
+                .properties(
+                        "spring.profiles.active=dev",
+                        "spring.datasource.url=jdbc:h2:mem:jmh-stock-" + prescriptions + ";MODE=PostgreSQL;DATABASE_TO_UPPER=false",
+                        "spring.jpa.show-sql=false",
+                        "logging.level.root=WARN",
+                        "pharmacy.seed-data.enabled=false",
+                        "pharmacy.outbox.relay.enabled=false",
+                        "pharmacy.demand.reconcile.enabled=false",
+                        "spring.kafka.listener.auto-startup=false",
+                        "spring.kafka.admin.auto-create=false")
+                .run();
+        serviceUtility = context.getBean(ServiceUtility.class);
+        transactionTemplate = new TransactionTemplate(context.getBean(PlatformTransactionManager.class));
+
+        Medicine medicine = context.getBean(MedicineRepository.class).save(new Medicine("Benchmark Tabs", "JMH-001"));
+        medicineId = medicine.getId();
+        context.getBean(JdbcTemplate.class).update("INSERT INTO prescription " +
+                "(id, patient_id, medicine_id, prescription_number, quantity, instructions, status) " +
+                "SELECT X, 'PID-' || (X % 5000), ?, 'RX-' || X, ?, 'Take once daily', 'OUT_OF_STOCK' " +
+                "FROM SYSTEM_RANGE(1, ?)", medicineId, QUANTITY, prescriptions);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public void updatePrescriptionsWithNewStock() {
+        fullStock = !fullStock;
+        int stock = fullStock ? prescriptions * QUANTITY : prescriptions / 2 * QUANTITY + 1;
+        // Same transaction boundary as InventoryService, which calls this after changing the stock level
+        transactionTemplate.executeWithoutResult(status -> serviceUtility.updatePrescriptionsWithNewStock(stock, medicineId));
+    }
+}
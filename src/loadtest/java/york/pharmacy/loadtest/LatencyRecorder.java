@@ -0,0 +1,68 @@
+package york.pharmacy.loadtest;
+
+import java.util.Arrays;
+
+// Collects the latencies of one operation. Percentiles are computed from the sorted samples at the end
+class LatencyRecorder {
+
+    private final String name;
+    private long[] samples = new long[1024];
+    private int count;
+    private int errors;
+
+    LatencyRecorder(String name) {
+        this.name = name;
+    }
+
+    synchronized void record(long nanos, boolean success) {
+        if (!success) {
+            errors++;
+        }
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    synchronized Summary summarize(double seconds) {
+        if (count == 0) {
+            return new Summary(name, 0, 0, 0, 0, 0, 0);
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        return new Summary(name, count, errors, count / seconds,
+                millis(percentile(sorted, 0.50)), millis(percentile(sorted, 0.99)), millis(sorted[count - 1]));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    record Summary(String name, int count, int errors, double throughput, double p50, double p99, double max) {
+
+        static void printHeader() {
+            System.out.printf("%-40s %8s %7s %9s %9s %9s %9s%n", "operation", "count", "errors", "req/s", "p50 ms", "p99 ms", "max ms");
+        }
+
+        void print() {
+            System.out.printf("%-40s %8d %7d %9.1f %9.2f %9.2f %9.2f%n", name, count, errors, throughput, p50, p99, max);
+        }
+
+        String toCsv() {
+            return String.join(",", name, String.valueOf(count), String.valueOf(errors),
+                    String.valueOf(throughput), String.valueOf(p50), String.valueOf(p99), String.valueOf(max));
+        }
+
+        static Summary fromCsv(String line) {
+            String[] fields = line.split(",");
+            return new Summary(fields[0], Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                    Double.parseDouble(fields[3]), Double.parseDouble(fields[4]), Double.parseDouble(fields[5]),
+                    Double.parseDouble(fields[6]));
+        }
+    }
+}
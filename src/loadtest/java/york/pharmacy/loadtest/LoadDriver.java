@@ -0,0 +1,372 @@
+package york.pharmacy.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.KafkaConsumer;
+import org.apache.kafka.clients.producer.KafkaProducer;
+import org.apache.kafka.clients.producer.ProducerConfig;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Replays a mixed pharmacy workload against a running instance started with the "loadtest" profile
+ * (see LoadTestDataGenerator) and prints count, errors, throughput and p50/p99/max latency per operation.
+ *
+ * Arrivals are open-loop: requests are scheduled from a Poisson process whose rate is multiplied by
+ * burstFactor for burstSeconds out of every burstEverySeconds, and latency is measured from the scheduled
+ * start, so a backed-up server shows up as latency rather than as a slower arrival rate. Medicines are
+ * picked with the same Zipf skew as the generated data, so hot SKUs get most of the traffic.
+ *
+ * Kafka prescriptions are sent to patient_prescription_events; their latency is the time until the
+ * matching RECEIVED update comes back on prescription_status_updates. Set kafka=false to skip them.
+ *
+ * Settings are system properties (gradlew loadTest -Ploadtest.rate=500 ...), see the defaults below.
+ * With label=<name> the results are saved, and compareWith=<csv> prints them next to an earlier run.
+ */
+public class LoadDriver {
+
+    private static final String EVENTS_TOPIC = "patient_prescription_events";
+    private static final String STATUS_TOPIC = "prescription_status_updates";
+
+    private final String baseUrl = setting("baseUrl", "http://localhost:8080");
+    private final String bootstrapServers = setting("bootstrapServers", "localhost:29092");
+    private final boolean kafka = Boolean.parseBoolean(setting("kafka", "true"));
+    private final int durationSeconds = Integer.parseInt(setting("durationSeconds", "120"));
+    private final double rate = Double.parseDouble(setting("rate", "200"));
+    private final double burstFactor = Double.parseDouble(setting("burstFactor", "4"));
+    private final int burstEverySeconds = Integer.parseInt(setting("burstEverySeconds", "30"));
+    private final int burstSeconds = Integer.parseInt(setting("burstSeconds", "5"));
+    private final int threads = Integer.parseInt(setting("threads", "64"));
+    // Must match the generated data (pharmacy.loadtest.* on the server)
+    private final int medicines = Integer.parseInt(setting("medicines", "50000"));
+    private final int prescriptions = Integer.parseInt(setting("prescriptions", "1000000"));
+    private final int orders = Integer.parseInt(setting("orders", "20000"));
+    private final double skew = Double.parseDouble(setting("skew", "1.1"));
+    // Optional: save this run as build/loadtest/<label>.csv and/or compare it with a saved run
+    private final String label = setting("label", null);
+    private final String compareWith = setting("compareWith", null);
+
+    private final HttpClient http = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<String, LatencyRecorder> recorders = new LinkedHashMap<>();
+    private final List<Operation> operations = new ArrayList<>();
+    private final Map<String, Long> pendingEvents = new ConcurrentHashMap<>();
+    private final List<String> sentPrescriptionNumbers = new ArrayList<>();
+    private final AtomicLong sequence = new AtomicLong();
+    private final Object zipfLock = new Object();
+    private ZipfSampler popularity;
+    private KafkaProducer<String, String> producer;
+
+    public static void main(String[] args) throws Exception {
+        new LoadDriver().run();
+    }
+
+    private record Operation(String name, int weight, Runnable action) {
+    }
+
+    private void run() throws Exception {
+        popularity = new ZipfSampler(medicines, skew, new Random());
+        // Weights are relative to each other; reads dominate as they do at the counter
+        http("GET /api/v2/prescriptions/page", 25, () -> get("/api/v2/prescriptions/page?limit=50&medicineCode=" + hotCode()));
+        http("GET /api/prescriptions/{id}", 20, () -> get("/api/prescriptions/" + randomId(prescriptions)));
+        http("GET /api/inventory/{id}", 15, () -> get("/api/inventory/" + hotMedicineId()));
+        http("GET /api/orders/{id}", 10, () -> get("/api/orders/" + randomId(orders)));
+        http("POST /api/prescriptions", 10, () -> post("/api/prescriptions", newPrescription("LT-HTTP-")));
+        http("PUT /api/inventory/{id}/adjust-stock", 4, () -> put("/api/inventory/" + hotMedicineId() + "/adjust-stock/100"));
+        http("GET /api/inventory", 1, () -> get("/api/inventory"));
+        if (kafka) {
+            startKafka();
+            add("kafka NEW_PRESCRIPTION -> RECEIVED", 10, this::sendNewPrescription);
+            add("kafka CANCELLED (send)", 2, this::sendCancellation);
+        }
+
+        System.out.printf("Driving %s for %d s at %.0f req/s (x%.1f bursts for %d s every %d s) on %d threads%n",
+                baseUrl, durationSeconds, rate, burstFactor, burstSeconds, burstEverySeconds, threads);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(durationSeconds);
+        int totalWeight = operations.stream().mapToInt(Operation::weight).sum();
+        Random random = new Random();
+
+        long next = start;
+        while (next < end) {
+            long elapsedSeconds = TimeUnit.NANOSECONDS.toSeconds(next - start);
+            double currentRate = elapsedSeconds % burstEverySeconds < burstSeconds ? rate * burstFactor : rate;
+            next += (long) (-Math.log(1 - random.nextDouble()) / currentRate * 1_000_000_000L);
+            long sleep = next - System.nanoTime();
+            if (sleep > 0) {
+                TimeUnit.NANOSECONDS.sleep(sleep);
+            }
+            Operation operation = pick(random.nextInt(totalWeight));
+            long scheduled = next;
+            workers.execute(() -> timed(operation, scheduled));
+        }
+        workers.shutdown();
+        workers.awaitTermination(1, TimeUnit.MINUTES);
+        if (kafka) {
+            // Give the last events time to come back before reporting
+            TimeUnit.SECONDS.sleep(10);
+            producer.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        List<LatencyRecorder.Summary> summaries = recorders.values().stream()
+                .map(recorder -> recorder.summarize(seconds))
+                .toList();
+        LatencyRecorder.Summary.printHeader();
+        summaries.forEach(LatencyRecorder.Summary::print);
+        if (kafka) {
+            System.out.println("Kafka prescriptions without a RECEIVED update: " + pendingEvents.size());
+        }
+        if (label != null) {
+            save(summaries);
+        }
+        if (compareWith != null) {
+            compare(summaries);
+        }
+        System.exit(0);
+    }
+
+    // Writes the run to build/loadtest/<label>.csv so another run (other profile, other commit) can compare with it
+    private void save(List<LatencyRecorder.Summary> summaries) throws IOException {
+        Path file = Path.of("build", "loadtest", label + ".csv");
+        Files.createDirectories(file.getParent());
+        Files.write(file, summaries.stream().map(LatencyRecorder.Summary::toCsv).toList());
+        System.out.println("Saved results to " + file);
+    }
+
+    // Prints this run next to a saved one, e.g. the virtual profile against the platform-thread baseline
+    private void compare(List<LatencyRecorder.Summary> summaries) throws IOException {
+        Map<String, LatencyRecorder.Summary> baseline = new LinkedHashMap<>();
+        for (String line : Files.readAllLines(Path.of(compareWith))) {
+            LatencyRecorder.Summary summary = LatencyRecorder.Summary.fromCsv(line);
+            baseline.put(summary.name(), summary);
+        }
+        System.out.printf("%nCompared with %s%n", compareWith);
+        System.out.printf("%-40s %19s %19s %23s%n", "operation", "req/s (base -> now)", "p50 ms (base -> now)", "p99 ms (base -> now)");
+        for (LatencyRecorder.Summary now : summaries) {
+            LatencyRecorder.Summary base = baseline.get(now.name());
+            if (base == null) {
+                continue;
+            }
+            System.out.printf("%-40s %8.1f -> %8.1f %8.2f -> %8.2f %10.2f -> %8.2f (%+.0f%%)%n", now.name(),
+                    base.throughput(), now.throughput(), base.p50(), now.p50(), base.p99(), now.p99(),
+                    base.p99() == 0 ? 0 : (now.p99() - base.p99()) / base.p99() * 100);
+        }
+    }
+
+    private void http(String name, int weight, HttpCall call) {
+        add(name, weight, () -> {
+            HttpResponse<Void> response;
+            try {
+                response = call.send();
+            } catch (Exception ex) {
+                throw new IllegalStateException(name + " failed", ex);
+            }
+            if (response.statusCode() >= 400) {
+                throw new IllegalStateException(name + " returned " + response.statusCode());
+            }
+        });
+    }
+
+    private void add(String name, int weight, Runnable action) {
+        recorders.put(name, new LatencyRecorder(name));
+        operations.add(new Operation(name, weight, action));
+    }
+
+    private Operation pick(int roll) {
+        for (Operation operation : operations) {
+            roll -= operation.weight();
+            if (roll < 0) {
+                return operation;
+            }
+        }
+        return operations.get(operations.size() - 1);
+    }
+
+    // Kafka sends record their end-to-end latency from the status consumer instead
+    private void timed(Operation operation, long scheduled) {
+        boolean success = true;
+        try {
+            operation.action().run();
+        } catch (RuntimeException ex) {
+            success = false;
+        }
+        if (!operation.name().startsWith("kafka NEW_PRESCRIPTION") || !success) {
+            recorders.get(operation.name()).record(System.nanoTime() - scheduled, success);
+        }
+    }
+
+    // ---- HTTP ----
+
+    @FunctionalInterface
+    private interface HttpCall {
+        HttpResponse<Void> send() throws Exception;
+    }
+
+    private HttpResponse<Void> get(String path) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path)).GET());
+    }
+
+    private HttpResponse<Void> post(String path, Map<String, Object> body) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(objectMapper.writeValueAsString(body))));
+    }
+
+    private HttpResponse<Void> put(String path) throws Exception {
+        return send(HttpRequest.newBuilder(URI.create(baseUrl + path)).PUT(HttpRequest.BodyPublishers.noBody()));
+    }
+
+    private HttpResponse<Void> send(HttpRequest.Builder request) throws Exception {
+        return http.send(request.timeout(Duration.ofSeconds(30)).build(), HttpResponse.BodyHandlers.discarding());
+    }
+
+    // ---- Kafka ----
+
+    private void startKafka() {
+        Properties producerProps = new Properties();
+        producerProps.put(ProducerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        producerProps.put(ProducerConfig.KEY_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        producerProps.put(ProducerConfig.VALUE_SERIALIZER_CLASS_CONFIG, StringSerializer.class.getName());
+        producer = new KafkaProducer<>(producerProps);
+
+        Properties consumerProps = new Properties();
+        consumerProps.put(ConsumerConfig.BOOTSTRAP_SERVERS_CONFIG, bootstrapServers);
+        consumerProps.put(ConsumerConfig.GROUP_ID_CONFIG, "pharmacy-loadtest-" + UUID.randomUUID());
+        consumerProps.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "latest");
+        consumerProps.put(ConsumerConfig.KEY_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        consumerProps.put(ConsumerConfig.VALUE_DESERIALIZER_CLASS_CONFIG, StringDeserializer.class.getName());
+        Thread listener = new Thread(() -> {
+            try (KafkaConsumer<String, String> consumer = new KafkaConsumer<>(consumerProps)) {
+                consumer.subscribe(List.of(STATUS_TOPIC));
+                LatencyRecorder recorder = recorders.get("kafka NEW_PRESCRIPTION -> RECEIVED");
+                while (!Thread.currentThread().isInterrupted()) {
+                    for (ConsumerRecord<String, String> record : consumer.poll(Duration.ofMillis(200))) {
+                        JsonNode event = readTree(record.value());
+                        if (event != null && "RECEIVED".equals(event.path("eventType").asText())) {
+                            Long sent = pendingEvents.remove(event.path("prescriptionId").asText());
+                            if (sent != null) {
+                                recorder.record(System.nanoTime() - sent, true);
+                            }
+                        }
+                    }
+                }
+            }
+        }, "status-listener");
+        listener.setDaemon(true);
+        listener.start();
+    }
+
+    private void sendNewPrescription() {
+        Map<String, Object> prescription = newPrescription("LT-KAFKA-");
+        String number = (String) prescription.get("prescriptionNumber");
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("eventType", "NEW_PRESCRIPTION");
+        event.put("prescriptionId", number);
+        event.put("patientId", prescription.get("patientId"));
+        event.put("medicineCode", prescription.get("medicineCode"));
+        event.put("quantity", prescription.get("quantity"));
+        event.put("instructions", prescription.get("instructions"));
+        pendingEvents.put(number, System.nanoTime());
+        sendEvent(number, event);
+        synchronized (sentPrescriptionNumbers) {
+            sentPrescriptionNumbers.add(number);
+        }
+    }
+
+    private void sendCancellation() {
+        String number;
+        synchronized (sentPrescriptionNumbers) {
+            if (sentPrescriptionNumbers.isEmpty()) {
+                return;
+            }
+            number = sentPrescriptionNumbers.remove(ThreadLocalRandom.current().nextInt(sentPrescriptionNumbers.size()));
+        }
+        Map<String, Object> event = new LinkedHashMap<>();
+        event.put("eventType", "CANCELLED");
+        event.put("prescriptionId", number);
+        sendEvent(number, event);
+    }
+
+    private void sendEvent(String key, Map<String, Object> event) {
+        try {
+            ProducerRecord<String, String> record = new ProducerRecord<>(EVENTS_TOPIC, key, objectMapper.writeValueAsString(event));
+            // The listener's JsonDeserializer picks the target type from this header
+            record.headers().add("__TypeId__", "york.pharmacy.kafka.ConsumerEvent".getBytes(StandardCharsets.UTF_8));
+            producer.send(record).get(30, TimeUnit.SECONDS);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Kafka send failed", ex);
+        }
+    }
+
+    // ---- Workload data ----
+
+    private Map<String, Object> newPrescription(String prefix) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Map<String, Object> prescription = new LinkedHashMap<>();
+        prescription.put("patientId", "LT-PID-" + random.nextInt(Math.max(1, prescriptions / 4)));
+        prescription.put("prescriptionNumber", prefix + sequence.incrementAndGet() + "-" + UUID.randomUUID());
+        prescription.put("medicineCode", hotCode());
+        prescription.put("quantity", 10 * (1 + random.nextInt(9)));
+        prescription.put("instructions", "Take as directed");
+        return prescription;
+    }
+
+    // Same id / code scheme as LoadTestDataGenerator: medicine rank r has id r + 1 and code LT-%06d
+    private long hotMedicineId() {
+        return hotRank() + 1L;
+    }
+
+    private String hotCode() {
+        return String.format("LT-%06d", hotRank());
+    }
+
+    private int hotRank() {
+        synchronized (zipfLock) {
+            return popularity.next();
+        }
+    }
+
+    private static long randomId(int max) {
+        return 1 + ThreadLocalRandom.current().nextInt(max);
+    }
+
+    private JsonNode readTree(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (Exception ex) {
+            return null;
+        }
+    }
+
+    private static String setting(String name, String defaultValue) {
+        return System.getProperty("loadtest." + name, defaultValue);
+    }
+}
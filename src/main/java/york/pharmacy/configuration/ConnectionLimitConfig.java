@@ -0,0 +1,47 @@
+package york.pharmacy.configuration;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+
+// Wraps the application DataSource in a ConnectionLimitingDataSource when
+// pharmacy.datasource.max-concurrent-connections is set (the virtual profile sets it to the pool size)
+@Configuration
+@ConditionalOnProperty(name = "pharmacy.datasource.max-concurrent-connections")
+public class ConnectionLimitConfig {
+
+    @Bean
+    public static BeanPostProcessor connectionLimitingDataSourcePostProcessor(Environment environment) {
+        int maxConnections = environment.getRequiredProperty("pharmacy.datasource.max-concurrent-connections", Integer.class);
+        Duration acquireTimeout = environment.getProperty("pharmacy.datasource.acquire-timeout", Duration.class, Duration.ofSeconds(10));
+        return new BeanPostProcessor() {
+            @Override
+            public Object postProcessAfterInitialization(Object bean, String beanName) {
+                if (bean instanceof DataSource dataSource && !(bean instanceof ConnectionLimitingDataSource)) {
+                    return new ConnectionLimitingDataSource(dataSource, maxConnections, acquireTimeout);
+                }
+                return bean;
+            }
+        };
+    }
+
+    // Requests queued here don't show up in the pool's own pending count, so report them separately
+    @Bean
+    public MeterBinder connectionLimitMetrics(DataSource dataSource) {
+        return registry -> {
+            if (dataSource instanceof ConnectionLimitingDataSource limited) {
+                Gauge.builder("pharmacy.datasource.permits.in-use", limited, ConnectionLimitingDataSource::getInUse)
+                        .register(registry);
+                Gauge.builder("pharmacy.datasource.permits.waiting", limited, ConnectionLimitingDataSource::getWaiting)
+                        .register(registry);
+            }
+        };
+    }
+}
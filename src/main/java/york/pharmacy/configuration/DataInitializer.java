@@ -2,6 +2,7 @@ package york.pharmacy.configuration;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.CommandLineRunner;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.stereotype.Component;
 import york.pharmacy.inventory.InventoryService;
 import york.pharmacy.inventory.dto.InventoryRequest;
@@ -17,7 +18,9 @@ import java.time.LocalDate;
 import java.util.List;
 import java.util.UUID;
 
+// Seeds the demo catalog on startup; benchmarks and load tests turn it off with pharmacy.seed-data.enabled=false
 @Component
+@ConditionalOnProperty(name = "pharmacy.seed-data.enabled", havingValue = "true", matchIfMissing = true)
 public class DataInitializer implements CommandLineRunner {
 
     private final MedicineService medicineService;
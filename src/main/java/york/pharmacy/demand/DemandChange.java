@@ -0,0 +1,43 @@
+package york.pharmacy.demand;
+
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+
+// Net change to medicine_demand from a group of status transitions, accumulated per medicine so
+// MedicineDemandService can apply it with one UPDATE per medicine however many prescriptions moved
+public class DemandChange {
+
+    // Sorted by medicine id so concurrent transactions update the demand rows in the same order
+    private final Map<Long, MedicineDemand> deltas = new TreeMap<>();
+
+    // Records a prescription moving between statuses; from is null for a new prescription
+    public DemandChange move(Long medicineId, PrescriptionStatus from, PrescriptionStatus to, long quantity) {
+        if (from == to || (!MedicineDemand.isTracked(from) && !MedicineDemand.isTracked(to))) {
+            return this;
+        }
+        MedicineDemand delta = deltas.computeIfAbsent(medicineId, MedicineDemand::new);
+        delta.add(from, -quantity);
+        delta.add(to, quantity);
+        return this;
+    }
+
+    // Net change for one medicine (all zero when none of its prescriptions moved)
+    public MedicineDemand getDelta(Long medicineId) {
+        return deltas.getOrDefault(medicineId, new MedicineDemand(medicineId));
+    }
+
+    public boolean isEmpty() {
+        return deltas.values().stream().allMatch(MedicineDemand::isEmpty);
+    }
+
+    void forEach(BiConsumer<Long, MedicineDemand> action) {
+        deltas.forEach((medicineId, delta) -> {
+            if (!delta.isEmpty()) {
+                action.accept(medicineId, delta);
+            }
+        });
+    }
+}
@@ -0,0 +1,74 @@
+package york.pharmacy.demand;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+// Running total of prescription quantities per medicine, split by the statuses that still need stock.
+// Kept up to date by MedicineDemandService on every prescription status change, so sufficiency checks
+// read one row instead of summing the prescription table; MedicineDemandReconciler checks it against the SUM
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "medicine_demand")
+public class MedicineDemand {
+
+    // Same value as the medicine's id - one row per medicine
+    @Id
+    private Long medicineId;
+
+    @Column(nullable = false)
+    private long newQuantity;
+
+    @Column(nullable = false)
+    private long outOfStockQuantity;
+
+    @Column(nullable = false)
+    private long stockReceivedQuantity;
+
+    @Column(nullable = false)
+    private long awaitingShipmentQuantity;
+
+    public MedicineDemand(Long medicineId) {
+        this.medicineId = medicineId;
+    }
+
+    // NEW + OUT_OF_STOCK - what still has to be ordered
+    public long getPendingQuantity() {
+        return newQuantity + outOfStockQuantity;
+    }
+
+    // Pending + STOCK_RECEIVED - what the stock on hand has to cover
+    public long getClaimedQuantity() {
+        return getPendingQuantity() + stockReceivedQuantity;
+    }
+
+    public static boolean isTracked(PrescriptionStatus status) {
+        return status == PrescriptionStatus.NEW
+                || status == PrescriptionStatus.OUT_OF_STOCK
+                || status == PrescriptionStatus.STOCK_RECEIVED
+                || status == PrescriptionStatus.AWAITING_SHIPMENT;
+    }
+
+    // Adds the quantity to the status's bucket; statuses that don't hold demand are ignored
+    public void add(PrescriptionStatus status, long quantity) {
+        if (status == null) {
+            return;
+        }
+        switch (status) {
+            case NEW -> newQuantity += quantity;
+            case OUT_OF_STOCK -> outOfStockQuantity += quantity;
+            case STOCK_RECEIVED -> stockReceivedQuantity += quantity;
+            case AWAITING_SHIPMENT -> awaitingShipmentQuantity += quantity;
+            default -> {
+            }
+        }
+    }
+
+    public boolean isEmpty() {
+        return newQuantity == 0 && outOfStockQuantity == 0 && stockReceivedQuantity == 0 && awaitingShipmentQuantity == 0;
+    }
+}
@@ -0,0 +1,58 @@
+package york.pharmacy.demand;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Gauges over medicine_demand, refreshed every pharmacy.metrics.refresh-interval-ms rather than queried
+ * on every scrape:
+ * - pharmacy.demand.pending: pending pills (NEW + OUT_OF_STOCK) across all medicines
+ * - pharmacy.demand.pending.medicine{medicine}: the same per medicine, for the
+ *   pharmacy.metrics.demand.top-medicines medicines with the most pending pills. Only the top few are
+ *   tagged so the catalog size doesn't turn into time series count
+ * - pharmacy.demand.reconcile.drift: medicines that didn't match on the last reconciliation
+ *   (MedicineDemandReconciler also keeps the running total as the pharmacy.demand.drift counter)
+ */
+@Component
+public class MedicineDemandMetrics {
+
+    private final MedicineDemandRepository medicineDemandRepository;
+    private final int topMedicines;
+    private final AtomicLong pendingQuantity = new AtomicLong();
+    private final MultiGauge pendingByMedicine;
+
+    public MedicineDemandMetrics(MedicineDemandRepository medicineDemandRepository,
+                                 ObjectProvider<MedicineDemandReconciler> reconciler,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${pharmacy.metrics.demand.top-medicines:20}") int topMedicines) {
+        this.medicineDemandRepository = medicineDemandRepository;
+        this.topMedicines = topMedicines;
+        Gauge.builder("pharmacy.demand.pending", pendingQuantity, AtomicLong::get)
+                .description("Pending pills (NEW + OUT_OF_STOCK) across all medicines")
+                .register(meterRegistry);
+        pendingByMedicine = MultiGauge.builder("pharmacy.demand.pending.medicine")
+                .description("Pending pills for the medicines with the most pending demand")
+                .register(meterRegistry);
+        // Absent when reconciliation is disabled
+        reconciler.ifAvailable(r -> Gauge.builder("pharmacy.demand.reconcile.drift", r, MedicineDemandReconciler::getLastDriftCount)
+                .description("Medicines whose recorded demand didn't match the prescriptions on the last run")
+                .register(meterRegistry));
+    }
+
+    @Scheduled(fixedDelayString = "${pharmacy.metrics.refresh-interval-ms:30000}")
+    public void refresh() {
+        pendingQuantity.set(medicineDemandRepository.sumPendingQuantity());
+        pendingByMedicine.register(medicineDemandRepository.findTopPending(PageRequest.of(0, topMedicines)).stream()
+                .map(row -> MultiGauge.Row.of(Tags.of("medicine", row.getMedicineCode()), row.getPendingQuantity()))
+                .toList(), true);
+    }
+}
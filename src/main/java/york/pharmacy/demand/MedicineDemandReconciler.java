@@ -0,0 +1,114 @@
+package york.pharmacy.demand;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
+import york.pharmacy.prescriptions.MedicineStatusQuantity;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Periodically recomputes every medicine's demand from the prescription table and compares it with
+ * the incrementally maintained medicine_demand rows. Any difference is logged per medicine; with
+ * pharmacy.demand.reconcile.repair=true the rows are also overwritten with the recomputed totals.
+ * Disable with pharmacy.demand.reconcile.enabled=false.
+ * pharmacy.demand.drift counts the drifted medicines found across runs, so alerts can fire on its rate.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "pharmacy.demand.reconcile.enabled", havingValue = "true", matchIfMissing = true)
+public class MedicineDemandReconciler {
+
+    private static final List<PrescriptionStatus> TRACKED_STATUSES = List.of(
+            PrescriptionStatus.NEW,
+            PrescriptionStatus.OUT_OF_STOCK,
+            PrescriptionStatus.STOCK_RECEIVED,
+            PrescriptionStatus.AWAITING_SHIPMENT
+    );
+
+    private final MedicineDemandRepository medicineDemandRepository;
+    private final PrescriptionRepository prescriptionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean repair;
+    private final Counter driftCounter;
+
+    private volatile int lastDriftCount;
+
+    public MedicineDemandReconciler(MedicineDemandRepository medicineDemandRepository,
+                                    PrescriptionRepository prescriptionRepository,
+                                    PlatformTransactionManager transactionManager,
+                                    MeterRegistry meterRegistry,
+                                    @Value("${pharmacy.demand.reconcile.repair:false}") boolean repair) {
+        this.medicineDemandRepository = medicineDemandRepository;
+        this.prescriptionRepository = prescriptionRepository;
+        this.repair = repair;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        // Both reads see the same snapshot, so transitions committed in between aren't reported as drift
+        this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_REPEATABLE_READ);
+        this.transactionTemplate.setReadOnly(!repair);
+        this.driftCounter = Counter.builder("pharmacy.demand.drift")
+                .description("Medicines whose recorded demand didn't match the prescriptions, summed over runs")
+                .register(meterRegistry);
+    }
+
+    // Returns the number of medicines whose recorded demand didn't match the prescriptions
+    @Scheduled(initialDelayString = "${pharmacy.demand.reconcile-interval-ms:900000}",
+            fixedDelayString = "${pharmacy.demand.reconcile-interval-ms:900000}")
+    public int reconcile() {
+        try {
+            Integer drifted = transactionTemplate.execute(status -> compare());
+            lastDriftCount = drifted == null ? 0 : drifted;
+            driftCounter.increment(lastDriftCount);
+        } catch (DataAccessException ex) {
+            // A repair that collides with a concurrent transition is simply retried on the next run
+            log.warn("Medicine demand reconciliation failed, will retry", ex);
+        }
+        return lastDriftCount;
+    }
+
+    public int getLastDriftCount() {
+        return lastDriftCount;
+    }
+
+    private int compare() {
+        Map<Long, MedicineDemand> actual = new HashMap<>();
+        for (MedicineStatusQuantity row : prescriptionRepository.sumQuantityByMedicineAndStatus(TRACKED_STATUSES)) {
+            actual.computeIfAbsent(row.getMedicineId(), MedicineDemand::new).add(row.getStatus(), row.getQuantity());
+        }
+        Map<Long, MedicineDemand> recorded = new HashMap<>();
+        for (MedicineDemand demand : medicineDemandRepository.findAll()) {
+            recorded.put(demand.getMedicineId(), demand);
+        }
+
+        TreeSet<Long> medicineIds = new TreeSet<>(actual.keySet());
+        medicineIds.addAll(recorded.keySet());
+        List<MedicineDemand> corrections = new ArrayList<>();
+        for (Long medicineId : medicineIds) {
+            MedicineDemand expected = actual.getOrDefault(medicineId, new MedicineDemand(medicineId));
+            MedicineDemand current = recorded.getOrDefault(medicineId, new MedicineDemand(medicineId));
+            if (!expected.equals(current)) {
+                log.warn("Medicine demand drift for medicine {}: recorded {}, prescriptions {}", medicineId, current, expected);
+                corrections.add(expected);
+            }
+        }
+
+        if (repair && !corrections.isEmpty()) {
+            medicineDemandRepository.saveAll(corrections);
+        }
+        return corrections.size();
+    }
+}
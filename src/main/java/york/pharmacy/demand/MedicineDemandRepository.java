@@ -0,0 +1,57 @@
+package york.pharmacy.demand;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface MedicineDemandRepository extends JpaRepository<MedicineDemand, Long> {
+
+    // Adds the deltas to a medicine's buckets in the database (no read-modify-write, so concurrent
+    // transitions don't lose updates). Returns 0 when the medicine has no demand row yet
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE MedicineDemand d SET " +
+            "d.newQuantity = d.newQuantity + :newDelta, " +
+            "d.outOfStockQuantity = d.outOfStockQuantity + :outOfStockDelta, " +
+            "d.stockReceivedQuantity = d.stockReceivedQuantity + :stockReceivedDelta, " +
+            "d.awaitingShipmentQuantity = d.awaitingShipmentQuantity + :awaitingShipmentDelta " +
+            "WHERE d.medicineId = :medicineId")
+    int applyDelta(@Param("medicineId") Long medicineId,
+                   @Param("newDelta") long newDelta,
+                   @Param("outOfStockDelta") long outOfStockDelta,
+                   @Param("stockReceivedDelta") long stockReceivedDelta,
+                   @Param("awaitingShipmentDelta") long awaitingShipmentDelta);
+
+    // Creates an empty row for the medicine; a row created concurrently by another transaction is left alone
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO medicine_demand " +
+            "(medicine_id, new_quantity, out_of_stock_quantity, stock_received_quantity, awaiting_shipment_quantity) " +
+            "VALUES (:medicineId, 0, 0, 0, 0) ON CONFLICT DO NOTHING", nativeQuery = true)
+    void insertIfMissing(@Param("medicineId") Long medicineId);
+
+    // Read with a constructor expression so the values always come from the database,
+    // not from a copy loaded into the persistence context before a later applyDelta
+    @Query("SELECT new york.pharmacy.demand.MedicineDemand(d.medicineId, d.newQuantity, d.outOfStockQuantity, " +
+            "d.stockReceivedQuantity, d.awaitingShipmentQuantity) " +
+            "FROM MedicineDemand d WHERE d.medicineId IN (:medicineIds)")
+    List<MedicineDemand> findCurrent(@Param("medicineIds") Collection<Long> medicineIds);
+
+    @Query("SELECT COALESCE(SUM(d.newQuantity + d.outOfStockQuantity), 0) FROM MedicineDemand d")
+    long sumPendingQuantity();
+
+    // Medicines with the most pending pills (NEW + OUT_OF_STOCK), largest first
+    @Query("SELECT m.code AS medicineCode, d.newQuantity + d.outOfStockQuantity AS pendingQuantity " +
+            "FROM MedicineDemand d JOIN Medicine m ON m.id = d.medicineId " +
+            "WHERE d.newQuantity + d.outOfStockQuantity > 0 " +
+            "ORDER BY d.newQuantity + d.outOfStockQuantity DESC, m.code")
+    List<MedicinePendingQuantity> findTopPending(Pageable pageable);
+}
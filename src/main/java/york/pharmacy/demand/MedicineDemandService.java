@@ -0,0 +1,59 @@
+package york.pharmacy.demand;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+@Service
+@RequiredArgsConstructor
+public class MedicineDemandService {
+
+    private final MedicineDemandRepository medicineDemandRepository;
+
+    // Records one prescription's status change; from is null for a new prescription
+    public void recordTransition(Long medicineId, PrescriptionStatus from, PrescriptionStatus to, int quantity) {
+        apply(new DemandChange().move(medicineId, from, to, quantity));
+    }
+
+    // Must run in the transaction that changes the prescriptions, so the counters commit (or roll back) with them.
+    // The UPDATE locks the medicine's row until then, which also orders concurrent stock checks for that medicine
+    @Transactional
+    public void apply(DemandChange change) {
+        change.forEach((medicineId, delta) -> {
+            if (applyDelta(medicineId, delta) == 0) {
+                // First prescription for this medicine
+                medicineDemandRepository.insertIfMissing(medicineId);
+                applyDelta(medicineId, delta);
+            }
+        });
+    }
+
+    public MedicineDemand getDemand(Long medicineId) {
+        List<MedicineDemand> rows = medicineDemandRepository.findCurrent(List.of(medicineId));
+        return rows.isEmpty() ? new MedicineDemand(medicineId) : rows.get(0);
+    }
+
+    // Demand for several medicines in one query; medicines without a row get an empty one
+    public Map<Long, MedicineDemand> getDemands(Collection<Long> medicineIds) {
+        Map<Long, MedicineDemand> demands = new HashMap<>();
+        for (MedicineDemand demand : medicineDemandRepository.findCurrent(medicineIds)) {
+            demands.put(demand.getMedicineId(), demand);
+        }
+        medicineIds.forEach(id -> demands.computeIfAbsent(id, MedicineDemand::new));
+        return demands;
+    }
+
+    private int applyDelta(Long medicineId, MedicineDemand delta) {
+        return medicineDemandRepository.applyDelta(medicineId,
+                delta.getNewQuantity(),
+                delta.getOutOfStockQuantity(),
+                delta.getStockReceivedQuantity(),
+                delta.getAwaitingShipmentQuantity());
+    }
+}
@@ -0,0 +1,9 @@
+package york.pharmacy.demand;
+
+// Projection - pending pills for one medicine (see MedicineDemandRepository.findTopPending)
+public interface MedicinePendingQuantity {
+
+    String getMedicineCode();
+
+    Long getPendingQuantity();
+}
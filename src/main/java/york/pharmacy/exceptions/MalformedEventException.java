@@ -0,0 +1,8 @@
+package york.pharmacy.exceptions;
+
+// A Kafka event that is missing required fields. Retrying can't fix it, so it is dead-lettered at once.
+public class MalformedEventException extends RuntimeException {
+    public MalformedEventException(String message) {
+        super(message);
+    }
+}
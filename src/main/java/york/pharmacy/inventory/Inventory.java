@@ -1,8 +1,11 @@
 
 package york.pharmacy.inventory;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import jakarta.persistence.*;
 import lombok.*;
+import org.hibernate.annotations.ColumnDefault;
 import york.pharmacy.medicines.Medicine;
 
 @Data
@@ -10,20 +13,29 @@ import york.pharmacy.medicines.Medicine;
 @NoArgsConstructor
 @AllArgsConstructor
 @Entity
+// Responses embed inventories (OrderResponse), which can be Hibernate proxies now that associations are lazy
+@JsonIgnoreProperties({"hibernateLazyInitializer", "handler"})
 @Table(name = "inventory",
         uniqueConstraints = {
                 @UniqueConstraint(columnNames = {"medicine_id"})
         })
 public class Inventory {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "inventory_seq")
+    @SequenceGenerator(name = "inventory_seq", sequenceName = "inventory_seq", allocationSize = 50)
     private Long id;
 
-    @ManyToOne(fetch = FetchType.EAGER)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "medicine_id", nullable = false)
     private Medicine medicine;
 
     @Column(name = "stock_quantity", nullable = false)
     private Integer stockQuantity;
 
+    // Bumped by the stock UPDATEs in InventoryRepository too, so a stale entity save can't overwrite a fill
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    @JsonIgnore // OrderResponse embeds this entity - keep the version out of the API
+    private Long version;
 }
\ No newline at end of file
@@ -0,0 +1,22 @@
+package york.pharmacy.inventory;
+
+import york.pharmacy.medicines.Medicine;
+
+import java.time.LocalDate;
+
+// Projection returned by InventoryRepository.findDashboardRows -
+// one row per inventory with the pending prescription total and next delivery already aggregated
+public interface InventoryDashboardRow {
+
+    Long getId();
+
+    Medicine getMedicine();
+
+    Integer getStockQuantity();
+
+    // Sum of pending prescription quantities for the medicine (0 when there are none)
+    Long getPendingQuantity();
+
+    // Closest future delivery date of an ORDERED order (null when nothing is on order)
+    LocalDate getDeliveryDate();
+}
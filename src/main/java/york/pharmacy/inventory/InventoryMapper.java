@@ -25,6 +25,20 @@ public class InventoryMapper {
                 .build();
     }
 
+    // Response mapping from a dashboard aggregate row
+    public static InventoryResponse toResponse(InventoryDashboardRow row) {
+        int stockQuantity = row.getStockQuantity();
+        int neededPills = row.getPendingQuantity().intValue();
+        return InventoryResponse.builder()
+                .id(row.getId())
+                .medicine(row.getMedicine())
+                .stockQuantity(stockQuantity)
+                .sufficientStock(stockQuantity >= neededPills)
+                .minimumOrderCount(Math.max(0, neededPills - stockQuantity))
+                .deliveryDate(row.getDeliveryDate())
+                .build();
+    }
+
     // Response mapping without closest order
     public static InventoryResponse toResponse(Inventory entity) {
         return InventoryResponse.builder()
@@ -1,20 +1,66 @@
 package york.pharmacy.inventory;
 
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface InventoryRepository extends JpaRepository<Inventory, Long> {
 
+    // Inventory responses embed the medicine
+    @Override
+    @EntityGraph(attributePaths = "medicine")
+    List<Inventory> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = "medicine")
+    Optional<Inventory> findById(Long id);
+
     Optional<Inventory> findByMedicineId(Long medicineId);
 
+    @Query("SELECT i FROM Inventory i JOIN FETCH i.medicine m WHERE m.id IN (:medicineIds)")
+    List<Inventory> findAllByMedicineIds(@Param("medicineIds") Collection<Long> medicineIds);
+
     @Transactional
     @Modifying
-    @Query("UPDATE Inventory i SET i.stockQuantity = :stockQuantity WHERE i.id = :id")
+    @Query("UPDATE Inventory i SET i.stockQuantity = :stockQuantity, i.version = i.version + 1 WHERE i.id = :id")
     void setStockQuantity(Long id, int stockQuantity);
+
+    boolean existsByMedicineId(Long medicineId);
+
+    // Atomic stock adjustment - the WHERE guard rejects anything that would take stock below 0,
+    // so concurrent adjustments neither lose updates nor need the row loaded first.
+    // Returns the number of rows updated (0 when the inventory is missing or stock is insufficient)
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Inventory i SET i.stockQuantity = i.stockQuantity + :delta, i.version = i.version + 1 " +
+            "WHERE i.id = :id AND i.stockQuantity + :delta >= 0")
+    int adjustStockQuantity(@Param("id") Long id, @Param("delta") int delta);
+
+    // Same as adjustStockQuantity, addressed by medicine (prescriptions only know their medicine)
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Inventory i SET i.stockQuantity = i.stockQuantity + :delta, i.version = i.version + 1 " +
+            "WHERE i.medicine.id = :medicineId AND i.stockQuantity + :delta >= 0")
+    int adjustStockQuantityByMedicineId(@Param("medicineId") Long medicineId, @Param("delta") int delta);
+
+    // Dashboard read path - inventory, medicine, pending prescription total (from medicine_demand) and
+    // next ORDERED delivery in a single statement instead of two lookups per row
+    @Query("SELECT i.id AS id, m AS medicine, i.stockQuantity AS stockQuantity, " +
+            "COALESCE(d.newQuantity + d.outOfStockQuantity, 0) AS pendingQuantity, " +
+            "(SELECT MIN(o.deliveryDate) FROM Order o " +
+            "WHERE o.inventory.id = i.id AND o.status = 'ORDERED' AND o.deliveryDate > :currentDate) AS deliveryDate " +
+            "FROM Inventory i JOIN i.medicine m " +
+            "LEFT JOIN MedicineDemand d ON d.medicineId = m.id " +
+            "ORDER BY i.id")
+    List<InventoryDashboardRow> findDashboardRows(@Param("currentDate") LocalDate currentDate);
 }
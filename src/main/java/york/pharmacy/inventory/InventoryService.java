@@ -1,5 +1,6 @@
 package york.pharmacy.inventory;
 
+import io.micrometer.core.annotation.Timed;
 import jakarta.transaction.Transactional;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.DataIntegrityViolationException;
@@ -12,25 +13,31 @@ import york.pharmacy.medicines.Medicine;
 import york.pharmacy.medicines.MedicineService;
 import york.pharmacy.orders.Order;
 import york.pharmacy.orders.OrderService;
+import york.pharmacy.utilities.OptimisticRetry;
 import york.pharmacy.utilities.ServiceUtility;
 
+import java.time.LocalDate;
 import java.util.List;
 import java.util.Optional;
 import java.util.stream.Collectors;
 
+@Timed("pharmacy.service")
 @Service
 @Transactional
 public class InventoryService {
 
     private final InventoryRepository inventoryRepository;
     private final ServiceUtility serviceUtility;
+    private final OptimisticRetry optimisticRetry;
 
     public InventoryService(
             InventoryRepository inventoryRepository,
-            ServiceUtility serviceUtility
+            ServiceUtility serviceUtility,
+            OptimisticRetry optimisticRetry
     ) {
         this.inventoryRepository = inventoryRepository;
         this.serviceUtility = serviceUtility;
+        this.optimisticRetry = optimisticRetry;
     }
 
     public InventoryResponse createInventory(InventoryRequest request) {
@@ -88,22 +95,10 @@ public class InventoryService {
     }
 
     public List<InventoryResponse> getAllInventories() {
-        List<Inventory> entities = inventoryRepository.findAll();
-        return entities.stream()
-                .map(entity -> {
-                    // Note: replaced prescriptionService with prescriptionServiceAdapter
-                    int neededPills = serviceUtility.minOrderCount(entity.getMedicine().getId());
-                    int minOrderCount = Math.max(0, neededPills - entity.getStockQuantity());
-                    boolean sufficientStock = entity.getStockQuantity() >= neededPills;
-
-                    Optional<Order> closestOrder = serviceUtility.getClosestOrderedDeliveryDate(entity.getId());
-                    InventoryResponse response = InventoryMapper.toResponse(entity, closestOrder);
-
-                    response.setMinimumOrderCount(minOrderCount);
-                    response.setSufficientStock(sufficientStock);
-
-                    return response;
-                })
+        // Pending totals and next deliveries come back with the rows, so this is one query regardless of SKU count
+        return inventoryRepository.findDashboardRows(LocalDate.now())
+                .stream()
+                .map(InventoryMapper::toResponse)
                 .collect(Collectors.toList());
     }
 
@@ -117,7 +112,13 @@ public class InventoryService {
         return InventoryMapper.toResponse(updatedEntity);
     }
 
+    // Retried as a whole when a prescription being re-allocated changes underneath it
+    @Transactional(Transactional.TxType.SUPPORTS)
     public InventoryResponse updateInventoryStock(Long id, InventoryUpdateRequest request) {
+        return optimisticRetry.execute("inventory.update-stock", () -> applyStockLevel(id, request));
+    }
+
+    private InventoryResponse applyStockLevel(Long id, InventoryUpdateRequest request) {
         Inventory existingEntity = inventoryRepository.findById(id)
                 .orElseThrow(() ->
                         new ResourceNotFoundException("Inventory not found with id: " + id));
@@ -139,22 +140,20 @@ public class InventoryService {
         inventoryRepository.deleteById(id);
     }
 
+    // Retried like updateInventoryStock; the rolled-back attempt's stock adjustment is undone with it
+    @Transactional(Transactional.TxType.SUPPORTS)
     public InventoryResponse adjustStockQuantity(Long id, Integer pillAdjustment) {
-        Inventory existingEntity = inventoryRepository.findById(id)
-                .orElseThrow(() ->
-                        new ResourceNotFoundException("Inventory not found with id: " + id));
+        return optimisticRetry.execute("inventory.adjust-stock", () -> applyStockAdjustment(id, pillAdjustment));
+    }
 
-        int newQuantity = existingEntity.getStockQuantity() + pillAdjustment;
-        if (newQuantity < 0) {
-            throw new IllegalArgumentException("Cannot reduce stock below 0");
-        }
-        existingEntity.setStockQuantity(newQuantity);
+    private InventoryResponse applyStockAdjustment(Long id, Integer pillAdjustment) {
+        // Atomic conditional update - rejects adjustments that would take stock below 0
+        InventoryResponse response = serviceUtility.adjustStockQuantity(id, pillAdjustment);
 
-        Long medicineId = existingEntity.getMedicine().getId();
-        serviceUtility.updatePrescriptionsWithNewStock(newQuantity, medicineId);
+        Long medicineId = response.getMedicine().getId();
+        serviceUtility.updatePrescriptionsWithNewStock(response.getStockQuantity(), medicineId);
 
-        Inventory updatedEntity = inventoryRepository.save(existingEntity);
-        return InventoryMapper.toResponse(updatedEntity);
+        return response;
     }
 
 }
\ No newline at end of file
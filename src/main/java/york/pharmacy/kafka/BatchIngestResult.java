@@ -0,0 +1,28 @@
+package york.pharmacy.kafka;
+
+import lombok.Data;
+import lombok.ToString;
+
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+// Outcome of one poll batch handled by PrescriptionEventBatchService
+@Data
+public class BatchIngestResult {
+    private int created;
+    private int outOfStock;
+    private int cancelled;
+    // Redelivered/duplicate prescriptions and repeated cancellations
+    private int skipped;
+    // The redelivered/duplicate prescriptions among the skipped ones
+    private int deduplicated;
+    // Prescription numbers of the batch that are stored once it commits (created or already there)
+    @ToString.Exclude
+    private final Set<String> storedNumbers = new HashSet<>();
+    // Events a redelivery can't fix (unknown medicine code or prescription number, malformed), by position in the ingested list, with the
+    // exception the per-record listener would have thrown. The batch listener sends them to the DLT
+    @ToString.Exclude
+    private final Map<Integer, RuntimeException> rejected = new TreeMap<>();
+}
@@ -0,0 +1,16 @@
+package york.pharmacy.kafka;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Outcome of one POST /api/kafka/dlt/replay call
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DeadLetterReplayResult {
+    // Records republished to patient_prescription_events
+    private int replayed;
+    // Records still on the DLT after this batch; call again until it reaches 0
+    private long remaining;
+}
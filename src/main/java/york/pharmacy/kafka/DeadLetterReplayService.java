@@ -0,0 +1,176 @@
+package york.pharmacy.kafka;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.kafka.clients.consumer.Consumer;
+import org.apache.kafka.clients.consumer.ConsumerConfig;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.ConsumerRecords;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.TopicPartition;
+import org.apache.kafka.common.header.Header;
+import org.apache.kafka.common.serialization.ByteArrayDeserializer;
+import org.apache.kafka.common.serialization.StringDeserializer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.DefaultKafkaConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves records from patient_prescription_events.DLT back onto patient_prescription_events, a batch per
+ * call, once whatever failed them is fixed (e.g. the missing medicine was added). Records are copied as
+ * raw bytes with their key and original headers; the DLT and retry bookkeeping headers are dropped so a
+ * replayed event gets a full set of retries again. The DLT position is kept as the committed offsets of
+ * the pharmacy-dlt-replay consumer group and only advances once the whole batch is acknowledged by the
+ * broker - a failed replay sends some records twice at worst, which the ingest deduplication absorbs.
+ */
+@Slf4j
+@Service
+public class DeadLetterReplayService {
+
+    public static final int MAX_REPLAY_BATCH = 1000;
+    static final String GROUP_ID = "pharmacy-dlt-replay";
+    // kafka_dlt-exception-fqcn, kafka_dlt-original-offset, ... and retry_topic-attempts, retry_topic-backoff-timestamp, ...
+    private static final String DLT_HEADER_PREFIX = KafkaHeaders.PREFIX + "dlt-";
+    private static final String RETRY_HEADER_PREFIX = "retry_topic-";
+
+    private final ConsumerFactory<String, byte[]> consumerFactory;
+    private final KafkaTemplate<String, Object> replayTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pharmacy.kafka.dlt.replay-timeout:10s}")
+    private Duration timeout = Duration.ofSeconds(10);
+
+    // Reads the DLT byte-for-byte on the spring.kafka.* connection settings, so a replay never depends on
+    // the payload deserializing; the dead-letter template sends byte[] values as they are. The consumer
+    // factory holds no connections itself - each replay closes the consumer it creates
+    @Autowired
+    public DeadLetterReplayService(KafkaProperties kafkaProperties,
+                                   @Qualifier(KafkaRetryConfig.DEAD_LETTER_KAFKA_TEMPLATE) KafkaTemplate<String, Object> replayTemplate,
+                                   MeterRegistry meterRegistry) {
+        this(new DefaultKafkaConsumerFactory<>(kafkaProperties.buildConsumerProperties(null),
+                        new StringDeserializer(), new ByteArrayDeserializer()),
+                replayTemplate, meterRegistry);
+    }
+
+    DeadLetterReplayService(ConsumerFactory<String, byte[]> consumerFactory,
+                            KafkaTemplate<String, Object> replayTemplate, MeterRegistry meterRegistry) {
+        this.consumerFactory = consumerFactory;
+        this.replayTemplate = replayTemplate;
+        this.meterRegistry = meterRegistry;
+    }
+
+    // One replay at a time: concurrent calls would read the same offsets and send the records twice
+    public synchronized DeadLetterReplayResult replay(int limit) {
+        if (limit < 1 || limit > MAX_REPLAY_BATCH) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_REPLAY_BATCH);
+        }
+        Properties overrides = new Properties();
+        overrides.put(ConsumerConfig.AUTO_OFFSET_RESET_CONFIG, "earliest");
+        overrides.put(ConsumerConfig.ENABLE_AUTO_COMMIT_CONFIG, "false");
+        overrides.put(ConsumerConfig.MAX_POLL_RECORDS_CONFIG, String.valueOf(limit));
+        try (Consumer<String, byte[]> consumer = consumerFactory.createConsumer(GROUP_ID, null, null, overrides)) {
+            List<TopicPartition> partitions = consumer.partitionsFor(KafkaRetryConfig.DEAD_LETTER_TOPIC).stream()
+                    .map(info -> new TopicPartition(info.topic(), info.partition()))
+                    .toList();
+            if (partitions.isEmpty()) {
+                return new DeadLetterReplayResult(0, 0);
+            }
+            consumer.assign(partitions);
+            // Records dead-lettered while this runs are left for the next call
+            Map<TopicPartition, Long> endOffsets = consumer.endOffsets(partitions);
+            Map<TopicPartition, Long> nextOffsets = new HashMap<>();
+            for (TopicPartition partition : partitions) {
+                nextOffsets.put(partition, consumer.position(partition));
+            }
+
+            List<ConsumerRecord<String, byte[]>> batch = read(consumer, endOffsets, nextOffsets, limit);
+            send(batch);
+
+            Map<TopicPartition, OffsetAndMetadata> commits = new HashMap<>();
+            for (ConsumerRecord<String, byte[]> record : batch) {
+                commits.put(new TopicPartition(record.topic(), record.partition()), new OffsetAndMetadata(record.offset() + 1));
+            }
+            if (!commits.isEmpty()) {
+                consumer.commitSync(commits);
+            }
+            meterRegistry.counter("pharmacy.kafka.dlt.replayed").increment(batch.size());
+
+            long remaining = 0;
+            for (TopicPartition partition : partitions) {
+                remaining += Math.max(0, endOffsets.get(partition) - nextOffsets.get(partition));
+            }
+            log.info("Replayed {} dead-lettered events, {} left", batch.size(), remaining);
+            return new DeadLetterReplayResult(batch.size(), remaining);
+        }
+    }
+
+    // Polls until the batch is full or every partition is read up to its end offset. nextOffsets ends up
+    // as the offset after the last record taken from each partition
+    private List<ConsumerRecord<String, byte[]>> read(Consumer<String, byte[]> consumer, Map<TopicPartition, Long> endOffsets,
+                                                       Map<TopicPartition, Long> nextOffsets, int limit) {
+        List<ConsumerRecord<String, byte[]>> batch = new ArrayList<>(limit);
+        while (batch.size() < limit && behind(endOffsets, nextOffsets)) {
+            ConsumerRecords<String, byte[]> records = consumer.poll(timeout);
+            if (records.isEmpty()) {
+                break;
+            }
+            for (ConsumerRecord<String, byte[]> record : records) {
+                TopicPartition partition = new TopicPartition(record.topic(), record.partition());
+                // Within a partition records come in order, so taking a prefix keeps the commit exact
+                if (batch.size() == limit || record.offset() >= endOffsets.get(partition)) {
+                    continue;
+                }
+                batch.add(record);
+                nextOffsets.put(partition, record.offset() + 1);
+            }
+        }
+        return batch;
+    }
+
+    private static boolean behind(Map<TopicPartition, Long> endOffsets, Map<TopicPartition, Long> nextOffsets) {
+        return endOffsets.entrySet().stream().anyMatch(end -> nextOffsets.get(end.getKey()) < end.getValue());
+    }
+
+    private void send(List<ConsumerRecord<String, byte[]>> batch) {
+        List<CompletableFuture<?>> sends = new ArrayList<>(batch.size());
+        for (ConsumerRecord<String, byte[]> record : batch) {
+            sends.add(replayTemplate.send(toReplay(record)));
+        }
+        try {
+            CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while replaying dead-lettered events", ex);
+        } catch (Exception ex) {
+            throw new IllegalStateException("Dead-lettered events not replayed, the DLT position is unchanged: "
+                    + ex.getMessage(), ex);
+        }
+    }
+
+    static ProducerRecord<String, Object> toReplay(ConsumerRecord<String, byte[]> record) {
+        ProducerRecord<String, Object> replay = new ProducerRecord<>(KafkaRetryConfig.PRESCRIPTION_EVENTS_TOPIC,
+                null, record.key(), record.value());
+        for (Header header : record.headers()) {
+            if (!header.key().startsWith(DLT_HEADER_PREFIX) && !header.key().startsWith(RETRY_HEADER_PREFIX)) {
+                replay.headers().add(header);
+            }
+        }
+        return replay;
+    }
+}
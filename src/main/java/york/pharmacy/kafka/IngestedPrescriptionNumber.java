@@ -0,0 +1,32 @@
+package york.pharmacy.kafka;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Dedupe index for the per-record Kafka listener: one row per NEW_PRESCRIPTION it has claimed, inserted
+// in the same transaction as the prescription (see IngestedPrescriptionNumberRepository.claim).
+// Old rows are deleted by IngestedPrescriptionNumberPurge
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@Table(name = "ingested_prescription_number", indexes = {
+        @Index(name = "idx_ingested_prescription_number_ingested_at", columnList = "ingested_at")
+})
+public class IngestedPrescriptionNumber {
+
+    @Id
+    @Column(name = "prescription_number")
+    private String prescriptionNumber;
+
+    @Column(name = "ingested_at", nullable = false)
+    private Instant ingestedAt;
+}
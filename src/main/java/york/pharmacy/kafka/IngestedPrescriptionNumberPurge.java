@@ -0,0 +1,26 @@
+package york.pharmacy.kafka;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+
+// Keeps ingested_prescription_number small. A claim only has to outlive the transaction that made it:
+// once that commits, the prescription row itself makes later claims of the number match nothing
+@Component
+@RequiredArgsConstructor
+public class IngestedPrescriptionNumberPurge {
+
+    private final IngestedPrescriptionNumberRepository ingestedPrescriptionNumberRepository;
+
+    @Value("${pharmacy.kafka.dedupe.retention:1d}")
+    private Duration retention = Duration.ofDays(1);
+
+    @Scheduled(fixedDelayString = "${pharmacy.kafka.dedupe.purge-interval-ms:3600000}")
+    public int purgeClaims() {
+        return ingestedPrescriptionNumberRepository.deleteIngestedBefore(Instant.now().minus(retention));
+    }
+}
@@ -0,0 +1,30 @@
+package york.pharmacy.kafka;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+
+@Repository
+public interface IngestedPrescriptionNumberRepository extends JpaRepository<IngestedPrescriptionNumber, String> {
+
+    // Claims the number for this transaction: 1 when the caller should store the prescription, 0 when it is
+    // already stored (by any path) or claimed. A concurrent claim of the same number waits on the key
+    // until the first transaction finishes and then matches nothing, instead of failing on the unique constraint
+    @Transactional
+    @Modifying
+    @Query(value = "INSERT INTO ingested_prescription_number (prescription_number, ingested_at) " +
+            "SELECT :number, CURRENT_TIMESTAMP " +
+            "WHERE NOT EXISTS (SELECT 1 FROM prescription p WHERE p.prescription_number = :number) " +
+            "ON CONFLICT DO NOTHING", nativeQuery = true)
+    int claim(@Param("number") String prescriptionNumber);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM IngestedPrescriptionNumber n WHERE n.ingestedAt < :before")
+    int deleteIngestedBefore(@Param("before") Instant before);
+}
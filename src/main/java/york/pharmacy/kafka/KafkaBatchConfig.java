@@ -0,0 +1,73 @@
+package york.pharmacy.kafka;
+
+import org.apache.kafka.clients.admin.NewTopic;
+import org.apache.kafka.common.TopicPartition;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.ConcurrentKafkaListenerContainerFactoryConfigurer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.kafka.config.ConcurrentKafkaListenerContainerFactory;
+import org.springframework.kafka.config.TopicBuilder;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.listener.ContainerProperties;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.kafka.listener.DefaultErrorHandler;
+import org.springframework.kafka.support.ExponentialBackOffWithMaxRetries;
+
+@Configuration
+@ConditionalOnProperty(name = "pharmacy.kafka.batch-listener.enabled", havingValue = "true")
+public class KafkaBatchConfig {
+
+    public static final String BATCH_LISTENER_CONTAINER_FACTORY = "batchKafkaListenerContainerFactory";
+
+    // Same settings as Boot's default listener factory (spring.kafka.* properties), but hands the
+    // listener the whole poll (up to spring.kafka.consumer.max-poll-records) and commits once per batch
+    @Bean(BATCH_LISTENER_CONTAINER_FACTORY)
+    public ConcurrentKafkaListenerContainerFactory<Object, Object> batchKafkaListenerContainerFactory(
+            ConcurrentKafkaListenerContainerFactoryConfigurer configurer,
+            ConsumerFactory<Object, Object> consumerFactory,
+            DeadLetterPublishingRecoverer prescriptionEventsDeadLetterRecoverer,
+            @Value("${pharmacy.kafka.retry.attempts:4}") int attempts,
+            @Value("${pharmacy.kafka.retry.initial-delay-ms:1000}") long initialDelayMs,
+            @Value("${pharmacy.kafka.retry.multiplier:2}") double multiplier,
+            @Value("${pharmacy.kafka.retry.max-delay-ms:30000}") long maxDelayMs) {
+        ConcurrentKafkaListenerContainerFactory<Object, Object> factory = new ConcurrentKafkaListenerContainerFactory<>();
+        configurer.configure(factory, consumerFactory);
+        factory.setBatchListener(true);
+        factory.getContainerProperties().setAckMode(ContainerProperties.AckMode.BATCH);
+        factory.setCommonErrorHandler(batchErrorHandler(prescriptionEventsDeadLetterRecoverer, attempts, initialDelayMs, multiplier, maxDelayMs));
+        return factory;
+    }
+
+    // Batch listeners can't use retry topics. Bad events (unknown medicine, undeserializable) are sent to the
+    // DLT one by one by the listener, so a failing poll is an infrastructure problem: it is retried in place
+    // with the record listener's backoff, then its records go to the same DLT
+    private static DefaultErrorHandler batchErrorHandler(DeadLetterPublishingRecoverer recoverer, int attempts,
+                                                         long initialDelayMs, double multiplier, long maxDelayMs) {
+        ExponentialBackOffWithMaxRetries backOff = new ExponentialBackOffWithMaxRetries(attempts - 1);
+        backOff.setInitialInterval(initialDelayMs);
+        backOff.setMultiplier(multiplier);
+        backOff.setMaxInterval(maxDelayMs);
+        DefaultErrorHandler errorHandler = new DefaultErrorHandler(recoverer, backOff);
+        errorHandler.addNotRetryableExceptions(KafkaRetryConfig.FATAL_EXCEPTIONS.toArray(Class[]::new));
+        return errorHandler;
+    }
+
+    // Publishes to patient_prescription_events.DLT with the exception headers the DLT handler and replay
+    // expect. Used by the error handler above and by KafkaBatchConsumer for events ingest() rejected
+    @Bean
+    public DeadLetterPublishingRecoverer prescriptionEventsDeadLetterRecoverer(
+            @Qualifier(KafkaRetryConfig.DEAD_LETTER_KAFKA_TEMPLATE) KafkaTemplate<String, Object> deadLetterKafkaTemplate) {
+        return new DeadLetterPublishingRecoverer(deadLetterKafkaTemplate,
+                (record, ex) -> new TopicPartition(KafkaRetryConfig.DEAD_LETTER_TOPIC, -1));
+    }
+
+    // The record listener's retry configuration creates the DLT; in batch mode nothing else would
+    @Bean
+    public NewTopic prescriptionEventsDeadLetterTopic() {
+        return TopicBuilder.name(KafkaRetryConfig.DEAD_LETTER_TOPIC).build();
+    }
+}
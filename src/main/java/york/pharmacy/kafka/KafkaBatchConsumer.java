@@ -0,0 +1,88 @@
+package york.pharmacy.kafka;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.kafka.annotation.KafkaListener;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import org.springframework.stereotype.Service;
+import york.pharmacy.exceptions.MalformedEventException;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Batch mode for patient_prescription_events, switched on with pharmacy.kafka.batch-listener.enabled=true
+// (KafkaConsumer.listen stays stopped then). Offsets are committed once ingest() has returned, i.e. after
+// the whole poll batch is persisted; a failed batch is redelivered and already-stored prescriptions are skipped.
+@Service
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "pharmacy.kafka.batch-listener.enabled", havingValue = "true")
+public class KafkaBatchConsumer {
+
+    private final PrescriptionEventBatchService prescriptionEventBatchService;
+    private final MeterRegistry meterRegistry;
+    private final SeenPrescriptionNumbers seenPrescriptionNumbers;
+    private final DeadLetterPublishingRecoverer deadLetterRecoverer;
+
+    @KafkaListener(topics = "patient_prescription_events", groupId = "pharmacy-group",
+            containerFactory = KafkaBatchConfig.BATCH_LISTENER_CONTAINER_FACTORY)
+    public void listen(List<ConsumerRecord<String, ConsumerEvent>> records) {
+        // Redelivered prescriptions the cache already knows are stored are dropped before the batch reaches the database
+        int cached = 0;
+        List<ConsumerRecord<String, ConsumerEvent>> ingested = new ArrayList<>(records.size());
+        List<ConsumerEvent> events = new ArrayList<>(records.size());
+        Map<ConsumerRecord<String, ConsumerEvent>, RuntimeException> rejected = new LinkedHashMap<>();
+        for (ConsumerRecord<String, ConsumerEvent> record : records) {
+            // Undeserializable records arrive as null values and fail this check too
+            try {
+                KafkaConsumer.requireWellFormed(record);
+            } catch (MalformedEventException ex) {
+                rejected.put(record, ex);
+                continue;
+            }
+            ConsumerEvent event = record.value();
+            if (PrescriptionEventBatchService.NEW_PRESCRIPTION.equals(event.getEventType())
+                    && seenPrescriptionNumbers.contains(event.getPrescriptionId())) {
+                cached++;
+                continue;
+            }
+            ingested.add(record);
+            events.add(event);
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        BatchIngestResult result;
+        try {
+            result = prescriptionEventBatchService.ingest(events);
+        } catch (RuntimeException ex) {
+            sample.stop(meterRegistry.timer("pharmacy.kafka.consume.batch", "outcome", "failure"));
+            throw ex;
+        }
+        sample.stop(meterRegistry.timer("pharmacy.kafka.consume.batch", "outcome", "success"));
+        seenPrescriptionNumbers.addAll(result.getStoredNumbers());
+        // Same outcome as the record listener: bad events land on the DLT before the offsets are committed.
+        // A failed publish fails the poll, and the redelivered batch is absorbed by the dedupe above
+        result.getRejected().forEach((index, ex) -> rejected.put(ingested.get(index), ex));
+        rejected.forEach(deadLetterRecoverer::accept);
+        count("created", result.getCreated());
+        count("out_of_stock", result.getOutOfStock());
+        count("cancelled", result.getCancelled());
+        count("skipped", result.getSkipped() + cached);
+        deduplicated("cache", cached);
+        deduplicated("database", result.getDeduplicated());
+        count("dead_lettered", rejected.size());
+    }
+
+    // pharmacy.kafka.consume.deduplicated{source} - same counter as the per-record listener
+    private void deduplicated(String source, int events) {
+        meterRegistry.counter("pharmacy.kafka.consume.deduplicated", "source", source).increment(events);
+    }
+
+    // pharmacy.kafka.consume.events{result} - what the batches did with their events
+    private void count(String result, int events) {
+        meterRegistry.counter("pharmacy.kafka.consume.events", "result", result).increment(events);
+    }
+}
@@ -1,50 +1,130 @@
 package york.pharmacy.kafka;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
 import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.common.header.Header;
 import org.springframework.kafka.annotation.KafkaListener;
 import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
 import org.springframework.stereotype.Service;
+import york.pharmacy.exceptions.MalformedEventException;
 import york.pharmacy.prescriptions.PrescriptionService;
 import york.pharmacy.prescriptions.dto.PrescriptionRequest;
 import york.pharmacy.utilities.ServiceUtility;
 
+import java.nio.charset.StandardCharsets;
+
+@Slf4j
 @Service
 public class KafkaConsumer {
 
 
     private final KafkaTemplate<String, ConsumerEvent> kafkaTemplate;
     private final ServiceUtility serviceUtility;
+    private final MeterRegistry meterRegistry;
+    private final SeenPrescriptionNumbers seenPrescriptionNumbers;
 
-    public KafkaConsumer(KafkaTemplate<String, ConsumerEvent> kafkaTemplate, ServiceUtility serviceUtility) {
+    public KafkaConsumer(KafkaTemplate<String, ConsumerEvent> kafkaTemplate, ServiceUtility serviceUtility,
+                         MeterRegistry meterRegistry, SeenPrescriptionNumbers seenPrescriptionNumbers) {
         this.kafkaTemplate = kafkaTemplate;
         this.serviceUtility = serviceUtility;
+        this.meterRegistry = meterRegistry;
+        this.seenPrescriptionNumbers = seenPrescriptionNumbers;
     }
 
     public void sendMessage(String topic, ConsumerEvent e) {
-        kafkaTemplate.send(topic, e);
+        kafkaTemplate.send(topic, e.getPrescriptionId(), e);
 //        System.out.println("Message sent: " + e);
     }
 
 
 //    @KafkaListener(topics = "test-topic-receiving", groupId = "pharmacy-group")
-    @KafkaListener(topics = "patient_prescription_events", groupId = "pharmacy-group")
+    // Not started when the batch listener (KafkaBatchConsumer) is enabled. Failures are retried on the
+    // retry topics and end up on the DLT (KafkaRetryConfig), so one bad event never blocks its partition
+    @KafkaListener(topics = "patient_prescription_events", groupId = "pharmacy-group",
+            autoStartup = "#{!${pharmacy.kafka.batch-listener.enabled:false}}")
     public void listen(ConsumerRecord<String, ConsumerEvent> record) {
+        requireWellFormed(record);
         ConsumerEvent event = record.value();
-        System.out.println("Received Event: " + event.getEventType() + " - " + event.getPrescriptionId());
-        if (event.getEventType().equals("NEW_PRESCRIPTION")) {
-            PrescriptionRequest request = new PrescriptionRequest();
-            // We originally accidentally set this to the prescriptionId
-            request.setPatientId(event.getPatientId());
-            request.setPrescriptionNumber(event.getPrescriptionId());
-            request.setMedicineCode(event.getMedicineCode());
-            request.setQuantity(event.getQuantity());
-            request.setInstructions(event.getInstructions());
-
-            serviceUtility.addPrescription(request);
-        } else if (event.getEventType().equals("CANCELLED")) {
-            serviceUtility.cancelPrescription(event.getPrescriptionId());
+        // pharmacy.kafka.consume{event_type, outcome} - count and latency per event handled
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "failure";
+        try {
+            if (event.getEventType().equals("NEW_PRESCRIPTION")) {
+                // A redelivery (e.g. after a rebalance) is acknowledged without touching the database
+                if (seenPrescriptionNumbers.contains(event.getPrescriptionId())) {
+                    deduplicated("cache");
+                    outcome = "duplicate";
+                    return;
+                }
+                PrescriptionRequest request = new PrescriptionRequest();
+                // We originally accidentally set this to the prescriptionId
+                request.setPatientId(event.getPatientId());
+                request.setPrescriptionNumber(event.getPrescriptionId());
+                request.setMedicineCode(event.getMedicineCode());
+                request.setQuantity(event.getQuantity());
+                request.setInstructions(event.getInstructions());
+
+                if (serviceUtility.addPrescriptionIfNew(request).isEmpty()) {
+                    deduplicated("database");
+                    outcome = "duplicate";
+                    seenPrescriptionNumbers.add(event.getPrescriptionId());
+                    return;
+                }
+                seenPrescriptionNumbers.add(event.getPrescriptionId());
+            } else if (event.getEventType().equals("CANCELLED")) {
+                serviceUtility.cancelPrescription(event.getPrescriptionId());
+            }
+            outcome = "success";
+        } finally {
+            sample.stop(meterRegistry.timer("pharmacy.kafka.consume",
+                    "event_type", eventTypeTag(event.getEventType()), "outcome", outcome));
         }
+    }
+
+    // Malformed events can't succeed on a retry, so they are rejected as fatal. KafkaBatchConsumer runs the
+    // same check, so switching listener mode doesn't change which events reach the DLT
+    static void requireWellFormed(ConsumerRecord<String, ConsumerEvent> record) {
+        ConsumerEvent event = record.value();
+        boolean wellFormed = event != null && event.getPrescriptionId() != null
+                && (PrescriptionEventBatchService.CANCELLED.equals(event.getEventType())
+                || PrescriptionEventBatchService.NEW_PRESCRIPTION.equals(event.getEventType()) && event.getPatientId() != null);
+        if (!wellFormed) {
+            throw new MalformedEventException("Malformed prescription event at " + record.topic() + "-"
+                    + record.partition() + "@" + record.offset() + ": " + event);
+        }
+    }
 
+    // Events that failed fatally or ran out of retries. They stay on the DLT until replayed (POST /api/kafka/dlt/replay);
+    // pharmacy.kafka.consume.dead_lettered{event_type, exception} counts them
+    public void deadLettered(ConsumerRecord<String, ConsumerEvent> record) {
+        ConsumerEvent event = record.value();
+        String exception = header(record, KafkaHeaders.DLT_EXCEPTION_FQCN);
+        String exceptionName = exception == null ? "unknown" : exception.substring(exception.lastIndexOf('.') + 1);
+        meterRegistry.counter("pharmacy.kafka.consume.dead_lettered",
+                "event_type", eventTypeTag(event == null ? null : event.getEventType()),
+                "exception", exceptionName).increment();
+        // The failure happened on another consumer, so the exception arrives as DLT headers
+        log.warn("Dead-lettered prescription event {} from {}: {}: {}\n{}",
+                event == null ? null : event.getPrescriptionId(), header(record, KafkaHeaders.DLT_ORIGINAL_TOPIC),
+                exception, header(record, KafkaHeaders.DLT_EXCEPTION_MESSAGE),
+                header(record, KafkaHeaders.DLT_EXCEPTION_STACKTRACE));
+    }
+
+    private static String header(ConsumerRecord<?, ?> record, String name) {
+        Header header = record.headers().lastHeader(name);
+        return header == null ? null : new String(header.value(), StandardCharsets.UTF_8);
+    }
+
+    // pharmacy.kafka.consume.deduplicated{source} - redelivered prescriptions dropped by the cache or the database claim
+    private void deduplicated(String source) {
+        meterRegistry.counter("pharmacy.kafka.consume.deduplicated", "source", source).increment();
+    }
 
+    // Event types come from outside; anything unexpected shares one tag value
+    private static String eventTypeTag(String eventType) {
+        return "NEW_PRESCRIPTION".equals(eventType) || "CANCELLED".equals(eventType) ? eventType : "other";
     }
 }
@@ -4,6 +4,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
@@ -11,9 +12,12 @@ import org.springframework.web.bind.annotation.RestController;
 public class KafkaController {
     private final KafkaProducer producerService;
     private final KafkaConsumer consumerService;
-    public KafkaController(final KafkaProducer producerService, final KafkaConsumer consumerService) {
+    private final DeadLetterReplayService deadLetterReplayService;
+    public KafkaController(final KafkaProducer producerService, final KafkaConsumer consumerService,
+                           final DeadLetterReplayService deadLetterReplayService) {
         this.producerService = producerService;
         this.consumerService = consumerService;
+        this.deadLetterReplayService = deadLetterReplayService;
     }
 
     @PostMapping("/send")
@@ -27,5 +31,10 @@ public class KafkaController {
         consumerService.sendMessage("patient_prescription_events", e);
         return ResponseEntity.ok(e);
     }
-}
 
+    // Republishes up to limit dead-lettered prescription events; repeat until remaining is 0
+    @PostMapping("/dlt/replay")
+    public ResponseEntity<DeadLetterReplayResult> replayDeadLetters(@RequestParam(defaultValue = "100") int limit) {
+        return ResponseEntity.ok(deadLetterReplayService.replay(limit));
+    }
+}
@@ -1,17 +1,52 @@
 package york.pharmacy.kafka;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
-import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
+import york.pharmacy.outbox.OutboxEvent;
+import york.pharmacy.outbox.OutboxEventRepository;
 
+import java.util.List;
+
+// Messages are written to the outbox in the caller's transaction and published by OutboxRelay,
+// so the request thread never waits on the broker and rolled-back changes send nothing. Every message is
+// keyed by prescription number: one prescription's updates share a partition and are consumed in order
 @Service
 @RequiredArgsConstructor
 public class KafkaProducer {
 
-    private final KafkaTemplate<String, ProducerEvent> kafkaTemplate;
+    private final OutboxEventRepository outboxEventRepository;
+    private final ObjectMapper objectMapper;
+    private final MeterRegistry meterRegistry;
 
+    @Transactional
     public void sendMessage(String topic, ProducerEvent e) {
-        kafkaTemplate.send(topic, e);
-        System.out.println("Message sent: " + e.toString());
+        outboxEventRepository.save(toOutboxEvent(topic, e));
+        enqueued(topic, 1);
+    }
+
+    // Same as sendMessage for several events, saved together
+    @Transactional
+    public void sendMessages(String topic, List<ProducerEvent> events) {
+        outboxEventRepository.saveAll(events.stream()
+                .map(e -> toOutboxEvent(topic, e))
+                .toList());
+        enqueued(topic, events.size());
+    }
+
+    // Counted when written; a rolled-back transaction still counts, the relay's published counter doesn't
+    private void enqueued(String topic, int events) {
+        meterRegistry.counter("pharmacy.outbox.enqueued", "topic", topic).increment(events);
+    }
+
+    private OutboxEvent toOutboxEvent(String topic, ProducerEvent e) {
+        try {
+            return new OutboxEvent(topic, e.getPrescriptionId(), objectMapper.writeValueAsString(e));
+        } catch (JsonProcessingException ex) {
+            throw new IllegalArgumentException("Cannot serialize " + e, ex);
+        }
     }
 }
@@ -0,0 +1,109 @@
+package york.pharmacy.kafka;
+
+import jakarta.annotation.PreDestroy;
+import org.apache.kafka.common.serialization.ByteArraySerializer;
+import org.apache.kafka.common.serialization.Serializer;
+import org.apache.kafka.common.serialization.StringSerializer;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.kafka.KafkaProperties;
+import org.springframework.boot.context.properties.PropertyMapper;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.kafka.core.DefaultKafkaProducerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.core.ProducerFactory;
+import org.springframework.kafka.retrytopic.DltStrategy;
+import org.springframework.kafka.retrytopic.RetryTopicConfiguration;
+import org.springframework.kafka.retrytopic.RetryTopicConfigurationBuilder;
+import org.springframework.kafka.support.ProducerListener;
+import org.springframework.kafka.support.converter.RecordMessageConverter;
+import org.springframework.kafka.support.serializer.DelegatingByTypeSerializer;
+import org.springframework.kafka.support.serializer.JsonSerializer;
+import york.pharmacy.exceptions.MalformedEventException;
+import york.pharmacy.exceptions.ResourceNotFoundException;
+
+import java.util.List;
+import java.util.Map;
+
+// Failed patient_prescription_events records are moved off the partition instead of blocking it: the
+// record listener retries them on patient_prescription_events-retry-<n> topics with exponentially growing
+// delays, then parks them on patient_prescription_events.DLT (replayed through DeadLetterReplayService).
+@Configuration
+public class KafkaRetryConfig {
+
+    public static final String PRESCRIPTION_EVENTS_TOPIC = "patient_prescription_events";
+    public static final String DEAD_LETTER_TOPIC = PRESCRIPTION_EVENTS_TOPIC + ".DLT";
+    public static final String DEAD_LETTER_KAFKA_TEMPLATE = "deadLetterKafkaTemplate";
+
+    // Retrying can't fix these, so they go to the DLT on the first failure: an unknown medicine code or
+    // prescription number, and a malformed event. Spring Kafka adds its own (deserialization, conversion)
+    static final List<Class<? extends Throwable>> FATAL_EXCEPTIONS = List.of(
+            ResourceNotFoundException.class,
+            MalformedEventException.class);
+
+    private DefaultKafkaProducerFactory<String, Object> deadLetterProducerFactory;
+
+    // Any KafkaTemplate bean switches off Boot's default one, so it is declared here the way Boot would
+    @Bean
+    @Primary
+    public KafkaTemplate<?, ?> kafkaTemplate(ProducerFactory<Object, Object> kafkaProducerFactory,
+                                             ProducerListener<Object, Object> kafkaProducerListener,
+                                             ObjectProvider<RecordMessageConverter> messageConverter,
+                                             KafkaProperties kafkaProperties) {
+        PropertyMapper map = PropertyMapper.get().alwaysApplyingWhenNonNull();
+        KafkaTemplate<Object, Object> kafkaTemplate = new KafkaTemplate<>(kafkaProducerFactory);
+        messageConverter.ifUnique(kafkaTemplate::setMessageConverter);
+        map.from(kafkaProducerListener).to(kafkaTemplate::setProducerListener);
+        map.from(kafkaProperties.getTemplate().getDefaultTopic()).to(kafkaTemplate::setDefaultTopic);
+        map.from(kafkaProperties.getTemplate().getTransactionIdPrefix()).to(kafkaTemplate::setTransactionIdPrefix);
+        map.from(kafkaProperties.getTemplate().isObservationEnabled()).to(kafkaTemplate::setObservationEnabled);
+        return kafkaTemplate;
+    }
+
+    // Publishes to the retry topics and the DLT, and replays from the DLT. A record that failed
+    // deserialization (or is being replayed) is sent as its raw bytes, everything else as JSON
+    @Bean(DEAD_LETTER_KAFKA_TEMPLATE)
+    public KafkaTemplate<String, Object> deadLetterKafkaTemplate(KafkaProperties kafkaProperties) {
+        Serializer<Object> values = new DelegatingByTypeSerializer(Map.<Class<?>, Serializer<?>>of(
+                byte[].class, new ByteArraySerializer(),
+                Object.class, new JsonSerializer<>()), true);
+        deadLetterProducerFactory = new DefaultKafkaProducerFactory<>(
+                kafkaProperties.buildProducerProperties(null), new StringSerializer(), values);
+        return new KafkaTemplate<>(deadLetterProducerFactory);
+    }
+
+    // Not used with the batch listener, which retries whole polls instead (see KafkaBatchConfig)
+    @Bean
+    @ConditionalOnProperty(name = "pharmacy.kafka.batch-listener.enabled", havingValue = "false", matchIfMissing = true)
+    public RetryTopicConfiguration prescriptionEventsRetryTopic(
+            @Qualifier(DEAD_LETTER_KAFKA_TEMPLATE) KafkaTemplate<String, Object> deadLetterKafkaTemplate,
+            @Value("${pharmacy.kafka.retry.attempts:4}") int attempts,
+            @Value("${pharmacy.kafka.retry.initial-delay-ms:1000}") long initialDelayMs,
+            @Value("${pharmacy.kafka.retry.multiplier:2}") double multiplier,
+            @Value("${pharmacy.kafka.retry.max-delay-ms:30000}") long maxDelayMs) {
+        return RetryTopicConfigurationBuilder.newInstance()
+                .maxAttempts(attempts)
+                .exponentialBackoff(initialDelayMs, multiplier, maxDelayMs)
+                .suffixTopicsWithIndexValues()
+                .dltSuffix(".DLT")
+                .notRetryOn(FATAL_EXCEPTIONS)
+                .traversingCauses()
+                .dltHandlerMethod("kafkaConsumer", "deadLettered")
+                // A DLT record the handler can't read (e.g. undeserializable) is logged, not re-queued
+                .dltProcessingFailureStrategy(DltStrategy.FAIL_ON_ERROR)
+                .includeTopic(PRESCRIPTION_EVENTS_TOPIC)
+                .create(deadLetterKafkaTemplate);
+    }
+
+    // The template isn't handed its factory as a bean (that would switch off Boot's), so it is closed here
+    @PreDestroy
+    public void closeDeadLetterProducers() {
+        if (deadLetterProducerFactory != null) {
+            deadLetterProducerFactory.destroy();
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package york.pharmacy.kafka;
+
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import york.pharmacy.demand.DemandChange;
+import york.pharmacy.demand.MedicineDemand;
+import york.pharmacy.demand.MedicineDemandService;
+import york.pharmacy.exceptions.MalformedEventException;
+import york.pharmacy.exceptions.ResourceNotFoundException;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.prescriptions.CancellationCandidate;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionMapper;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.prescriptions.dto.PrescriptionRequest;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Handles a whole poll batch of patient_prescription_events in one transaction.
+ * New prescriptions are grouped by medicine: the claimed stock (from medicine_demand) and the inventory level
+ * are read once for all medicines in the batch, each prescription's NEW / OUT_OF_STOCK status is worked out
+ * in memory (same rule as ServiceUtility.checkAndUpdatePrescriptionStock), and the rows are saved together.
+ * Cancellations are applied per run of consecutive CANCELLED events, with one UPDATE per status read.
+ * Either way the demand counters are adjusted with one UPDATE per medicine. Prescriptions for an unknown
+ * medicine code or a medicine without inventory, cancellations of an unknown prescription number and events
+ * of an unknown type are not applied but returned as rejected, for the listener to dead-letter.
+ */
+@Service
+@RequiredArgsConstructor
+public class PrescriptionEventBatchService {
+
+    static final String NEW_PRESCRIPTION = "NEW_PRESCRIPTION";
+    static final String CANCELLED = "CANCELLED";
+
+    private final PrescriptionRepository prescriptionRepository;
+    private final InventoryRepository inventoryRepository;
+    private final ServiceUtility serviceUtility;
+    private final KafkaProducer kafkaProducer;
+    private final MedicineDemandService medicineDemandService;
+
+    @Transactional
+    public BatchIngestResult ingest(List<ConsumerEvent> events) {
+        BatchIngestResult result = new BatchIngestResult();
+        // Events are handled in runs of the same type, in order, so a cancellation still
+        // finds a prescription created earlier in the same batch
+        int start = 0;
+        while (start < events.size()) {
+            String eventType = events.get(start).getEventType();
+            int end = start + 1;
+            while (end < events.size() && Objects.equals(events.get(end).getEventType(), eventType)) {
+                end++;
+            }
+            List<ConsumerEvent> run = events.subList(start, end);
+            if (NEW_PRESCRIPTION.equals(eventType)) {
+                addPrescriptions(run, start, result);
+            } else if (CANCELLED.equals(eventType)) {
+                cancelPrescriptions(run, start, result);
+            } else {
+                // The listener already rejects these; kept so a direct caller gets the same answer
+                for (int i = start; i < end; i++) {
+                    result.getRejected().put(i, new MalformedEventException("Unknown prescription event type " + eventType));
+                }
+            }
+            start = end;
+        }
+        return result;
+    }
+
+    // offset is the position of the first event in the batch, for reporting rejected events
+    private void addPrescriptions(List<ConsumerEvent> events, int offset, BatchIngestResult result) {
+        // Redelivered events (after a failed batch) and in-batch duplicates are dropped by prescription number
+        Set<String> numbers = new HashSet<>();
+        events.forEach(event -> numbers.add(event.getPrescriptionId()));
+        Set<String> seen = new HashSet<>(prescriptionRepository.findExistingPrescriptionNumbers(numbers));
+        result.getStoredNumbers().addAll(seen);
+
+        Map<String, Medicine> medicinesByCode = new HashMap<>();
+        Map<String, ResourceNotFoundException> unknownCodes = new HashMap<>();
+        List<Prescription> candidates = new ArrayList<>();
+        List<Integer> positions = new ArrayList<>();
+        for (int i = 0; i < events.size(); i++) {
+            ConsumerEvent event = events.get(i);
+            if (!seen.add(event.getPrescriptionId())) {
+                result.setSkipped(result.getSkipped() + 1);
+                result.setDeduplicated(result.getDeduplicated() + 1);
+                continue;
+            }
+            Medicine medicine = findMedicine(event.getMedicineCode(), medicinesByCode, unknownCodes);
+            if (medicine == null) {
+                result.getRejected().put(offset + i, unknownCodes.get(event.getMedicineCode()));
+                continue;
+            }
+            candidates.add(PrescriptionMapper.toEntity(toRequest(event), medicine));
+            positions.add(offset + i);
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+
+        // One stock check per medicine: claimed pills and stock on hand for every medicine in the batch
+        Set<Long> medicineIds = new LinkedHashSet<>();
+        candidates.forEach(p -> medicineIds.add(p.getMedicine().getId()));
+        Map<Long, Long> claimed = new HashMap<>();
+        for (MedicineDemand demand : medicineDemandService.getDemands(medicineIds).values()) {
+            claimed.put(demand.getMedicineId(), demand.getClaimedQuantity());
+        }
+        Map<Long, Integer> stock = new HashMap<>();
+        for (Inventory inventory : inventoryRepository.findAllByMedicineIds(medicineIds)) {
+            stock.put(inventory.getMedicine().getId(), inventory.getStockQuantity());
+        }
+
+        // A medicine with no inventory row is rejected, as checkAndUpdatePrescriptionStock throws for it
+        List<Prescription> prescriptions = new ArrayList<>();
+        for (int i = 0; i < candidates.size(); i++) {
+            Long medicineId = candidates.get(i).getMedicine().getId();
+            if (stock.containsKey(medicineId)) {
+                prescriptions.add(candidates.get(i));
+            } else {
+                result.getRejected().put(positions.get(i),
+                        new ResourceNotFoundException("Inventory not found for medicine ID: " + medicineId));
+            }
+        }
+        if (prescriptions.isEmpty()) {
+            return;
+        }
+
+        // In arrival order, each prescription adds its pills to the medicine's claim;
+        // once the claim exceeds stock it is OUT_OF_STOCK
+        for (Prescription prescription : prescriptions) {
+            Long medicineId = prescription.getMedicine().getId();
+            long totalClaimed = claimed.merge(medicineId, (long) prescription.getQuantity(), Long::sum);
+            if (stock.get(medicineId) < totalClaimed) {
+                prescription.setStatus(PrescriptionStatus.OUT_OF_STOCK);
+                result.setOutOfStock(result.getOutOfStock() + 1);
+            }
+        }
+
+        prescriptionRepository.saveAll(prescriptions);
+        result.setCreated(result.getCreated() + prescriptions.size());
+        prescriptions.forEach(p -> result.getStoredNumbers().add(p.getPrescriptionNumber()));
+
+        DemandChange demandChange = new DemandChange();
+        prescriptions.forEach(p -> demandChange.move(p.getMedicine().getId(), null, p.getStatus(), p.getQuantity()));
+        medicineDemandService.apply(demandChange);
+
+        // Kafka publish RECEIVED
+        kafkaProducer.sendMessages("prescription_status_updates", prescriptions.stream()
+                .map(prescription -> new ProducerEvent("RECEIVED", prescription.getPrescriptionNumber()))
+                .toList());
+    }
+
+    // offset as for addPrescriptions
+    private void cancelPrescriptions(List<ConsumerEvent> events, int offset, BatchIngestResult result) {
+        Set<String> numbers = new LinkedHashSet<>();
+        events.forEach(event -> numbers.add(event.getPrescriptionId()));
+
+        // What the cancelled prescriptions were holding, so demand can be released
+        Map<String, CancellationCandidate> found = new LinkedHashMap<>();
+        for (CancellationCandidate candidate : prescriptionRepository.findCancellationCandidates(numbers)) {
+            found.put(candidate.getPrescriptionNumber(), candidate);
+        }
+
+        // Unknown numbers are rejected with the record listener's ResourceNotFoundException
+        int unknown = 0;
+        for (int i = 0; i < events.size(); i++) {
+            String number = events.get(i).getPrescriptionId();
+            if (!found.containsKey(number)) {
+                result.getRejected().put(offset + i,
+                        new ResourceNotFoundException("Prescription with prescription number " + number + " not found"));
+                unknown++;
+            }
+        }
+        if (found.isEmpty()) {
+            return;
+        }
+
+        DemandChange demandChange = new DemandChange();
+        Map<PrescriptionStatus, List<String>> numbersByStatus = new EnumMap<>(PrescriptionStatus.class);
+        for (CancellationCandidate candidate : found.values()) {
+            demandChange.move(candidate.getMedicineId(), candidate.getStatus(), PrescriptionStatus.CANCELLED,
+                    candidate.getQuantity());
+            numbersByStatus.computeIfAbsent(candidate.getStatus(), status -> new ArrayList<>())
+                    .add(candidate.getPrescriptionNumber());
+        }
+
+        // Each UPDATE only matches rows still in the status the demand change was worked out from. A short
+        // count means a fill or restock moved one in between: the batch rolls back and the poll is retried
+        int cancelled = 0;
+        for (Map.Entry<PrescriptionStatus, List<String>> entry : numbersByStatus.entrySet()) {
+            int updated = prescriptionRepository.updateStatusByPrescriptionNumbers(
+                    entry.getValue(), entry.getKey(), PrescriptionStatus.CANCELLED);
+            if (updated < entry.getValue().size()) {
+                throw new OptimisticLockingFailureException(
+                        "Prescriptions " + entry.getValue() + " changed while being cancelled");
+            }
+            cancelled += updated;
+        }
+        medicineDemandService.apply(demandChange);
+        result.setCancelled(result.getCancelled() + cancelled);
+        // Repeated cancellations of the same number within the run
+        result.setSkipped(result.getSkipped() + events.size() - unknown - cancelled);
+    }
+
+    // Each code is looked up once per batch; an unknown one keeps its exception for the rejected events
+    private Medicine findMedicine(String code, Map<String, Medicine> medicinesByCode,
+                                  Map<String, ResourceNotFoundException> unknownCodes) {
+        Medicine medicine = medicinesByCode.get(code);
+        if (medicine == null && !unknownCodes.containsKey(code)) {
+            try {
+                medicine = serviceUtility.getMedicineByCode(code);
+                medicinesByCode.put(code, medicine);
+            } catch (ResourceNotFoundException ex) {
+                unknownCodes.put(code, ex);
+            }
+        }
+        return medicine;
+    }
+
+    private static PrescriptionRequest toRequest(ConsumerEvent event) {
+        PrescriptionRequest request = new PrescriptionRequest();
+        request.setPatientId(event.getPatientId());
+        request.setPrescriptionNumber(event.getPrescriptionId());
+        request.setMedicineCode(event.getMedicineCode());
+        request.setQuantity(event.getQuantity());
+        request.setInstructions(event.getInstructions());
+        return request;
+    }
+}
@@ -0,0 +1,53 @@
+package york.pharmacy.kafka;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least-recently-used set of prescription numbers known to be stored, so the Kafka listeners can
+ * acknowledge a redelivered NEW_PRESCRIPTION without a database round trip. Numbers are only added after
+ * the transaction that stored them has returned, so a rolled-back ingest is never remembered. A miss
+ * (evicted, or stored before a restart) just falls through to the database check.
+ */
+@Component
+public class SeenPrescriptionNumbers {
+
+    private final int maxSize;
+    private final Map<String, Boolean> numbers;
+
+    public SeenPrescriptionNumbers(@Value("${pharmacy.kafka.dedupe.cache-size:100000}") int maxSize) {
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("Prescription number cache size must not be negative");
+        }
+        this.maxSize = maxSize;
+        this.numbers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > SeenPrescriptionNumbers.this.maxSize;
+            }
+        };
+    }
+
+    // Also marks the number as recently used
+    public synchronized boolean contains(String prescriptionNumber) {
+        return prescriptionNumber != null && numbers.get(prescriptionNumber) != null;
+    }
+
+    public synchronized void add(String prescriptionNumber) {
+        if (prescriptionNumber != null) {
+            numbers.put(prescriptionNumber, Boolean.TRUE);
+        }
+    }
+
+    public synchronized void addAll(Collection<String> prescriptionNumbers) {
+        prescriptionNumbers.forEach(this::add);
+    }
+
+    public synchronized int size() {
+        return numbers.size();
+    }
+}
@@ -0,0 +1,203 @@
+package york.pharmacy.loadtest;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.CommandLineRunner;
+import org.springframework.context.annotation.Profile;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Seeds a synthetic pharmacy at production scale for load tests (profile "loadtest").
+ * Medicines are ranked by popularity and orders and prescriptions pick them from a Zipf distribution,
+ * so a few hot SKUs carry most of the volume while the long tail sees a prescription now and then.
+ * Most prescriptions are historic (FILLED / PICKED_UP); the rest are spread over the pending statuses,
+ * with AWAITING_SHIPMENT ones attached to an open order for their medicine. medicine_demand is filled
+ * from the generated rows at the end. Rows are written with JDBC batches and explicit ids, then the
+ * id sequences are moved past them. Skips seeding if the database already has medicines.
+ */
+@Component
+@Profile("loadtest")
+public class LoadTestDataGenerator implements CommandLineRunner {
+
+    private static final int BATCH_SIZE = 5_000;
+    // Leaves room for the pooled optimizer's block below the sequence value (allocationSize = 50)
+    private static final int SEQUENCE_GAP = 100;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int medicines;
+    private final int orders;
+    private final int prescriptions;
+    private final double skew;
+    private final long seed;
+
+    public LoadTestDataGenerator(JdbcTemplate jdbcTemplate,
+                                 @Value("${pharmacy.loadtest.medicines:50000}") int medicines,
+                                 @Value("${pharmacy.loadtest.orders:20000}") int orders,
+                                 @Value("${pharmacy.loadtest.prescriptions:1000000}") int prescriptions,
+                                 @Value("${pharmacy.loadtest.skew:1.1}") double skew,
+                                 @Value("${pharmacy.loadtest.seed:42}") long seed) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.medicines = medicines;
+        this.orders = orders;
+        this.prescriptions = prescriptions;
+        this.skew = skew;
+        this.seed = seed;
+    }
+
+    @Override
+    public void run(String... args) {
+        Integer existing = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM medicine", Integer.class);
+        if (existing != null && existing > 0) {
+            System.out.println("Load test data already present (" + existing + " medicines), skipping generation");
+            return;
+        }
+        long start = System.nanoTime();
+        Random random = new Random(seed);
+        ZipfSampler popularity = new ZipfSampler(medicines, skew, random);
+
+        seedMedicinesAndInventory(random);
+        Map<Integer, Long> openOrders = seedOrders(random, popularity);
+        seedPrescriptions(random, popularity, openOrders);
+        seedDemand();
+        restartSequence("medicine_seq", medicines);
+        restartSequence("inventory_seq", medicines);
+        restartSequence("orders_seq", orders);
+        restartSequence("prescription_seq", prescriptions);
+
+        System.out.printf("Generated %,d medicines, %,d orders and %,d prescriptions (skew %.2f) in %.1f s%n",
+                medicines, orders, prescriptions, skew, (System.nanoTime() - start) / 1_000_000_000.0);
+    }
+
+    // Medicine i has popularity rank i; its inventory row shares its id
+    private void seedMedicinesAndInventory(Random random) {
+        Timestamp now = Timestamp.from(Instant.now());
+        List<Object[]> medicineRows = new ArrayList<>(BATCH_SIZE);
+        List<Object[]> inventoryRows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < medicines; i++) {
+            long id = i + 1L;
+            medicineRows.add(new Object[]{id, "Load Test Medicine " + i, code(i), now, now});
+            inventoryRows.add(new Object[]{id, id, random.nextInt(2_000)});
+            if (medicineRows.size() == BATCH_SIZE) {
+                flushMedicines(medicineRows, inventoryRows);
+            }
+        }
+        flushMedicines(medicineRows, inventoryRows);
+    }
+
+    private void flushMedicines(List<Object[]> medicineRows, List<Object[]> inventoryRows) {
+        insert("INSERT INTO medicine (id, name, code, created_at, updated_at) VALUES (?, ?, ?, ?, ?)", medicineRows);
+        insert("INSERT INTO inventory (id, medicine_id, stock_quantity) VALUES (?, ?, ?)", inventoryRows);
+    }
+
+    // Hot medicines are reordered more often. Returns an open (ORDERED) order per medicine rank
+    private Map<Integer, Long> seedOrders(Random random, ZipfSampler popularity) {
+        Map<Integer, Long> openOrders = new HashMap<>();
+        Timestamp now = Timestamp.from(Instant.now());
+        LocalDate today = LocalDate.now();
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < orders; i++) {
+            long id = i + 1L;
+            int rank = popularity.next();
+            boolean open = random.nextInt(10) < 3;
+            LocalDate deliveryDate = open ? today.plusDays(1 + random.nextInt(14)) : today.minusDays(1 + random.nextInt(365));
+            rows.add(new Object[]{id, rank + 1L, 50 + random.nextInt(20) * 50, deliveryDate,
+                    open ? "ORDERED" : "RECEIVED", now, now});
+            if (open) {
+                openOrders.putIfAbsent(rank, id);
+            }
+            if (rows.size() == BATCH_SIZE) {
+                insertOrders(rows);
+            }
+        }
+        insertOrders(rows);
+        return openOrders;
+    }
+
+    private void insertOrders(List<Object[]> rows) {
+        insert("INSERT INTO orders (id, inventory_id, quantity, delivery_date, status, created_at, updated_at) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    private void seedPrescriptions(Random random, ZipfSampler popularity, Map<Integer, Long> openOrders) {
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 0; i < prescriptions; i++) {
+            int rank = popularity.next();
+            String status = prescriptionStatus(random);
+            Long orderId = null;
+            if (status.equals("AWAITING_SHIPMENT")) {
+                orderId = openOrders.get(rank);
+                if (orderId == null) {
+                    status = "OUT_OF_STOCK";
+                }
+            }
+            rows.add(new Object[]{i + 1L, "LT-PID-" + random.nextInt(Math.max(1, prescriptions / 4)), rank + 1L,
+                    "LT-RX-" + (i + 1), 10 * (1 + random.nextInt(9)), "Take as directed", status, orderId});
+            if (rows.size() == BATCH_SIZE) {
+                insertPrescriptions(rows);
+            }
+        }
+        insertPrescriptions(rows);
+    }
+
+    private void insertPrescriptions(List<Object[]> rows) {
+        insert("INSERT INTO prescription " +
+                "(id, patient_id, medicine_id, prescription_number, quantity, instructions, status, order_id) " +
+                "VALUES (?, ?, ?, ?, ?, ?, ?, ?)", rows);
+    }
+
+    // 80% historic, the rest pending in some form
+    private static String prescriptionStatus(Random random) {
+        int roll = random.nextInt(100);
+        if (roll < 50) {
+            return "PICKED_UP";
+        } else if (roll < 80) {
+            return "FILLED";
+        } else if (roll < 88) {
+            return "NEW";
+        } else if (roll < 92) {
+            return "OUT_OF_STOCK";
+        } else if (roll < 95) {
+            return "STOCK_RECEIVED";
+        } else if (roll < 98) {
+            return "AWAITING_SHIPMENT";
+        }
+        return "CANCELLED";
+    }
+
+    // Same totals as db/postgres/medicine-demand.sql, written without FILTER so it also runs on H2
+    private void seedDemand() {
+        jdbcTemplate.update("INSERT INTO medicine_demand " +
+                "(medicine_id, new_quantity, out_of_stock_quantity, stock_received_quantity, awaiting_shipment_quantity) " +
+                "SELECT m.id, " +
+                "COALESCE(SUM(CASE WHEN p.status = 'NEW' THEN p.quantity END), 0), " +
+                "COALESCE(SUM(CASE WHEN p.status = 'OUT_OF_STOCK' THEN p.quantity END), 0), " +
+                "COALESCE(SUM(CASE WHEN p.status = 'STOCK_RECEIVED' THEN p.quantity END), 0), " +
+                "COALESCE(SUM(CASE WHEN p.status = 'AWAITING_SHIPMENT' THEN p.quantity END), 0) " +
+                "FROM medicine m LEFT JOIN prescription p ON p.medicine_id = m.id GROUP BY m.id");
+    }
+
+    private void restartSequence(String sequence, int rows) {
+        jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " RESTART WITH " + (rows + SEQUENCE_GAP));
+    }
+
+    private void insert(String sql, List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows);
+            rows.clear();
+        }
+    }
+
+    // Medicine codes used by the generated data, also what the load driver sends in new prescriptions
+    public static String code(int rank) {
+        return String.format("LT-%06d", rank);
+    }
+}
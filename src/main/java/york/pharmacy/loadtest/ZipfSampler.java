@@ -0,0 +1,34 @@
+package york.pharmacy.loadtest;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Picks ranks 0..n-1 with probability proportional to 1 / (rank + 1)^exponent, so a handful of
+// "hot" ranks take most of the draws. Exponent 0 is uniform; around 1 matches typical SKU demand
+public class ZipfSampler {
+
+    private final double[] cumulative;
+    private final Random random;
+
+    public ZipfSampler(int n, double exponent, Random random) {
+        if (n <= 0) {
+            throw new IllegalArgumentException("Zipf sampler needs at least one rank");
+        }
+        this.random = random;
+        this.cumulative = new double[n];
+        double total = 0;
+        for (int rank = 0; rank < n; rank++) {
+            total += 1.0 / Math.pow(rank + 1, exponent);
+            cumulative[rank] = total;
+        }
+        for (int rank = 0; rank < n; rank++) {
+            cumulative[rank] /= total;
+        }
+    }
+
+    public int next() {
+        int index = Arrays.binarySearch(cumulative, random.nextDouble());
+        int rank = index >= 0 ? index : -index - 1;
+        return Math.min(rank, cumulative.length - 1);
+    }
+}
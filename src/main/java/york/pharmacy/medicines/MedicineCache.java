@@ -0,0 +1,150 @@
+package york.pharmacy.medicines;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Bounded, least-recently-used cache of the medicine catalog, looked up by code and by id.
+ * Prescription ingest resolves a medicine code for every event, and the catalog rarely changes,
+ * so lookups are served from memory and MedicineService invalidates entries when medicines change.
+ * Entries are stored as copies and handed out as copies, so callers can't modify the cached values.
+ */
+@Component
+public class MedicineCache {
+
+    private final int maxSize;
+    private final Map<String, Medicine> byCode;
+    private final Map<Long, Medicine> byId;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    // Bumped on every invalidation so a load that raced with a change isn't cached
+    private long generation;
+
+    public MedicineCache(@Value("${pharmacy.medicine-cache.max-size:1000}") int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Medicine cache size must be at least 1");
+        }
+        this.maxSize = maxSize;
+        // Access-ordered maps evict the least recently used entry; both maps evict the same medicine
+        this.byCode = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Medicine> eldest) {
+                if (size() > MedicineCache.this.maxSize) {
+                    MedicineCache.this.byId.remove(eldest.getValue().getId());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.byId = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Medicine> eldest) {
+                if (size() > MedicineCache.this.maxSize) {
+                    MedicineCache.this.byCode.remove(eldest.getValue().getCode());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    // Returns the medicine with this code, calling the loader (and caching its result) on a miss.
+    // The loader returns null when there is no such medicine; misses for unknown codes aren't cached
+    public Optional<Medicine> getByCode(String code, Function<String, Medicine> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            Medicine cached = byCode.get(code);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Optional.of(copy(cached));
+            }
+            loadGeneration = generation;
+        }
+        misses.incrementAndGet();
+        // Load outside the lock so a slow query doesn't block other lookups
+        Medicine loaded = loader.apply(code);
+        if (loaded == null) {
+            return Optional.empty();
+        }
+        put(loaded, loadGeneration);
+        return Optional.of(loaded);
+    }
+
+    // Returns the medicine with this id, calling the loader (and caching its result) on a miss
+    public Optional<Medicine> getById(Long id, Function<Long, Optional<Medicine>> loader) {
+        long loadGeneration;
+        synchronized (this) {
+            Medicine cached = byId.get(id);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return Optional.of(copy(cached));
+            }
+            loadGeneration = generation;
+        }
+        misses.incrementAndGet();
+        Optional<Medicine> loaded = loader.apply(id);
+        loaded.ifPresent(medicine -> put(medicine, loadGeneration));
+        return loaded;
+    }
+
+    // Drops the medicine with this id, along with the code it was cached under
+    public synchronized void invalidateId(Long id) {
+        generation++;
+        Medicine removed = byId.remove(id);
+        if (removed != null) {
+            byCode.remove(removed.getCode());
+        }
+    }
+
+    // Drops the medicine with this code, along with its id
+    public synchronized void invalidateCode(String code) {
+        generation++;
+        Medicine removed = byCode.remove(code);
+        if (removed != null) {
+            byId.remove(removed.getId());
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        generation++;
+        byCode.clear();
+        byId.clear();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public synchronized int size() {
+        return byId.size();
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    private synchronized void put(Medicine medicine, long loadGeneration) {
+        if (generation != loadGeneration || medicine.getId() == null) {
+            return;
+        }
+        Medicine snapshot = copy(medicine);
+        byCode.put(snapshot.getCode(), snapshot);
+        byId.put(snapshot.getId(), snapshot);
+    }
+
+    private static Medicine copy(Medicine medicine) {
+        return new Medicine(medicine.getId(), medicine.getName(), medicine.getCode(),
+                medicine.getCreatedAt(), medicine.getUpdatedAt());
+    }
+}
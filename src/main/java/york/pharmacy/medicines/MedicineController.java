@@ -5,6 +5,7 @@ import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import jakarta.validation.Valid;
+import york.pharmacy.medicines.dto.MedicineCacheStats;
 import york.pharmacy.medicines.dto.MedicineRequest;
 import york.pharmacy.medicines.dto.MedicineResponse;
 
@@ -38,6 +39,12 @@ public class MedicineController {
         return new ResponseEntity<>(medicines, HttpStatus.OK);
     }
 
+    // Get the medicine catalog cache counters
+    @GetMapping("/cache")
+    public ResponseEntity<MedicineCacheStats> getCacheStats() {
+        return new ResponseEntity<>(medicineService.getCacheStats(), HttpStatus.OK);
+    }
+
     // Get a medicine by its ID
     @GetMapping("/{id}")
     public ResponseEntity<MedicineResponse> getMedicineById(@PathVariable Long id) {
@@ -2,6 +2,7 @@ package york.pharmacy.medicines;
 
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import york.pharmacy.medicines.dto.MedicineCacheStats;
 import york.pharmacy.medicines.dto.MedicineRequest;
 import york.pharmacy.medicines.dto.MedicineResponse;
 import york.pharmacy.exceptions.ResourceNotFoundException;
@@ -15,11 +16,13 @@ import java.util.stream.Collectors;
 public class MedicineService {
 
     private final MedicineRepository medicineRepository;
+    private final MedicineCache medicineCache;
 
     // Create a single medicine
     public MedicineResponse createMedicine(MedicineRequest medicineRequest) {
         Medicine medicine = MedicineMapper.toEntity(medicineRequest);
         Medicine savedMedicine = medicineRepository.save(medicine);
+        medicineCache.invalidateCode(savedMedicine.getCode());
         return MedicineMapper.toResponse(savedMedicine);
     }
 
@@ -29,6 +32,7 @@ public class MedicineService {
                 .map(MedicineMapper::toEntity)
                 .collect(Collectors.toList());
         List<Medicine> savedMedicines = medicineRepository.saveAll(medicines);
+        savedMedicines.forEach(saved -> medicineCache.invalidateCode(saved.getCode()));
         return savedMedicines.stream()
                 .map(MedicineMapper::toResponse)
                 .collect(Collectors.toList());
@@ -57,6 +61,9 @@ public class MedicineService {
         medicine.setName(medicineRequest.getName());
         medicine.setCode(medicineRequest.getCode());
         Medicine updatedMedicine = medicineRepository.save(medicine);
+        // Drops the entry under the old code too, since it is cached alongside the id
+        medicineCache.invalidateId(id);
+        medicineCache.invalidateCode(updatedMedicine.getCode());
         return MedicineMapper.toResponse(updatedMedicine);
     }
 
@@ -66,6 +73,15 @@ public class MedicineService {
             throw new ResourceNotFoundException("Medicine with ID " + id + " not found");
         }
         medicineRepository.deleteById(id);
+        medicineCache.invalidateId(id);
+    }
+
+    // Hit/miss counters of the medicine catalog cache
+    public MedicineCacheStats getCacheStats() {
+        long hits = medicineCache.getHits();
+        long misses = medicineCache.getMisses();
+        double hitRatio = hits + misses == 0 ? 0.0 : (double) hits / (hits + misses);
+        return new MedicineCacheStats(hits, misses, hitRatio, medicineCache.size(), medicineCache.getMaxSize());
     }
 
 }
@@ -0,0 +1,16 @@
+package york.pharmacy.medicines.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class MedicineCacheStats {
+    private long hits;
+    private long misses;
+    private double hitRatio;
+    private int size;
+    private int maxSize;
+}
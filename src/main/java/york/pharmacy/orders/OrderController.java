@@ -1,12 +1,18 @@
 package york.pharmacy.orders;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import jakarta.validation.Valid;
 import york.pharmacy.orders.dto.OrderRequest;
 import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.orders.dto.OrderSummary;
+import york.pharmacy.orders.dto.ReceiveShipmentRequest;
+import york.pharmacy.utilities.NdjsonWriter;
 
 import java.util.List;
 
@@ -16,6 +22,7 @@ import java.util.List;
 public class OrderController {
 
     private final OrderService orderService;
+    private final ObjectMapper objectMapper;
 
     // Create a new order
     @PostMapping
@@ -38,6 +45,17 @@ public class OrderController {
         return new ResponseEntity<>(orders, HttpStatus.OK);
     }
 
+    // Export every order as NDJSON (one JSON object per line), streamed as it is read
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportOrders() {
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                orderService.exportOrders(writer::write);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     // Get an order by its ID
     @GetMapping("/{id}")
     public ResponseEntity<OrderResponse> getOrderById(@PathVariable Long id) {
@@ -59,6 +77,13 @@ public class OrderController {
         return new ResponseEntity<>(orderResponse, HttpStatus.OK);
     }
 
+    // Mark every order in a delivered shipment as "RECEIVED" in one call
+    @PutMapping("/received")
+    public ResponseEntity<List<OrderSummary>> receiveShipment(@Valid @RequestBody ReceiveShipmentRequest request) {
+        List<OrderSummary> orders = orderService.receiveShipment(request.getOrderIds());
+        return new ResponseEntity<>(orders, HttpStatus.OK);
+    }
+
     // Delete an order by its ID
     @DeleteMapping("/{id}")
     public ResponseEntity<Void> deleteOrder(@PathVariable Long id) {
@@ -0,0 +1,16 @@
+package york.pharmacy.orders;
+
+// Projection returned by OrderRepository.findReceiptsByIds - what receiving a shipment needs from
+// each order, without loading the order, inventory or medicine entities
+public interface OrderReceipt {
+
+    Long getOrderId();
+
+    Long getInventoryId();
+
+    Long getMedicineId();
+
+    Integer getQuantity();
+
+    OrderStatus getStatus();
+}
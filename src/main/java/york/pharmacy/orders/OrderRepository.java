@@ -1,19 +1,79 @@
 package york.pharmacy.orders;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+import york.pharmacy.orders.dto.OrderSummary;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface OrderRepository extends JpaRepository<Order, Long> {
+    int EXPORT_FETCH_SIZE = 500;
+
+    // Select list shared by the v2 (OrderSummary) reads
+    String SUMMARY_SELECT = "SELECT new york.pharmacy.orders.dto.OrderSummary(" +
+            "o.id, i.id, m.code, m.name, o.quantity, o.deliveryDate, o.status, o.createdAt, o.updatedAt) " +
+            "FROM Order o JOIN o.inventory i JOIN i.medicine m ";
+
+    // Order responses embed the inventory and its medicine - fetch both with the order
+    @Override
+    @EntityGraph(attributePaths = {"inventory", "inventory.medicine"})
+    List<Order> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = {"inventory", "inventory.medicine"})
+    Optional<Order> findById(Long id);
+
     @Query("SELECT o FROM Order o WHERE o.status = 'ORDERED' AND o.deliveryDate > :currentDate AND o.inventory.id = :inventoryId ORDER BY o.deliveryDate ASC LIMIT 1")
     Optional<Order> findFirstOrderByInventoryIdAndStatusOrderedAndFutureDeliveryDate(
             @Param("currentDate") LocalDate currentDate,
             @Param("inventoryId") Long medicineId);
 
+    // Full history for the NDJSON export, read through a database cursor with inventory and medicine
+    // fetched in the same row. Must be consumed inside a transaction and closed afterwards
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + OrderRepository.EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT o FROM Order o JOIN FETCH o.inventory i JOIN FETCH i.medicine ORDER BY o.id")
+    Stream<Order> streamAllForExport();
+
+    // Keyset page: the orders after afterId in id order, as many as the pageable's size
+    @Query(SUMMARY_SELECT + "WHERE o.id > :afterId ORDER BY o.id")
+    List<OrderSummary> findSummaryPageAfter(@Param("afterId") long afterId, Pageable pageable);
+
+    @Query(SUMMARY_SELECT + "WHERE o.id = :id")
+    Optional<OrderSummary> findSummaryById(@Param("id") Long id);
+
+    @Query(SUMMARY_SELECT + "WHERE o.id IN (:ids) ORDER BY o.id")
+    List<OrderSummary> findSummariesByIds(@Param("ids") Collection<Long> ids);
+
+    @Query("SELECT o.id AS orderId, i.id AS inventoryId, i.medicine.id AS medicineId, " +
+            "o.quantity AS quantity, o.status AS status " +
+            "FROM Order o JOIN o.inventory i WHERE o.id IN (:ids)")
+    List<OrderReceipt> findReceiptsByIds(@Param("ids") Collection<Long> ids);
+
+    // Marks a shipment's orders RECEIVED in one statement. Only ORDERED rows match, so a count below
+    // ids.size() means another request received some of them first. Bulk updates skip auditing,
+    // hence the explicit updatedAt
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Order o SET o.status = york.pharmacy.orders.OrderStatus.RECEIVED, o.updatedAt = :now " +
+            "WHERE o.id IN (:ids) AND o.status = 'ORDERED'")
+    int markReceived(@Param("ids") Collection<Long> ids, @Param("now") Instant now);
+
 }
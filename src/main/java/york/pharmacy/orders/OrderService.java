@@ -1,52 +1,80 @@
 package york.pharmacy.orders;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import york.pharmacy.inventory.Inventory;
 import york.pharmacy.inventory.InventoryService;
 import york.pharmacy.orders.dto.OrderRequest;
 import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.orders.dto.OrderSummary;
+import york.pharmacy.orders.dto.OrderSummaryPage;
 import york.pharmacy.exceptions.ResourceNotFoundException;
+import york.pharmacy.utilities.KeysetCursor;
+import york.pharmacy.utilities.OptimisticRetry;
 import york.pharmacy.utilities.ServiceUtility;
 
+import java.time.Instant;
 import java.time.LocalDate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Timed("pharmacy.service")
 @Service
 @RequiredArgsConstructor
 public class OrderService {
 
+    public static final int MAX_SHIPMENT_ORDERS = 1000;
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+
     private final OrderRepository orderRepository;
     private final ServiceUtility serviceUtility;
+    private final EntityManager entityManager;
+    private final OptimisticRetry optimisticRetry;
 
     // Create a single order
-    @Transactional
+    // Retried as a whole when a prescription it back-orders changes underneath it
+    @Transactional(Transactional.TxType.SUPPORTS)
     public OrderResponse createOrder(OrderRequest orderRequest) {
-        Inventory inventory = serviceUtility.fetchInventoryById(orderRequest.getInventoryId());
+        return optimisticRetry.execute("order.create", () -> {
+            Inventory inventory = serviceUtility.fetchInventoryById(orderRequest.getInventoryId());
 
-        Order order = OrderMapper.toEntity(orderRequest, inventory);
-        Order savedOrder = orderRepository.save(order);
+            Order order = OrderMapper.toEntity(orderRequest, inventory);
+            Order savedOrder = orderRepository.save(order);
 
-        serviceUtility.updateAwaitingShipmentStatus(savedOrder);
+            serviceUtility.updateAwaitingShipmentStatus(List.of(savedOrder));
 
-        return OrderMapper.toResponse(savedOrder);
+            return OrderMapper.toResponse(savedOrder);
+        });
     }
 
     // Create a batch of orders
-    @Transactional
+    @Transactional(Transactional.TxType.SUPPORTS)
     public List<OrderResponse> batchCreateOrders(List<OrderRequest> orderRequests) {
-        List<Order> orders = orderRequests.stream().map(request -> {
-            Inventory inventory = serviceUtility.fetchInventoryById(request.getInventoryId());
-            return OrderMapper.toEntity(request, inventory);
-        }).collect(Collectors.toList());
-        List<Order> savedOrders = orderRepository.saveAll(orders);
-
-        savedOrders.forEach(serviceUtility::updateAwaitingShipmentStatus);
-
-        return savedOrders.stream().map(OrderMapper::toResponse).collect(Collectors.toList());
+        return optimisticRetry.execute("order.batch-create", () -> {
+            List<Order> orders = orderRequests.stream().map(request -> {
+                Inventory inventory = serviceUtility.fetchInventoryById(request.getInventoryId());
+                return OrderMapper.toEntity(request, inventory);
+            }).collect(Collectors.toList());
+            List<Order> savedOrders = orderRepository.saveAll(orders);
+
+            // All the orders' back-orders share one demand update and one batch of events
+            serviceUtility.updateAwaitingShipmentStatus(savedOrders);
+
+            return savedOrders.stream().map(OrderMapper::toResponse).collect(Collectors.toList());
+        });
     }
 
     // Get all orders
@@ -57,6 +85,36 @@ public class OrderService {
                 .collect(Collectors.toList());
     }
 
+    // Get a keyset page of v2 order summaries (read straight from the query, no entities loaded)
+    public OrderSummaryPage getOrderSummaryPage(String cursor, Integer limit) {
+        int pageSize = KeysetCursor.pageSize(limit, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        long afterId = KeysetCursor.decode(cursor);
+
+        // Fetch one extra row to know whether there is a next page
+        List<OrderSummary> rows = orderRepository.findSummaryPageAfter(afterId, PageRequest.of(0, pageSize + 1));
+        boolean hasNext = rows.size() > pageSize;
+        List<OrderSummary> page = hasNext ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = hasNext ? KeysetCursor.encode(page.get(page.size() - 1).getId()) : null;
+        return new OrderSummaryPage(page, nextCursor);
+    }
+
+    // Stream every order to the sink in id order without holding them all in memory.
+    // The persistence context is cleared every fetch-size rows so finished entities can be collected
+    @Transactional
+    public long exportOrders(Consumer<OrderResponse> sink) {
+        long count = 0;
+        try (Stream<Order> orders = orderRepository.streamAllForExport()) {
+            for (Order order : (Iterable<Order>) orders::iterator) {
+                sink.accept(OrderMapper.toResponse(order));
+                if (++count % OrderRepository.EXPORT_FETCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        return count;
+    }
+
     // Get an order by ID
     public OrderResponse getOrderById(Long id) {
         Order order = orderRepository.findById(id)
@@ -64,6 +122,12 @@ public class OrderService {
         return OrderMapper.toResponse(order);
     }
 
+    // Get an order summary by ID (v2)
+    public OrderSummary getOrderSummaryById(Long id) {
+        return orderRepository.findSummaryById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Order with ID " + id + " not found"));
+    }
+
     // Update an order by ID
     @Transactional
     public OrderResponse updateOrder(Long id, OrderRequest orderRequest) {
@@ -79,7 +143,12 @@ public class OrderService {
     }
 
     // Update Order to Received status
+    // Retried as a whole when one of the order's prescriptions changed underneath it (e.g. a concurrent cancel)
     public OrderResponse updateOrderStatusToReceived(Long id) {
+        return optimisticRetry.execute("order.receive", () -> receiveOrder(id));
+    }
+
+    private OrderResponse receiveOrder(Long id) {
         // Fetch the existing order
         Order order = orderRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Order with ID " + id + " not found"));
@@ -89,10 +158,62 @@ public class OrderService {
 
         serviceUtility.updateStockReceivedStatus(updatedOrder);
         serviceUtility.adjustStockQuantity(updatedOrder.getInventory().getId(), updatedOrder.getQuantity());
+        entityManager.flush();
 
         return OrderMapper.toResponse(updatedOrder);
     }
 
+    // Receive every order in a shipment in one transaction: one UPDATE marks them RECEIVED, stock goes
+    // up once per inventory row, and each restocked medicine gets one allocation pass over its queue.
+    // The whole shipment is rejected if any order is missing or no longer ORDERED
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public List<OrderSummary> receiveShipment(List<Long> orderIds) {
+        if (orderIds.size() > MAX_SHIPMENT_ORDERS) {
+            throw new IllegalArgumentException("At most " + MAX_SHIPMENT_ORDERS + " orders per shipment");
+        }
+        Set<Long> ids = new TreeSet<>(orderIds);
+        return optimisticRetry.execute("order.receive-shipment", () -> applyShipment(ids));
+    }
+
+    private List<OrderSummary> applyShipment(Set<Long> ids) {
+        List<OrderReceipt> receipts = orderRepository.findReceiptsByIds(ids);
+        if (receipts.size() < ids.size()) {
+            Set<Long> missing = new TreeSet<>(ids);
+            receipts.forEach(receipt -> missing.remove(receipt.getOrderId()));
+            throw new ResourceNotFoundException("Orders with IDs " + missing + " not found");
+        }
+        List<Long> notOrdered = receipts.stream()
+                .filter(receipt -> receipt.getStatus() != OrderStatus.ORDERED)
+                .map(OrderReceipt::getOrderId)
+                .sorted()
+                .toList();
+        if (!notOrdered.isEmpty()) {
+            throw new IllegalArgumentException("Orders " + notOrdered + " are not awaiting delivery");
+        }
+
+        // Checked above, so a shortfall here is a concurrent receive - retried, then rejected by the check
+        if (orderRepository.markReceived(ids, Instant.now()) != ids.size()) {
+            throw new OptimisticLockingFailureException("Orders in the shipment were received concurrently");
+        }
+        serviceUtility.updateStockReceivedStatusForOrders(ids);
+
+        Map<Long, Integer> quantityByInventoryId = new HashMap<>();
+        Set<Long> medicineIds = new TreeSet<>();
+        for (OrderReceipt receipt : receipts) {
+            quantityByInventoryId.merge(receipt.getInventoryId(), receipt.getQuantity(), Integer::sum);
+            medicineIds.add(receipt.getMedicineId());
+        }
+        serviceUtility.incrementStockForReceipts(quantityByInventoryId);
+
+        Map<Long, Integer> stockByMedicineId = serviceUtility.getStockByMedicineIds(medicineIds);
+        for (Long medicineId : medicineIds) {
+            serviceUtility.updatePrescriptionsWithNewStock(stockByMedicineId.get(medicineId), medicineId);
+        }
+        entityManager.flush();
+
+        return orderRepository.findSummariesByIds(ids);
+    }
+
     // Delete an order by ID
     @Transactional
     public void deleteOrder(Long id) {
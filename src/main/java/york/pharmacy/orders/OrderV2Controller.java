@@ -0,0 +1,31 @@
+package york.pharmacy.orders;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import york.pharmacy.orders.dto.OrderSummary;
+import york.pharmacy.orders.dto.OrderSummaryPage;
+
+// v2 read endpoints - flat OrderSummary rows instead of the nested Inventory and Medicine entities.
+// Lists are keyset pages only. Writes stay on /api/orders
+@RestController
+@RequestMapping("/api/v2/orders")
+@RequiredArgsConstructor
+public class OrderV2Controller {
+
+    private final OrderService orderService;
+
+    // Get a page of orders - follow nextCursor until it comes back null
+    @GetMapping("/page")
+    public ResponseEntity<OrderSummaryPage> getOrderPage(@RequestParam(required = false) String cursor,
+                                                         @RequestParam(required = false) Integer limit) {
+        return new ResponseEntity<>(orderService.getOrderSummaryPage(cursor, limit), HttpStatus.OK);
+    }
+
+    // Get an order by ID
+    @GetMapping("/{id}")
+    public ResponseEntity<OrderSummary> getOrderById(@PathVariable Long id) {
+        return new ResponseEntity<>(orderService.getOrderSummaryById(id), HttpStatus.OK);
+    }
+}
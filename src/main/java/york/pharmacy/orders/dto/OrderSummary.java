@@ -0,0 +1,26 @@
+package york.pharmacy.orders.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import york.pharmacy.orders.OrderStatus;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+// v2 order shape - the inventory id and the medicine's code and name instead of the nested
+// Inventory and Medicine entities. Built directly by OrderRepository's constructor-expression queries
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummary {
+    private Long id;
+    private Long inventoryId;
+    private String medicineCode;
+    private String medicineName;
+    private int quantity;
+    private LocalDate deliveryDate;
+    private OrderStatus status;
+    private Instant createdAt;
+    private Instant updatedAt;
+}
@@ -0,0 +1,18 @@
+package york.pharmacy.orders.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// v2 keyset page of orders, same paging as PrescriptionSummaryPage
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrderSummaryPage {
+
+    private List<OrderSummary> items;
+    // Pass back as ?cursor= to get the next page; null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,19 @@
+package york.pharmacy.orders.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// The orders delivered together in one shipment - received all at once or not at all
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReceiveShipmentRequest {
+
+    @NotEmpty
+    private List<@NotNull Long> orderIds;
+}
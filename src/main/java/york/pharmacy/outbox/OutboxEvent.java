@@ -0,0 +1,57 @@
+package york.pharmacy.outbox;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.CreatedDate;
+import org.springframework.data.jpa.domain.support.AuditingEntityListener;
+
+import java.time.Instant;
+
+// A Kafka message waiting to be published. Written in the same transaction as the change it announces
+// and published later by OutboxRelay, so rolled-back changes never produce events
+@Entity
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+@EntityListeners(AuditingEntityListener.class)
+@Table(name = "outbox_event", indexes = {
+        @Index(name = "idx_outbox_event_sent_at_id", columnList = "sent_at, id")
+})
+public class OutboxEvent {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", sequenceName = "outbox_event_seq", allocationSize = 50)
+    private Long id;
+
+    @Column(nullable = false)
+    private String topic;
+
+    // Kafka record key - the prescription number, so every update of a prescription lands on one partition
+    @Column(name = "message_key")
+    private String messageKey;
+
+    // JSON of the ProducerEvent
+    @Column(nullable = false, length = 4000)
+    private String payload;
+
+    @CreatedDate
+    @Column(updatable = false)
+    private Instant createdAt;
+
+    // Null until the broker has acknowledged the message
+    @Column(name = "sent_at")
+    private Instant sentAt;
+
+    // Set when the payload can't be read; such rows are no longer picked up by the relay
+    @Column(name = "failed_at")
+    private Instant failedAt;
+
+    public OutboxEvent(String topic, String messageKey, String payload) {
+        this.topic = topic;
+        this.messageKey = messageKey;
+        this.payload = payload;
+    }
+}
@@ -0,0 +1,44 @@
+package york.pharmacy.outbox;
+
+import jakarta.persistence.LockModeType;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.Instant;
+import java.util.List;
+
+@Repository
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    // Oldest unsent (and not failed) events, locked for the calling transaction (SELECT ... FOR UPDATE).
+    // Rows another relay instance has locked are waited on, not skipped: skipping them would let this relay
+    // publish a key's later events while the other one still holds its earlier ones
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT e FROM OutboxEvent e WHERE e.sentAt IS NULL AND e.failedAt IS NULL ORDER BY e.id")
+    List<OutboxEvent> findUnsentForUpdate(Pageable pageable);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.sentAt = :sentAt WHERE e.id IN (:ids)")
+    int markSent(@Param("ids") List<Long> ids, @Param("sentAt") Instant sentAt);
+
+    @Transactional
+    @Modifying
+    @Query("UPDATE OutboxEvent e SET e.failedAt = :failedAt WHERE e.id IN (:ids)")
+    int markFailed(@Param("ids") List<Long> ids, @Param("failedAt") Instant failedAt);
+
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM OutboxEvent e WHERE e.sentAt < :before")
+    int deleteSentBefore(@Param("before") Instant before);
+
+    long countBySentAtIsNullAndFailedAtIsNull();
+
+    long countByFailedAtIsNotNull();
+}
@@ -0,0 +1,35 @@
+package york.pharmacy.outbox;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// pharmacy.outbox.pending - outbox rows not yet acknowledged by Kafka. It should hover near zero;
+// a steady climb means the relay is down or can't keep up. pharmacy.outbox.failed - rows set aside because
+// their payload can't be read; anything above zero needs a look. Refreshed with the other gauges
+@Component
+public class OutboxMetrics {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final AtomicLong pending = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public OutboxMetrics(OutboxEventRepository outboxEventRepository, MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        Gauge.builder("pharmacy.outbox.pending", pending, AtomicLong::get)
+                .description("Outbox events waiting to be published")
+                .register(meterRegistry);
+        Gauge.builder("pharmacy.outbox.failed", failed, AtomicLong::get)
+                .description("Outbox events that can't be published")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${pharmacy.metrics.refresh-interval-ms:30000}")
+    public void refresh() {
+        pending.set(outboxEventRepository.countBySentAtIsNullAndFailedAtIsNull());
+        failed.set(outboxEventRepository.countByFailedAtIsNotNull());
+    }
+}
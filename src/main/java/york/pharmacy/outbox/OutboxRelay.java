@@ -0,0 +1,159 @@
+package york.pharmacy.outbox;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import york.pharmacy.kafka.ProducerEvent;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Publishes outbox rows to Kafka in the background, oldest first, in batches of pharmacy.outbox.batch-size.
+ * A batch is sent without waiting per message (the producer groups them per linger.ms / batch.size),
+ * then every acknowledged row is marked sent with one UPDATE. Rows that fail stay unsent and are retried
+ * on the next run, so delivery is at-least-once. Once a send fails, the later rows of the batch with the
+ * same topic and key stay unsent as well, so the retry republishes them after it and their order holds.
+ * A row whose payload can't be read is marked failed and left out of later batches.
+ * Per-key order also relies on one relay publishing at a time: a relay waits for the rows another instance
+ * has locked instead of skipping past them. Disable with pharmacy.outbox.relay.enabled=false.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "pharmacy.outbox.relay.enabled", havingValue = "true", matchIfMissing = true)
+public class OutboxRelay {
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final KafkaTemplate<String, ProducerEvent> kafkaTemplate;
+    private final ObjectMapper objectMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${pharmacy.outbox.batch-size:500}")
+    private int batchSize = 500;
+
+    @Value("${pharmacy.outbox.send-timeout:30s}")
+    private Duration sendTimeout = Duration.ofSeconds(30);
+
+    @Value("${pharmacy.outbox.retention:7d}")
+    private Duration retention = Duration.ofDays(7);
+
+    // Keeps relaying while full batches come back, so a backlog drains without waiting for the next tick
+    @Scheduled(fixedDelayString = "${pharmacy.outbox.relay-interval-ms:200}")
+    public void relayPending() {
+        int relayed;
+        do {
+            relayed = relayBatch();
+        } while (relayed == batchSize);
+    }
+
+    // Publishes one batch in its own transaction and returns the number of events sent. The rows stay
+    // locked until the transaction ends, so a relay on another instance waits and then reads what is left
+    public int relayBatch() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        Integer sent = transactionTemplate.execute(status -> publishBatch());
+        sample.stop(meterRegistry.timer("pharmacy.outbox.relay.batch"));
+        return sent == null ? 0 : sent;
+    }
+
+    private int publishBatch() {
+        List<OutboxEvent> batch = outboxEventRepository.findUnsentForUpdate(PageRequest.of(0, batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+
+        // Send the whole batch before waiting on any acknowledgement
+        List<OutboxEvent> sending = new ArrayList<>(batch.size());
+        List<String> keys = new ArrayList<>(batch.size());
+        List<CompletableFuture<?>> sends = new ArrayList<>(batch.size());
+        List<Long> unreadableIds = new ArrayList<>();
+        for (OutboxEvent event : batch) {
+            ProducerEvent producerEvent = toProducerEvent(event);
+            if (producerEvent != null) {
+                String key = messageKey(event, producerEvent);
+                sending.add(event);
+                keys.add(event.getTopic() + "/" + key);
+                sends.add(kafkaTemplate.send(event.getTopic(), key, producerEvent));
+            } else {
+                unreadableIds.add(event.getId());
+            }
+        }
+        // Retrying can't fix these, and left pending they would fill every batch ahead of the readable rows
+        if (!unreadableIds.isEmpty()) {
+            outboxEventRepository.markFailed(unreadableIds, Instant.now());
+        }
+
+        List<Long> sentIds = new ArrayList<>(sending.size());
+        Set<String> failedKeys = new HashSet<>();
+        long deadline = System.nanoTime() + sendTimeout.toNanos();
+        for (int i = 0; i < sending.size(); i++) {
+            // Left unsent even if acknowledged: marking it sent would let the retry of the earlier row overtake it
+            if (failedKeys.contains(keys.get(i))) {
+                continue;
+            }
+            try {
+                sends.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                sentIds.add(sending.get(i).getId());
+                published(sending.get(i), "success");
+            } catch (ExecutionException | TimeoutException ex) {
+                failedKeys.add(keys.get(i));
+                published(sending.get(i), "failure");
+                log.error("Outbox event {} not published, will retry it and the later events for its key",
+                        sending.get(i).getId(), ex);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+
+        if (!sentIds.isEmpty()) {
+            outboxEventRepository.markSent(sentIds, Instant.now());
+        }
+        return sentIds.size();
+    }
+
+    // pharmacy.kafka.produce{topic, outcome} - broker acknowledgements (or failures) per outbox event
+    private void published(OutboxEvent event, String outcome) {
+        meterRegistry.counter("pharmacy.kafka.produce", "topic", event.getTopic(), "outcome", outcome).increment();
+    }
+
+    // Sent rows are only kept for troubleshooting
+    @Scheduled(fixedDelayString = "${pharmacy.outbox.purge-interval-ms:3600000}")
+    public int purgeSent() {
+        return outboxEventRepository.deleteSentBefore(Instant.now().minus(retention));
+    }
+
+    // Rows queued before the key column existed are keyed from their payload, like new ones
+    private static String messageKey(OutboxEvent event, ProducerEvent producerEvent) {
+        return event.getMessageKey() != null ? event.getMessageKey() : producerEvent.getPrescriptionId();
+    }
+
+    // A payload that can't be read is logged and marked failed by the caller instead of blocking the rest of the batch
+    private ProducerEvent toProducerEvent(OutboxEvent event) {
+        try {
+            return objectMapper.readValue(event.getPayload(), ProducerEvent.class);
+        } catch (JsonProcessingException ex) {
+            log.error("Outbox event {} has an unreadable payload, marking it failed", event.getId(), ex);
+            return null;
+        }
+    }
+}
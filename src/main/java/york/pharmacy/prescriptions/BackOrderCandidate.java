@@ -0,0 +1,14 @@
+package york.pharmacy.prescriptions;
+
+// Projection returned by PrescriptionRepository.findBackOrderCandidates - a pending prescription
+// that a new order for its medicine will back-order (no entity hydration)
+public interface BackOrderCandidate {
+
+    Long getId();
+
+    String getPrescriptionNumber();
+
+    Integer getQuantity();
+
+    PrescriptionStatus getStatus();
+}
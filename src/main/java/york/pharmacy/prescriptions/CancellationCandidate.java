@@ -0,0 +1,14 @@
+package york.pharmacy.prescriptions;
+
+// Projection returned by PrescriptionRepository.findCancellationCandidates - a prescription a CANCELLED
+// event addresses, with the demand it holds (no entity hydration)
+public interface CancellationCandidate {
+
+    String getPrescriptionNumber();
+
+    Long getMedicineId();
+
+    PrescriptionStatus getStatus();
+
+    Integer getQuantity();
+}
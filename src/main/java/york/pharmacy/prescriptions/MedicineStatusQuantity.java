@@ -0,0 +1,11 @@
+package york.pharmacy.prescriptions;
+
+// Projection - total pills per medicine and status (see PrescriptionRepository.sumQuantityByMedicineAndStatus)
+public interface MedicineStatusQuantity {
+
+    Long getMedicineId();
+
+    PrescriptionStatus getStatus();
+
+    Long getQuantity();
+}
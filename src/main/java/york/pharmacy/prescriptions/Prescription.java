@@ -5,6 +5,7 @@ import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 import york.pharmacy.medicines.Medicine;
 import york.pharmacy.orders.Order;
 
@@ -12,9 +13,17 @@ import york.pharmacy.orders.Order;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@Table(indexes = {
+        // Keyset pagination filters (see PrescriptionPageRepository)
+        @Index(name = "idx_prescription_status_id", columnList = "status, id"),
+        @Index(name = "idx_prescription_patient_id", columnList = "patient_id, id"),
+        @Index(name = "idx_prescription_medicine_id", columnList = "medicine_id, id")
+})
 public class Prescription {
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    // Pooled sequence: one nextval per 50 ids, and unlike IDENTITY it lets Hibernate batch inserts
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "prescription_seq")
+    @SequenceGenerator(name = "prescription_seq", sequenceName = "prescription_seq", allocationSize = 50)
     private Long id;
 
     @NotNull
@@ -22,7 +31,8 @@ public class Prescription {
     private String patientId;
 
 
-    @ManyToOne
+    // Lazy like the other associations - each read path fetches what it needs (see PrescriptionRepository)
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "medicine_id")
     private Medicine medicine;
 
@@ -40,7 +50,13 @@ public class Prescription {
     @Enumerated(EnumType.STRING)
     private PrescriptionStatus status;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "order_id", nullable = true)
     private Order order;
+
+    // Optimistic lock - a fill racing another fill or a Kafka status change fails instead of both passing the check
+    @Version
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
 }
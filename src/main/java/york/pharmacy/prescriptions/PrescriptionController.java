@@ -1,14 +1,21 @@
 package york.pharmacy.prescriptions;
 
 import jakarta.validation.Valid;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import york.pharmacy.prescriptions.dto.PrescriptionBulkStatusRequest;
+import york.pharmacy.prescriptions.dto.PrescriptionBulkStatusResponse;
+import york.pharmacy.prescriptions.dto.PrescriptionPageResponse;
 import york.pharmacy.prescriptions.dto.PrescriptionRequest;
 import york.pharmacy.prescriptions.dto.PrescriptionResponse;
 import york.pharmacy.prescriptions.dto.PrescriptionStatusRequest;
 
+import york.pharmacy.utilities.NdjsonWriter;
 import york.pharmacy.utilities.ServiceUtility;
 
 import java.util.List;
@@ -20,6 +27,7 @@ public class PrescriptionController {
 
     private final PrescriptionService prescriptionService;
     private final ServiceUtility serviceUtility;
+    private final ObjectMapper objectMapper;
 
     @PostMapping
     public ResponseEntity<PrescriptionResponse> createPrescription(@Valid @RequestBody PrescriptionRequest prescriptionRequest) {
@@ -28,26 +36,58 @@ public class PrescriptionController {
         return new ResponseEntity<>(prescriptionResponse, HttpStatus.CREATED);
     }
 
-    // get all prescriptions
+    // get all prescriptions - unbounded, kept for existing clients; use /page instead
+    @Deprecated
     @GetMapping
     public ResponseEntity<List<PrescriptionResponse>> getAllPrescriptions() {
         List<PrescriptionResponse> prescriptionResponses = prescriptionService.getAllPrescriptions();
         return new ResponseEntity<>(prescriptionResponses, HttpStatus.OK);
     }
 
-    // get all active prescriptions
+    // get all active prescriptions - unbounded, kept for existing clients; use /page with a status filter instead
+    @Deprecated
     @GetMapping("/active")
     public ResponseEntity<List<PrescriptionResponse>> getAllActivePrescriptions() {
         List<PrescriptionResponse> prescriptionResponses = prescriptionService.getActivePrescriptions();
         return new ResponseEntity<>(prescriptionResponses, HttpStatus.OK);
     }
 
+    // get prescriptions one page at a time; follow nextCursor until it comes back null
+    @GetMapping("/page")
+    public ResponseEntity<PrescriptionPageResponse> getPrescriptionPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) PrescriptionStatus status,
+            @RequestParam(required = false) String patientId,
+            @RequestParam(required = false) String medicineCode) {
+        PrescriptionPageResponse page = prescriptionService.getPrescriptionPage(cursor, limit, status, patientId, medicineCode);
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    // export every prescription as NDJSON (one JSON object per line), streamed as it is read
+    @GetMapping(value = "/export", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> exportPrescriptions() {
+        StreamingResponseBody body = out -> {
+            try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+                prescriptionService.exportPrescriptions(writer::write);
+            }
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
     @GetMapping("/{id}")
     public ResponseEntity<PrescriptionResponse> getPrescriptionById(@PathVariable Long id) {
         PrescriptionResponse prescriptionResponse = prescriptionService.getPrescriptionById(id);
         return new ResponseEntity<>(prescriptionResponse, HttpStatus.OK);
     }
 
+    // fill / hand out many prescriptions in one request; each entry gets its own result
+    @PutMapping("/status")
+    public ResponseEntity<PrescriptionBulkStatusResponse> updatePrescriptionStatuses(@Valid @RequestBody PrescriptionBulkStatusRequest request) {
+        PrescriptionBulkStatusResponse response = prescriptionService.updatePrescriptionStatuses(request.getTransitions());
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
     @PutMapping("/{id}")
     public ResponseEntity<PrescriptionResponse> updatePrescription(@PathVariable Long id, @Valid @RequestBody PrescriptionStatusRequest prescriptionStatusRequest) {
         PrescriptionResponse prescriptionResponse = prescriptionService.updatePrescription(id, prescriptionStatusRequest);
@@ -0,0 +1,18 @@
+package york.pharmacy.prescriptions;
+
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
+
+import java.util.List;
+
+// Keyset pages of prescriptions, mixed into PrescriptionRepository. Only the filters that are set end up in
+// the query, so each combination gets its own plan and seeks the matching (status|patient_id|medicine_id, id) index
+public interface PrescriptionPageRepository {
+
+    // Up to limit prescriptions after the cursor id, in id order, with their medicine fetched.
+    // Null filters are left out; pass limit = page size + 1 to detect a next page
+    List<Prescription> findPageAfter(long afterId, PrescriptionStatus status, String patientId, Long medicineId, int limit);
+
+    // Same page as findPageAfter, as summaries
+    List<PrescriptionSummary> findSummaryPageAfter(long afterId, PrescriptionStatus status, String patientId,
+                                                   Long medicineId, int limit);
+}
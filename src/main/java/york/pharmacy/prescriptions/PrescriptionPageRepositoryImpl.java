@@ -0,0 +1,66 @@
+package york.pharmacy.prescriptions;
+
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
+
+import java.util.ArrayList;
+import java.util.List;
+
+class PrescriptionPageRepositoryImpl implements PrescriptionPageRepository {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    public List<Prescription> findPageAfter(long afterId, PrescriptionStatus status, String patientId, Long medicineId,
+                                            int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<Prescription> query = cb.createQuery(Prescription.class);
+        Root<Prescription> p = query.from(Prescription.class);
+        p.fetch("medicine");
+        query.select(p)
+                .where(filters(cb, p, afterId, status, patientId, medicineId))
+                .orderBy(cb.asc(p.get("id")));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    @Override
+    public List<PrescriptionSummary> findSummaryPageAfter(long afterId, PrescriptionStatus status, String patientId,
+                                                          Long medicineId, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<PrescriptionSummary> query = cb.createQuery(PrescriptionSummary.class);
+        Root<Prescription> p = query.from(Prescription.class);
+        Join<Prescription, Medicine> m = p.join("medicine");
+        // Same select list as PrescriptionRepository.SUMMARY_SELECT
+        query.select(cb.construct(PrescriptionSummary.class,
+                        p.get("id"), p.get("prescriptionNumber"), p.get("patientId"), m.get("code"), m.get("name"),
+                        p.get("quantity"), p.get("instructions"), p.get("status")))
+                .where(filters(cb, p, afterId, status, patientId, medicineId))
+                .orderBy(cb.asc(p.get("id")));
+        return entityManager.createQuery(query).setMaxResults(limit).getResultList();
+    }
+
+    // The medicine filter is on the foreign key column, not on a joined medicine column
+    private static Predicate[] filters(CriteriaBuilder cb, Root<Prescription> p, long afterId, PrescriptionStatus status,
+                                       String patientId, Long medicineId) {
+        List<Predicate> predicates = new ArrayList<>(4);
+        predicates.add(cb.gt(p.get("id"), afterId));
+        if (status != null) {
+            predicates.add(cb.equal(p.get("status"), status));
+        }
+        if (patientId != null) {
+            predicates.add(cb.equal(p.get("patientId"), patientId));
+        }
+        if (medicineId != null) {
+            predicates.add(cb.equal(p.get("medicine").get("id"), medicineId));
+        }
+        return predicates.toArray(new Predicate[0]);
+    }
+}
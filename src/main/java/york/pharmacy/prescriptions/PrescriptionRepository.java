@@ -1,18 +1,44 @@
 package york.pharmacy.prescriptions;
 
+import jakarta.persistence.QueryHint;
 import jakarta.validation.constraints.NotNull;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 import york.pharmacy.orders.Order;
+import york.pharmacy.prescriptions.dto.PendingPrescription;
 import york.pharmacy.prescriptions.dto.PrescriptionResponse;
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
-public interface PrescriptionRepository extends JpaRepository<Prescription, Long> {
+public interface PrescriptionRepository extends JpaRepository<Prescription, Long>, PrescriptionPageRepository {
+    int EXPORT_FETCH_SIZE = 500;
+
+    // Select list shared by the v2 (PrescriptionSummary) reads
+    String SUMMARY_SELECT = "SELECT new york.pharmacy.prescriptions.dto.PrescriptionSummary(" +
+            "p.id, p.prescriptionNumber, p.patientId, m.code, m.name, p.quantity, p.instructions, p.status) " +
+            "FROM Prescription p JOIN p.medicine m ";
+
+    // List and detail reads return the medicine with every prescription, so it is fetched in the same select
+    @Override
+    @EntityGraph(attributePaths = "medicine")
+    List<Prescription> findAll();
+
+    @Override
+    @EntityGraph(attributePaths = "medicine")
+    Optional<Prescription> findById(Long id);
+
     List<Prescription> findByMedicineId(Long medicineId);
 
     @Query("SELECT COALESCE(SUM(p.quantity), 0) " +
@@ -21,12 +47,103 @@ public interface PrescriptionRepository extends JpaRepository<Prescription, Long
             "AND p.status IN (:statuses)")
     int findTotalQuantityByMedicineIdAndStatus(Long medicineId, List<PrescriptionStatus> statuses);
 
-    @Query("SELECT p FROM Prescription p WHERE p.status NOT IN (:excludedStatuses)")
+    @Query("SELECT p FROM Prescription p JOIN FETCH p.medicine WHERE p.status NOT IN (:excludedStatuses)")
     List<Prescription> findAllByStatusExcept(@Param("excludedStatuses") List<PrescriptionStatus> excludedStatuses);
 
     @Query("SELECT p FROM Prescription p WHERE p.medicine.id = :medicineId AND p.status IN (:statuses)")
     List<Prescription> findAllByMedicineIdAndStatus(Long medicineId, List<PrescriptionStatus> statuses);
 
+    // Pending prescriptions for a medicine in FIFO (id) order, read as lightweight rows for allocation
+    @Query("SELECT new york.pharmacy.prescriptions.dto.PendingPrescription(p.id, p.quantity, p.status) " +
+            "FROM Prescription p " +
+            "WHERE p.medicine.id = :medicineId AND p.status IN (:statuses) " +
+            "ORDER BY p.id")
+    List<PendingPrescription> findPendingByMedicineId(@Param("medicineId") Long medicineId,
+                                                      @Param("statuses") List<PrescriptionStatus> statuses);
+
+    // Prescriptions a new order for this medicine takes over, with the numbers their events are keyed by
+    @Query("SELECT p.id AS id, p.prescriptionNumber AS prescriptionNumber, p.quantity AS quantity, p.status AS status " +
+            "FROM Prescription p " +
+            "WHERE p.medicine.id = :medicineId AND p.status IN (:statuses) " +
+            "ORDER BY p.id")
+    List<BackOrderCandidate> findBackOrderCandidates(@Param("medicineId") Long medicineId,
+                                                     @Param("statuses") List<PrescriptionStatus> statuses);
+
+    // Links a group of prescriptions to an order as AWAITING_SHIPMENT. Only rows still in the from
+    // status match, so a count below ids.size() means some changed since they were read
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Prescription p SET p.order = :order, " +
+            "p.status = york.pharmacy.prescriptions.PrescriptionStatus.AWAITING_SHIPMENT, p.version = p.version + 1 " +
+            "WHERE p.id IN (:ids) AND p.status = :from")
+    int assignToOrder(@Param("ids") List<Long> ids, @Param("from") PrescriptionStatus from, @Param("order") Order order);
+
+    // Set-based status transition for a group of prescriptions. Like assignToOrder, only rows still in the
+    // from status match, so a count below ids.size() means some changed since they were read
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Prescription p SET p.status = :to, p.version = p.version + 1 WHERE p.id IN (:ids) AND p.status = :from")
+    int updateStatusByIds(@Param("ids") List<Long> ids, @Param("from") PrescriptionStatus from,
+                          @Param("to") PrescriptionStatus to);
+
+    // Full history for the NDJSON export, read through a database cursor rather than one big list.
+    // The medicine is fetched in the same row (the order isn't part of the response).
+    // Must be consumed inside a transaction and closed afterwards
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "" + PrescriptionRepository.EXPORT_FETCH_SIZE),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query("SELECT p FROM Prescription p JOIN FETCH p.medicine ORDER BY p.id")
+    Stream<Prescription> streamAllForExport();
+
+    // Total pills per medicine and status across all prescriptions (what medicine_demand should hold)
+    @Query("SELECT p.medicine.id AS medicineId, p.status AS status, SUM(p.quantity) AS quantity " +
+            "FROM Prescription p " +
+            "WHERE p.status IN (:statuses) " +
+            "GROUP BY p.medicine.id, p.status")
+    List<MedicineStatusQuantity> sumQuantityByMedicineAndStatus(@Param("statuses") List<PrescriptionStatus> statuses);
+
+    // One row per prescription number that exists, with its current status and quantity (before a bulk cancel)
+    @Query("SELECT p.prescriptionNumber AS prescriptionNumber, p.medicine.id AS medicineId, " +
+            "p.status AS status, p.quantity AS quantity " +
+            "FROM Prescription p " +
+            "WHERE p.prescriptionNumber IN (:numbers)")
+    List<CancellationCandidate> findCancellationCandidates(@Param("numbers") Collection<String> numbers);
+
+    // Same totals for the prescriptions in one status that are linked to these orders
+    @Query("SELECT p.medicine.id AS medicineId, p.status AS status, SUM(p.quantity) AS quantity " +
+            "FROM Prescription p " +
+            "WHERE p.order.id IN (:orderIds) AND p.status = :status " +
+            "GROUP BY p.medicine.id, p.status")
+    List<MedicineStatusQuantity> sumQuantityByOrderIdsAndStatus(@Param("orderIds") Collection<Long> orderIds,
+                                                                @Param("status") PrescriptionStatus status);
+
+    // Which of these prescription numbers are already stored (used to drop redelivered events)
+    @Query("SELECT p.prescriptionNumber FROM Prescription p WHERE p.prescriptionNumber IN (:numbers)")
+    List<String> findExistingPrescriptionNumbers(@Param("numbers") Collection<String> numbers);
+
+    // Set-based status transition addressed by prescription number (what Kafka events carry), only for the
+    // prescriptions still in the from status they were read in
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Prescription p SET p.status = :to, p.version = p.version + 1 " +
+            "WHERE p.prescriptionNumber IN (:numbers) AND p.status = :from")
+    int updateStatusByPrescriptionNumbers(@Param("numbers") Collection<String> numbers,
+                                          @Param("from") PrescriptionStatus from,
+                                          @Param("to") PrescriptionStatus to);
+
+    // Set-based status transition for the prescriptions linked to these orders that are still in the from status
+    @Transactional
+    @Modifying(flushAutomatically = true)
+    @Query("UPDATE Prescription p SET p.status = :to, p.version = p.version + 1 " +
+            "WHERE p.order.id IN (:orderIds) AND p.status = :from")
+    int updateStatusByOrderIds(@Param("orderIds") Collection<Long> orderIds,
+                               @Param("from") PrescriptionStatus from,
+                               @Param("to") PrescriptionStatus to);
+
+    @Query(SUMMARY_SELECT + "WHERE p.id = :id")
+    Optional<PrescriptionSummary> findSummaryById(@Param("id") Long id);
+
     List<Prescription> findAllByOrder(Order order);
 
     Optional<Prescription> findByPrescriptionNumber(String prescriptionNumber);
@@ -1,29 +1,53 @@
 package york.pharmacy.prescriptions;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
 import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
 import org.springframework.stereotype.Service;
+import york.pharmacy.demand.DemandChange;
 import york.pharmacy.exceptions.ResourceNotFoundException;
 import york.pharmacy.inventory.InventoryService;
 import york.pharmacy.medicines.Medicine;
 import york.pharmacy.medicines.MedicineService;
+import york.pharmacy.kafka.ProducerEvent;
 import york.pharmacy.orders.Order;
+import york.pharmacy.prescriptions.dto.PrescriptionBulkStatusResponse;
+import york.pharmacy.prescriptions.dto.PrescriptionPageResponse;
 import york.pharmacy.prescriptions.dto.PrescriptionRequest;
 import york.pharmacy.prescriptions.dto.PrescriptionResponse;
 import york.pharmacy.prescriptions.dto.PrescriptionStatusRequest;
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
+import york.pharmacy.prescriptions.dto.PrescriptionSummaryPage;
+import york.pharmacy.prescriptions.dto.PrescriptionTransition;
+import york.pharmacy.prescriptions.dto.PrescriptionTransitionResult;
+import york.pharmacy.utilities.KeysetCursor;
+import york.pharmacy.utilities.OptimisticRetry;
 import york.pharmacy.utilities.ServiceUtility;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+@Timed("pharmacy.service")
 @Service
 @Transactional
 @RequiredArgsConstructor
 public class PrescriptionService {
 
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int MAX_PAGE_SIZE = 500;
+    public static final int MAX_BULK_TRANSITIONS = 1000;
+
     private final PrescriptionRepository prescriptionRepository;
     private final ServiceUtility serviceUtility;
+    private final EntityManager entityManager;
+    private final OptimisticRetry optimisticRetry;
 
     // create a new prescription
     public PrescriptionResponse addPrescription(PrescriptionRequest prescriptionRequest) {
@@ -34,6 +58,7 @@ public class PrescriptionService {
 
         Long medicineId = medicine.getId();
         Long prescriptionId = prescription.getId();
+        serviceUtility.recordStatusChange(medicineId, null, PrescriptionStatus.NEW, savedPrescription.getQuantity());
         serviceUtility.checkAndUpdatePrescriptionStock(medicineId, prescriptionId);
 
         return PrescriptionMapper.toResponse(savedPrescription);
@@ -56,6 +81,77 @@ public class PrescriptionService {
                 .collect(Collectors.toList());
     }
 
+    // get one page of prescriptions (keyset pagination on id) with optional filters
+    public PrescriptionPageResponse getPrescriptionPage(String cursor, Integer limit, PrescriptionStatus status,
+                                                        String patientId, String medicineCode) {
+        int pageSize = KeysetCursor.pageSize(limit, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        long afterId = KeysetCursor.decode(cursor);
+        // The code is resolved to an id up front (usually from the catalog cache) so the page query filters
+        // on prescription.medicine_id directly. A code no medicine has matches nothing
+        Long medicineId = medicineIdFilter(medicineCode);
+        if (medicineCode != null && medicineId == null) {
+            return new PrescriptionPageResponse(List.of(), null);
+        }
+
+        // Fetch one extra row to know whether there is a next page
+        List<Prescription> rows = prescriptionRepository.findPageAfter(
+                afterId, status, patientId, medicineId, pageSize + 1);
+        boolean hasNext = rows.size() > pageSize;
+        List<Prescription> page = hasNext ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = hasNext ? KeysetCursor.encode(page.get(page.size() - 1).getId()) : null;
+        List<PrescriptionResponse> items = page.stream()
+                .map(PrescriptionMapper::toResponse)
+                .collect(Collectors.toList());
+        return new PrescriptionPageResponse(items, nextCursor);
+    }
+
+    // v2 reads - flat summaries straight from the query, no entities loaded
+    public PrescriptionSummary getPrescriptionSummaryById(Long id) {
+        return prescriptionRepository.findSummaryById(id)
+                .orElseThrow(() -> new ResourceNotFoundException("Prescription with id" + id + " not found"));
+    }
+
+    public PrescriptionSummaryPage getPrescriptionSummaryPage(String cursor, Integer limit, PrescriptionStatus status,
+                                                              String patientId, String medicineCode) {
+        int pageSize = KeysetCursor.pageSize(limit, DEFAULT_PAGE_SIZE, MAX_PAGE_SIZE);
+        long afterId = KeysetCursor.decode(cursor);
+        Long medicineId = medicineIdFilter(medicineCode);
+        if (medicineCode != null && medicineId == null) {
+            return new PrescriptionSummaryPage(List.of(), null);
+        }
+
+        List<PrescriptionSummary> rows = prescriptionRepository.findSummaryPageAfter(
+                afterId, status, patientId, medicineId, pageSize + 1);
+        boolean hasNext = rows.size() > pageSize;
+        List<PrescriptionSummary> page = hasNext ? rows.subList(0, pageSize) : rows;
+
+        String nextCursor = hasNext ? KeysetCursor.encode(page.get(page.size() - 1).getId()) : null;
+        return new PrescriptionSummaryPage(page, nextCursor);
+    }
+
+    private Long medicineIdFilter(String medicineCode) {
+        if (medicineCode == null) {
+            return null;
+        }
+        return serviceUtility.findMedicineByCode(medicineCode).map(Medicine::getId).orElse(null);
+    }
+
+    // stream every prescription to the sink in id order without holding them all in memory.
+    // The persistence context is cleared every fetch-size rows so finished entities can be collected
+    public long exportPrescriptions(Consumer<PrescriptionResponse> sink) {
+        long count = 0;
+        try (Stream<Prescription> prescriptions = prescriptionRepository.streamAllForExport()) {
+            for (Prescription prescription : (Iterable<Prescription>) prescriptions::iterator) {
+                sink.accept(PrescriptionMapper.toResponse(prescription));
+                if (++count % PrescriptionRepository.EXPORT_FETCH_SIZE == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+        return count;
+    }
+
     // get prescription by ID
     public PrescriptionResponse getPrescriptionById(Long id) {
         Prescription prescription = prescriptionRepository.findById(id)
@@ -64,35 +160,121 @@ public class PrescriptionService {
     }
 
     // update a prescription
-    // this needs to be modified.....
+    // Runs in its own transaction per attempt (see OptimisticRetry), so a conflicting fill is re-read and re-checked
+    @Transactional(Transactional.TxType.SUPPORTS)
     public PrescriptionResponse updatePrescription(Long id, PrescriptionStatusRequest prescriptionStatusRequest) {
+        return optimisticRetry.execute("prescription.update", () -> applyStatusUpdate(id, prescriptionStatusRequest));
+    }
+
+    private PrescriptionResponse applyStatusUpdate(Long id, PrescriptionStatusRequest prescriptionStatusRequest) {
         Prescription prescription = prescriptionRepository.findById(id)
                 .orElseThrow(() -> new ResourceNotFoundException("Prescription with id" + id + " not found") );
         PrescriptionStatus status = prescriptionStatusRequest.getStatus();
-        if (status == PrescriptionStatus.FILLED) {
-            if (prescription.getStatus() == PrescriptionStatus.NEW || prescription.getStatus() == PrescriptionStatus.STOCK_RECEIVED) {
-                // notify Inventory to update stock
+        if (status == PrescriptionStatus.FILLED || status == PrescriptionStatus.PICKED_UP) {
+            String error = transitionError(prescription.getStatus(), status);
+            if (error != null) {
+                throw new IllegalStateException(error);
+            }
+            if (status == PrescriptionStatus.FILLED) {
+                // notify Inventory to update stock (atomic conditional update, no inventory load)
                 Long medicineId = prescription.getMedicine().getId();
-                int negativeCount = -prescription.getQuantity();
-                serviceUtility.adjustStockQuantity(medicineId, negativeCount);
-                prescription.setStatus(status);
-                serviceUtility.publishPickedUpOrFilled("FILLED", prescription.getPrescriptionNumber());
+                serviceUtility.decrementStockForFill(medicineId, prescription.getQuantity());
+                serviceUtility.recordStatusChange(medicineId, prescription.getStatus(), status, prescription.getQuantity());
+            }
+            prescription.setStatus(status);
+            serviceUtility.publishPickedUpOrFilled(status.name(), prescription.getPrescriptionNumber());
+        }
+
+        // Flushed here so a version conflict surfaces inside the attempt rather than at commit
+        Prescription updatedPrescription = prescriptionRepository.saveAndFlush(prescription);
+        return PrescriptionMapper.toResponse(updatedPrescription);
+    }
+
+    // update many prescriptions at once (FILLED / PICKED_UP), all in one transaction.
+    // Entries that can't be applied are reported in the results and don't stop the others
+    @Transactional(Transactional.TxType.SUPPORTS)
+    public PrescriptionBulkStatusResponse updatePrescriptionStatuses(List<PrescriptionTransition> transitions) {
+        if (transitions.size() > MAX_BULK_TRANSITIONS) {
+            throw new IllegalArgumentException("At most " + MAX_BULK_TRANSITIONS + " transitions per request");
+        }
+        return optimisticRetry.execute("prescription.bulk-update", () -> applyStatusUpdates(transitions));
+    }
+
+    private PrescriptionBulkStatusResponse applyStatusUpdates(List<PrescriptionTransition> transitions) {
+        Set<Long> ids = transitions.stream().map(PrescriptionTransition::getId).collect(Collectors.toSet());
+        Map<Long, Prescription> prescriptions = new HashMap<>();
+        prescriptionRepository.findAllById(ids).forEach(p -> prescriptions.put(p.getId(), p));
 
-            } else {
-                throw new IllegalStateException("Prescription cannot be marked as FILLED from the current state: " + prescription.getStatus());
+        // Stock is read once for every medicine being filled and handed out in request order
+        Set<Long> fillMedicineIds = transitions.stream()
+                .filter(t -> t.getStatus() == PrescriptionStatus.FILLED && prescriptions.containsKey(t.getId()))
+                .map(t -> prescriptions.get(t.getId()).getMedicine().getId())
+                .collect(Collectors.toSet());
+        Map<Long, Integer> stock = fillMedicineIds.isEmpty() ? Map.of() : serviceUtility.getStockByMedicineIds(fillMedicineIds);
+        Map<Long, Integer> filledQuantity = new HashMap<>();
+
+        DemandChange demandChange = new DemandChange();
+        List<ProducerEvent> events = new ArrayList<>();
+        List<PrescriptionTransitionResult> results = new ArrayList<>(transitions.size());
+        for (PrescriptionTransition transition : transitions) {
+            Prescription prescription = prescriptions.get(transition.getId());
+            String error = prescription == null
+                    ? "Prescription with id " + transition.getId() + " not found"
+                    : transitionError(prescription.getStatus(), transition.getStatus());
+            if (error == null && transition.getStatus() == PrescriptionStatus.FILLED) {
+                error = takeStock(prescription, stock, filledQuantity);
             }
-        } else if (status == PrescriptionStatus.PICKED_UP) {
-            if (prescription.getStatus() == PrescriptionStatus.FILLED) {
-                prescription.setStatus(status);
-                serviceUtility.publishPickedUpOrFilled("PICKED_UP", prescription.getPrescriptionNumber());
-            } else {
-                throw new IllegalStateException("Prescription cannot be marked as PICKED_UP from the current state: " + prescription.getStatus());
+            if (error != null) {
+                results.add(PrescriptionTransitionResult.rejected(transition, error));
+                continue;
             }
 
+            demandChange.move(prescription.getMedicine().getId(), prescription.getStatus(), transition.getStatus(),
+                    prescription.getQuantity());
+            prescription.setStatus(transition.getStatus());
+            events.add(new ProducerEvent(transition.getStatus().name(), prescription.getPrescriptionNumber()));
+            results.add(PrescriptionTransitionResult.applied(transition));
         }
 
-        Prescription updatedPrescription = prescriptionRepository.save(prescription);
-        return PrescriptionMapper.toResponse(updatedPrescription);
+        serviceUtility.decrementStockForFills(filledQuantity);
+        serviceUtility.recordStatusChanges(demandChange);
+        // The changed prescriptions go out as batched, version-checked UPDATEs
+        prescriptionRepository.flush();
+        serviceUtility.publishStatusUpdates(events);
+
+        return new PrescriptionBulkStatusResponse(events.size(), transitions.size() - events.size(), results);
+    }
+
+    // Reserves the prescription's pills against the stock read for this request; returns the error if they don't fit
+    private static String takeStock(Prescription prescription, Map<Long, Integer> stock, Map<Long, Integer> filledQuantity) {
+        Long medicineId = prescription.getMedicine().getId();
+        Integer available = stock.get(medicineId);
+        if (available == null) {
+            return "Inventory not found for medicine ID: " + medicineId;
+        }
+        int taken = filledQuantity.getOrDefault(medicineId, 0);
+        if (available - taken < prescription.getQuantity()) {
+            return "Cannot reduce stock below 0";
+        }
+        filledQuantity.put(medicineId, taken + prescription.getQuantity());
+        return null;
+    }
+
+    // The pharmacist-facing transitions: FILLED from NEW or STOCK_RECEIVED, PICKED_UP from FILLED.
+    // Returns why the transition isn't allowed, or null when it is
+    static String transitionError(PrescriptionStatus current, PrescriptionStatus target) {
+        boolean allowed = switch (target) {
+            case FILLED -> current == PrescriptionStatus.NEW || current == PrescriptionStatus.STOCK_RECEIVED;
+            case PICKED_UP -> current == PrescriptionStatus.FILLED;
+            default -> false;
+        };
+        if (allowed) {
+            return null;
+        }
+        if (target != PrescriptionStatus.FILLED && target != PrescriptionStatus.PICKED_UP) {
+            return "Prescription status can only be set to FILLED or PICKED_UP, not " + target;
+        }
+        return "Prescription cannot be marked as " + target + " from the current state: " + current;
     }
 
 }
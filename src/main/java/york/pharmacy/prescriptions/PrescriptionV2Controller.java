@@ -0,0 +1,35 @@
+package york.pharmacy.prescriptions;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
+import york.pharmacy.prescriptions.dto.PrescriptionSummaryPage;
+
+// v2 read endpoints - flat PrescriptionSummary rows (medicineCode/medicineName) instead of the nested Medicine entity.
+// Lists are keyset pages only. Writes stay on /api/prescriptions
+@RestController
+@RequestMapping("/api/v2/prescriptions")
+@RequiredArgsConstructor
+public class PrescriptionV2Controller {
+
+    private final PrescriptionService prescriptionService;
+
+    // follow nextCursor until it comes back null
+    @GetMapping("/page")
+    public ResponseEntity<PrescriptionSummaryPage> getPrescriptionPage(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer limit,
+            @RequestParam(required = false) PrescriptionStatus status,
+            @RequestParam(required = false) String patientId,
+            @RequestParam(required = false) String medicineCode) {
+        PrescriptionSummaryPage page = prescriptionService.getPrescriptionSummaryPage(cursor, limit, status, patientId, medicineCode);
+        return new ResponseEntity<>(page, HttpStatus.OK);
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<PrescriptionSummary> getPrescriptionById(@PathVariable Long id) {
+        return new ResponseEntity<>(prescriptionService.getPrescriptionSummaryById(id), HttpStatus.OK);
+    }
+}
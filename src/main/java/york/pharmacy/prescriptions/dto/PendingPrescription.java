@@ -0,0 +1,16 @@
+package york.pharmacy.prescriptions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+// Minimal view of a pending prescription used for stock allocation (no entity hydration)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PendingPrescription {
+    private Long id;
+    private Integer quantity;
+    private PrescriptionStatus status;
+}
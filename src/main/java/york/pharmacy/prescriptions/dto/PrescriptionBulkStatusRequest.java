@@ -0,0 +1,19 @@
+package york.pharmacy.prescriptions.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// Applied in order, so the same prescription can be FILLED and then PICKED_UP in one request
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionBulkStatusRequest {
+
+    @NotEmpty
+    private List<@Valid PrescriptionTransition> transitions;
+}
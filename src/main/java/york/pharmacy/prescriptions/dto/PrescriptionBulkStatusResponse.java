@@ -0,0 +1,18 @@
+package york.pharmacy.prescriptions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionBulkStatusResponse {
+
+    private int updated;
+    private int rejected;
+    // One result per requested transition, in request order
+    private List<PrescriptionTransitionResult> results;
+}
@@ -0,0 +1,17 @@
+package york.pharmacy.prescriptions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionPageResponse {
+
+    private List<PrescriptionResponse> items;
+    // Pass back as ?cursor= to get the next page; null on the last page
+    private String nextCursor;
+}
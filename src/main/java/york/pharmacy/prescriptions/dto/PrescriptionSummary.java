@@ -0,0 +1,22 @@
+package york.pharmacy.prescriptions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+// v2 prescription shape - the medicine's code and name instead of the whole Medicine entity.
+// Built by the repository's constructor-expression queries, so no entities are loaded or dirty-checked
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionSummary {
+    private Long id;
+    private String prescriptionNumber;
+    private String patientId;
+    private String medicineCode;
+    private String medicineName;
+    private int quantity;
+    private String instructions;
+    private PrescriptionStatus status;
+}
@@ -0,0 +1,18 @@
+package york.pharmacy.prescriptions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+// v2 keyset page - same paging as PrescriptionPageResponse with flat items
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionSummaryPage {
+
+    private List<PrescriptionSummary> items;
+    // Pass back as ?cursor= to get the next page; null on the last page
+    private String nextCursor;
+}
@@ -0,0 +1,20 @@
+package york.pharmacy.prescriptions.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+// One {id, status} entry of a bulk status update
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionTransition {
+
+    @NotNull
+    private Long id;
+
+    @NotNull
+    private PrescriptionStatus status;
+}
@@ -0,0 +1,26 @@
+package york.pharmacy.prescriptions.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+// Outcome of one transition in a bulk status update; error is null when it was applied
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class PrescriptionTransitionResult {
+
+    private Long id;
+    private PrescriptionStatus status;
+    private boolean updated;
+    private String error;
+
+    public static PrescriptionTransitionResult applied(PrescriptionTransition transition) {
+        return new PrescriptionTransitionResult(transition.getId(), transition.getStatus(), true, null);
+    }
+
+    public static PrescriptionTransitionResult rejected(PrescriptionTransition transition, String error) {
+        return new PrescriptionTransitionResult(transition.getId(), transition.getStatus(), false, error);
+    }
+}
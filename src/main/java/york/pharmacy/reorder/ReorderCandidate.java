@@ -0,0 +1,18 @@
+package york.pharmacy.reorder;
+
+// Projection returned by ReorderRepository.findShortfalls - one row per inventory whose demand
+// exceeds what is in stock plus what is already on order
+public interface ReorderCandidate {
+
+    Long getInventoryId();
+
+    String getMedicineCode();
+
+    Integer getStockQuantity();
+
+    // Pills still owed to prescriptions: NEW + OUT_OF_STOCK + STOCK_RECEIVED + AWAITING_SHIPMENT
+    Long getDemandQuantity();
+
+    // Sum of the inventory's ORDERED order quantities (0 when nothing is on order)
+    Long getOnOrderQuantity();
+}
@@ -0,0 +1,30 @@
+package york.pharmacy.reorder;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import york.pharmacy.reorder.dto.ReorderPlan;
+
+@RestController
+@RequestMapping("/api/reorder")
+@RequiredArgsConstructor
+public class ReorderController {
+
+    private final ReorderPlanner reorderPlanner;
+
+    // Proposed orders for every current shortfall (nothing is created)
+    @GetMapping("/plan")
+    public ResponseEntity<ReorderPlan> getPlan() {
+        return new ResponseEntity<>(reorderPlanner.plan(), HttpStatus.OK);
+    }
+
+    // Compute the plan and create its orders
+    @PostMapping("/submit")
+    public ResponseEntity<ReorderPlan> submitPlan() {
+        return new ResponseEntity<>(reorderPlanner.planAndSubmit(), HttpStatus.CREATED);
+    }
+}
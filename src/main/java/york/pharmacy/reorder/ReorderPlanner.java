@@ -0,0 +1,84 @@
+package york.pharmacy.reorder;
+
+import io.micrometer.core.annotation.Timed;
+import jakarta.transaction.Transactional;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.stereotype.Service;
+import york.pharmacy.orders.OrderService;
+import york.pharmacy.orders.dto.OrderRequest;
+import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.reorder.dto.ReorderLine;
+import york.pharmacy.reorder.dto.ReorderPlan;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Works out the purchase orders that would cover every shortfall: what prescriptions still need,
+ * minus what is in stock, minus what is already on order. The shortfalls come from one query
+ * (see {@link ReorderRepository#findShortfalls()}); rounding to pack sizes and picking delivery
+ * dates from lead times ({@link ReorderProperties}) is done in memory.
+ */
+@Slf4j
+@Timed("pharmacy.service")
+@Service
+@RequiredArgsConstructor
+@EnableConfigurationProperties(ReorderProperties.class)
+public class ReorderPlanner {
+
+    private final ReorderRepository reorderRepository;
+    private final ReorderProperties reorderProperties;
+    private final OrderService orderService;
+
+    // Propose the orders without placing them
+    public ReorderPlan plan() {
+        List<ReorderLine> lines = computeLines();
+        return new ReorderPlan(lines, totalQuantity(lines), List.of());
+    }
+
+    // Propose the orders and place them through OrderService.batchCreateOrders, in the same transaction
+    // as the read so a plan is never submitted against data it didn't see
+    @Transactional
+    public ReorderPlan planAndSubmit() {
+        List<ReorderLine> lines = computeLines();
+        List<OrderResponse> orders = lines.isEmpty() ? List.of()
+                : orderService.batchCreateOrders(lines.stream().map(ReorderLine::toOrderRequest).toList());
+        log.info("Reorder planner submitted {} orders", orders.size());
+        return new ReorderPlan(lines, totalQuantity(lines), orders);
+    }
+
+    private List<ReorderLine> computeLines() {
+        LocalDate today = LocalDate.now();
+        List<ReorderCandidate> candidates = reorderRepository.findShortfalls();
+        List<ReorderLine> lines = new ArrayList<>(candidates.size());
+        for (ReorderCandidate candidate : candidates) {
+            lines.add(toLine(candidate, today));
+        }
+        return lines;
+    }
+
+    ReorderLine toLine(ReorderCandidate candidate, LocalDate today) {
+        String code = candidate.getMedicineCode();
+        long shortfall = candidate.getDemandQuantity() - candidate.getStockQuantity() - candidate.getOnOrderQuantity();
+        int packSize = reorderProperties.packSizeFor(code);
+        long packs = (shortfall + packSize - 1) / packSize;
+        return ReorderLine.builder()
+                .inventoryId(candidate.getInventoryId())
+                .medicineCode(code)
+                .stockQuantity(candidate.getStockQuantity())
+                .demandQuantity(candidate.getDemandQuantity())
+                .onOrderQuantity(candidate.getOnOrderQuantity())
+                .shortfall(shortfall)
+                .packSize(packSize)
+                .orderQuantity(Math.toIntExact(packs * packSize))
+                .deliveryDate(today.plusDays(reorderProperties.leadTimeDaysFor(code)))
+                .build();
+    }
+
+    private static long totalQuantity(List<ReorderLine> lines) {
+        return lines.stream().mapToLong(ReorderLine::getOrderQuantity).sum();
+    }
+}
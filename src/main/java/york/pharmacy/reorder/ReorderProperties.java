@@ -0,0 +1,37 @@
+package york.pharmacy.reorder;
+
+import jakarta.validation.constraints.Min;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.validation.annotation.Validated;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Bound from pharmacy.reorder.* - per-medicine overrides are keyed by medicine code, e.g.
+// pharmacy.reorder.pack-sizes.BBX-014=100 and pharmacy.reorder.lead-time-days.BBX-014=3
+@Data
+@Validated
+@ConfigurationProperties(prefix = "pharmacy.reorder")
+public class ReorderProperties {
+
+    // Orders are rounded up to whole packs
+    @Min(1)
+    private int defaultPackSize = 1;
+
+    // Days from today until an order placed now is expected to arrive
+    @Min(1)
+    private int defaultLeadTimeDays = 7;
+
+    private Map<String, @Min(1) Integer> packSizes = new HashMap<>();
+
+    private Map<String, @Min(1) Integer> leadTimeDays = new HashMap<>();
+
+    public int packSizeFor(String medicineCode) {
+        return packSizes.getOrDefault(medicineCode, defaultPackSize);
+    }
+
+    public int leadTimeDaysFor(String medicineCode) {
+        return leadTimeDays.getOrDefault(medicineCode, defaultLeadTimeDays);
+    }
+}
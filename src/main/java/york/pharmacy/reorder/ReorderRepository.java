@@ -0,0 +1,24 @@
+package york.pharmacy.reorder;
+
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.Repository;
+import york.pharmacy.inventory.Inventory;
+
+import java.util.List;
+
+public interface ReorderRepository extends Repository<Inventory, Long> {
+
+    // Every shortfall in one statement: demand comes from the medicine_demand aggregate and the
+    // on-order totals from one grouped pass over orders, joined in rather than looked up per row
+    @Query("SELECT i.id AS inventoryId, m.code AS medicineCode, i.stockQuantity AS stockQuantity, " +
+            "(d.newQuantity + d.outOfStockQuantity + d.stockReceivedQuantity + d.awaitingShipmentQuantity) AS demandQuantity, " +
+            "COALESCE(o.quantity, 0) AS onOrderQuantity " +
+            "FROM Inventory i JOIN i.medicine m " +
+            "JOIN MedicineDemand d ON d.medicineId = m.id " +
+            "LEFT JOIN (SELECT ord.inventory.id AS inventoryId, SUM(ord.quantity) AS quantity FROM Order ord " +
+            "WHERE ord.status = 'ORDERED' GROUP BY ord.inventory.id) o ON o.inventoryId = i.id " +
+            "WHERE d.newQuantity + d.outOfStockQuantity + d.stockReceivedQuantity + d.awaitingShipmentQuantity " +
+            "> i.stockQuantity + COALESCE(o.quantity, 0) " +
+            "ORDER BY i.id")
+    List<ReorderCandidate> findShortfalls();
+}
@@ -0,0 +1,21 @@
+package york.pharmacy.reorder;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+// Places the reorder plan's orders on a timer. Off unless pharmacy.reorder.auto-submit.enabled=true
+@Component
+@ConditionalOnProperty(name = "pharmacy.reorder.auto-submit.enabled", havingValue = "true")
+@RequiredArgsConstructor
+public class ReorderScheduler {
+
+    private final ReorderPlanner reorderPlanner;
+
+    @Scheduled(initialDelayString = "${pharmacy.reorder.auto-submit.interval-ms:3600000}",
+            fixedDelayString = "${pharmacy.reorder.auto-submit.interval-ms:3600000}")
+    public void submit() {
+        reorderPlanner.planAndSubmit();
+    }
+}
@@ -0,0 +1,33 @@
+package york.pharmacy.reorder.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import york.pharmacy.orders.dto.OrderRequest;
+
+import java.time.LocalDate;
+
+// One proposed purchase order and the numbers it was worked out from
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReorderLine {
+
+    private Long inventoryId;
+    private String medicineCode;
+    private int stockQuantity;
+    private long demandQuantity;
+    private long onOrderQuantity;
+    // demand - stock - on order
+    private long shortfall;
+    private int packSize;
+    // shortfall rounded up to whole packs
+    private int orderQuantity;
+    private LocalDate deliveryDate;
+
+    public OrderRequest toOrderRequest() {
+        return new OrderRequest(inventoryId, orderQuantity, deliveryDate);
+    }
+}
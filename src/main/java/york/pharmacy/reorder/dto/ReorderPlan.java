@@ -0,0 +1,19 @@
+package york.pharmacy.reorder.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import york.pharmacy.orders.dto.OrderResponse;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReorderPlan {
+
+    private List<ReorderLine> lines;
+    private long totalQuantity;
+    // The orders created from the lines; empty when the plan was only proposed
+    private List<OrderResponse> submittedOrders;
+}
@@ -0,0 +1,44 @@
+package york.pharmacy.utilities;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+// Opaque cursor tokens for keyset pagination - wraps the last id a client has seen
+public class KeysetCursor {
+
+    private KeysetCursor() {
+    }
+
+    public static String encode(Long lastId) {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString(("id:" + lastId).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Returns the id to continue after (0 for the first page)
+    public static long decode(String cursor) {
+        if (cursor == null || cursor.isBlank()) {
+            return 0L;
+        }
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            if (!value.startsWith("id:")) {
+                throw new IllegalArgumentException("Invalid cursor: " + cursor);
+            }
+            return Long.parseLong(value.substring(3));
+        } catch (IllegalArgumentException ex) {
+            // Covers bad Base64 as well as a non-numeric id (NumberFormatException)
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+
+    // Validates a requested page size, falling back to the default when none is given
+    public static int pageSize(Integer limit, int defaultSize, int maxSize) {
+        if (limit == null) {
+            return defaultSize;
+        }
+        if (limit < 1 || limit > maxSize) {
+            throw new IllegalArgumentException("limit must be between 1 and " + maxSize);
+        }
+        return limit;
+    }
+}
@@ -0,0 +1,42 @@
+package york.pharmacy.utilities;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+// Writes newline-delimited JSON (one object per line) straight to a response stream.
+// Nothing is buffered beyond the generator's own buffer, so memory stays flat however many rows go out
+public class NdjsonWriter implements AutoCloseable {
+
+    private final JsonGenerator generator;
+    private final ObjectWriter writer;
+
+    public NdjsonWriter(ObjectMapper objectMapper, OutputStream out) throws IOException {
+        // The response stream belongs to the servlet container, so don't close it with the generator
+        this.generator = objectMapper.getFactory().createGenerator(out)
+                .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+        // Lines are terminated explicitly below instead of Jackson's default space between root values
+        this.generator.setRootValueSeparator(null);
+        // Let the generator buffer fill instead of flushing the socket after every row
+        this.writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    public void write(Object value) {
+        try {
+            writer.writeValue(generator, value);
+            generator.writeRaw('\n');
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        generator.close();
+    }
+}
@@ -0,0 +1,99 @@
+package york.pharmacy.utilities;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Runs a read-check-write flow in its own transaction and re-runs it when it loses an optimistic
+ * lock race (a @Version mismatch on Prescription or Inventory). Every attempt re-reads the rows, so
+ * the status checks see what the winning transaction committed - a fill that lost to a CANCELLED
+ * fails its transition check instead of filling anyway. Between attempts it sleeps a random time up
+ * to an exponentially growing cap (full jitter), and gives up after pharmacy.retry.max-attempts.
+ * Conflicts are counted in pharmacy.optimistic.conflicts{operation, outcome=retried|exhausted}.
+ */
+@Slf4j
+@Component
+public class OptimisticRetry {
+
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final int maxAttempts;
+    private final long initialBackoffMs;
+    private final long maxBackoffMs;
+
+    public OptimisticRetry(PlatformTransactionManager transactionManager,
+                           MeterRegistry meterRegistry,
+                           @Value("${pharmacy.retry.max-attempts:4}") int maxAttempts,
+                           @Value("${pharmacy.retry.initial-backoff-ms:20}") long initialBackoffMs,
+                           @Value("${pharmacy.retry.max-backoff-ms:200}") long maxBackoffMs) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("pharmacy.retry.max-attempts must be at least 1");
+        }
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoffMs = initialBackoffMs;
+        this.maxBackoffMs = maxBackoffMs;
+    }
+
+    public <T> T execute(String operation, Supplier<T> work) {
+        // Inside a caller's transaction a retry would reuse its stale persistence context, so the
+        // conflict is left to the caller
+        if (TransactionSynchronizationManager.isActualTransactionActive()) {
+            return work.get();
+        }
+
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return transactionTemplate.execute(status -> work.get());
+            } catch (RuntimeException ex) {
+                if (!isConflict(ex)) {
+                    throw ex;
+                }
+                if (attempt >= maxAttempts) {
+                    meterRegistry.counter("pharmacy.optimistic.conflicts",
+                            "operation", operation, "outcome", "exhausted").increment();
+                    log.warn("Giving up on {} after {} conflicting attempts", operation, attempt);
+                    throw ex instanceof OptimisticLockingFailureException ? ex
+                            : new OptimisticLockingFailureException(operation + " kept conflicting", ex);
+                }
+                meterRegistry.counter("pharmacy.optimistic.conflicts",
+                        "operation", operation, "outcome", "retried").increment();
+                backOff(attempt);
+            }
+        }
+    }
+
+    // Spring translates most conflicts, but one surfacing at commit can still be the raw JPA exception
+    static boolean isConflict(Throwable ex) {
+        for (Throwable cause = ex; cause != null; cause = cause.getCause()) {
+            if (cause instanceof OptimisticLockingFailureException || cause instanceof OptimisticLockException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void backOff(int attempt) {
+        long cap = Math.min(maxBackoffMs, initialBackoffMs << Math.min(attempt - 1, 20));
+        if (cap <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(ThreadLocalRandom.current().nextLong(cap + 1));
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while backing off", ex);
+        }
+    }
+}
@@ -1,54 +1,84 @@
 package york.pharmacy.utilities;
 
+import io.micrometer.core.annotation.Timed;
+import jakarta.persistence.EntityManager;
+import jakarta.transaction.Transactional;
 import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import york.pharmacy.demand.DemandChange;
+import york.pharmacy.demand.MedicineDemandService;
 import york.pharmacy.exceptions.ResourceNotFoundException;
 import york.pharmacy.inventory.Inventory;
 import york.pharmacy.inventory.InventoryMapper;
 import york.pharmacy.inventory.InventoryRepository;
 import york.pharmacy.inventory.dto.InventoryResponse;
+import york.pharmacy.kafka.IngestedPrescriptionNumberRepository;
 import york.pharmacy.kafka.KafkaProducer;
 import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineCache;
 import york.pharmacy.medicines.MedicineRepository;
 import york.pharmacy.medicines.MedicineService;
 import york.pharmacy.kafka.ProducerEvent;
 import york.pharmacy.orders.Order;
 import york.pharmacy.orders.OrderRepository;
+import york.pharmacy.prescriptions.BackOrderCandidate;
+import york.pharmacy.prescriptions.MedicineStatusQuantity;
 import york.pharmacy.prescriptions.Prescription;
 import york.pharmacy.prescriptions.PrescriptionMapper;
 import york.pharmacy.prescriptions.PrescriptionRepository;
 import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.prescriptions.dto.PendingPrescription;
 import york.pharmacy.prescriptions.dto.PrescriptionRequest;
 import york.pharmacy.prescriptions.dto.PrescriptionResponse;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.TreeMap;
 
+@Slf4j
+@Timed("pharmacy.service")
 @Service
 @RequiredArgsConstructor
 public class ServiceUtility {
 
+    private static final int STATUS_UPDATE_CHUNK_SIZE = 10_000;
+
     private final MedicineRepository medicineRepository;
+    private final MedicineCache medicineCache;
     private final InventoryRepository inventoryRepository;
     private final OrderRepository orderRepository;
     private final PrescriptionRepository prescriptionRepository;
     private final KafkaProducer kafkaProducer;
+    private final EntityManager entityManager;
+    private final MedicineDemandService medicineDemandService;
+    private final IngestedPrescriptionNumberRepository ingestedPrescriptionNumberRepository;
 
     //------------------------------------------------------------------------------------------------------------------//
     // Medicine methods
     //------------------------------------------------------------------------------------------------------------------//
 
+    // Resolved through the catalog cache - only a cache miss goes to the database
     public Medicine getMedicineByCode(String code) {
-        Optional<Medicine> medicineOptional = Optional.ofNullable(medicineRepository.findMedicineByCode(code));
-        return medicineOptional.
+        return findMedicineByCode(code).
                 orElseThrow(() -> new ResourceNotFoundException("Medicine with Code " + code + " not found"));
     }
 
-    // Helper Method - fetch a Medicine entity by ID
+    // Same lookup for callers that treat an unknown code as "no match" rather than an error
+    public Optional<Medicine> findMedicineByCode(String code) {
+        return medicineCache.getByCode(code, medicineRepository::findMedicineByCode);
+    }
+
+    // Helper Method - fetch a Medicine entity by ID (through the catalog cache)
     public Medicine fetchMedicineById(Long id) {
-        return medicineRepository.findById(id)
+        return medicineCache.getById(id, medicineRepository::findById)
                 .orElseThrow(() -> new ResourceNotFoundException("Medicine with ID " + id + " not found"));
     }
 
@@ -56,19 +86,61 @@ public class ServiceUtility {
     // Inventory methods
     //------------------------------------------------------------------------------------------------------------------//
 
+    @Transactional
     public InventoryResponse adjustStockQuantity(Long id, Integer pillAdjustment) {
-        Inventory existingEntity = inventoryRepository.findById(id)
+        if (inventoryRepository.adjustStockQuantity(id, pillAdjustment) == 0) {
+            if (!inventoryRepository.existsById(id)) {
+                throw new ResourceNotFoundException("Inventory not found with id: " + id);
+            }
+            throw new IllegalArgumentException("Cannot reduce stock below 0");
+        }
+
+        Inventory updatedEntity = inventoryRepository.findById(id)
                 .orElseThrow(() ->
                         new ResourceNotFoundException("Inventory not found with id: " + id));
+        // The update ran in the database, so re-read the row in case it was already loaded in this transaction
+        entityManager.refresh(updatedEntity);
+        return InventoryMapper.toResponse(updatedEntity);
+    }
 
-        int newQuantity = existingEntity.getStockQuantity() + pillAdjustment;
-        if (newQuantity < 0) {
+    // Atomically remove the pills for a filled prescription from the medicine's inventory
+    public void decrementStockForFill(Long medicineId, int quantity) {
+        if (inventoryRepository.adjustStockQuantityByMedicineId(medicineId, -quantity) == 0) {
+            if (!inventoryRepository.existsByMedicineId(medicineId)) {
+                throw new ResourceNotFoundException("Inventory not found for medicine ID: " + medicineId);
+            }
             throw new IllegalArgumentException("Cannot reduce stock below 0");
         }
-        existingEntity.setStockQuantity(newQuantity);
+    }
 
-        Inventory updatedEntity = inventoryRepository.save(existingEntity);
-        return InventoryMapper.toResponse(updatedEntity);
+    // Current stock per medicine id, one query for the whole set (medicines without inventory are left out)
+    public Map<Long, Integer> getStockByMedicineIds(Collection<Long> medicineIds) {
+        Map<Long, Integer> stock = new HashMap<>();
+        for (Inventory inventory : inventoryRepository.findAllByMedicineIds(medicineIds)) {
+            stock.put(inventory.getMedicine().getId(), inventory.getStockQuantity());
+        }
+        return stock;
+    }
+
+    // Take the pills for a group of fills with one conditional UPDATE per medicine, in medicine id order.
+    // Callers check the stock first, so an update that matches nothing means a concurrent fill took it
+    // in between - reported as a conflict so OptimisticRetry re-runs the whole group
+    public void decrementStockForFills(Map<Long, Integer> quantityByMedicineId) {
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(quantityByMedicineId).entrySet()) {
+            if (inventoryRepository.adjustStockQuantityByMedicineId(entry.getKey(), -entry.getValue()) == 0) {
+                throw new OptimisticLockingFailureException("Stock for medicine ID " + entry.getKey() + " changed concurrently");
+            }
+        }
+    }
+
+    // Put a shipment's pills on the shelves: one UPDATE per inventory row however many orders it
+    // received, in inventory id order
+    public void incrementStockForReceipts(Map<Long, Integer> quantityByInventoryId) {
+        for (Map.Entry<Long, Integer> entry : new TreeMap<>(quantityByInventoryId).entrySet()) {
+            if (inventoryRepository.adjustStockQuantity(entry.getKey(), entry.getValue()) == 0) {
+                throw new ResourceNotFoundException("Inventory not found with id: " + entry.getKey());
+            }
+        }
     }
 
     // Helper method - Used in service layer to fetch Inventory entity by ID
@@ -94,6 +166,8 @@ public class ServiceUtility {
     // Prescription methods
     //------------------------------------------------------------------------------------------------------------------//
 
+    // Transactional so the prescription and its RECEIVED outbox event are committed together
+    @Transactional
     public PrescriptionResponse addPrescription(PrescriptionRequest prescriptionRequest) {
         Medicine medicine = this.getMedicineByCode(prescriptionRequest.getMedicineCode()); // need to add this method
         Prescription prescription = PrescriptionMapper.toEntity(prescriptionRequest, medicine);
@@ -101,10 +175,13 @@ public class ServiceUtility {
 
         Long medicineId = medicine.getId();
         Long prescriptionId = savedPrescription.getId();
+        medicineDemandService.recordTransition(medicineId, null, PrescriptionStatus.NEW, savedPrescription.getQuantity());
         // Call updatePrescriptionsWithNewStock here, and add to prescriptionService as well
         if (!checkAndUpdatePrescriptionStock(medicineId, prescriptionId)) {
             savedPrescription.setStatus(PrescriptionStatus.OUT_OF_STOCK);
             prescriptionRepository.save(savedPrescription);
+            medicineDemandService.recordTransition(medicineId, PrescriptionStatus.NEW,
+                    PrescriptionStatus.OUT_OF_STOCK, savedPrescription.getQuantity());
         }
 //        updateInventoryStockStatus(medicine.getId());
         // Kafka publish RECEIVED
@@ -117,55 +194,121 @@ public class ServiceUtility {
         return PrescriptionMapper.toResponse(savedPrescription);
     }
 
+    // Kafka ingest - same as addPrescription unless the prescription number is already stored or being stored
+    // by another consumer, in which case nothing is written and the result is empty
+    @Transactional
+    public Optional<PrescriptionResponse> addPrescriptionIfNew(PrescriptionRequest prescriptionRequest) {
+        if (ingestedPrescriptionNumberRepository.claim(prescriptionRequest.getPrescriptionNumber()) == 0) {
+            return Optional.empty();
+        }
+        return Optional.of(addPrescription(prescriptionRequest));
+    }
+
     // cancel prescription
     // changed the id to prescriptionNumber since that's what's coming from Kafka
+    @Transactional
     public void cancelPrescription(String prescriptionNumber) {
 //        Prescription prescription = prescriptionRepository.findById(id)
 //                .orElseThrow(() -> new ResourceNotFoundException("Prescription with id" + id + " not found") );
         Prescription prescription = prescriptionRepository.findByPrescriptionNumber(prescriptionNumber).
                 orElseThrow(() -> new ResourceNotFoundException("Prescription with prescription number " + prescriptionNumber + " not found"));
 
+        PrescriptionStatus previousStatus = prescription.getStatus();
         prescription.setStatus(PrescriptionStatus.CANCELLED);
         prescriptionRepository.save(prescription);
+        recordStatusChange(prescription.getMedicine().getId(), previousStatus,
+                PrescriptionStatus.CANCELLED, prescription.getQuantity());
     }
 
-    public List<Prescription> updateAwaitingShipmentStatus(Order order) {
-        List<PrescriptionStatus> statuses = List.of(PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK);
-        List<Prescription> prescriptions = prescriptionRepository.findAllByMedicineIdAndStatus(order.getInventory().getMedicine().getId(), statuses);
-        for (Prescription p : prescriptions) {
-            p.setOrder(order);
-            p.setStatus(PrescriptionStatus.AWAITING_SHIPMENT);
-            //publish to kafka BACK_ORDERED, p.getPrescriptionNumber(), order.getDate()
-            Prescription savedPrescription = prescriptionRepository.save(p);
-            ProducerEvent event = new ProducerEvent(
-                    "BACK_ORDERED",
-                    p.getPrescriptionNumber(),
-                    order.getDeliveryDate()
-            );
-            kafkaProducer.sendMessage("prescription_status_updates", event);
+    // Back-order every NEW and OUT_OF_STOCK prescription of each order's medicine against that order.
+    // Per order: one read of the candidates and one guarded UPDATE per source status (no per-row saves);
+    // then one demand UPDATE per medicine and one outbox write for all the BACK_ORDERED events.
+    // Returns how many prescriptions were back-ordered
+    @Transactional
+    public int updateAwaitingShipmentStatus(List<Order> orders) {
+        DemandChange demandChange = new DemandChange();
+        List<ProducerEvent> events = new ArrayList<>();
+        for (Order order : orders) {
+            Long medicineId = order.getInventory().getMedicine().getId();
+            List<BackOrderCandidate> candidates = prescriptionRepository.findBackOrderCandidates(medicineId,
+                    List.of(PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK));
+            assignToOrder(candidates, PrescriptionStatus.NEW, order);
+            assignToOrder(candidates, PrescriptionStatus.OUT_OF_STOCK, order);
+
+            for (BackOrderCandidate candidate : candidates) {
+                demandChange.move(medicineId, candidate.getStatus(), PrescriptionStatus.AWAITING_SHIPMENT,
+                        candidate.getQuantity());
+                events.add(new ProducerEvent("BACK_ORDERED", candidate.getPrescriptionNumber(), order.getDeliveryDate()));
+            }
         }
+        medicineDemandService.apply(demandChange);
+        publishStatusUpdates(events);
+        return events.size();
+    }
 
-        return prescriptions;
+    // The candidates read in one status, linked to the order in chunks. The demand moves and events are
+    // built from what was read, so a row that changed in between is a conflict rather than a silent skip
+    private void assignToOrder(List<BackOrderCandidate> candidates, PrescriptionStatus from, Order order) {
+        List<Long> ids = candidates.stream()
+                .filter(candidate -> candidate.getStatus() == from)
+                .map(BackOrderCandidate::getId)
+                .toList();
+        for (int start = 0; start < ids.size(); start += STATUS_UPDATE_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(start, Math.min(start + STATUS_UPDATE_CHUNK_SIZE, ids.size()));
+            if (prescriptionRepository.assignToOrder(chunk, from, order) != chunk.size()) {
+                throw new OptimisticLockingFailureException(
+                        "Prescriptions for medicine ID " + order.getInventory().getMedicine().getId() + " changed concurrently");
+            }
+        }
     }
 
+    @Transactional
     public List<Prescription> updateStockReceivedStatus(Order order) {
         List<Prescription> prescriptions = prescriptionRepository.findAllByOrder(order);
-        System.out.println("Prescription Status Received List:" + prescriptions.size());
+        log.debug("Order {}: {} prescription(s) moving to STOCK_RECEIVED", order.getId(), prescriptions.size());
 
+        DemandChange demandChange = new DemandChange();
         for (Prescription p : prescriptions) {
+            demandChange.move(p.getMedicine().getId(), p.getStatus(), PrescriptionStatus.STOCK_RECEIVED, p.getQuantity());
             p.setStatus(PrescriptionStatus.STOCK_RECEIVED);
             Prescription savedPrescription = prescriptionRepository.save(p);
         }
+        medicineDemandService.apply(demandChange);
 //        updateInventoryStockStatus(order.getInventory().getMedicine().getId());
 
         return prescriptions;
     }
 
+    // Set-based version of updateStockReceivedStatus for a whole shipment: every prescription still
+    // AWAITING_SHIPMENT on one of the orders moves to STOCK_RECEIVED in one UPDATE, plus the demand rows
+    @Transactional
+    public int updateStockReceivedStatusForOrders(Collection<Long> orderIds) {
+        DemandChange demandChange = new DemandChange();
+        for (MedicineStatusQuantity quantity : prescriptionRepository.sumQuantityByOrderIdsAndStatus(
+                orderIds, PrescriptionStatus.AWAITING_SHIPMENT)) {
+            demandChange.move(quantity.getMedicineId(), PrescriptionStatus.AWAITING_SHIPMENT,
+                    PrescriptionStatus.STOCK_RECEIVED, quantity.getQuantity());
+        }
+        int updated = prescriptionRepository.updateStatusByOrderIds(
+                orderIds, PrescriptionStatus.AWAITING_SHIPMENT, PrescriptionStatus.STOCK_RECEIVED);
+        medicineDemandService.apply(demandChange);
+        return updated;
+    }
+
     // need a helper function to return the needed count for new orders
+    // (NEW + OUT_OF_STOCK pills, read from the medicine's demand row)
     public int minOrderCount(Long medicineId) {
-        List<PrescriptionStatus> statuses = List.of(PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK);
+        return Math.toIntExact(medicineDemandService.getDemand(medicineId).getPendingQuantity());
+    }
+
+    // Keep medicine_demand in step with a single prescription's status change
+    public void recordStatusChange(Long medicineId, PrescriptionStatus from, PrescriptionStatus to, int quantity) {
+        medicineDemandService.recordTransition(medicineId, from, to, quantity);
+    }
 
-        return prescriptionRepository.findTotalQuantityByMedicineIdAndStatus(medicineId, statuses);
+    // Same for a group of status changes, one demand UPDATE per medicine
+    public void recordStatusChanges(DemandChange demandChange) {
+        medicineDemandService.apply(demandChange);
     }
 
     //  ----------
@@ -179,18 +322,8 @@ public class ServiceUtility {
      * @return true if sufficient stock available, false if insufficient
      */
     public boolean checkAndUpdatePrescriptionStock(Long medicineId, Long prescriptionId) {
-        // Get relevant prescription statuses
-        List<PrescriptionStatus> statuses = List.of(
-                PrescriptionStatus.NEW,
-                PrescriptionStatus.OUT_OF_STOCK,
-                PrescriptionStatus.STOCK_RECEIVED
-        );
-
-        // Get total quantity needed for all relevant prescriptions
-        int totalQuantityNeeded = prescriptionRepository.findTotalQuantityByMedicineIdAndStatus(
-                medicineId,
-                statuses
-        );
+        // Total quantity needed for all NEW, OUT_OF_STOCK and STOCK_RECEIVED prescriptions
+        long totalQuantityNeeded = medicineDemandService.getDemand(medicineId).getClaimedQuantity();
 
         // Get current inventory
         Inventory inventory = inventoryRepository.findByMedicineId(medicineId)
@@ -203,55 +336,53 @@ public class ServiceUtility {
     }
 
     /**
-     * Update the inventory's stock quantity to the given value, then update
-     * all prescriptions (that are currently in {@link PrescriptionStatus#NEW} or
-     * {@link PrescriptionStatus#OUT_OF_STOCK}) to {@link PrescriptionStatus#STOCK_RECEIVED}
-     * as long as there is enough stock to fulfill them. Decrement the stock
-     * quantity as you go. Break out when you're out of stock.
+     * Allocate the inventory's new stock quantity across all prescriptions for the medicine that are
+     * {@link PrescriptionStatus#NEW}, {@link PrescriptionStatus#OUT_OF_STOCK} or
+     * {@link PrescriptionStatus#STOCK_RECEIVED}, oldest first (see {@link StockAllocation}).
+     * The pending queue is read once, the allocation is computed in memory, and the
+     * status changes are applied with one UPDATE per target status, plus one to the medicine's demand row.
      *
      * @param newStockQuantity an updated total number of pills in the inventory.
      * @param medicineId       the primary key (ID) of the Medicine table.
      */
     public void updatePrescriptionsWithNewStock(int newStockQuantity, Long medicineId) {
-
-        // Are these the right statuses?
         List<PrescriptionStatus> statusesToUpdate = List.of(
                 PrescriptionStatus.NEW,
                 PrescriptionStatus.OUT_OF_STOCK,
                 PrescriptionStatus.STOCK_RECEIVED
         );
-        List<Prescription> pendingPrescriptions =
-                prescriptionRepository.findAllByMedicineIdAndStatus(medicineId, statusesToUpdate);
-
-        // Decrement from newStockQuantity as we fulfill prescriptions
-        int currentStock = newStockQuantity;
-        for (Prescription p : pendingPrescriptions) {
-            int pillsNeeded = p.getQuantity();
-
-            // If no more stock is left, break early
-            if (currentStock <= 0) {
-                break;
-            }
-
-            if (pillsNeeded <= currentStock) {
+        List<PendingPrescription> pendingPrescriptions =
+                prescriptionRepository.findPendingByMedicineId(medicineId, statusesToUpdate);
+
+        StockAllocation allocation = StockAllocation.allocate(newStockQuantity, pendingPrescriptions);
+        updateStatuses(medicineId, allocation.getToStockReceived(), PrescriptionStatus.STOCK_RECEIVED);
+        updateStatuses(medicineId, allocation.getToOutOfStock(), PrescriptionStatus.OUT_OF_STOCK);
+
+        DemandChange demandChange = new DemandChange();
+        allocation.getToStockReceived().forEach(p ->
+                demandChange.move(medicineId, p.getStatus(), PrescriptionStatus.STOCK_RECEIVED, p.getQuantity()));
+        allocation.getToOutOfStock().forEach(p ->
+                demandChange.move(medicineId, p.getStatus(), PrescriptionStatus.OUT_OF_STOCK, p.getQuantity()));
+        medicineDemandService.apply(demandChange);
+    }
 
-                if (p.getStatus() == PrescriptionStatus.OUT_OF_STOCK) {
-                    p.setStatus(PrescriptionStatus.STOCK_RECEIVED);
-                    prescriptionRepository.save(p);
+    // Apply one status to a group of prescriptions, grouped by the status they were read in and chunked to stay
+    // under driver bind-parameter limits. The demand moves are built from that read status, so a row that
+    // changed in between (filled, cancelled, back-ordered) is a conflict and the caller's retry re-reads
+    private void updateStatuses(Long medicineId, List<PendingPrescription> prescriptions, PrescriptionStatus status) {
+        Map<PrescriptionStatus, List<Long>> idsByStatus = new EnumMap<>(PrescriptionStatus.class);
+        for (PendingPrescription p : prescriptions) {
+            idsByStatus.computeIfAbsent(p.getStatus(), s -> new ArrayList<>()).add(p.getId());
+        }
+        idsByStatus.forEach((from, ids) -> {
+            for (int start = 0; start < ids.size(); start += STATUS_UPDATE_CHUNK_SIZE) {
+                List<Long> chunk = ids.subList(start, Math.min(start + STATUS_UPDATE_CHUNK_SIZE, ids.size()));
+                if (prescriptionRepository.updateStatusByIds(chunk, from, status) != chunk.size()) {
+                    throw new OptimisticLockingFailureException(
+                            "Prescriptions for medicine ID " + medicineId + " changed concurrently");
                 }
-
-                // Decrement the "currentStock"
-                currentStock -= pillsNeeded;
-
-                Long inventoryId = inventoryRepository.findByMedicineId(medicineId).orElseThrow(
-                        () -> new ResourceNotFoundException("No inventory for given medicine")
-                ).getId();
-
-            } else {
-                // If we can't fill it completely, mark it out_of_stock
-                p.setStatus(PrescriptionStatus.OUT_OF_STOCK);
             }
-        }
+        });
     }
 
 
@@ -277,4 +408,11 @@ public class ServiceUtility {
         );
         kafkaProducer.sendMessage("prescription_status_updates", event);
     }
+
+    // Status events for a group of prescriptions, written to the outbox together
+    public void publishStatusUpdates(List<ProducerEvent> events) {
+        if (!events.isEmpty()) {
+            kafkaProducer.sendMessages("prescription_status_updates", events);
+        }
+    }
 }
\ No newline at end of file
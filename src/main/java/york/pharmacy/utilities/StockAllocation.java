@@ -0,0 +1,53 @@
+package york.pharmacy.utilities;
+
+import lombok.Getter;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.prescriptions.dto.PendingPrescription;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * In-memory allocation of a stock level across pending prescriptions.
+ * Prescriptions are served first come, first served (in the order given, which callers keep by id).
+ * Each prescription that fits is covered and its pills are reserved; OUT_OF_STOCK ones become
+ * STOCK_RECEIVED. A prescription that doesn't fit becomes OUT_OF_STOCK. Allocation stops once
+ * the stock runs out, and the remaining prescriptions keep their status.
+ * The result only lists the prescriptions whose status actually changes.
+ */
+@Getter
+public class StockAllocation {
+
+    private final List<PendingPrescription> toStockReceived = new ArrayList<>();
+    private final List<PendingPrescription> toOutOfStock = new ArrayList<>();
+    private int remainingStock;
+
+    private StockAllocation(int stockQuantity) {
+        this.remainingStock = stockQuantity;
+    }
+
+    public static StockAllocation allocate(int stockQuantity, List<PendingPrescription> pendingPrescriptions) {
+        StockAllocation allocation = new StockAllocation(stockQuantity);
+        for (PendingPrescription p : pendingPrescriptions) {
+            // If no more stock is left, stop early
+            if (allocation.remainingStock <= 0) {
+                break;
+            }
+
+            if (p.getQuantity() <= allocation.remainingStock) {
+                if (p.getStatus() == PrescriptionStatus.OUT_OF_STOCK) {
+                    allocation.toStockReceived.add(p);
+                }
+                allocation.remainingStock -= p.getQuantity();
+            } else if (p.getStatus() != PrescriptionStatus.OUT_OF_STOCK) {
+                // Can't fill it completely, so mark it out of stock
+                allocation.toOutOfStock.add(p);
+            }
+        }
+        return allocation;
+    }
+
+    public boolean hasChanges() {
+        return !toStockReceived.isEmpty() || !toOutOfStock.isEmpty();
+    }
+}
@@ -0,0 +1,14 @@
+-- Creates the dedupe index the per-record Kafka listener claims prescription numbers in, on an existing
+-- Postgres database. Run it once before starting the new version (e.g. psql -f ingested-prescription-numbers.sql)
+-- unless SPRING_JPA_HIBERNATE_DDL_AUTO=update creates it. It is safe to run again.
+--
+-- Prescriptions stored before this version need no rows here: a claim also checks the prescription table.
+
+CREATE TABLE IF NOT EXISTS ingested_prescription_number (
+    prescription_number VARCHAR(255) PRIMARY KEY,
+    ingested_at         TIMESTAMP(6) WITH TIME ZONE NOT NULL
+);
+
+-- Used by the scheduled purge of old claims (pharmacy.kafka.dedupe.retention)
+CREATE INDEX IF NOT EXISTS idx_ingested_prescription_number_ingested_at
+    ON ingested_prescription_number (ingested_at);
@@ -0,0 +1,27 @@
+-- Fills medicine_demand from the prescriptions already in an existing Postgres database.
+-- Run it once after the new version has created the table (SPRING_JPA_HIBERNATE_DDL_AUTO=update) and
+-- before traffic reaches it, e.g. psql -f medicine-demand.sql. It overwrites every row, so it is safe to run again.
+
+CREATE TABLE IF NOT EXISTS medicine_demand (
+    medicine_id                BIGINT PRIMARY KEY,
+    new_quantity               BIGINT NOT NULL,
+    out_of_stock_quantity      BIGINT NOT NULL,
+    stock_received_quantity    BIGINT NOT NULL,
+    awaiting_shipment_quantity BIGINT NOT NULL
+);
+
+INSERT INTO medicine_demand
+    (medicine_id, new_quantity, out_of_stock_quantity, stock_received_quantity, awaiting_shipment_quantity)
+SELECT m.id,
+       COALESCE(SUM(p.quantity) FILTER (WHERE p.status = 'NEW'), 0),
+       COALESCE(SUM(p.quantity) FILTER (WHERE p.status = 'OUT_OF_STOCK'), 0),
+       COALESCE(SUM(p.quantity) FILTER (WHERE p.status = 'STOCK_RECEIVED'), 0),
+       COALESCE(SUM(p.quantity) FILTER (WHERE p.status = 'AWAITING_SHIPMENT'), 0)
+FROM medicine m
+LEFT JOIN prescription p ON p.medicine_id = m.id
+GROUP BY m.id
+ON CONFLICT (medicine_id) DO UPDATE SET
+    new_quantity               = EXCLUDED.new_quantity,
+    out_of_stock_quantity      = EXCLUDED.out_of_stock_quantity,
+    stock_received_quantity    = EXCLUDED.stock_received_quantity,
+    awaiting_shipment_quantity = EXCLUDED.awaiting_shipment_quantity;
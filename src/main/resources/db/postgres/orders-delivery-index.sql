@@ -0,0 +1,8 @@
+-- Adds the index behind the next-delivery lookup (OrderRepository.findFirstOrder...)
+-- and the dashboard's next delivery column to an existing Postgres database.
+-- Run it once before starting the new version (e.g. psql -f orders-delivery-index.sql). It is safe to run again.
+--
+-- CONCURRENTLY builds the index without blocking order writes, so psql must not wrap this file in a transaction.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_orders_inventory_status_delivery
+    ON orders (inventory_id, status, delivery_date);
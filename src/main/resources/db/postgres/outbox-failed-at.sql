@@ -0,0 +1,5 @@
+-- Adds the column the outbox relay marks unreadable rows with, on an existing Postgres database. Run it once
+-- before starting the new version (e.g. psql -f outbox-failed-at.sql) unless SPRING_JPA_HIBERNATE_DDL_AUTO=update
+-- adds it. It is safe to run again.
+
+ALTER TABLE outbox_event ADD COLUMN IF NOT EXISTS failed_at TIMESTAMP(6) WITH TIME ZONE;
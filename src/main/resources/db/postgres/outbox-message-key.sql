@@ -0,0 +1,7 @@
+-- Adds the Kafka key column to the outbox on an existing Postgres database. Run it once before starting
+-- the new version (e.g. psql -f outbox-message-key.sql) unless SPRING_JPA_HIBERNATE_DDL_AUTO=update adds it.
+-- It is safe to run again.
+--
+-- Unsent rows queued before this version keep a NULL key; the relay keys them from their payload.
+
+ALTER TABLE outbox_event ADD COLUMN IF NOT EXISTS message_key VARCHAR(255);
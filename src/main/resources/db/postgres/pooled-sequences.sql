@@ -0,0 +1,31 @@
+-- Moves an existing Postgres database from IDENTITY ids to the pooled sequences the entities now use.
+-- Run it once against the database BEFORE starting the new version (e.g. psql -f pooled-sequences.sql).
+-- It is safe to run again.
+--
+-- Hibernate's pooled optimizer treats each nextval() as the top of a block of 50 ids
+-- (nextval 150 hands out 101..150), so every sequence is set to continue at MAX(id) + 50.
+-- The IDENTITY defaults are dropped so only the sequences assign ids from now on.
+
+DO $$
+DECLARE
+    t RECORD;
+BEGIN
+    FOR t IN
+        SELECT * FROM (VALUES
+            ('medicine',     'medicine_seq'),
+            ('inventory',    'inventory_seq'),
+            ('orders',       'orders_seq'),
+            ('prescription', 'prescription_seq'),
+            ('outbox_event', 'outbox_event_seq')
+        ) AS v(table_name, sequence_name)
+    LOOP
+        EXECUTE format('CREATE SEQUENCE IF NOT EXISTS %I START WITH 1 INCREMENT BY 50', t.sequence_name);
+        EXECUTE format('ALTER SEQUENCE %I INCREMENT BY 50', t.sequence_name);
+
+        IF to_regclass(t.table_name) IS NOT NULL THEN
+            EXECUTE format('ALTER TABLE %I ALTER COLUMN id DROP IDENTITY IF EXISTS', t.table_name);
+            EXECUTE format('SELECT setval(%L, (SELECT COALESCE(MAX(id), 0) FROM %I) + 50, false)',
+                           t.sequence_name, t.table_name);
+        END IF;
+    END LOOP;
+END $$;
@@ -0,0 +1,15 @@
+-- Adds the indexes behind the prescription keyset pages (GET /api/prescriptions/page and
+-- /api/v2/prescriptions/page, see PrescriptionPageRepository) to an existing Postgres database.
+-- Run it once before starting the new version (e.g. psql -f prescription-page-indexes.sql). It is safe to run again.
+--
+-- CONCURRENTLY builds each index without blocking prescription writes, so psql must not wrap this file in a
+-- transaction. An interrupted build leaves an INVALID index behind; drop it and run the file again.
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_prescription_status_id
+    ON prescription (status, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_prescription_patient_id
+    ON prescription (patient_id, id);
+
+CREATE INDEX CONCURRENTLY IF NOT EXISTS idx_prescription_medicine_id
+    ON prescription (medicine_id, id);
@@ -0,0 +1,207 @@
+package york.pharmacy;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import york.pharmacy.demand.MedicineDemandService;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.inventory.InventoryService;
+import york.pharmacy.kafka.KafkaProducer;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineCache;
+import york.pharmacy.medicines.MedicineRepository;
+import york.pharmacy.orders.Order;
+import york.pharmacy.orders.OrderRepository;
+import york.pharmacy.orders.OrderService;
+import york.pharmacy.orders.OrderStatus;
+import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+import york.pharmacy.prescriptions.PrescriptionService;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.prescriptions.dto.PrescriptionResponse;
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
+import york.pharmacy.utilities.OptimisticRetry;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Every read use case issues a fixed number of SQL statements however many rows it returns.
+// The tests run without a surrounding transaction and serialize the responses afterwards (like the
+// controllers do with open-in-view off), so a lazy association a read path forgot to fetch fails here
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({PrescriptionService.class, OrderService.class, InventoryService.class, ServiceUtility.class,
+        MedicineCache.class, MedicineDemandService.class})
+class ReadPathStatementCountTest {
+
+    private static final int MEDICINES = 5;
+
+    @MockitoBean
+    private KafkaProducer kafkaProducer;
+
+    @MockitoBean
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private PrescriptionService prescriptionService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @BeforeEach
+    void seed() {
+        if (medicineRepository.count() > 0) {
+            return;
+        }
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> {
+            for (int i = 0; i < MEDICINES; i++) {
+                Medicine medicine = medicineRepository.save(new Medicine("Fetch Plan " + i, "FP-" + i));
+                Inventory inventory = inventoryRepository.save(new Inventory(null, medicine, 100, null));
+                Order order = orderRepository.save(new Order(null, inventory, 50,
+                        LocalDate.now().plusDays(3 + i), OrderStatus.ORDERED, null, null));
+                for (int n = 0; n < 4; n++) {
+                    prescriptionRepository.save(new Prescription(null, "PID-" + i, medicine, "RX-FP-" + i + "-" + n,
+                            10, "Take once daily", n % 2 == 0 ? PrescriptionStatus.NEW : PrescriptionStatus.AWAITING_SHIPMENT,
+                            n % 2 == 0 ? null : order, null));
+                }
+            }
+        });
+    }
+
+    @Test
+    @DisplayName("Prescription list, active list, page, detail and export are one statement each")
+    void prescriptionReads() {
+        Long id = prescriptionRepository.findAll().get(0).getId();
+
+        assertEquals(MEDICINES * 4, assertStatements(1, prescriptionService::getAllPrescriptions).size());
+        assertEquals(MEDICINES * 4, assertStatements(1, prescriptionService::getActivePrescriptions).size());
+        assertEquals(10, assertStatements(1, () -> prescriptionService.getPrescriptionPage(null, 10, null, null, null))
+                .getItems().size());
+        assertNotNull(assertStatements(1, () -> prescriptionService.getPrescriptionById(id)).getMedicine().getCode());
+        assertEquals(MEDICINES * 4, assertStatements(1, () -> {
+            List<PrescriptionResponse> exported = new ArrayList<>();
+            prescriptionService.exportPrescriptions(exported::add);
+            return exported;
+        }).size());
+    }
+
+    @Test
+    @DisplayName("Filtered pages only apply the filters they are given")
+    void filteredPrescriptionPages() {
+        List<PrescriptionResponse> items = assertStatements(1,
+                () -> prescriptionService.getPrescriptionPage(null, 10, null, "PID-2", null)).getItems();
+        assertEquals(4, items.size());
+        assertTrue(items.stream().allMatch(item -> "PID-2".equals(item.getPatientId())));
+
+        // A cold catalog cache costs one medicine lookup before the page query
+        List<PrescriptionSummary> summaries = prescriptionService
+                .getPrescriptionSummaryPage(null, 10, PrescriptionStatus.NEW, null, "FP-3").getItems();
+        assertEquals(2, summaries.size());
+        assertTrue(summaries.stream().allMatch(summary -> "FP-3".equals(summary.getMedicineCode())
+                && summary.getStatus() == PrescriptionStatus.NEW));
+
+        assertTrue(prescriptionService.getPrescriptionPage(null, 10, null, null, "NO-SUCH-CODE").getItems().isEmpty());
+    }
+
+    @Test
+    @DisplayName("v2 prescription and order reads are single projection queries")
+    void summaryReads() {
+        Long prescriptionId = prescriptionRepository.findAll().get(0).getId();
+        Long orderId = orderRepository.findAll().get(0).getId();
+
+        assertEquals(10, assertStatements(1, () -> prescriptionService.getPrescriptionSummaryPage(null, 10, null, null, null))
+                .getItems().size());
+        assertNotNull(assertStatements(1, () -> prescriptionService.getPrescriptionSummaryById(prescriptionId)).getMedicineCode());
+        assertEquals(MEDICINES, assertStatements(1, () -> orderService.getOrderSummaryPage(null, null)).getItems().size());
+        assertNotNull(assertStatements(1, () -> orderService.getOrderSummaryById(orderId)).getMedicineCode());
+    }
+
+    @Test
+    @DisplayName("Order list, detail and export fetch inventory and medicine in the same statement")
+    void orderReads() {
+        Long id = orderRepository.findAll().get(0).getId();
+
+        List<OrderResponse> orders = assertStatements(1, orderService::getAllOrders);
+        assertEquals(MEDICINES, orders.size());
+        assertNotNull(orders.get(0).getInventory().getMedicine().getCode());
+        assertNotNull(assertStatements(1, () -> orderService.getOrderById(id)).getInventory().getMedicine().getCode());
+        assertEquals(MEDICINES, assertStatements(1, () -> {
+            List<OrderResponse> exported = new ArrayList<>();
+            orderService.exportOrders(exported::add);
+            return exported;
+        }).size());
+    }
+
+    @Test
+    @DisplayName("Inventory dashboard is one statement; detail is inventory + demand + next delivery")
+    void inventoryReads() {
+        Long id = inventoryRepository.findAll().get(0).getId();
+
+        assertEquals(MEDICINES, assertStatements(1, inventoryService::getAllInventories).size());
+        assertNotNull(assertStatements(3, () -> inventoryService.getInventoryById(id)).getDeliveryDate());
+    }
+
+    // Runs the read and serializes its result to JSON, asserting how many statements that took in total
+    private <T> T assertStatements(long expected, Supplier<T> read) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        T result = read.get();
+        try {
+            objectMapper.writeValueAsString(result);
+        } catch (JsonProcessingException ex) {
+            fail("Response could not be serialized: " + ex.getMessage());
+        }
+        assertEquals(expected, statistics.getPrepareStatementCount());
+        return result;
+    }
+}
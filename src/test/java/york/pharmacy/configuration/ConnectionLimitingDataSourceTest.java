@@ -0,0 +1,71 @@
+package york.pharmacy.configuration;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ConnectionLimitingDataSourceTest {
+
+    @Mock
+    private DataSource target;
+
+    @Mock
+    private Connection connection;
+
+    @Test
+    void closingAConnectionReturnsItsPermit() throws SQLException {
+        when(target.getConnection()).thenReturn(connection);
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(target, 2, Duration.ofMillis(50));
+
+        Connection first = dataSource.getConnection();
+        dataSource.getConnection();
+        assertEquals(2, dataSource.getInUse());
+
+        first.close();
+        first.close();
+
+        // Closing twice only frees one permit
+        assertEquals(1, dataSource.getInUse());
+        verify(connection, times(2)).close();
+    }
+
+    @Test
+    void waitsThenFailsWhenAllPermitsAreTaken() throws SQLException {
+        when(target.getConnection()).thenReturn(connection);
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(target, 1, Duration.ofMillis(50));
+        dataSource.getConnection();
+
+        assertThrows(SQLTransientConnectionException.class, dataSource::getConnection);
+        verify(target, times(1)).getConnection();
+    }
+
+    @Test
+    void permitIsReturnedWhenThePoolFails() throws SQLException {
+        when(target.getConnection()).thenThrow(new SQLException("pool exhausted"));
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(target, 1, Duration.ofMillis(50));
+
+        assertThrows(SQLException.class, dataSource::getConnection);
+
+        assertEquals(0, dataSource.getInUse());
+    }
+
+    @Test
+    void callsAreDelegatedToThePooledConnection() throws SQLException {
+        when(target.getConnection()).thenReturn(connection);
+        when(connection.getAutoCommit()).thenReturn(false);
+        ConnectionLimitingDataSource dataSource = new ConnectionLimitingDataSource(target, 1, Duration.ofMillis(50));
+
+        assertFalse(dataSource.getConnection().getAutoCommit());
+    }
+}
@@ -0,0 +1,82 @@
+package york.pharmacy.demand;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.data.domain.PageRequest;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MedicineDemandMetricsTest {
+
+    @Mock
+    private MedicineDemandRepository medicineDemandRepository;
+
+    @Mock
+    private ObjectProvider<MedicineDemandReconciler> reconcilerProvider;
+
+    @Mock
+    private MedicineDemandReconciler reconciler;
+
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void refreshPublishesTotalsAndTopMedicines() {
+        doAnswer(invocation -> {
+            invocation.<Consumer<MedicineDemandReconciler>>getArgument(0).accept(reconciler);
+            return null;
+        }).when(reconcilerProvider).ifAvailable(any());
+        when(reconciler.getLastDriftCount()).thenReturn(3);
+        when(medicineDemandRepository.sumPendingQuantity()).thenReturn(500L);
+        when(medicineDemandRepository.findTopPending(PageRequest.of(0, 2))).thenReturn(List.of(
+                pending("HOT-001", 300L),
+                pending("HOT-002", 150L)));
+
+        new MedicineDemandMetrics(medicineDemandRepository, reconcilerProvider, meterRegistry, 2).refresh();
+
+        assertEquals(500, meterRegistry.get("pharmacy.demand.pending").gauge().value());
+        assertEquals(300, meterRegistry.get("pharmacy.demand.pending.medicine").tag("medicine", "HOT-001").gauge().value());
+        assertEquals(150, meterRegistry.get("pharmacy.demand.pending.medicine").tag("medicine", "HOT-002").gauge().value());
+        assertEquals(3, meterRegistry.get("pharmacy.demand.reconcile.drift").gauge().value());
+    }
+
+    @Test
+    void medicinesThatLeaveTheTopListAreDropped() {
+        when(medicineDemandRepository.findTopPending(PageRequest.of(0, 20)))
+                .thenReturn(List.of(pending("HOT-001", 300L)))
+                .thenReturn(List.of(pending("HOT-002", 100L)));
+        MedicineDemandMetrics metrics = new MedicineDemandMetrics(medicineDemandRepository, reconcilerProvider, meterRegistry, 20);
+
+        metrics.refresh();
+        metrics.refresh();
+
+        assertNull(meterRegistry.find("pharmacy.demand.pending.medicine").tag("medicine", "HOT-001").gauge());
+        assertEquals(100, meterRegistry.get("pharmacy.demand.pending.medicine").tag("medicine", "HOT-002").gauge().value());
+        assertNull(meterRegistry.find("pharmacy.demand.reconcile.drift").gauge());
+    }
+
+    private static MedicinePendingQuantity pending(String code, Long quantity) {
+        return new MedicinePendingQuantity() {
+            @Override
+            public String getMedicineCode() {
+                return code;
+            }
+
+            @Override
+            public Long getPendingQuantity() {
+                return quantity;
+            }
+        };
+    }
+}
@@ -0,0 +1,126 @@
+package york.pharmacy.demand;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import york.pharmacy.prescriptions.MedicineStatusQuantity;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MedicineDemandReconcilerTest {
+
+    @Mock
+    private MedicineDemandRepository medicineDemandRepository;
+
+    @Mock
+    private PrescriptionRepository prescriptionRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        when(transactionManager.getTransaction(any())).thenReturn(new SimpleTransactionStatus());
+    }
+
+    @Test
+    void matchingDemandReportsNoDrift() {
+        when(prescriptionRepository.sumQuantityByMedicineAndStatus(anyList())).thenReturn(List.of(
+                quantity(1L, PrescriptionStatus.NEW, 30L),
+                quantity(1L, PrescriptionStatus.STOCK_RECEIVED, 20L)));
+        when(medicineDemandRepository.findAll()).thenReturn(List.of(
+                new MedicineDemand(1L, 30, 0, 20, 0),
+                new MedicineDemand(2L)));
+
+        int drift = reconciler(false).reconcile();
+
+        assertEquals(0, drift);
+        assertEquals(0, driftCounted());
+        verify(medicineDemandRepository, never()).saveAll(anyList());
+    }
+
+    @Test
+    void driftIsReportedWithoutRepairByDefault() {
+        // Medicine 1's counter is behind and medicine 2 has no row at all
+        when(prescriptionRepository.sumQuantityByMedicineAndStatus(anyList())).thenReturn(List.of(
+                quantity(1L, PrescriptionStatus.NEW, 50L),
+                quantity(2L, PrescriptionStatus.OUT_OF_STOCK, 10L)));
+        when(medicineDemandRepository.findAll()).thenReturn(List.of(new MedicineDemand(1L, 30, 0, 0, 0)));
+
+        MedicineDemandReconciler reconciler = reconciler(false);
+        int drift = reconciler.reconcile();
+
+        assertEquals(2, drift);
+        assertEquals(2, reconciler.getLastDriftCount());
+        assertEquals(2, driftCounted());
+        verify(medicineDemandRepository, never()).saveAll(anyList());
+
+        // Read-only snapshot of both tables
+        ArgumentCaptor<TransactionDefinition> definition = ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertEquals(TransactionDefinition.ISOLATION_REPEATABLE_READ, definition.getValue().getIsolationLevel());
+        assertTrue(definition.getValue().isReadOnly());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void repairOverwritesDriftedRows() {
+        when(prescriptionRepository.sumQuantityByMedicineAndStatus(anyList())).thenReturn(List.of(
+                quantity(1L, PrescriptionStatus.AWAITING_SHIPMENT, 40L)));
+        when(medicineDemandRepository.findAll()).thenReturn(List.of(
+                new MedicineDemand(1L, 0, 0, 0, 40),
+                new MedicineDemand(3L, 15, 0, 0, 0)));
+
+        int drift = reconciler(true).reconcile();
+
+        assertEquals(1, drift);
+        ArgumentCaptor<List<MedicineDemand>> saved = ArgumentCaptor.forClass(List.class);
+        verify(medicineDemandRepository).saveAll(saved.capture());
+        assertEquals(List.of(new MedicineDemand(3L)), saved.getValue());
+    }
+
+    private MedicineDemandReconciler reconciler(boolean repair) {
+        return new MedicineDemandReconciler(medicineDemandRepository, prescriptionRepository, transactionManager, meterRegistry, repair);
+    }
+
+    private double driftCounted() {
+        return meterRegistry.get("pharmacy.demand.drift").counter().count();
+    }
+
+    private static MedicineStatusQuantity quantity(Long medicineId, PrescriptionStatus status, Long quantity) {
+        return new MedicineStatusQuantity() {
+            @Override
+            public Long getMedicineId() {
+                return medicineId;
+            }
+
+            @Override
+            public PrescriptionStatus getStatus() {
+                return status;
+            }
+
+            @Override
+            public Long getQuantity() {
+                return quantity;
+            }
+        };
+    }
+}
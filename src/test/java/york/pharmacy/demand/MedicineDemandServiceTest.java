@@ -0,0 +1,107 @@
+package york.pharmacy.demand;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class MedicineDemandServiceTest {
+
+    @Mock
+    private MedicineDemandRepository medicineDemandRepository;
+
+    @InjectMocks
+    private MedicineDemandService underTest;
+
+    @Test
+    void recordTransition_movesQuantityBetweenBuckets() {
+        when(medicineDemandRepository.applyDelta(1L, -30, 30, 0, 0)).thenReturn(1);
+
+        underTest.recordTransition(1L, PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK, 30);
+
+        verify(medicineDemandRepository, never()).insertIfMissing(anyLong());
+    }
+
+    @Test
+    void recordTransition_newPrescriptionOnlyAdds() {
+        when(medicineDemandRepository.applyDelta(1L, 30, 0, 0, 0)).thenReturn(1);
+
+        underTest.recordTransition(1L, null, PrescriptionStatus.NEW, 30);
+
+        verify(medicineDemandRepository).applyDelta(1L, 30, 0, 0, 0);
+    }
+
+    @Test
+    void recordTransition_untrackedStatusesAreNotWritten() {
+        underTest.recordTransition(1L, PrescriptionStatus.FILLED, PrescriptionStatus.PICKED_UP, 30);
+        underTest.recordTransition(1L, PrescriptionStatus.NEW, PrescriptionStatus.NEW, 30);
+
+        verifyNoInteractions(medicineDemandRepository);
+    }
+
+    @Test
+    void apply_createsTheRowForAMedicineWithoutOne() {
+        when(medicineDemandRepository.applyDelta(7L, 30, 0, 0, 0)).thenReturn(0, 1);
+
+        underTest.recordTransition(7L, null, PrescriptionStatus.NEW, 30);
+
+        InOrder inOrder = inOrder(medicineDemandRepository);
+        inOrder.verify(medicineDemandRepository).applyDelta(7L, 30, 0, 0, 0);
+        inOrder.verify(medicineDemandRepository).insertIfMissing(7L);
+        inOrder.verify(medicineDemandRepository).applyDelta(7L, 30, 0, 0, 0);
+    }
+
+    @Test
+    void apply_oneUpdatePerMedicineInIdOrder() {
+        when(medicineDemandRepository.applyDelta(anyLong(), anyLong(), anyLong(), anyLong(), anyLong())).thenReturn(1);
+        DemandChange change = new DemandChange()
+                .move(2L, null, PrescriptionStatus.NEW, 10)
+                .move(1L, PrescriptionStatus.NEW, PrescriptionStatus.AWAITING_SHIPMENT, 20)
+                .move(2L, null, PrescriptionStatus.OUT_OF_STOCK, 5)
+                .move(1L, PrescriptionStatus.AWAITING_SHIPMENT, PrescriptionStatus.STOCK_RECEIVED, 20)
+                .move(3L, PrescriptionStatus.NEW, PrescriptionStatus.CANCELLED, 15)
+                .move(3L, null, PrescriptionStatus.NEW, 15);
+
+        underTest.apply(change);
+
+        // Medicine 3's changes cancel out, so it isn't written at all
+        InOrder inOrder = inOrder(medicineDemandRepository);
+        inOrder.verify(medicineDemandRepository).applyDelta(1L, -20, 0, 20, 0);
+        inOrder.verify(medicineDemandRepository).applyDelta(2L, 10, 5, 0, 0);
+        verifyNoMoreInteractions(medicineDemandRepository);
+    }
+
+    @Test
+    void getDemand_missingRowIsEmpty() {
+        when(medicineDemandRepository.findCurrent(List.of(5L))).thenReturn(List.of());
+
+        MedicineDemand demand = underTest.getDemand(5L);
+
+        assertEquals(new MedicineDemand(5L), demand);
+        assertEquals(0, demand.getClaimedQuantity());
+    }
+
+    @Test
+    void getDemands_fillsInMissingMedicines() {
+        when(medicineDemandRepository.findCurrent(Set.of(1L, 2L)))
+                .thenReturn(List.of(new MedicineDemand(1L, 20, 10, 5, 40)));
+
+        Map<Long, MedicineDemand> demands = underTest.getDemands(Set.of(1L, 2L));
+
+        assertEquals(30, demands.get(1L).getPendingQuantity());
+        assertEquals(35, demands.get(1L).getClaimedQuantity());
+        assertEquals(new MedicineDemand(2L), demands.get(2L));
+    }
+}
@@ -8,6 +8,7 @@ import org.springframework.http.ResponseEntity;
 import org.springframework.validation.BindException;
 import org.springframework.validation.FieldError;
 import org.springframework.web.bind.MethodArgumentNotValidException;
+import org.springframework.web.method.annotation.MethodArgumentTypeMismatchException;
 
 import java.util.Collections;
 
@@ -56,6 +57,22 @@ class GlobalExceptionHandlerTest {
         assertEquals("Invalid argument", ((java.util.Map<?, ?>) response.getBody()).get("message"));
     }
 
+    /** Test: handleTypeMismatch */
+    @Test
+    void testHandleTypeMismatch() {
+        // Arrange
+        MethodArgumentTypeMismatchException ex =
+                new MethodArgumentTypeMismatchException("SHIPPED", Enum.class, "status", null, null);
+
+        // Act
+        ResponseEntity<Object> response = globalExceptionHandler.handleTypeMismatch(ex);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Invalid value for parameter 'status'", ((java.util.Map<?, ?>) response.getBody()).get("message"));
+        assertEquals("SHIPPED", ((java.util.Map<?, ?>) response.getBody()).get("details"));
+    }
+
     /** Test: handleResourceNotFound */
     @Test
     void testHandleResourceNotFound() {
@@ -0,0 +1,160 @@
+package york.pharmacy.inventory;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import york.pharmacy.demand.MedicineDemand;
+import york.pharmacy.inventory.dto.InventoryResponse;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.orders.Order;
+import york.pharmacy.orders.OrderRepository;
+import york.pharmacy.orders.OrderStatus;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compares the old per-row dashboard read (findAll + 2 lookups per inventory) with the aggregate query
+// over inventory and medicine_demand.
+// Run with: gradlew benchmark --tests "*InventoryDashboardBenchmarkTest"
+@Tag("benchmark")
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+class InventoryDashboardBenchmarkTest {
+
+    private static final List<PrescriptionStatus> PENDING_STATUSES =
+            List.of(PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK);
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @ParameterizedTest(name = "{0} SKUs")
+    @ValueSource(ints = {100, 1_000, 5_000})
+    void dashboardQueryCountAndLatency(int skuCount) {
+        seed(skuCount);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+
+        // Warm up both paths once so the comparison isn't dominated by query plan compilation
+        measure(statistics, this::legacyDashboard);
+        measure(statistics, this::aggregateDashboard);
+
+        Measurement legacy = measure(statistics, this::legacyDashboard);
+        Measurement aggregate = measure(statistics, this::aggregateDashboard);
+
+        System.out.printf("%,6d SKUs | legacy: %,6d statements %,9.1f ms | aggregate: %,2d statements %,9.1f ms%n",
+                skuCount, legacy.statements, legacy.millis, aggregate.statements, aggregate.millis);
+
+        assertEquals(legacy.responses, aggregate.responses, "Both read paths must return the same dashboard");
+        assertTrue(legacy.statements >= 2L * skuCount + 1, "Legacy path issues at least two lookups per row");
+        assertEquals(1, aggregate.statements);
+    }
+
+    // The read path InventoryService.getAllInventories used before the aggregate query
+    private List<InventoryResponse> legacyDashboard() {
+        List<InventoryResponse> responses = new ArrayList<>();
+        for (Inventory entity : inventoryRepository.findAll()) {
+            int neededPills = prescriptionRepository.findTotalQuantityByMedicineIdAndStatus(
+                    entity.getMedicine().getId(), PENDING_STATUSES);
+            Optional<Order> closestOrder = orderRepository.findFirstOrderByInventoryIdAndStatusOrderedAndFutureDeliveryDate(
+                    LocalDate.now(), entity.getId());
+
+            InventoryResponse response = InventoryMapper.toResponse(entity, closestOrder);
+            response.setMinimumOrderCount(Math.max(0, neededPills - entity.getStockQuantity()));
+            response.setSufficientStock(entity.getStockQuantity() >= neededPills);
+            responses.add(response);
+        }
+        return responses;
+    }
+
+    private List<InventoryResponse> aggregateDashboard() {
+        return inventoryRepository.findDashboardRows(LocalDate.now())
+                .stream()
+                .map(InventoryMapper::toResponse)
+                .toList();
+    }
+
+    private Measurement measure(Statistics statistics, Supplier<List<InventoryResponse>> dashboard) {
+        entityManager.clear();
+        statistics.clear();
+        long start = System.nanoTime();
+        List<InventoryResponse> responses = dashboard.get();
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        return new Measurement(responses, statistics.getPrepareStatementCount(), millis);
+    }
+
+    private void seed(int skuCount) {
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < skuCount; i++) {
+            Medicine medicine = entityManager.persist(new Medicine("Bench Medicine " + i, "BEN-" + skuCount + "-" + i));
+            Inventory inventory = entityManager.persist(Inventory.builder()
+                    .medicine(medicine)
+                    .stockQuantity(i % 200)
+                    .build());
+
+            // Two pending prescriptions and one that no longer counts toward demand
+            entityManager.persist(prescription(medicine, skuCount, i, 0, PrescriptionStatus.NEW));
+            entityManager.persist(prescription(medicine, skuCount, i, 1, PrescriptionStatus.OUT_OF_STOCK));
+            entityManager.persist(prescription(medicine, skuCount, i, 2, PrescriptionStatus.FILLED));
+            // The demand row the services would have maintained for those prescriptions
+            entityManager.persist(new MedicineDemand(medicine.getId(), 30, 50, 0, 0));
+
+            // Every other SKU has deliveries on order; the nearest one should win
+            if (i % 2 == 0) {
+                entityManager.persist(order(inventory, today.plusDays(10)));
+                entityManager.persist(order(inventory, today.plusDays(3 + i % 5)));
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    private Prescription prescription(Medicine medicine, int skuCount, int sku, int n, PrescriptionStatus status) {
+        Prescription prescription = new Prescription();
+        prescription.setPatientId("PID-" + sku);
+        prescription.setMedicine(medicine);
+        prescription.setPrescriptionNumber("RX-" + skuCount + "-" + sku + "-" + n);
+        prescription.setQuantity(30 + n * 20);
+        prescription.setInstructions("Take once daily");
+        prescription.setStatus(status);
+        return prescription;
+    }
+
+    private Order order(Inventory inventory, LocalDate deliveryDate) {
+        Order order = new Order();
+        order.setInventory(inventory);
+        order.setQuantity(100);
+        order.setDeliveryDate(deliveryDate);
+        order.setStatus(OrderStatus.ORDERED);
+        return order;
+    }
+
+    private record Measurement(List<InventoryResponse> responses, long statements, double millis) {
+    }
+}
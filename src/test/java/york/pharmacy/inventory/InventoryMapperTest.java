@@ -8,6 +8,7 @@ import york.pharmacy.inventory.dto.InventoryResponse;
 import york.pharmacy.medicines.Medicine;
 
 import java.time.Instant;
+import java.time.LocalDate;
 
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -86,4 +87,27 @@ class InventoryMapperTest {
         assertEquals(2L, response.getMedicine().getId());
         assertEquals(50, response.getStockQuantity());
     }
+
+    @Test
+    @DisplayName("Should map a dashboard row to InventoryResponse with derived stock fields")
+    void testToResponseFromDashboardRow() {
+        LocalDate deliveryDate = LocalDate.now().plusDays(3);
+        InventoryDashboardRow row = new InventoryDashboardRow() {
+            public Long getId() { return 1L; }
+            public Medicine getMedicine() { return medicine; }
+            public Integer getStockQuantity() { return 50; }
+            public Long getPendingQuantity() { return 80L; }
+            public LocalDate getDeliveryDate() { return deliveryDate; }
+        };
+
+        InventoryResponse response = InventoryMapper.toResponse(row);
+
+        assertNotNull(response);
+        assertEquals(1L, response.getId());
+        assertEquals(2L, response.getMedicine().getId());
+        assertEquals(50, response.getStockQuantity());
+        assertFalse(response.isSufficientStock());
+        assertEquals(30, response.getMinimumOrderCount());
+        assertEquals(deliveryDate, response.getDeliveryDate());
+    }
 }
\ No newline at end of file
@@ -16,16 +16,20 @@ import york.pharmacy.medicines.Medicine;
 import york.pharmacy.medicines.MedicineService;
 import york.pharmacy.orders.OrderService;
 import york.pharmacy.prescriptions.PrescriptionService;
+import york.pharmacy.utilities.OptimisticRetry;
 import york.pharmacy.utilities.ServiceUtility;
 
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -36,6 +40,9 @@ class InventoryServiceTest {
     @Mock
     private ServiceUtility serviceUtility;
 
+    @Mock
+    private OptimisticRetry optimisticRetry;
+
     @InjectMocks
     private InventoryService inventoryService;
 
@@ -50,6 +57,10 @@ class InventoryServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Stock changes run straight through, as a first attempt without a conflict would
+        lenient().when(optimisticRetry.execute(anyString(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
+
         // Initialize test data
         testId = 1L;
         testMedicineId = 2L;
@@ -161,24 +172,12 @@ class InventoryServiceTest {
     @DisplayName("Should calculate and return sufficientStock and minimumOrderCount in getAllInventories")
     void testGetAllInventories() {
         // Given
-        int neededPills1 = 15; // Less than stockQuantity1
-        int neededPills2 = 50; // Greater than stockQuantity2
-
-        Inventory inventory1 = Inventory.builder()
-                .id(1L)
-                .medicine(medicine)
-                .stockQuantity(20) // Sufficient stock
-                .build();
-
-        Inventory inventory2 = Inventory.builder()
-                .id(2L)
-                .medicine(medicine)
-                .stockQuantity(40) // Insufficient stock
-                .build();
+        LocalDate deliveryDate = LocalDate.now().plusDays(5);
+        InventoryDashboardRow row1 = dashboardRow(1L, 20, 15L, null);         // Sufficient stock
+        InventoryDashboardRow row2 = dashboardRow(2L, 40, 50L, deliveryDate); // Insufficient stock
 
-        when(inventoryRepository.findAll()).thenReturn(Arrays.asList(inventory1, inventory2));
-        when(serviceUtility.minOrderCount(medicine.getId()))
-                .thenReturn(neededPills1, neededPills2); // Different required pills for each inventory
+        when(inventoryRepository.findDashboardRows(any(LocalDate.class)))
+                .thenReturn(Arrays.asList(row1, row2));
 
         // When
         var results = inventoryService.getAllInventories();
@@ -193,6 +192,8 @@ class InventoryServiceTest {
                 "Expected sufficientStock to be true for inventory1");
         assertEquals(0, response1.getMinimumOrderCount(),
                 "Expected minimumOrderCount to be 0 for inventory1");
+        assertNull(response1.getDeliveryDate(),
+                "Expected no delivery date for inventory1");
 
         InventoryResponse response2 = results.get(1);
         assertEquals(2L, response2.getId(), "Expected ID to match inventory2");
@@ -200,10 +201,13 @@ class InventoryServiceTest {
                 "Expected sufficientStock to be false for inventory2");
         assertEquals(10, response2.getMinimumOrderCount(),
                 "Expected minimumOrderCount to be 10 for inventory2");
+        assertEquals(deliveryDate, response2.getDeliveryDate(),
+                "Expected the closest delivery date for inventory2");
 
-        // Verify repository and service calls
-        verify(inventoryRepository, times(1)).findAll();
-        verify(serviceUtility, times(2)).minOrderCount(medicine.getId());
+        // One aggregate query, no per-row lookups
+        verify(inventoryRepository, times(1)).findDashboardRows(any(LocalDate.class));
+        verify(inventoryRepository, never()).findAll();
+        verifyNoInteractions(serviceUtility);
     }
 
     @Test
@@ -386,16 +390,14 @@ class InventoryServiceTest {
     void testAdjustStockQuantityPositive() {
         // Given
         int adjustment = 5;
-        Inventory adjustedInventory = Inventory.builder()
+        InventoryResponse adjustedResponse = InventoryResponse.builder()
                 .id(testId)
                 .medicine(medicine)
                 .stockQuantity(testStockQuantity + adjustment)
                 .build();
 
-        when(inventoryRepository.findById(testId))
-                .thenReturn(Optional.of(testInventory));
-        when(inventoryRepository.save(any(Inventory.class)))
-                .thenReturn(adjustedInventory);
+        when(serviceUtility.adjustStockQuantity(testId, adjustment))
+                .thenReturn(adjustedResponse);
 
         // When
         InventoryResponse result = inventoryService.adjustStockQuantity(testId, adjustment);
@@ -403,8 +405,9 @@ class InventoryServiceTest {
         // Then
         assertNotNull(result);
         assertEquals(testStockQuantity + adjustment, result.getStockQuantity());
-        verify(inventoryRepository).findById(testId);
-        verify(inventoryRepository).save(any(Inventory.class));
+        verify(serviceUtility).adjustStockQuantity(testId, adjustment);
+        verify(serviceUtility).updatePrescriptionsWithNewStock(testStockQuantity + adjustment, testMedicineId);
+        verify(inventoryRepository, never()).save(any(Inventory.class));
     }
 
     @Test
@@ -412,16 +415,14 @@ class InventoryServiceTest {
     void testAdjustStockQuantityNegative() {
         // Given
         int adjustment = -3;
-        Inventory adjustedInventory = Inventory.builder()
+        InventoryResponse adjustedResponse = InventoryResponse.builder()
                 .id(testId)
                 .medicine(medicine)
                 .stockQuantity(testStockQuantity + adjustment)
                 .build();
 
-        when(inventoryRepository.findById(testId))
-                .thenReturn(Optional.of(testInventory));
-        when(inventoryRepository.save(any(Inventory.class)))
-                .thenReturn(adjustedInventory);
+        when(serviceUtility.adjustStockQuantity(testId, adjustment))
+                .thenReturn(adjustedResponse);
 
         // When
         InventoryResponse result = inventoryService.adjustStockQuantity(testId, adjustment);
@@ -429,8 +430,8 @@ class InventoryServiceTest {
         // Then
         assertNotNull(result);
         assertEquals(testStockQuantity + adjustment, result.getStockQuantity());
-        verify(inventoryRepository).findById(testId);
-        verify(inventoryRepository).save(any(Inventory.class));
+        verify(serviceUtility).adjustStockQuantity(testId, adjustment);
+        verify(inventoryRepository, never()).save(any(Inventory.class));
     }
 
     @Test
@@ -438,15 +439,15 @@ class InventoryServiceTest {
     void testAdjustStockQuantityBelowZero() {
         // Given
         int adjustment = -15; // More than current stock
-        when(inventoryRepository.findById(testId))
-                .thenReturn(Optional.of(testInventory));
+        when(serviceUtility.adjustStockQuantity(testId, adjustment))
+                .thenThrow(new IllegalArgumentException("Cannot reduce stock below 0"));
 
         // When/Then
         IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
                 () -> inventoryService.adjustStockQuantity(testId, adjustment));
 
         assertEquals("Cannot reduce stock below 0", ex.getMessage());
-        verify(inventoryRepository).findById(testId);
+        verify(serviceUtility, never()).updatePrescriptionsWithNewStock(anyInt(), anyLong());
         verify(inventoryRepository, never()).save(any(Inventory.class));
     }
 
@@ -489,4 +490,14 @@ class InventoryServiceTest {
         verify(inventoryRepository, times(1)).saveAll(anyList());
     }
 
+    private InventoryDashboardRow dashboardRow(Long id, int stockQuantity, Long pendingQuantity, LocalDate deliveryDate) {
+        return new InventoryDashboardRow() {
+            public Long getId() { return id; }
+            public Medicine getMedicine() { return medicine; }
+            public Integer getStockQuantity() { return stockQuantity; }
+            public Long getPendingQuantity() { return pendingQuantity; }
+            public LocalDate getDeliveryDate() { return deliveryDate; }
+        };
+    }
+
 }
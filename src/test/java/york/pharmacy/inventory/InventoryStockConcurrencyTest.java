@@ -0,0 +1,129 @@
+package york.pharmacy.inventory;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Hammers a single SKU from many threads through the atomic conditional UPDATE.
+// Runs outside a test transaction so every adjustment commits on its own, like concurrent fills do.
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.datasource.url=jdbc:h2:mem:stock-concurrency;MODE=PostgreSQL;DATABASE_TO_UPPER=false;LOCK_TIMEOUT=10000"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+class InventoryStockConcurrencyTest {
+
+    private static final int THREADS = 64;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Test
+    @DisplayName("Concurrent decrements never lose updates and never take stock below 0")
+    void concurrentDecrementsStopAtZero() throws Exception {
+        int initialStock = 500;
+        int decrementsPerThread = 10; // 640 attempts against 500 pills
+        Long inventoryId = createInventory("CON-001", initialStock);
+
+        AtomicInteger applied = new AtomicInteger();
+        runConcurrently(() -> {
+            for (int i = 0; i < decrementsPerThread; i++) {
+                applied.addAndGet(inventoryRepository.adjustStockQuantity(inventoryId, -1));
+            }
+        });
+
+        assertEquals(initialStock, applied.get(), "Exactly the available pills should be taken");
+        assertEquals(0, inventoryRepository.findById(inventoryId).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    @DisplayName("Concurrent fills addressed by medicine keep an exact count")
+    void concurrentFillsByMedicineKeepExactCount() throws Exception {
+        int initialStock = 10_000;
+        int fillsPerThread = 25;
+        int pillsPerFill = 3;
+        Medicine medicine = medicineRepository.save(new Medicine("Concurrency Caps", "CON-002"));
+        Long inventoryId = inventoryRepository.save(Inventory.builder()
+                .medicine(medicine)
+                .stockQuantity(initialStock)
+                .build()).getId();
+
+        runConcurrently(() -> {
+            for (int i = 0; i < fillsPerThread; i++) {
+                assertEquals(1, inventoryRepository.adjustStockQuantityByMedicineId(medicine.getId(), -pillsPerFill));
+            }
+        });
+
+        int expected = initialStock - THREADS * fillsPerThread * pillsPerFill;
+        assertEquals(expected, inventoryRepository.findById(inventoryId).orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    @DisplayName("Concurrent restocks and fills net out exactly")
+    void concurrentMixedAdjustmentsNetOut() throws Exception {
+        int initialStock = 1_000;
+        Long inventoryId = createInventory("CON-003", initialStock);
+
+        AtomicInteger thread = new AtomicInteger();
+        runConcurrently(() -> {
+            // Half the threads restock, half fill, by the same amount
+            int delta = thread.getAndIncrement() % 2 == 0 ? 5 : -5;
+            for (int i = 0; i < 20; i++) {
+                assertEquals(1, inventoryRepository.adjustStockQuantity(inventoryId, delta));
+            }
+        });
+
+        assertEquals(initialStock, inventoryRepository.findById(inventoryId).orElseThrow().getStockQuantity());
+    }
+
+    private Long createInventory(String code, int stockQuantity) {
+        Medicine medicine = medicineRepository.save(new Medicine("Concurrency " + code, code));
+        return inventoryRepository.save(Inventory.builder()
+                .medicine(medicine)
+                .stockQuantity(stockQuantity)
+                .build()).getId();
+    }
+
+    // Releases all threads at once so they contend for the same row
+    private void runConcurrently(Runnable work) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    work.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
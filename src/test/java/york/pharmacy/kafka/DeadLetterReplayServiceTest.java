@@ -0,0 +1,125 @@
+package york.pharmacy.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.apache.kafka.clients.consumer.MockConsumer;
+import org.apache.kafka.clients.consumer.OffsetAndMetadata;
+import org.apache.kafka.clients.consumer.OffsetResetStrategy;
+import org.apache.kafka.clients.producer.ProducerRecord;
+import org.apache.kafka.common.PartitionInfo;
+import org.apache.kafka.common.TopicPartition;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.ConsumerFactory;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DeadLetterReplayServiceTest {
+
+    private static final TopicPartition DLT_0 = new TopicPartition(KafkaRetryConfig.DEAD_LETTER_TOPIC, 0);
+
+    @Mock
+    private ConsumerFactory<String, byte[]> consumerFactory;
+
+    @Mock
+    private KafkaTemplate<String, Object> replayTemplate;
+
+    private MockConsumer<String, byte[]> consumer;
+    private DeadLetterReplayService underTest;
+
+    @BeforeEach
+    void setUp() {
+        // A spy so the commit can be checked after the service has closed the consumer
+        consumer = spy(new MockConsumer<>(OffsetResetStrategy.EARLIEST));
+        consumer.updatePartitions(KafkaRetryConfig.DEAD_LETTER_TOPIC,
+                List.of(new PartitionInfo(KafkaRetryConfig.DEAD_LETTER_TOPIC, 0, null, null, null)));
+        consumer.updateBeginningOffsets(Map.of(DLT_0, 0L));
+        lenient().when(consumerFactory.createConsumer(eq(DeadLetterReplayService.GROUP_ID), isNull(), isNull(), any(Properties.class)))
+                .thenReturn(consumer);
+        underTest = new DeadLetterReplayService(consumerFactory, replayTemplate, new SimpleMeterRegistry());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void replaysABatchAndCommitsPastIt() {
+        deadLetter(5);
+        when(replayTemplate.send(any(ProducerRecord.class))).thenReturn(CompletableFuture.completedFuture(null));
+
+        DeadLetterReplayResult result = underTest.replay(3);
+
+        assertEquals(3, result.getReplayed());
+        assertEquals(2, result.getRemaining());
+        ArgumentCaptor<ProducerRecord<String, Object>> sent = ArgumentCaptor.forClass(ProducerRecord.class);
+        verify(replayTemplate, times(3)).send(sent.capture());
+        ProducerRecord<String, Object> first = sent.getAllValues().get(0);
+        assertEquals(KafkaRetryConfig.PRESCRIPTION_EVENTS_TOPIC, first.topic());
+        assertEquals("RX-0", first.key());
+        assertEquals("{\"prescriptionId\":\"RX-0\"}", new String((byte[]) first.value(), StandardCharsets.UTF_8));
+        // Original headers survive, the DLT and retry bookkeeping doesn't
+        assertNotNull(first.headers().lastHeader("traceparent"));
+        assertNull(first.headers().lastHeader(KafkaHeaders.DLT_EXCEPTION_FQCN));
+        assertNull(first.headers().lastHeader("retry_topic-attempts"));
+        verify(consumer).commitSync(Map.of(DLT_0, new OffsetAndMetadata(3)));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void failedSendLeavesTheDltPositionAlone() {
+        deadLetter(2);
+        when(replayTemplate.send(any(ProducerRecord.class)))
+                .thenReturn(CompletableFuture.failedFuture(new IllegalStateException("broker unavailable")));
+
+        assertThrows(IllegalStateException.class, () -> underTest.replay(10));
+
+        verify(consumer, never()).commitSync(anyMap());
+    }
+
+    @Test
+    void emptyDltReplaysNothing() {
+        consumer.updateEndOffsets(Map.of(DLT_0, 0L));
+
+        DeadLetterReplayResult result = underTest.replay(10);
+
+        assertEquals(0, result.getReplayed());
+        assertEquals(0, result.getRemaining());
+        verifyNoInteractions(replayTemplate);
+    }
+
+    @Test
+    void limitIsBounded() {
+        assertThrows(IllegalArgumentException.class, () -> underTest.replay(0));
+        assertThrows(IllegalArgumentException.class, () -> underTest.replay(DeadLetterReplayService.MAX_REPLAY_BATCH + 1));
+        verifyNoInteractions(consumerFactory);
+    }
+
+    // Records only exist once the partition is assigned, so they're added on the first poll
+    private void deadLetter(int count) {
+        consumer.updateEndOffsets(Map.of(DLT_0, (long) count));
+        consumer.schedulePollTask(() -> {
+            for (int i = 0; i < count; i++) {
+                ConsumerRecord<String, byte[]> record = new ConsumerRecord<>(KafkaRetryConfig.DEAD_LETTER_TOPIC, 0, i,
+                        "RX-" + i, ("{\"prescriptionId\":\"RX-" + i + "\"}").getBytes(StandardCharsets.UTF_8));
+                record.headers().add("traceparent", "00-abc-def-01".getBytes(StandardCharsets.UTF_8));
+                record.headers().add(KafkaHeaders.DLT_EXCEPTION_FQCN,
+                        "york.pharmacy.exceptions.ResourceNotFoundException".getBytes(StandardCharsets.UTF_8));
+                record.headers().add("retry_topic-attempts", new byte[]{0, 0, 0, 4});
+                consumer.addRecord(record);
+            }
+        });
+    }
+}
@@ -0,0 +1,64 @@
+package york.pharmacy.kafka;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// ON CONFLICT needs H2's PostgreSQL mode, like the dev profile
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.datasource.url=jdbc:h2:mem:ingest-claim;MODE=PostgreSQL;DATABASE_TO_UPPER=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+class IngestedPrescriptionNumberRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private IngestedPrescriptionNumberRepository repository;
+
+    @Test
+    void claim_onlyOncePerNumber() {
+        assertEquals(1, repository.claim("RX-CLAIM-1"));
+        assertEquals(0, repository.claim("RX-CLAIM-1"));
+        assertTrue(repository.existsById("RX-CLAIM-1"));
+    }
+
+    @Test
+    void deleteIngestedBefore_onlyOldClaims() {
+        entityManager.persist(new IngestedPrescriptionNumber("RX-CLAIM-OLD", Instant.now().minus(Duration.ofDays(2))));
+        entityManager.persistAndFlush(new IngestedPrescriptionNumber("RX-CLAIM-NEW", Instant.now()));
+
+        assertEquals(1, repository.deleteIngestedBefore(Instant.now().minus(Duration.ofDays(1))));
+        entityManager.clear();
+        assertFalse(repository.existsById("RX-CLAIM-OLD"));
+        assertTrue(repository.existsById("RX-CLAIM-NEW"));
+    }
+
+    @Test
+    void claim_numberStoredByAnotherPath() {
+        // e.g. created through the REST API or the batch listener, which don't claim
+        Medicine medicine = entityManager.persist(new Medicine("Claim", "CLAIM-01"));
+        Prescription prescription = new Prescription();
+        prescription.setPatientId("PID-CLAIM");
+        prescription.setMedicine(medicine);
+        prescription.setPrescriptionNumber("RX-CLAIM-2");
+        prescription.setQuantity(10);
+        prescription.setStatus(PrescriptionStatus.NEW);
+        entityManager.persistAndFlush(prescription);
+
+        assertEquals(0, repository.claim("RX-CLAIM-2"));
+        assertFalse(repository.existsById("RX-CLAIM-2"));
+    }
+}
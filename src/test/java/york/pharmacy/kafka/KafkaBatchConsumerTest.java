@@ -0,0 +1,111 @@
+package york.pharmacy.kafka;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.listener.DeadLetterPublishingRecoverer;
+import york.pharmacy.exceptions.MalformedEventException;
+import york.pharmacy.exceptions.ResourceNotFoundException;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaBatchConsumerTest {
+
+    @Mock
+    private PrescriptionEventBatchService prescriptionEventBatchService;
+
+    @Mock
+    private DeadLetterPublishingRecoverer deadLetterRecoverer;
+
+    private SimpleMeterRegistry meterRegistry;
+    private KafkaBatchConsumer underTest;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new KafkaBatchConsumer(prescriptionEventBatchService, meterRegistry,
+                new SeenPrescriptionNumbers(100), deadLetterRecoverer);
+    }
+
+    @Test
+    void rejectedEventsAreDeadLettered() {
+        ConsumerRecord<String, ConsumerEvent> stored = record(0, newPrescription("RX-1", "MED001"));
+        ConsumerRecord<String, ConsumerEvent> unknown = record(1, newPrescription("RX-2", "NOPE"));
+        ResourceNotFoundException notFound = new ResourceNotFoundException("Medicine with code NOPE not found");
+        BatchIngestResult result = new BatchIngestResult();
+        result.setCreated(1);
+        result.getStoredNumbers().add("RX-1");
+        result.getRejected().put(1, notFound);
+        when(prescriptionEventBatchService.ingest(anyList())).thenReturn(result);
+
+        underTest.listen(List.of(stored, unknown));
+
+        verify(deadLetterRecoverer).accept(unknown, notFound);
+        verifyNoMoreInteractions(deadLetterRecoverer);
+        assertEquals(1, deadLettered());
+    }
+
+    @Test
+    void undeserializableRecordsAreDeadLettered() {
+        ConsumerRecord<String, ConsumerEvent> unreadable = record(0, null);
+        when(prescriptionEventBatchService.ingest(anyList())).thenReturn(new BatchIngestResult());
+
+        underTest.listen(List.of(unreadable));
+
+        verify(prescriptionEventBatchService).ingest(List.of());
+        verify(deadLetterRecoverer).accept(eq(unreadable), any(MalformedEventException.class));
+        assertEquals(1, deadLettered());
+    }
+
+    @Test
+    void malformedEventsAreDeadLetteredWithoutReachingIngest() {
+        // Same checks as the record listener: no prescription number, no patient, unknown event type
+        ConsumerRecord<String, ConsumerEvent> noNumber = record(0, newPrescription(null, "MED001"));
+        ConsumerRecord<String, ConsumerEvent> noPatient = record(1,
+                new ConsumerEvent("NEW_PRESCRIPTION", "RX-1", null, "MED001", 30, "Take once daily"));
+        ConsumerRecord<String, ConsumerEvent> unknownType = record(2, new ConsumerEvent("REFILL", "RX-2"));
+        ConsumerRecord<String, ConsumerEvent> valid = record(3, newPrescription("RX-3", "MED001"));
+        when(prescriptionEventBatchService.ingest(anyList())).thenReturn(new BatchIngestResult());
+
+        underTest.listen(List.of(noNumber, noPatient, unknownType, valid));
+
+        verify(prescriptionEventBatchService).ingest(List.of(valid.value()));
+        verify(deadLetterRecoverer).accept(eq(noNumber), any(MalformedEventException.class));
+        verify(deadLetterRecoverer).accept(eq(noPatient), any(MalformedEventException.class));
+        verify(deadLetterRecoverer).accept(eq(unknownType), any(MalformedEventException.class));
+        assertEquals(3, deadLettered());
+    }
+
+    @Test
+    void failedIngestDeadLettersNothing() {
+        ConsumerRecord<String, ConsumerEvent> unreadable = record(0, null);
+        when(prescriptionEventBatchService.ingest(anyList())).thenThrow(new IllegalStateException("database down"));
+
+        assertThrows(IllegalStateException.class, () -> underTest.listen(List.of(unreadable)));
+
+        // The error handler retries the whole poll, so nothing may be published yet
+        verifyNoInteractions(deadLetterRecoverer);
+    }
+
+    private double deadLettered() {
+        return meterRegistry.get("pharmacy.kafka.consume.events").tag("result", "dead_lettered").counter().count();
+    }
+
+    private static ConsumerEvent newPrescription(String number, String medicineCode) {
+        return new ConsumerEvent("NEW_PRESCRIPTION", number, "PID-1", medicineCode, 30, "Take once daily");
+    }
+
+    private static ConsumerRecord<String, ConsumerEvent> record(long offset, ConsumerEvent event) {
+        return new ConsumerRecord<>("patient_prescription_events", 0, offset, null, event);
+    }
+}
@@ -0,0 +1,139 @@
+package york.pharmacy.kafka;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.kafka.clients.consumer.ConsumerRecord;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.support.KafkaHeaders;
+import york.pharmacy.exceptions.MalformedEventException;
+import york.pharmacy.prescriptions.dto.PrescriptionRequest;
+import york.pharmacy.prescriptions.dto.PrescriptionResponse;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaConsumerTest {
+
+    @Mock
+    private KafkaTemplate<String, ConsumerEvent> kafkaTemplate;
+
+    @Mock
+    private ServiceUtility serviceUtility;
+
+    private SimpleMeterRegistry meterRegistry;
+    private SeenPrescriptionNumbers seenPrescriptionNumbers;
+    private KafkaConsumer underTest;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        seenPrescriptionNumbers = new SeenPrescriptionNumbers(100);
+        underTest = new KafkaConsumer(kafkaTemplate, serviceUtility, meterRegistry, seenPrescriptionNumbers);
+    }
+
+    @Test
+    void newPrescriptionIsStoredAndRemembered() {
+        when(serviceUtility.addPrescriptionIfNew(any(PrescriptionRequest.class)))
+                .thenReturn(Optional.of(new PrescriptionResponse()));
+
+        underTest.listen(record(newPrescription("RX-1")));
+
+        verify(serviceUtility).addPrescriptionIfNew(argThat(request -> "RX-1".equals(request.getPrescriptionNumber())));
+        assertTrue(seenPrescriptionNumbers.contains("RX-1"));
+        assertEquals(0, deduplicated("cache") + deduplicated("database"));
+    }
+
+    @Test
+    void redeliveryClaimedInTheDatabaseIsAcknowledged() {
+        when(serviceUtility.addPrescriptionIfNew(any(PrescriptionRequest.class))).thenReturn(Optional.empty());
+
+        assertDoesNotThrow(() -> underTest.listen(record(newPrescription("RX-1"))));
+
+        assertEquals(1, deduplicated("database"));
+        assertTrue(seenPrescriptionNumbers.contains("RX-1"));
+    }
+
+    @Test
+    void redeliveryKnownToTheCacheSkipsTheDatabase() {
+        seenPrescriptionNumbers.add("RX-1");
+
+        underTest.listen(record(newPrescription("RX-1")));
+
+        verifyNoInteractions(serviceUtility);
+        assertEquals(1, deduplicated("cache"));
+        assertEquals(1, meterRegistry.get("pharmacy.kafka.consume").tag("outcome", "duplicate").timer().count());
+    }
+
+    @Test
+    void failedIngestIsNotRemembered() {
+        when(serviceUtility.addPrescriptionIfNew(any(PrescriptionRequest.class)))
+                .thenThrow(new IllegalStateException("database unavailable"));
+
+        assertThrows(IllegalStateException.class, () -> underTest.listen(record(newPrescription("RX-1"))));
+
+        assertFalse(seenPrescriptionNumbers.contains("RX-1"));
+    }
+
+    @Test
+    void malformedEventIsRejectedAsFatal() {
+        ConsumerEvent event = new ConsumerEvent(null, "RX-1");
+
+        // One of KafkaRetryConfig's fatal exceptions, so this goes straight to the DLT
+        assertThrows(MalformedEventException.class, () -> underTest.listen(record(event)));
+
+        verifyNoInteractions(serviceUtility);
+        assertTrue(KafkaRetryConfig.FATAL_EXCEPTIONS.contains(MalformedEventException.class));
+        // Anything else that throws IllegalArgumentException is retried
+        assertFalse(KafkaRetryConfig.FATAL_EXCEPTIONS.contains(IllegalArgumentException.class));
+    }
+
+    @Test
+    void unknownEventTypesAndIncompletePrescriptionsAreMalformed() {
+        assertThrows(MalformedEventException.class, () -> underTest.listen(record(new ConsumerEvent("REFILL", "RX-1"))));
+        assertThrows(MalformedEventException.class, () -> underTest.listen(record(
+                new ConsumerEvent("NEW_PRESCRIPTION", "RX-1", null, "MED001", 30, "Take once daily"))));
+        assertThrows(MalformedEventException.class, () -> underTest.listen(record(
+                new ConsumerEvent("NEW_PRESCRIPTION", null, "PID-1", "MED001", 30, "Take once daily"))));
+
+        verifyNoInteractions(serviceUtility);
+    }
+
+    @Test
+    void deadLetteredEventsAreCountedByException() {
+        ConsumerRecord<String, ConsumerEvent> record = new ConsumerRecord<>(KafkaRetryConfig.DEAD_LETTER_TOPIC, 0, 0L,
+                "RX-1", newPrescription("RX-1"));
+        record.headers().add(KafkaHeaders.DLT_EXCEPTION_FQCN,
+                "york.pharmacy.exceptions.ResourceNotFoundException".getBytes(StandardCharsets.UTF_8));
+
+        underTest.deadLettered(record);
+
+        assertEquals(1, meterRegistry.get("pharmacy.kafka.consume.dead_lettered")
+                .tag("event_type", "NEW_PRESCRIPTION")
+                .tag("exception", "ResourceNotFoundException")
+                .counter().count());
+    }
+
+    private double deduplicated(String source) {
+        Counter counter = meterRegistry.find("pharmacy.kafka.consume.deduplicated").tag("source", source).counter();
+        return counter == null ? 0 : counter.count();
+    }
+
+    private static ConsumerEvent newPrescription(String number) {
+        return new ConsumerEvent("NEW_PRESCRIPTION", number, "PID-1", "MED001", 30, "Take once daily");
+    }
+
+    private static ConsumerRecord<String, ConsumerEvent> record(ConsumerEvent event) {
+        return new ConsumerRecord<>("patient_prescription_events", 0, 0L, null, event);
+    }
+}
@@ -0,0 +1,67 @@
+package york.pharmacy.kafka;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import york.pharmacy.outbox.OutboxEvent;
+import york.pharmacy.outbox.OutboxEventRepository;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class KafkaProducerTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Spy
+    private ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private KafkaProducer underTest;
+
+    @Test
+    void sendMessageQueuesEventInOutbox() throws Exception {
+        ProducerEvent event = new ProducerEvent("BACK_ORDERED", "RX-1", LocalDate.of(2025, 1, 10));
+
+        underTest.sendMessage("prescription_status_updates", event);
+
+        ArgumentCaptor<OutboxEvent> captor = ArgumentCaptor.forClass(OutboxEvent.class);
+        verify(outboxEventRepository, times(1)).save(captor.capture());
+        assertEquals("prescription_status_updates", captor.getValue().getTopic());
+        assertEquals("RX-1", captor.getValue().getMessageKey());
+        assertNull(captor.getValue().getSentAt());
+        ProducerEvent queued = objectMapper.readValue(captor.getValue().getPayload(), ProducerEvent.class);
+        assertEquals("RX-1", queued.getPrescriptionId());
+        assertEquals(LocalDate.of(2025, 1, 10), queued.getDeliveryDate());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void sendMessagesQueuesAllEventsTogether() {
+        underTest.sendMessages("prescription_status_updates", List.of(
+                new ProducerEvent("RECEIVED", "RX-1"),
+                new ProducerEvent("RECEIVED", "RX-2")));
+
+        ArgumentCaptor<List<OutboxEvent>> captor = ArgumentCaptor.forClass(List.class);
+        verify(outboxEventRepository, times(1)).saveAll(captor.capture());
+        assertEquals(List.of("RX-1", "RX-2"), captor.getValue().stream().map(OutboxEvent::getMessageKey).toList());
+        assertEquals(2, meterRegistry.get("pharmacy.outbox.enqueued")
+                .tag("topic", "prescription_status_updates").counter().count());
+    }
+}
@@ -0,0 +1,293 @@
+package york.pharmacy.kafka;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import york.pharmacy.demand.DemandChange;
+import york.pharmacy.demand.MedicineDemand;
+import york.pharmacy.demand.MedicineDemandService;
+import york.pharmacy.exceptions.MalformedEventException;
+import york.pharmacy.exceptions.ResourceNotFoundException;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.prescriptions.CancellationCandidate;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PrescriptionEventBatchServiceTest {
+
+    @Mock
+    private PrescriptionRepository prescriptionRepository;
+
+    @Mock
+    private InventoryRepository inventoryRepository;
+
+    @Mock
+    private ServiceUtility serviceUtility;
+
+    @Mock
+    private KafkaProducer kafkaProducer;
+
+    @Mock
+    private MedicineDemandService medicineDemandService;
+
+    @InjectMocks
+    private PrescriptionEventBatchService underTest;
+
+    private Medicine aspirin;
+    private Medicine ibuprofen;
+
+    @BeforeEach
+    void setUp() {
+        aspirin = new Medicine(1L, "Aspirin", "MED001", Instant.now(), Instant.now());
+        ibuprofen = new Medicine(2L, "Ibuprofen", "MED002", Instant.now(), Instant.now());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void newPrescriptionsAreCheckedOncePerMedicineAndSavedTogether() {
+        // Aspirin: 40 pills already claimed, 100 in stock -> 30 + 30 fit, the next 30 doesn't
+        // Ibuprofen: nothing claimed, 10 in stock -> 20 doesn't fit
+        when(serviceUtility.getMedicineByCode("MED001")).thenReturn(aspirin);
+        when(serviceUtility.getMedicineByCode("MED002")).thenReturn(ibuprofen);
+        when(prescriptionRepository.findExistingPrescriptionNumbers(anyCollection())).thenReturn(List.of());
+        when(medicineDemandService.getDemands(Set.of(1L, 2L))).thenReturn(Map.of(
+                1L, new MedicineDemand(1L, 40, 0, 0, 0),
+                2L, new MedicineDemand(2L)));
+        when(inventoryRepository.findAllByMedicineIds(Set.of(1L, 2L))).thenReturn(List.of(
+                new Inventory(1L, aspirin, 100, null),
+                new Inventory(2L, ibuprofen, 10, null)));
+
+        BatchIngestResult result = underTest.ingest(List.of(
+                newPrescription("RX-1", "MED001", 30),
+                newPrescription("RX-2", "MED002", 20),
+                newPrescription("RX-3", "MED001", 30),
+                newPrescription("RX-4", "MED001", 30)));
+
+        List<Prescription> saved = captureSaved();
+        assertEquals(List.of("RX-1", "RX-2", "RX-3", "RX-4"), saved.stream().map(Prescription::getPrescriptionNumber).toList());
+        assertEquals(List.of(PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK, PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK),
+                saved.stream().map(Prescription::getStatus).toList());
+        assertEquals(4, result.getCreated());
+        assertEquals(2, result.getOutOfStock());
+        verify(serviceUtility, times(1)).getMedicineByCode("MED001");
+        verify(medicineDemandService, times(1)).getDemands(anyCollection());
+        verify(prescriptionRepository, never()).findTotalQuantityByMedicineIdAndStatus(anyLong(), anyList());
+
+        // Demand is added with one change for the whole batch
+        DemandChange change = captureDemandChange();
+        assertEquals(new MedicineDemand(1L, 60, 30, 0, 0), change.getDelta(1L));
+        assertEquals(new MedicineDemand(2L, 0, 20, 0, 0), change.getDelta(2L));
+
+        ArgumentCaptor<List<ProducerEvent>> published = ArgumentCaptor.forClass(List.class);
+        verify(kafkaProducer, times(1)).sendMessages(eq("prescription_status_updates"), published.capture());
+        assertEquals(List.of("RX-1", "RX-2", "RX-3", "RX-4"), published.getValue().stream().map(ProducerEvent::getPrescriptionId).toList());
+    }
+
+    @Test
+    void redeliveredAndDuplicatePrescriptionsAreSkipped() {
+        when(serviceUtility.getMedicineByCode("MED001")).thenReturn(aspirin);
+        when(prescriptionRepository.findExistingPrescriptionNumbers(anyCollection())).thenReturn(List.of("RX-1"));
+        when(inventoryRepository.findAllByMedicineIds(anyCollection())).thenReturn(List.of(new Inventory(1L, aspirin, 100, null)));
+
+        BatchIngestResult result = underTest.ingest(List.of(
+                newPrescription("RX-1", "MED001", 30),
+                newPrescription("RX-2", "MED001", 30),
+                newPrescription("RX-2", "MED001", 30)));
+
+        assertEquals(List.of("RX-2"), captureSaved().stream().map(Prescription::getPrescriptionNumber).toList());
+        assertEquals(1, result.getCreated());
+        assertEquals(2, result.getSkipped());
+        assertEquals(2, result.getDeduplicated());
+        // Both numbers are stored once the batch commits, so the listener can remember them
+        assertEquals(Set.of("RX-1", "RX-2"), result.getStoredNumbers());
+    }
+
+    @Test
+    void unknownMedicineCodesAreRejected() {
+        ResourceNotFoundException notFound = new ResourceNotFoundException("Medicine with Code NOPE not found");
+        when(serviceUtility.getMedicineByCode("NOPE")).thenThrow(notFound);
+        when(prescriptionRepository.findExistingPrescriptionNumbers(anyCollection())).thenReturn(List.of());
+
+        BatchIngestResult result = underTest.ingest(List.of(
+                new ConsumerEvent("REFILL", "RX-0"),
+                newPrescription("RX-1", "NOPE", 30),
+                newPrescription("RX-2", "NOPE", 30)));
+
+        assertEquals(0, result.getCreated());
+        assertEquals(0, result.getSkipped());
+        // Positions in the batch, for the listener to dead-letter
+        assertEquals(Set.of(0, 1, 2), result.getRejected().keySet());
+        assertInstanceOf(MalformedEventException.class, result.getRejected().get(0));
+        assertSame(notFound, result.getRejected().get(1));
+        assertSame(notFound, result.getRejected().get(2));
+        verify(serviceUtility, times(1)).getMedicineByCode("NOPE");
+        verify(prescriptionRepository, never()).saveAll(anyList());
+        verifyNoInteractions(kafkaProducer);
+    }
+
+    @Test
+    void prescriptionsForMedicinesWithoutInventoryAreRejected() {
+        when(serviceUtility.getMedicineByCode("MED001")).thenReturn(aspirin);
+        when(serviceUtility.getMedicineByCode("MED002")).thenReturn(ibuprofen);
+        when(prescriptionRepository.findExistingPrescriptionNumbers(anyCollection())).thenReturn(List.of());
+        when(inventoryRepository.findAllByMedicineIds(Set.of(1L, 2L))).thenReturn(List.of(new Inventory(1L, aspirin, 100, null)));
+
+        BatchIngestResult result = underTest.ingest(List.of(
+                newPrescription("RX-1", "MED002", 30),
+                newPrescription("RX-2", "MED001", 30)));
+
+        // Same answer as the record listener, which throws from checkAndUpdatePrescriptionStock
+        assertEquals(List.of("RX-2"), captureSaved().stream().map(Prescription::getPrescriptionNumber).toList());
+        assertEquals(1, result.getCreated());
+        assertEquals(0, result.getOutOfStock());
+        assertEquals(Set.of(0), result.getRejected().keySet());
+        assertEquals("Inventory not found for medicine ID: 2", result.getRejected().get(0).getMessage());
+        assertEquals(Set.of("RX-2"), result.getStoredNumbers());
+    }
+
+    @Test
+    void repeatedCancellationsAreSkipped() {
+        when(prescriptionRepository.findCancellationCandidates(Set.of("RX-1")))
+                .thenReturn(List.of(candidate("RX-1", 1L, PrescriptionStatus.OUT_OF_STOCK, 30)));
+        when(prescriptionRepository.updateStatusByPrescriptionNumbers(
+                List.of("RX-1"), PrescriptionStatus.OUT_OF_STOCK, PrescriptionStatus.CANCELLED)).thenReturn(1);
+
+        BatchIngestResult result = underTest.ingest(List.of(
+                new ConsumerEvent("CANCELLED", "RX-1"),
+                new ConsumerEvent("CANCELLED", "RX-1")));
+
+        assertEquals(1, result.getCancelled());
+        assertEquals(1, result.getSkipped());
+        assertTrue(result.getRejected().isEmpty());
+        assertEquals(new MedicineDemand(1L, 0, -30, 0, 0), captureDemandChange().getDelta(1L));
+    }
+
+    @Test
+    void cancellationsAreGuardedOnTheStatusTheyRead() {
+        when(prescriptionRepository.findCancellationCandidates(Set.of("RX-1", "RX-2", "RX-3"))).thenReturn(List.of(
+                candidate("RX-1", 1L, PrescriptionStatus.NEW, 30),
+                candidate("RX-2", 1L, PrescriptionStatus.OUT_OF_STOCK, 30),
+                candidate("RX-3", 1L, PrescriptionStatus.NEW, 30)));
+        when(prescriptionRepository.updateStatusByPrescriptionNumbers(
+                List.of("RX-1", "RX-3"), PrescriptionStatus.NEW, PrescriptionStatus.CANCELLED)).thenReturn(2);
+        // RX-2 was restocked after the read, so its UPDATE matches nothing
+        when(prescriptionRepository.updateStatusByPrescriptionNumbers(
+                List.of("RX-2"), PrescriptionStatus.OUT_OF_STOCK, PrescriptionStatus.CANCELLED)).thenReturn(0);
+
+        // The batch rolls back and the error handler retries the poll against the new status
+        assertThrows(OptimisticLockingFailureException.class, () -> underTest.ingest(List.of(
+                new ConsumerEvent("CANCELLED", "RX-1"),
+                new ConsumerEvent("CANCELLED", "RX-2"),
+                new ConsumerEvent("CANCELLED", "RX-3"))));
+        verify(medicineDemandService, never()).apply(any());
+    }
+
+    @Test
+    void eventsAreHandledInOrderByRunOfType() {
+        when(serviceUtility.getMedicineByCode("MED001")).thenReturn(aspirin);
+        when(prescriptionRepository.findExistingPrescriptionNumbers(anyCollection())).thenReturn(List.of());
+        when(inventoryRepository.findAllByMedicineIds(anyCollection())).thenReturn(List.of(new Inventory(1L, aspirin, 100, null)));
+        when(prescriptionRepository.findCancellationCandidates(Set.of("RX-1", "RX-9")))
+                .thenReturn(List.of(candidate("RX-1", 1L, PrescriptionStatus.NEW, 30)));
+        when(prescriptionRepository.updateStatusByPrescriptionNumbers(
+                List.of("RX-1"), PrescriptionStatus.NEW, PrescriptionStatus.CANCELLED)).thenReturn(1);
+
+        BatchIngestResult result = underTest.ingest(List.of(
+                newPrescription("RX-1", "MED001", 30),
+                new ConsumerEvent("CANCELLED", "RX-1"),
+                new ConsumerEvent("CANCELLED", "RX-9"),
+                newPrescription("RX-2", "MED001", 30),
+                new ConsumerEvent("REFILL", "RX-2")));
+
+        // The cancellation must see RX-1, so it runs after the first save and before the second
+        InOrder inOrder = inOrder(prescriptionRepository);
+        inOrder.verify(prescriptionRepository).saveAll(anyList());
+        inOrder.verify(prescriptionRepository).updateStatusByPrescriptionNumbers(
+                anyCollection(), eq(PrescriptionStatus.NEW), eq(PrescriptionStatus.CANCELLED));
+        inOrder.verify(prescriptionRepository).saveAll(anyList());
+        assertEquals(2, result.getCreated());
+        assertEquals(1, result.getCancelled());
+        assertEquals(0, result.getSkipped());
+        // The unknown RX-9 and the unsupported REFILL event
+        assertEquals(Set.of(2, 4), result.getRejected().keySet());
+        assertInstanceOf(ResourceNotFoundException.class, result.getRejected().get(2));
+        assertInstanceOf(MalformedEventException.class, result.getRejected().get(4));
+
+        // RX-1 releases its NEW demand when it is cancelled
+        ArgumentCaptor<DemandChange> changes = ArgumentCaptor.forClass(DemandChange.class);
+        verify(medicineDemandService, times(3)).apply(changes.capture());
+        assertEquals(new MedicineDemand(1L, -30, 0, 0, 0), changes.getAllValues().get(1).getDelta(1L));
+    }
+
+    @Test
+    void emptyBatch() {
+        BatchIngestResult result = underTest.ingest(List.of());
+
+        assertEquals(new BatchIngestResult(), result);
+        verifyNoInteractions(prescriptionRepository, inventoryRepository, kafkaProducer);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Prescription> captureSaved() {
+        ArgumentCaptor<List<Prescription>> captor = ArgumentCaptor.forClass(List.class);
+        verify(prescriptionRepository).saveAll(captor.capture());
+        return captor.getValue();
+    }
+
+    private DemandChange captureDemandChange() {
+        ArgumentCaptor<DemandChange> captor = ArgumentCaptor.forClass(DemandChange.class);
+        verify(medicineDemandService).apply(captor.capture());
+        return captor.getValue();
+    }
+
+    private static ConsumerEvent newPrescription(String prescriptionNumber, String medicineCode, int quantity) {
+        return new ConsumerEvent("NEW_PRESCRIPTION", prescriptionNumber, "PID-1", medicineCode, quantity, "Take once daily");
+    }
+
+    private static CancellationCandidate candidate(String number, Long medicineId, PrescriptionStatus status, Integer quantity) {
+        return new CancellationCandidate() {
+            @Override
+            public String getPrescriptionNumber() {
+                return number;
+            }
+
+            @Override
+            public Long getMedicineId() {
+                return medicineId;
+            }
+
+            @Override
+            public PrescriptionStatus getStatus() {
+                return status;
+            }
+
+            @Override
+            public Integer getQuantity() {
+                return quantity;
+            }
+        };
+    }
+}
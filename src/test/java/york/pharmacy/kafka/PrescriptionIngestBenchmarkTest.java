@@ -0,0 +1,99 @@
+package york.pharmacy.kafka;
+
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.kafka.test.context.EmbeddedKafka;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.context.TestPropertySource;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineRepository;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Ingest throughput of patient_prescription_events against an embedded broker,
+// per-record listener vs batch listener, for a burst of new prescriptions over a small catalog.
+// Run with: gradlew benchmark --tests "*PrescriptionIngestBenchmarkTest*"
+@Tag("benchmark")
+@SpringBootTest(properties = {
+        "spring.kafka.bootstrap-servers=${spring.embedded.kafka.brokers}",
+        "spring.jpa.show-sql=false"
+})
+@EmbeddedKafka(partitions = 1, topics = {"patient_prescription_events", "prescription_status_updates"})
+@DirtiesContext
+class PrescriptionIngestBenchmarkTest {
+
+    private static final int EVENTS = 5_000;
+    private static final int MEDICINES = 50;
+    private static final long TIMEOUT_MILLIS = 300_000;
+
+    @Autowired
+    private KafkaTemplate<String, ConsumerEvent> kafkaTemplate;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    // Each mode gets its own context (and broker); closed afterwards so its listener stops consuming
+    @Nested
+    @DirtiesContext
+    @TestPropertySource(properties = "pharmacy.kafka.batch-listener.enabled=false")
+    class PerRecord {
+        @Test
+        void ingestBurst() throws Exception {
+            run("per-record", "SGL");
+        }
+    }
+
+    @Nested
+    @DirtiesContext
+    @TestPropertySource(properties = "pharmacy.kafka.batch-listener.enabled=true")
+    class Batch {
+        @Test
+        void ingestBurst() throws Exception {
+            run("batch", "BAT");
+        }
+    }
+
+    void run(String mode, String prefix) throws Exception {
+        List<String> codes = new ArrayList<>();
+        for (int i = 0; i < MEDICINES; i++) {
+            Medicine medicine = medicineRepository.save(new Medicine("Ingest " + prefix + " " + i, prefix + "-" + i));
+            inventoryRepository.save(Inventory.builder().medicine(medicine).stockQuantity(50_000).build());
+            codes.add(medicine.getCode());
+        }
+        long before = prescriptionRepository.count();
+
+        long start = System.nanoTime();
+        for (int i = 0; i < EVENTS; i++) {
+            kafkaTemplate.send("patient_prescription_events", new ConsumerEvent("NEW_PRESCRIPTION",
+                    prefix + "-RX-" + i, "PID-" + (i % 1000), codes.get(i % MEDICINES), 30, "Take once daily"));
+        }
+        kafkaTemplate.flush();
+
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        long ingested = 0;
+        while (ingested < EVENTS && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+            ingested = prescriptionRepository.count() - before;
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+
+        System.out.printf("%-10s | %,d events in %.2f s | %,.0f events/s%n", mode, ingested, seconds, ingested / seconds);
+        assertEquals(EVENTS, ingested, mode + " listener should ingest every event");
+    }
+}
@@ -0,0 +1,39 @@
+package york.pharmacy.kafka;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SeenPrescriptionNumbersTest {
+
+    @Test
+    void leastRecentlyUsedNumberIsEvicted() {
+        SeenPrescriptionNumbers seen = new SeenPrescriptionNumbers(2);
+        seen.addAll(List.of("RX-1", "RX-2"));
+
+        // Looking RX-1 up makes RX-2 the eldest
+        assertTrue(seen.contains("RX-1"));
+        seen.add("RX-3");
+
+        assertTrue(seen.contains("RX-1"));
+        assertFalse(seen.contains("RX-2"));
+        assertTrue(seen.contains("RX-3"));
+        assertEquals(2, seen.size());
+    }
+
+    @Test
+    void zeroSizeRemembersNothing() {
+        SeenPrescriptionNumbers seen = new SeenPrescriptionNumbers(0);
+        seen.add("RX-1");
+
+        assertFalse(seen.contains("RX-1"));
+        assertFalse(seen.contains(null));
+    }
+
+    @Test
+    void negativeSizeIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new SeenPrescriptionNumbers(-1));
+    }
+}
@@ -0,0 +1,129 @@
+package york.pharmacy.medicines;
+
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.TestPropertySource;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.medicines.dto.MedicineRequest;
+import york.pharmacy.orders.Order;
+import york.pharmacy.orders.OrderRepository;
+import york.pharmacy.orders.OrderStatus;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// 10k-row batch creates of medicines, inventories and orders with JDBC batching off (one INSERT per row,
+// as with the old IDENTITY ids) and on (pooled sequence ids + hibernate.jdbc.batch_size=50).
+// Run with: gradlew benchmark --tests "*BatchInsertBenchmarkTest*"
+@Tag("benchmark")
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.jpa.properties.hibernate.order_inserts=true"
+})
+@Import({MedicineService.class, MedicineCache.class})
+class BatchInsertBenchmarkTest {
+
+    private static final int ROWS = 10_000;
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Autowired
+    private MedicineService medicineService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Nested
+    @TestPropertySource(properties = "spring.jpa.properties.hibernate.jdbc.batch_size=0")
+    class Unbatched {
+        @Test
+        void batchCreates() {
+            List<Measurement> results = run("unbatched");
+            results.forEach(m -> assertTrue(m.statements >= ROWS, m.name + " should insert row by row"));
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = "spring.jpa.properties.hibernate.jdbc.batch_size=50")
+    class Batched {
+        @Test
+        void batchCreates() {
+            List<Measurement> results = run("batched");
+            // One statement per 50-row batch plus one nextval per 50 ids
+            results.forEach(m -> assertTrue(m.statements <= ROWS / 20, m.name + " should insert in batches"));
+        }
+    }
+
+    List<Measurement> run(String mode) {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        List<Measurement> results = new ArrayList<>();
+
+        List<MedicineRequest> requests = new ArrayList<>();
+        for (int i = 0; i < ROWS; i++) {
+            requests.add(new MedicineRequest("Batch Medicine " + i, mode + "-" + i));
+        }
+        results.add(measure(statistics, "medicines", () -> medicineService.batchCreateMedicines(requests)));
+
+        List<Medicine> medicines = medicineRepository.findAll().stream()
+                .filter(m -> m.getCode().startsWith(mode + "-"))
+                .toList();
+        List<Inventory> inventories = new ArrayList<>();
+        for (Medicine medicine : medicines) {
+            inventories.add(Inventory.builder().medicine(medicine).stockQuantity(100).build());
+        }
+        results.add(measure(statistics, "inventories", () -> inventoryRepository.saveAll(inventories)));
+
+        List<Order> orders = new ArrayList<>();
+        for (Inventory inventory : inventories) {
+            Order order = new Order();
+            order.setInventory(inventory);
+            order.setQuantity(100);
+            order.setDeliveryDate(LocalDate.now().plusDays(7));
+            order.setStatus(OrderStatus.ORDERED);
+            orders.add(order);
+        }
+        results.add(measure(statistics, "orders", () -> orderRepository.saveAll(orders)));
+
+        results.forEach(m -> System.out.printf("%-9s %-11s | %,6d rows | %,6d statements | %,8.1f ms%n",
+                mode, m.name, ROWS, m.statements, m.millis));
+        return results;
+    }
+
+    private Measurement measure(Statistics statistics, String name, Supplier<?> batchCreate) {
+        entityManager.flush();
+        entityManager.clear();
+        statistics.clear();
+        long start = System.nanoTime();
+        batchCreate.get();
+        entityManager.flush();
+        double millis = (System.nanoTime() - start) / 1_000_000.0;
+        return new Measurement(name, statistics.getPrepareStatementCount(), millis);
+    }
+
+    private record Measurement(String name, long statements, double millis) {
+    }
+}
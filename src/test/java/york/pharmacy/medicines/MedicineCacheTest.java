@@ -0,0 +1,137 @@
+package york.pharmacy.medicines;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MedicineCacheTest {
+
+    private MedicineCache cache;
+    private Medicine aspirin;
+    private Medicine ibuprofen;
+    private AtomicInteger loads;
+
+    @BeforeEach
+    void setUp() {
+        cache = new MedicineCache(2);
+        aspirin = new Medicine(1L, "Aspirin", "MED001", Instant.now(), Instant.now());
+        ibuprofen = new Medicine(2L, "Ibuprofen", "MED002", Instant.now(), Instant.now());
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    void secondLookupIsServedFromCache() {
+        assertEquals(aspirin, cache.getByCode("MED001", byCode()).orElseThrow());
+        assertEquals(aspirin, cache.getByCode("MED001", byCode()).orElseThrow());
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+        assertEquals(1, cache.getMisses());
+    }
+
+    @Test
+    void codeAndIdShareEntries() {
+        cache.getByCode("MED001", byCode());
+
+        assertEquals(aspirin, cache.getById(1L, byId()).orElseThrow());
+
+        assertEquals(1, loads.get());
+        assertEquals(1, cache.getHits());
+    }
+
+    @Test
+    void unknownCodesAreNotCached() {
+        assertTrue(cache.getByCode("NOPE", byCode()).isEmpty());
+        assertTrue(cache.getByCode("NOPE", byCode()).isEmpty());
+
+        assertEquals(2, loads.get());
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void returnsCopiesSoCallersCantChangeTheCache() {
+        cache.getByCode("MED001", byCode());
+
+        Medicine hit = cache.getByCode("MED001", byCode()).orElseThrow();
+        hit.setName("Changed");
+
+        assertEquals("Aspirin", cache.getByCode("MED001", byCode()).orElseThrow().getName());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        Medicine paracetamol = new Medicine(3L, "Paracetamol", "MED003", Instant.now(), Instant.now());
+        cache.getByCode("MED001", byCode());
+        cache.getByCode("MED002", byCode());
+        cache.getByCode("MED001", byCode()); // aspirin is now the most recently used
+
+        cache.getByCode("MED003", code -> paracetamol);
+
+        assertEquals(2, cache.size());
+        int loadsBefore = loads.get();
+        cache.getById(1L, byId());
+        assertEquals(loadsBefore, loads.get(), "Aspirin should still be cached");
+        cache.getById(2L, byId());
+        assertEquals(loadsBefore + 1, loads.get(), "Ibuprofen should have been evicted under both keys");
+    }
+
+    @Test
+    void invalidateIdDropsTheCodeEntryToo() {
+        cache.getByCode("MED001", byCode());
+
+        cache.invalidateId(1L);
+        cache.getByCode("MED001", byCode());
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void invalidateCodeDropsTheIdEntryToo() {
+        cache.getById(1L, byId());
+
+        cache.invalidateCode("MED001");
+        cache.getById(1L, byId());
+
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void loadRacingWithInvalidationIsNotCached() {
+        // The medicine changes while it is being loaded, so the loaded copy may already be stale
+        cache.getByCode("MED001", code -> {
+            cache.invalidateId(1L);
+            return aspirin;
+        });
+
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void rejectsInvalidSize() {
+        assertThrows(IllegalArgumentException.class, () -> new MedicineCache(0));
+    }
+
+    private Function<String, Medicine> byCode() {
+        return code -> {
+            loads.incrementAndGet();
+            return switch (code) {
+                case "MED001" -> aspirin;
+                case "MED002" -> ibuprofen;
+                default -> null;
+            };
+        };
+    }
+
+    private Function<Long, Optional<Medicine>> byId() {
+        return id -> {
+            loads.incrementAndGet();
+            return id == 1L ? Optional.of(aspirin) : id == 2L ? Optional.of(ibuprofen) : Optional.empty();
+        };
+    }
+}
@@ -8,6 +8,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import york.pharmacy.medicines.dto.MedicineCacheStats;
 import york.pharmacy.medicines.dto.MedicineRequest;
 import york.pharmacy.medicines.dto.MedicineResponse;
 
@@ -80,6 +81,21 @@ class MedicineControllerTest {
         verify(medicineService, times(1)).getAllMedicines();
     }
 
+    @Test
+    void testGetCacheStats_Success() {
+        // Arrange
+        MedicineCacheStats stats = new MedicineCacheStats(9L, 1L, 0.9, 1, 1000);
+        when(medicineService.getCacheStats()).thenReturn(stats);
+
+        // Act
+        ResponseEntity<MedicineCacheStats> result = medicineController.getCacheStats();
+
+        // Assert
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(stats, result.getBody());
+        verify(medicineService, times(1)).getCacheStats();
+    }
+
     @Test
     void testGetMedicineById_Success() {
         // Arrange
@@ -6,6 +6,7 @@ import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import york.pharmacy.medicines.dto.MedicineCacheStats;
 import york.pharmacy.medicines.dto.MedicineRequest;
 import york.pharmacy.medicines.dto.MedicineResponse;
 import york.pharmacy.exceptions.ResourceNotFoundException;
@@ -23,6 +24,9 @@ class MedicineServiceTest {
     @Mock
     private MedicineRepository medicineRepository;
 
+    @Mock
+    private MedicineCache medicineCache;
+
     @InjectMocks
     private MedicineService medicineService;
 
@@ -47,6 +51,7 @@ class MedicineServiceTest {
         assertNotNull(response);
         assertEquals("Aspirin", response.getName());
         verify(medicineRepository, times(1)).save(any(Medicine.class));
+        verify(medicineCache, times(1)).invalidateCode("MED001");
     }
 
     @Test
@@ -64,6 +69,7 @@ class MedicineServiceTest {
         assertEquals(2, responses.size());
         assertEquals("Aspirin", responses.get(0).getName());
         verify(medicineRepository, times(1)).saveAll(anyList());
+        verify(medicineCache, times(2)).invalidateCode("MED001");
     }
 
     @Test
@@ -108,6 +114,8 @@ class MedicineServiceTest {
         assertEquals("Aspirin", response.getName());
         verify(medicineRepository, times(1)).findById(1L);
         verify(medicineRepository, times(1)).save(any(Medicine.class));
+        verify(medicineCache, times(1)).invalidateId(1L);
+        verify(medicineCache, times(1)).invalidateCode("MED001");
     }
 
     @Test
@@ -120,6 +128,7 @@ class MedicineServiceTest {
 
         // Assert
         verify(medicineRepository, times(1)).deleteById(1L);
+        verify(medicineCache, times(1)).invalidateId(1L);
     }
 
     @Test
@@ -130,6 +139,22 @@ class MedicineServiceTest {
         // Act & Assert
         assertThrows(ResourceNotFoundException.class, () -> medicineService.deleteMedicine(1L));
         verify(medicineRepository, times(1)).existsById(1L);
+        verifyNoInteractions(medicineCache);
+    }
+
+    @Test
+    void testGetCacheStats() {
+        // Arrange
+        when(medicineCache.getHits()).thenReturn(3L);
+        when(medicineCache.getMisses()).thenReturn(1L);
+        when(medicineCache.size()).thenReturn(1);
+        when(medicineCache.getMaxSize()).thenReturn(1000);
+
+        // Act
+        MedicineCacheStats stats = medicineService.getCacheStats();
+
+        // Assert
+        assertEquals(new MedicineCacheStats(3L, 1L, 0.75, 1, 1000), stats);
     }
 
 }
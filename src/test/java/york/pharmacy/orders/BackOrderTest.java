@@ -0,0 +1,122 @@
+package york.pharmacy.orders;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import york.pharmacy.demand.MedicineDemand;
+import york.pharmacy.demand.MedicineDemandRepository;
+import york.pharmacy.demand.MedicineDemandService;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.kafka.KafkaProducer;
+import york.pharmacy.kafka.ProducerEvent;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineCache;
+import york.pharmacy.medicines.MedicineRepository;
+import york.pharmacy.orders.dto.OrderRequest;
+import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.utilities.OptimisticRetry;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.verify;
+
+// Creates an order against a long queue of pending prescriptions through the real service and queries
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({OrderService.class, ServiceUtility.class, MedicineCache.class, MedicineDemandService.class,
+        OptimisticRetry.class, SimpleMeterRegistry.class})
+class BackOrderTest {
+
+    private static final int PENDING = 500;
+
+    @MockitoBean
+    private KafkaProducer kafkaProducer;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private MedicineDemandRepository medicineDemandRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    @DisplayName("A new order back-orders the whole queue in a fixed number of statements and one event batch")
+    @SuppressWarnings("unchecked")
+    void createOrderBackOrdersPendingPrescriptions() {
+        Medicine medicine = medicineRepository.save(new Medicine("Back Order", "BACK-01"));
+        Inventory inventory = inventoryRepository.save(Inventory.builder().medicine(medicine).stockQuantity(0).build());
+        List<Prescription> prescriptions = new ArrayList<>();
+        for (int i = 0; i < PENDING; i++) {
+            prescriptions.add(prescription(medicine, "RX-BACK-" + i,
+                    i % 2 == 0 ? PrescriptionStatus.NEW : PrescriptionStatus.OUT_OF_STOCK));
+        }
+        // Already linked to an earlier order - left alone
+        prescriptions.add(prescription(medicine, "RX-BACK-DONE", PrescriptionStatus.AWAITING_SHIPMENT));
+        prescriptionRepository.saveAll(prescriptions);
+        medicineDemandRepository.save(new MedicineDemand(medicine.getId(), PENDING / 2 * 10, PENDING / 2 * 10, 0, 10));
+
+        LocalDate deliveryDate = LocalDate.now().plusDays(5);
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        OrderResponse created = orderService.createOrder(new OrderRequest(inventory.getId(), 5_000, deliveryDate));
+        long statements = statistics.getPrepareStatementCount();
+
+        // Inventory, order insert, candidates, one update per source status and the demand row
+        assertTrue(statements <= 8, () -> "Back-ordering took " + statements + " statements");
+        assertEquals(PENDING, prescriptionRepository.findAll().stream()
+                .filter(p -> p.getStatus() == PrescriptionStatus.AWAITING_SHIPMENT
+                        && p.getOrder() != null && created.getId().equals(p.getOrder().getId()))
+                .count());
+        assertEquals(new MedicineDemand(medicine.getId(), 0, 0, 0, PENDING * 10 + 10),
+                medicineDemandRepository.findCurrent(List.of(medicine.getId())).get(0));
+
+        ArgumentCaptor<List<ProducerEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(kafkaProducer).sendMessages(eq("prescription_status_updates"), events.capture());
+        assertEquals(PENDING, events.getValue().size());
+        assertTrue(events.getValue().stream().allMatch(event -> "BACK_ORDERED".equals(event.getEventType())
+                && deliveryDate.equals(event.getDeliveryDate())));
+    }
+
+    private static Prescription prescription(Medicine medicine, String number, PrescriptionStatus status) {
+        Prescription prescription = new Prescription();
+        prescription.setPatientId("PID-" + number);
+        prescription.setMedicine(medicine);
+        prescription.setPrescriptionNumber(number);
+        prescription.setQuantity(10);
+        prescription.setStatus(status);
+        return prescription;
+    }
+}
@@ -1,23 +1,34 @@
 package york.pharmacy.orders;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import york.pharmacy.inventory.Inventory;
 import york.pharmacy.medicines.Medicine;
 import york.pharmacy.orders.dto.OrderRequest;
 import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.orders.dto.OrderSummary;
+import york.pharmacy.orders.dto.ReceiveShipmentRequest;
 
 import java.time.Instant;
 import java.time.LocalDate;
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
@@ -28,6 +39,9 @@ class OrderControllerTest {
     @Mock
     private OrderService orderService;
 
+    @Spy
+    private ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
     @InjectMocks
     private OrderController orderController;
 
@@ -39,7 +53,7 @@ class OrderControllerTest {
     @BeforeEach
     void setUp() {
         medicine = new Medicine(1L, "Jelly Bean", "J-01", Instant.now(), Instant.now());
-        inventory = new Inventory(1L, medicine, 100);
+        inventory = new Inventory(1L, medicine, 100, null);
         orderRequest = new OrderRequest(
                 1L,
                 100,
@@ -112,6 +126,30 @@ class OrderControllerTest {
         verify(orderService, times(1)).getAllOrders();
     }
 
+    /** Test: exportOrders - one JSON object per line */
+    @Test
+    void testExportOrders() throws Exception {
+        // Arrange
+        doAnswer(invocation -> {
+            Consumer<OrderResponse> sink = invocation.getArgument(0);
+            sink.accept(orderResponse);
+            return 1L;
+        }).when(orderService).exportOrders(any());
+
+        // Act
+        ResponseEntity<StreamingResponseBody> response = orderController.exportOrders();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        String body = out.toString(StandardCharsets.UTF_8);
+        assertTrue(body.endsWith("\n"));
+        assertEquals(orderResponse, objectMapper.readValue(body.trim(), OrderResponse.class));
+        verify(orderService, times(1)).exportOrders(any());
+    }
+
     /** Test: getOrderById - Success */
     @Test
     void testGetOrderById_Success() {
@@ -172,6 +210,20 @@ class OrderControllerTest {
 
     }
 
+    @Test
+    void testReceiveShipment_Success() {
+        List<OrderSummary> received = List.of(new OrderSummary(1L, 1L, "J-01", "Jelly Bean", 100,
+                LocalDate.of(2024, 12, 27), OrderStatus.RECEIVED, Instant.now(), Instant.now()));
+        when(orderService.receiveShipment(List.of(1L, 2L))).thenReturn(received);
+
+        ResponseEntity<List<OrderSummary>> response =
+                orderController.receiveShipment(new ReceiveShipmentRequest(List.of(1L, 2L)));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(received, response.getBody());
+        verify(orderService).receiveShipment(List.of(1L, 2L));
+    }
+
     /** Test: deleteOrder - Success */
     @Test
     void testDeleteOrder_Success() {
@@ -1,25 +1,39 @@
 package york.pharmacy.orders;
 
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.PageRequest;
 import york.pharmacy.inventory.Inventory;
 import york.pharmacy.inventory.InventoryService;
 import york.pharmacy.medicines.Medicine;
 import york.pharmacy.orders.dto.OrderRequest;
 import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.orders.dto.OrderSummary;
+import york.pharmacy.orders.dto.OrderSummaryPage;
 import york.pharmacy.exceptions.ResourceNotFoundException;
+import york.pharmacy.utilities.KeysetCursor;
+import york.pharmacy.utilities.OptimisticRetry;
 import york.pharmacy.utilities.ServiceUtility;
 
 import java.time.Duration;
 import java.time.Instant;
 import java.time.LocalDate;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -33,6 +47,12 @@ class OrderServiceTest {
     @Mock
     private ServiceUtility serviceUtility;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private OptimisticRetry optimisticRetry;
+
     @InjectMocks
     private OrderService orderService;
 
@@ -43,9 +63,11 @@ class OrderServiceTest {
 
     @BeforeEach
     void setUp() {
+        lenient().when(optimisticRetry.execute(anyString(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
 
         medicine = new Medicine(1L, "Jelly Beans", "J-01", Instant.now(), Instant.now());
-        inventory = new Inventory(1L, medicine, 500);
+        inventory = new Inventory(1L, medicine, 500, null);
 
         order = new Order(
                 1L,
@@ -78,6 +100,8 @@ class OrderServiceTest {
         assertEquals(1L, result.getInventory().getId());
         assertEquals(100, result.getQuantity());
         verify(orderRepository, times(1)).save(any(Order.class));
+        verify(serviceUtility).updateAwaitingShipmentStatus(List.of(order));
+        verify(optimisticRetry).execute(eq("order.create"), any());
     }
 
     /** Test: batchCreateOrders - Success */
@@ -97,6 +121,9 @@ class OrderServiceTest {
         assertEquals(1, result.size());
         assertEquals(1L, result.get(0).getInventory().getId());
         verify(orderRepository, times(1)).saveAll(anyList());
+        // One back-order pass for the whole batch
+        verify(serviceUtility, times(1)).updateAwaitingShipmentStatus(orders);
+        verify(optimisticRetry).execute(eq("order.batch-create"), any());
     }
 
     /** Test: getAllOrders - Success */
@@ -115,6 +142,80 @@ class OrderServiceTest {
         verify(orderRepository, times(1)).findAll();
     }
 
+    /** Test: getOrderSummaryPage - one extra row is read to find the next cursor */
+    @Test
+    void testGetOrderSummaryPage_HasNextPage() {
+        List<OrderSummary> rows = List.of(orderSummary(5L), orderSummary(6L), orderSummary(7L));
+        when(orderRepository.findSummaryPageAfter(4L, PageRequest.of(0, 3))).thenReturn(rows);
+
+        OrderSummaryPage page = orderService.getOrderSummaryPage(KeysetCursor.encode(4L), 2);
+
+        assertEquals(rows.subList(0, 2), page.getItems());
+        assertEquals(6L, KeysetCursor.decode(page.getNextCursor()));
+        verify(orderRepository, never()).findAll();
+    }
+
+    /** Test: getOrderSummaryPage - last page has no cursor */
+    @Test
+    void testGetOrderSummaryPage_LastPage() {
+        when(orderRepository.findSummaryPageAfter(0L, PageRequest.of(0, OrderService.DEFAULT_PAGE_SIZE + 1)))
+                .thenReturn(List.of(orderSummary(1L)));
+
+        OrderSummaryPage page = orderService.getOrderSummaryPage(null, null);
+
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    /** Test: getOrderSummaryPage - limit out of range */
+    @Test
+    void testGetOrderSummaryPage_InvalidLimit() {
+        assertThrows(IllegalArgumentException.class,
+                () -> orderService.getOrderSummaryPage(null, OrderService.MAX_PAGE_SIZE + 1));
+        verifyNoInteractions(orderRepository);
+    }
+
+    /** Test: getOrderSummaryById - Not Found */
+    @Test
+    void testGetOrderSummaryById_NotFound() {
+        when(orderRepository.findSummaryById(1L)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> orderService.getOrderSummaryById(1L));
+    }
+
+    /** Test: exportOrders */
+    @Test
+    void testExportOrders() {
+        // Arrange
+        Order received = new Order(2L, inventory, 50, LocalDate.of(2024, 12, 20), OrderStatus.RECEIVED, Instant.now(), Instant.now());
+        when(orderRepository.streamAllForExport()).thenReturn(Stream.of(order, received));
+        List<OrderResponse> exported = new ArrayList<>();
+
+        // Act
+        long count = orderService.exportOrders(exported::add);
+
+        // Assert
+        assertEquals(2, count);
+        assertEquals(List.of(OrderMapper.toResponse(order), OrderMapper.toResponse(received)), exported);
+        verify(entityManager, never()).clear();
+    }
+
+    /** Test: exportOrders - persistence context cleared every fetch-size rows */
+    @Test
+    void testExportOrders_ClearsPersistenceContext() {
+        // Arrange
+        int rows = OrderRepository.EXPORT_FETCH_SIZE * 3;
+        when(orderRepository.streamAllForExport()).thenReturn(IntStream.rangeClosed(1, rows)
+                .mapToObj(i -> new Order((long) i, inventory, 10, LocalDate.of(2024, 12, 27), OrderStatus.RECEIVED, Instant.now(), Instant.now())));
+
+        // Act
+        long count = orderService.exportOrders(response -> { });
+
+        // Assert
+        assertEquals(rows, count);
+        verify(entityManager, times(3)).clear();
+    }
+
     /** Test: getOrderById - Success */
     @Test
     void testGetOrderById_Success() {
@@ -190,8 +291,114 @@ class OrderServiceTest {
         assertEquals(OrderStatus.RECEIVED, response.getStatus());
         verify(orderRepository, times(1)).findById(1L);
         verify(orderRepository, times(1)).save(any(Order.class));
+        verify(optimisticRetry).execute(eq("order.receive"), any());
+        verify(entityManager).flush();
+    }
+
+
+    /** Test: receiveShipment - one status update, stock per inventory, one allocation per medicine */
+    @Test
+    void testReceiveShipment_GroupsStockAndAllocatesPerMedicine() {
+        // Orders 1 and 2 restock the same inventory; 3 restocks another
+        when(orderRepository.findReceiptsByIds(Set.of(1L, 2L, 3L))).thenReturn(List.of(
+                receipt(1L, 10L, 100L, 40, OrderStatus.ORDERED),
+                receipt(2L, 10L, 100L, 60, OrderStatus.ORDERED),
+                receipt(3L, 20L, 200L, 25, OrderStatus.ORDERED)));
+        when(orderRepository.markReceived(eq(Set.of(1L, 2L, 3L)), any(Instant.class))).thenReturn(3);
+        when(serviceUtility.getStockByMedicineIds(Set.of(100L, 200L))).thenReturn(Map.of(100L, 130, 200L, 25));
+        List<OrderSummary> summaries = List.of(new OrderSummary());
+        when(orderRepository.findSummariesByIds(Set.of(1L, 2L, 3L))).thenReturn(summaries);
+
+        // Duplicate ids in the request are received once
+        List<OrderSummary> result = orderService.receiveShipment(List.of(3L, 1L, 2L, 1L));
+
+        assertSame(summaries, result);
+        verify(optimisticRetry).execute(eq("order.receive-shipment"), any());
+        verify(serviceUtility).updateStockReceivedStatusForOrders(Set.of(1L, 2L, 3L));
+        verify(serviceUtility).incrementStockForReceipts(Map.of(10L, 100, 20L, 25));
+        verify(serviceUtility).updatePrescriptionsWithNewStock(130, 100L);
+        verify(serviceUtility).updatePrescriptionsWithNewStock(25, 200L);
+        verify(entityManager).flush();
+    }
+
+    @Test
+    void testReceiveShipment_MissingOrderRejectsShipment() {
+        when(orderRepository.findReceiptsByIds(Set.of(1L, 2L))).thenReturn(List.of(
+                receipt(1L, 10L, 100L, 40, OrderStatus.ORDERED)));
+
+        ResourceNotFoundException ex = assertThrows(ResourceNotFoundException.class,
+                () -> orderService.receiveShipment(List.of(1L, 2L)));
+
+        assertEquals("Orders with IDs [2] not found", ex.getMessage());
+        verify(orderRepository, never()).markReceived(any(), any());
+        verifyNoInteractions(serviceUtility);
     }
 
+    @Test
+    void testReceiveShipment_AlreadyReceivedOrderRejectsShipment() {
+        when(orderRepository.findReceiptsByIds(Set.of(1L, 2L))).thenReturn(List.of(
+                receipt(1L, 10L, 100L, 40, OrderStatus.ORDERED),
+                receipt(2L, 10L, 100L, 60, OrderStatus.RECEIVED)));
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> orderService.receiveShipment(List.of(1L, 2L)));
+
+        assertEquals("Orders [2] are not awaiting delivery", ex.getMessage());
+        verify(orderRepository, never()).markReceived(any(), any());
+    }
+
+    @Test
+    void testReceiveShipment_ConcurrentReceiveIsAConflict() {
+        when(orderRepository.findReceiptsByIds(Set.of(1L, 2L))).thenReturn(List.of(
+                receipt(1L, 10L, 100L, 40, OrderStatus.ORDERED),
+                receipt(2L, 10L, 100L, 60, OrderStatus.ORDERED)));
+        when(orderRepository.markReceived(eq(Set.of(1L, 2L)), any(Instant.class))).thenReturn(1);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> orderService.receiveShipment(List.of(1L, 2L)));
+        verifyNoInteractions(serviceUtility);
+    }
+
+    @Test
+    void testReceiveShipment_TooManyOrders() {
+        List<Long> ids = LongStream.rangeClosed(1, OrderService.MAX_SHIPMENT_ORDERS + 1).boxed().toList();
+
+        assertThrows(IllegalArgumentException.class, () -> orderService.receiveShipment(ids));
+        verifyNoInteractions(orderRepository);
+    }
+
+    private static OrderSummary orderSummary(Long id) {
+        return new OrderSummary(id, 1L, "J-01", "Jelly Beans", 100,
+                LocalDate.now().plusDays(3), OrderStatus.ORDERED, Instant.now(), Instant.now());
+    }
+
+    private static OrderReceipt receipt(Long orderId, Long inventoryId, Long medicineId, int quantity, OrderStatus status) {
+        return new OrderReceipt() {
+            @Override
+            public Long getOrderId() {
+                return orderId;
+            }
+
+            @Override
+            public Long getInventoryId() {
+                return inventoryId;
+            }
+
+            @Override
+            public Long getMedicineId() {
+                return medicineId;
+            }
+
+            @Override
+            public Integer getQuantity() {
+                return quantity;
+            }
+
+            @Override
+            public OrderStatus getStatus() {
+                return status;
+            }
+        };
+    }
 
     /** Test: deleteOrder - Success */
     @Test
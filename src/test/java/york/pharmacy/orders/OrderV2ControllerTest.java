@@ -0,0 +1,62 @@
+package york.pharmacy.orders;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import york.pharmacy.orders.dto.OrderSummary;
+import york.pharmacy.orders.dto.OrderSummaryPage;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OrderV2ControllerTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @Mock
+    private OrderService orderService;
+
+    @InjectMocks
+    private OrderV2Controller underTest;
+
+    private final OrderSummary summary = new OrderSummary(1L, 4L, "J-01", "Jelly Beans", 100,
+            LocalDate.of(2025, 2, 27), OrderStatus.ORDERED, Instant.now(), Instant.now());
+
+    @Test
+    void getOrderPage() throws Exception {
+        OrderSummaryPage page = new OrderSummaryPage(List.of(summary), "next");
+        when(orderService.getOrderSummaryPage("abc", 10)).thenReturn(page);
+
+        ResponseEntity<OrderSummaryPage> response = underTest.getOrderPage("abc", 10);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(page, response.getBody());
+        // Flat shape: inventory id and medicine fields, no nested inventory object
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(response.getBody())).get("items").get(0);
+        assertEquals(4L, json.get("inventoryId").asLong());
+        assertEquals("J-01", json.get("medicineCode").asText());
+        assertFalse(json.has("inventory"));
+    }
+
+    @Test
+    void getOrderById() {
+        when(orderService.getOrderSummaryById(1L)).thenReturn(summary);
+
+        ResponseEntity<OrderSummary> response = underTest.getOrderById(1L);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(summary, response.getBody());
+    }
+}
@@ -0,0 +1,146 @@
+package york.pharmacy.orders;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import york.pharmacy.demand.MedicineDemand;
+import york.pharmacy.demand.MedicineDemandRepository;
+import york.pharmacy.demand.MedicineDemandService;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.kafka.KafkaProducer;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineCache;
+import york.pharmacy.medicines.MedicineRepository;
+import york.pharmacy.orders.dto.OrderSummary;
+import york.pharmacy.prescriptions.Prescription;
+import york.pharmacy.prescriptions.PrescriptionRepository;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.utilities.OptimisticRetry;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Receives a shipment through the real service and queries, committed like a request would be
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.jpa.properties.hibernate.generate_statistics=true"
+})
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({OrderService.class, ServiceUtility.class, MedicineCache.class, MedicineDemandService.class,
+        OptimisticRetry.class, SimpleMeterRegistry.class})
+class ShipmentReceiveTest {
+
+    @MockitoBean
+    private KafkaProducer kafkaProducer;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private OrderRepository orderRepository;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private MedicineDemandRepository medicineDemandRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @Test
+    @DisplayName("A shipment is received in one pass and each medicine's queue is re-allocated once")
+    void receiveShipment() {
+        Medicine first = medicineRepository.save(new Medicine("Shipment A", "SHIP-A"));
+        Medicine second = medicineRepository.save(new Medicine("Shipment B", "SHIP-B"));
+        Inventory firstInventory = inventoryRepository.save(Inventory.builder().medicine(first).stockQuantity(0).build());
+        Inventory secondInventory = inventoryRepository.save(Inventory.builder().medicine(second).stockQuantity(0).build());
+        // Two orders restock the first inventory (100 pills), one the second (25 pills)
+        Order firstOrder = orderRepository.save(order(firstInventory, 40));
+        Order secondOrder = orderRepository.save(order(firstInventory, 60));
+        Order thirdOrder = orderRepository.save(order(secondInventory, 25));
+
+        // First medicine: 30 + 50 fit into the 100 pills, the last 40 no longer does
+        Prescription waitingFirst = prescriptionRepository.save(prescription(first, "RX-SHIP-1", 30, PrescriptionStatus.AWAITING_SHIPMENT, firstOrder));
+        Prescription newer = prescriptionRepository.save(prescription(first, "RX-SHIP-2", 50, PrescriptionStatus.NEW, null));
+        Prescription waitingSecond = prescriptionRepository.save(prescription(first, "RX-SHIP-3", 40, PrescriptionStatus.AWAITING_SHIPMENT, secondOrder));
+        // Second medicine: 25 pills skip the 30 and cover the 20
+        Prescription tooBig = prescriptionRepository.save(prescription(second, "RX-SHIP-4", 30, PrescriptionStatus.OUT_OF_STOCK, null));
+        Prescription fits = prescriptionRepository.save(prescription(second, "RX-SHIP-5", 20, PrescriptionStatus.OUT_OF_STOCK, null));
+        medicineDemandRepository.save(new MedicineDemand(first.getId(), 50, 0, 0, 70));
+        medicineDemandRepository.save(new MedicineDemand(second.getId(), 0, 50, 0, 0));
+
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        List<OrderSummary> received = orderService.receiveShipment(
+                List.of(thirdOrder.getId(), firstOrder.getId(), secondOrder.getId()));
+        long statements = statistics.getPrepareStatementCount();
+
+        assertEquals(List.of(firstOrder.getId(), secondOrder.getId(), thirdOrder.getId()),
+                received.stream().map(OrderSummary::getId).toList());
+        assertTrue(received.stream().allMatch(summary -> summary.getStatus() == OrderStatus.RECEIVED));
+        assertEquals(100, inventoryRepository.findById(firstInventory.getId()).orElseThrow().getStockQuantity());
+        assertEquals(25, inventoryRepository.findById(secondInventory.getId()).orElseThrow().getStockQuantity());
+
+        assertEquals(PrescriptionStatus.STOCK_RECEIVED, status(waitingFirst));
+        assertEquals(PrescriptionStatus.NEW, status(newer));
+        assertEquals(PrescriptionStatus.OUT_OF_STOCK, status(waitingSecond));
+        assertEquals(PrescriptionStatus.OUT_OF_STOCK, status(tooBig));
+        assertEquals(PrescriptionStatus.STOCK_RECEIVED, status(fits));
+        assertEquals(new MedicineDemand(first.getId(), 50, 40, 30, 0),
+                medicineDemandRepository.findCurrent(List.of(first.getId())).get(0));
+        assertEquals(new MedicineDemand(second.getId(), 0, 30, 20, 0),
+                medicineDemandRepository.findCurrent(List.of(second.getId())).get(0));
+
+        // Fixed per shipment and per medicine - not per order or per prescription
+        assertTrue(statements <= 20, () -> "Receiving the shipment took " + statements + " statements");
+
+        // Receiving any of them again rejects the whole shipment
+        assertThrows(IllegalArgumentException.class, () -> orderService.receiveShipment(List.of(firstOrder.getId())));
+        assertEquals(100, inventoryRepository.findById(firstInventory.getId()).orElseThrow().getStockQuantity());
+    }
+
+    private PrescriptionStatus status(Prescription prescription) {
+        return prescriptionRepository.findById(prescription.getId()).orElseThrow().getStatus();
+    }
+
+    private static Order order(Inventory inventory, int quantity) {
+        Order order = new Order();
+        order.setInventory(inventory);
+        order.setQuantity(quantity);
+        order.setDeliveryDate(LocalDate.now().plusDays(2));
+        order.setStatus(OrderStatus.ORDERED);
+        return order;
+    }
+
+    private static Prescription prescription(Medicine medicine, String number, int quantity,
+                                             PrescriptionStatus status, Order order) {
+        Prescription prescription = new Prescription();
+        prescription.setPatientId("PID-" + number);
+        prescription.setMedicine(medicine);
+        prescription.setPrescriptionNumber(number);
+        prescription.setQuantity(quantity);
+        prescription.setStatus(status);
+        prescription.setOrder(order);
+        return prescription;
+    }
+}
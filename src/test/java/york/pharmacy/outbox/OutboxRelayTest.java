@@ -0,0 +1,164 @@
+package york.pharmacy.outbox;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.Spy;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Pageable;
+import org.springframework.kafka.core.KafkaTemplate;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
+import york.pharmacy.kafka.ProducerEvent;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OutboxRelayTest {
+
+    @Mock
+    private OutboxEventRepository outboxEventRepository;
+
+    @Mock
+    private KafkaTemplate<String, ProducerEvent> kafkaTemplate;
+
+    @Spy
+    private ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @Mock
+    private TransactionTemplate transactionTemplate;
+
+    @Spy
+    private MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @InjectMocks
+    private OutboxRelay underTest;
+
+    @BeforeEach
+    void setUp() {
+        // Run the callback inline, as the real template would inside a transaction
+        lenient().when(transactionTemplate.execute(any())).thenAnswer(invocation ->
+                invocation.<TransactionCallback<?>>getArgument(0).doInTransaction(null));
+    }
+
+    @Test
+    void publishesBatchAndMarksItSent() throws Exception {
+        OutboxEvent received = event(1L, new ProducerEvent("RECEIVED", "RX-1"));
+        OutboxEvent backOrdered = event(2L, new ProducerEvent("BACK_ORDERED", "RX-2", LocalDate.of(2025, 1, 10)));
+        when(outboxEventRepository.findUnsentForUpdate(any(Pageable.class))).thenReturn(List.of(received, backOrdered));
+        when(kafkaTemplate.send(eq("prescription_status_updates"), anyString(), any(ProducerEvent.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        int sent = underTest.relayBatch();
+
+        assertEquals(2, sent);
+        ArgumentCaptor<String> keys = ArgumentCaptor.forClass(String.class);
+        ArgumentCaptor<ProducerEvent> published = ArgumentCaptor.forClass(ProducerEvent.class);
+        verify(kafkaTemplate, times(2)).send(eq("prescription_status_updates"), keys.capture(), published.capture());
+        assertEquals(List.of("RX-1", "RX-2"), keys.getAllValues());
+        assertEquals("RX-1", published.getAllValues().get(0).getPrescriptionId());
+        assertEquals(LocalDate.of(2025, 1, 10), published.getAllValues().get(1).getDeliveryDate());
+        verify(outboxEventRepository, times(1)).markSent(eq(List.of(1L, 2L)), any(Instant.class));
+    }
+
+    @Test
+    void failedSendsStayUnsent() throws Exception {
+        OutboxEvent first = event(1L, new ProducerEvent("RECEIVED", "RX-1"));
+        OutboxEvent second = event(2L, new ProducerEvent("RECEIVED", "RX-2"));
+        when(outboxEventRepository.findUnsentForUpdate(any(Pageable.class))).thenReturn(List.of(first, second));
+        when(kafkaTemplate.send(eq("prescription_status_updates"), anyString(), any(ProducerEvent.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        int sent = underTest.relayBatch();
+
+        assertEquals(1, sent);
+        verify(outboxEventRepository, times(1)).markSent(eq(List.of(2L)), any(Instant.class));
+        assertEquals(1, meterRegistry.get("pharmacy.kafka.produce").tag("outcome", "success").counter().count());
+        assertEquals(1, meterRegistry.get("pharmacy.kafka.produce").tag("outcome", "failure").counter().count());
+    }
+
+    @Test
+    void failedSendHoldsBackLaterEventsForTheSameKey() throws Exception {
+        OutboxEvent received = event(1L, new ProducerEvent("RECEIVED", "RX-1"));
+        OutboxEvent other = event(2L, new ProducerEvent("RECEIVED", "RX-2"));
+        OutboxEvent filled = event(3L, new ProducerEvent("FILLED", "RX-1"));
+        when(outboxEventRepository.findUnsentForUpdate(any(Pageable.class))).thenReturn(List.of(received, other, filled));
+        when(kafkaTemplate.send(eq("prescription_status_updates"), anyString(), any(ProducerEvent.class)))
+                .thenReturn(CompletableFuture.failedFuture(new RuntimeException("broker down")))
+                .thenReturn(CompletableFuture.completedFuture(null))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        int sent = underTest.relayBatch();
+
+        // FILLED was acknowledged but stays unsent, so it is republished after the RECEIVED retry
+        assertEquals(1, sent);
+        verify(outboxEventRepository, times(1)).markSent(eq(List.of(2L)), any(Instant.class));
+        assertEquals(1, meterRegistry.get("pharmacy.kafka.produce").tag("outcome", "failure").counter().count());
+    }
+
+    @Test
+    void unreadablePayloadDoesNotBlockTheBatch() {
+        OutboxEvent broken = new OutboxEvent(1L, "prescription_status_updates", "RX-1", "not json", Instant.now(), null, null);
+        OutboxEvent ok = event(2L, new ProducerEvent("RECEIVED", "RX-2"));
+        when(outboxEventRepository.findUnsentForUpdate(any(Pageable.class))).thenReturn(List.of(broken, ok));
+        when(kafkaTemplate.send(eq("prescription_status_updates"), anyString(), any(ProducerEvent.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        assertEquals(1, underTest.relayBatch());
+        verify(outboxEventRepository, times(1)).markSent(eq(List.of(2L)), any(Instant.class));
+        // Set aside so it isn't re-read at the head of every batch
+        verify(outboxEventRepository, times(1)).markFailed(eq(List.of(1L)), any(Instant.class));
+    }
+
+    @Test
+    void rowWithoutKeyIsKeyedFromItsPayload() throws Exception {
+        OutboxEvent queuedEarlier = new OutboxEvent(1L, "prescription_status_updates", null,
+                objectMapper.writeValueAsString(new ProducerEvent("FILLED", "RX-7")), Instant.now(), null, null);
+        when(outboxEventRepository.findUnsentForUpdate(any(Pageable.class))).thenReturn(List.of(queuedEarlier));
+        when(kafkaTemplate.send(eq("prescription_status_updates"), eq("RX-7"), any(ProducerEvent.class)))
+                .thenReturn(CompletableFuture.completedFuture(null));
+
+        assertEquals(1, underTest.relayBatch());
+    }
+
+    @Test
+    void nothingToRelay() {
+        when(outboxEventRepository.findUnsentForUpdate(any(Pageable.class))).thenReturn(List.of());
+
+        underTest.relayPending();
+
+        verifyNoInteractions(kafkaTemplate);
+        verify(outboxEventRepository, never()).markSent(anyList(), any());
+        verify(outboxEventRepository, never()).markFailed(anyList(), any());
+    }
+
+    @Test
+    void purgeRemovesOldSentEvents() {
+        when(outboxEventRepository.deleteSentBefore(any(Instant.class))).thenReturn(3);
+
+        assertEquals(3, underTest.purgeSent());
+    }
+
+    private OutboxEvent event(Long id, ProducerEvent producerEvent) throws Exception {
+        return new OutboxEvent(id, "prescription_status_updates", producerEvent.getPrescriptionId(),
+                objectMapper.writeValueAsString(producerEvent), Instant.now(), null, null);
+    }
+}
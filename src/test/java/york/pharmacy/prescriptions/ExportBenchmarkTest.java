@@ -0,0 +1,161 @@
+package york.pharmacy.prescriptions;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineRepository;
+import york.pharmacy.orders.OrderService;
+import york.pharmacy.utilities.NdjsonWriter;
+import york.pharmacy.utilities.OptimisticRetry;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Exports 1M synthetic prescriptions and 1M orders through the NDJSON path.
+// The benchmark task caps the heap well below what the materialized lists would need,
+// so an export that buffers its rows fails with OutOfMemoryError instead of passing.
+// Rows live in a file-backed H2 database so the data itself doesn't count against the heap.
+// Run with: gradlew benchmark --tests "*ExportBenchmarkTest"
+@Tag("benchmark")
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.datasource.url=jdbc:h2:file:./build/export-benchmark/db;MODE=PostgreSQL;DATABASE_TO_UPPER=false"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import({PrescriptionService.class, OrderService.class})
+class ExportBenchmarkTest {
+
+    private static final int ROWS = 1_000_000;
+
+    @MockitoBean
+    private ServiceUtility serviceUtility;
+
+    @MockitoBean
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private PrescriptionService prescriptionService;
+
+    @Autowired
+    private OrderService orderService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @AfterEach
+    void cleanUp() {
+        jdbcTemplate.update("DELETE FROM prescription");
+        jdbcTemplate.update("DELETE FROM orders");
+        jdbcTemplate.update("DELETE FROM inventory");
+        jdbcTemplate.update("DELETE FROM medicine");
+    }
+
+    @Test
+    void exportMillionPrescriptions() throws IOException {
+        Medicine medicine = medicineRepository.save(new Medicine("Export Tabs", "EXP-001"));
+        jdbcTemplate.update("INSERT INTO prescription " +
+                "(id, patient_id, medicine_id, prescription_number, quantity, instructions, status) " +
+                "SELECT X, 'PID-' || (X % 5000), ?, 'RX-' || X, 30, 'Take once daily', 'FILLED' " +
+                "FROM SYSTEM_RANGE(1, ?)", medicine.getId(), ROWS);
+
+        Result result = export(writer -> prescriptionService.exportPrescriptions(writer::write));
+
+        print("prescriptions", result);
+        assertEquals(ROWS, result.lines);
+    }
+
+    @Test
+    void exportMillionOrders() throws IOException {
+        Medicine medicine = medicineRepository.save(new Medicine("Export Caps", "EXP-002"));
+        Inventory inventory = inventoryRepository.save(Inventory.builder()
+                .medicine(medicine)
+                .stockQuantity(0)
+                .build());
+        jdbcTemplate.update("INSERT INTO orders " +
+                "(id, inventory_id, quantity, delivery_date, status, created_at, updated_at) " +
+                "SELECT X, ?, 100, DATEADD('DAY', X % 365, DATE '2025-01-01'), 'RECEIVED', " +
+                "CURRENT_TIMESTAMP, CURRENT_TIMESTAMP FROM SYSTEM_RANGE(1, ?)", inventory.getId(), ROWS);
+
+        Result result = export(writer -> orderService.exportOrders(writer::write));
+
+        print("orders", result);
+        assertEquals(ROWS, result.lines);
+    }
+
+    // Streams an export into a sink that only counts lines, sampling heap use as it goes
+    private Result export(Consumer<NdjsonWriter> exporter) throws IOException {
+        LineCountingOutputStream out = new LineCountingOutputStream();
+        long start = System.nanoTime();
+        try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+            exporter.accept(writer);
+        }
+        double seconds = (System.nanoTime() - start) / 1_000_000_000.0;
+        return new Result(out.lines, out.bytes, seconds, out.peakHeapBytes);
+    }
+
+    private void print(String name, Result result) {
+        System.out.printf("%s: %,d lines %,d MB in %.1f s | peak sampled heap %,d MB of %,d MB max%n",
+                name, result.lines, result.bytes >> 20, result.seconds,
+                result.peakHeapBytes >> 20, Runtime.getRuntime().maxMemory() >> 20);
+    }
+
+    private static class LineCountingOutputStream extends OutputStream {
+        private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        private long lines;
+        private long bytes;
+        private long peakHeapBytes;
+
+        @Override
+        public void write(int b) {
+            count(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            for (int i = off; i < off + len; i++) {
+                count(b[i]);
+            }
+        }
+
+        private void count(int b) {
+            bytes++;
+            if (b == '\n' && ++lines % 100_000 == 0) {
+                peakHeapBytes = Math.max(peakHeapBytes, memory.getHeapMemoryUsage().getUsed());
+            }
+        }
+    }
+
+    private record Result(long lines, long bytes, double seconds, long peakHeapBytes) {
+    }
+}
@@ -1,21 +1,34 @@
 package york.pharmacy.prescriptions;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.MockitoAnnotations;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import york.pharmacy.medicines.Medicine;
+import york.pharmacy.prescriptions.dto.PrescriptionBulkStatusRequest;
+import york.pharmacy.prescriptions.dto.PrescriptionBulkStatusResponse;
+import york.pharmacy.prescriptions.dto.PrescriptionPageResponse;
 import york.pharmacy.prescriptions.dto.PrescriptionRequest;
 import york.pharmacy.prescriptions.dto.PrescriptionResponse;
 import york.pharmacy.prescriptions.dto.PrescriptionStatusRequest;
+import york.pharmacy.prescriptions.dto.PrescriptionTransition;
+import york.pharmacy.prescriptions.dto.PrescriptionTransitionResult;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
+import java.util.function.Consumer;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -27,6 +40,9 @@ class PrescriptionControllerTest {
     @Mock
     private PrescriptionService prescriptionService;
 
+    @Spy
+    private ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
     @InjectMocks
     private PrescriptionController underTest;
 
@@ -95,6 +111,41 @@ class PrescriptionControllerTest {
 
     }
 
+    @Test
+    void getPrescriptionPage() {
+        PrescriptionPageResponse page = new PrescriptionPageResponse(List.of(prescriptionResponse), "aWQ6MQ");
+        when(prescriptionService.getPrescriptionPage("aWQ6MA", 1, PrescriptionStatus.NEW, null, "XOF03")).thenReturn(page);
+
+        ResponseEntity<PrescriptionPageResponse> response =
+                underTest.getPrescriptionPage("aWQ6MA", 1, PrescriptionStatus.NEW, null, "XOF03");
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(page, response.getBody());
+        verify(prescriptionService, times(1)).getPrescriptionPage("aWQ6MA", 1, PrescriptionStatus.NEW, null, "XOF03");
+    }
+
+    @Test
+    void exportPrescriptions() throws Exception {
+        doAnswer(invocation -> {
+            Consumer<PrescriptionResponse> sink = invocation.getArgument(0);
+            sink.accept(prescriptionResponse);
+            sink.accept(prescriptionResponse);
+            return 2L;
+        }).when(prescriptionService).exportPrescriptions(any());
+
+        ResponseEntity<StreamingResponseBody> response = underTest.exportPrescriptions();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        response.getBody().writeTo(out);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(MediaType.APPLICATION_NDJSON, response.getHeaders().getContentType());
+        String body = out.toString(StandardCharsets.UTF_8);
+        String[] lines = body.split("\n");
+        assertEquals(2, lines.length);
+        assertTrue(body.endsWith("\n"));
+        assertEquals(prescriptionResponse, objectMapper.readValue(lines[1], PrescriptionResponse.class));
+    }
+
     @Test
     void getPrescriptionById() {
         when(prescriptionService.getPrescriptionById(1L)).thenReturn(prescriptionResponse);
@@ -126,4 +177,22 @@ class PrescriptionControllerTest {
         assertEquals(HttpStatus.OK, response.getStatusCode());
         verify(prescriptionService, times(1)).updatePrescription(1L, updatedStatusRequest);
     }
-}
\ No newline at end of file
+
+    @Test
+    void updatePrescriptionStatuses() {
+        List<PrescriptionTransition> transitions = List.of(
+                new PrescriptionTransition(1L, PrescriptionStatus.FILLED),
+                new PrescriptionTransition(2L, PrescriptionStatus.PICKED_UP));
+        PrescriptionBulkStatusResponse bulkResponse = new PrescriptionBulkStatusResponse(1, 1, List.of(
+                PrescriptionTransitionResult.applied(transitions.get(0)),
+                PrescriptionTransitionResult.rejected(transitions.get(1), "Prescription with id 2 not found")));
+        when(prescriptionService.updatePrescriptionStatuses(transitions)).thenReturn(bulkResponse);
+
+        ResponseEntity<PrescriptionBulkStatusResponse> response =
+                underTest.updatePrescriptionStatuses(new PrescriptionBulkStatusRequest(transitions));
+
+        // Partial failures are reported per item, not as an error status
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(bulkResponse, response.getBody());
+    }
+}
@@ -0,0 +1,173 @@
+package york.pharmacy.prescriptions;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import york.pharmacy.demand.MedicineDemandService;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.kafka.KafkaProducer;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineCache;
+import york.pharmacy.medicines.MedicineRepository;
+import york.pharmacy.prescriptions.dto.PrescriptionStatusRequest;
+import york.pharmacy.utilities.OptimisticRetry;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Races fills of the same prescription, and a fill against a cancel, through the real service.
+// Runs outside a test transaction so each attempt commits (or loses) on its own, like concurrent requests.
+@DataJpaTest(properties = {
+        "spring.jpa.show-sql=false",
+        "spring.datasource.url=jdbc:h2:mem:fill-concurrency;MODE=PostgreSQL;DATABASE_TO_UPPER=false;LOCK_TIMEOUT=10000",
+        "pharmacy.retry.max-attempts=6"
+})
+@AutoConfigureTestDatabase(replace = AutoConfigureTestDatabase.Replace.NONE)
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import({PrescriptionService.class, ServiceUtility.class, MedicineCache.class, MedicineDemandService.class,
+        OptimisticRetry.class, SimpleMeterRegistry.class})
+class PrescriptionFillConcurrencyTest {
+
+    private static final int THREADS = 16;
+    private static final int STOCK = 1_000;
+    private static final int QUANTITY = 10;
+
+    @MockitoBean
+    private KafkaProducer kafkaProducer;
+
+    @Autowired
+    private PrescriptionService prescriptionService;
+
+    @Autowired
+    private PrescriptionRepository prescriptionRepository;
+
+    @Autowired
+    private InventoryRepository inventoryRepository;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Test
+    @DisplayName("Concurrent fills of one prescription take stock exactly once")
+    void concurrentFillsTakeStockOnce() throws Exception {
+        Prescription prescription = createPrescription("FILL-001");
+        Long inventoryId = inventoryRepository.findByMedicineId(prescription.getMedicine().getId()).orElseThrow().getId();
+
+        AtomicInteger filled = new AtomicInteger();
+        List<Throwable> rejected = runConcurrently(() -> {
+            prescriptionService.updatePrescription(prescription.getId(), new PrescriptionStatusRequest(PrescriptionStatus.FILLED));
+            filled.incrementAndGet();
+        });
+
+        assertEquals(1, filled.get());
+        // Losers either re-read the FILLED status or ran out of attempts - nothing else
+        rejected.forEach(ex -> assertTrue(ex instanceof IllegalStateException || ex instanceof OptimisticLockingFailureException,
+                () -> "Unexpected failure: " + ex));
+        assertEquals(STOCK - QUANTITY, inventoryRepository.findById(inventoryId).orElseThrow().getStockQuantity());
+        assertEquals(PrescriptionStatus.FILLED, prescriptionRepository.findById(prescription.getId()).orElseThrow().getStatus());
+    }
+
+    @Test
+    @DisplayName("A fill that read the prescription before a cancel committed can't overwrite it")
+    void staleFillLosesToCancel() {
+        Prescription prescription = createPrescription("FILL-002");
+        Prescription stale = prescriptionRepository.findById(prescription.getId()).orElseThrow();
+
+        // The Kafka CANCELLED path is a bulk update, which bumps the version too
+        new TransactionTemplate(transactionManager).executeWithoutResult(status -> prescriptionRepository
+                .updateStatusByPrescriptionNumbers(Set.of(stale.getPrescriptionNumber()),
+                        PrescriptionStatus.NEW, PrescriptionStatus.CANCELLED));
+
+        stale.setStatus(PrescriptionStatus.FILLED);
+        assertThrows(OptimisticLockingFailureException.class, () -> prescriptionRepository.save(stale));
+
+        // Through the service the fill re-reads the row and fails its transition check without touching stock
+        assertThrows(IllegalStateException.class, () -> prescriptionService.updatePrescription(
+                prescription.getId(), new PrescriptionStatusRequest(PrescriptionStatus.FILLED)));
+        assertEquals(STOCK, inventoryRepository.findByMedicineId(prescription.getMedicine().getId())
+                .orElseThrow().getStockQuantity());
+    }
+
+    @Test
+    @DisplayName("A batch cancel that read the prescription before a fill committed matches no row")
+    void staleCancelLosesToFill() {
+        Prescription prescription = createPrescription("FILL-003");
+
+        prescriptionService.updatePrescription(prescription.getId(), new PrescriptionStatusRequest(PrescriptionStatus.FILLED));
+
+        // The cancel still expects NEW, so it leaves the filled row (and its demand) alone
+        Integer cancelled = new TransactionTemplate(transactionManager).execute(status -> prescriptionRepository
+                .updateStatusByPrescriptionNumbers(Set.of(prescription.getPrescriptionNumber()),
+                        PrescriptionStatus.NEW, PrescriptionStatus.CANCELLED));
+        assertEquals(0, cancelled);
+        assertEquals(PrescriptionStatus.FILLED, prescriptionRepository.findById(prescription.getId()).orElseThrow().getStatus());
+    }
+
+    private Prescription createPrescription(String code) {
+        Medicine medicine = medicineRepository.save(new Medicine("Concurrency " + code, code));
+        inventoryRepository.save(Inventory.builder()
+                .medicine(medicine)
+                .stockQuantity(STOCK)
+                .build());
+        Prescription prescription = new Prescription();
+        prescription.setPatientId("PID-" + code);
+        prescription.setMedicine(medicine);
+        prescription.setPrescriptionNumber("RX-" + code);
+        prescription.setQuantity(QUANTITY);
+        prescription.setStatus(PrescriptionStatus.NEW);
+        return prescriptionRepository.save(prescription);
+    }
+
+    // Releases all threads at once and returns what the losing calls threw
+    private List<Throwable> runConcurrently(Runnable work) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> futures = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    work.run();
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                try {
+                    future.get(60, TimeUnit.SECONDS);
+                } catch (ExecutionException ex) {
+                    failures.add(ex.getCause());
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        return failures;
+    }
+}
@@ -36,6 +36,7 @@ class PrescriptionMapperTest {
                 30,
                 "take after meals",
                 PrescriptionStatus.NEW,
+                null,
                 null
         );
     }
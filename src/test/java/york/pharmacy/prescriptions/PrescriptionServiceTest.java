@@ -1,25 +1,45 @@
 package york.pharmacy.prescriptions;
 
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import york.pharmacy.demand.DemandChange;
+import york.pharmacy.exceptions.ResourceNotFoundException;
 import york.pharmacy.inventory.InventoryRepository;
+import york.pharmacy.kafka.ProducerEvent;
 import york.pharmacy.medicines.Medicine;
 import york.pharmacy.medicines.MedicineService;
+import york.pharmacy.prescriptions.dto.PrescriptionBulkStatusResponse;
+import york.pharmacy.prescriptions.dto.PrescriptionPageResponse;
 import york.pharmacy.prescriptions.dto.PrescriptionRequest;
 import york.pharmacy.prescriptions.dto.PrescriptionResponse;
 import york.pharmacy.prescriptions.dto.PrescriptionStatusRequest;
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
+import york.pharmacy.prescriptions.dto.PrescriptionSummaryPage;
+import york.pharmacy.prescriptions.dto.PrescriptionTransition;
+import york.pharmacy.prescriptions.dto.PrescriptionTransitionResult;
+import york.pharmacy.utilities.KeysetCursor;
+import york.pharmacy.utilities.OptimisticRetry;
 import york.pharmacy.utilities.ServiceUtility;
 
 import java.time.Instant;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -37,6 +57,12 @@ class PrescriptionServiceTest {
     @Mock
     private InventoryRepository inventoryRepository;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private OptimisticRetry optimisticRetry;
+
     // This injects the above mocks into the PrescriptionService constructor
     @InjectMocks
     private PrescriptionService underTest;
@@ -47,6 +73,9 @@ class PrescriptionServiceTest {
 
     @BeforeEach
     void setUp() {
+        // Runs the update straight through, as a first attempt without a conflict would
+        lenient().when(optimisticRetry.execute(anyString(), any()))
+                .thenAnswer(invocation -> invocation.<Supplier<?>>getArgument(1).get());
 
         medicine = new Medicine(1L, "Aspirin", "MED001", Instant.now(), Instant.now());
         prescriptionRequest = new PrescriptionRequest(
@@ -65,6 +94,7 @@ class PrescriptionServiceTest {
                 30,
                 "take after meals",
                 PrescriptionStatus.NEW,
+                null,
                 null
         );
     }
@@ -80,7 +110,7 @@ class PrescriptionServiceTest {
 
         assertNotNull(response);
         assertEquals(1, response.getId());
-
+        verify(serviceUtility).recordStatusChange(1L, null, PrescriptionStatus.NEW, 30);
     }
 
     @Test
@@ -109,6 +139,95 @@ class PrescriptionServiceTest {
                 .findAllByStatusExcept(List.of(PrescriptionStatus.CANCELLED, PrescriptionStatus.PICKED_UP));
     }
 
+    @Test
+    void getPrescriptionPage_hasNextPage() {
+        Prescription second = new Prescription(2L, "1234L", medicine, "112L", 10, "take daily", PrescriptionStatus.NEW, null, null);
+        Prescription third = new Prescription(3L, "1234L", medicine, "113L", 10, "take daily", PrescriptionStatus.NEW, null, null);
+        when(prescriptionRepository.findPageAfter(0L, PrescriptionStatus.NEW, "1234L", null, 3))
+                .thenReturn(List.of(prescription, second, third));
+
+        PrescriptionPageResponse page = underTest.getPrescriptionPage(null, 2, PrescriptionStatus.NEW, "1234L", null);
+
+        assertEquals(2, page.getItems().size());
+        assertEquals(2L, page.getItems().get(1).getId());
+        assertEquals(2L, KeysetCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void getPrescriptionPage_lastPage() {
+        String cursor = KeysetCursor.encode(0L);
+        when(serviceUtility.findMedicineByCode("MED001")).thenReturn(Optional.of(medicine));
+        // The code is filtered on as the medicine's id
+        when(prescriptionRepository.findPageAfter(0L, null, null, 1L, PrescriptionService.DEFAULT_PAGE_SIZE + 1))
+                .thenReturn(List.of(prescription));
+
+        PrescriptionPageResponse page = underTest.getPrescriptionPage(cursor, null, null, null, "MED001");
+
+        assertEquals(1, page.getItems().size());
+        assertNull(page.getNextCursor());
+    }
+
+    @Test
+    void getPrescriptionPage_unknownMedicineCodeIsEmpty() {
+        when(serviceUtility.findMedicineByCode("NOPE")).thenReturn(Optional.empty());
+
+        PrescriptionPageResponse page = underTest.getPrescriptionPage(null, null, null, null, "NOPE");
+
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNextCursor());
+        verifyNoInteractions(prescriptionRepository);
+    }
+
+    @Test
+    void getPrescriptionSummaryById_notFound() {
+        when(prescriptionRepository.findSummaryById(9L)).thenReturn(Optional.empty());
+
+        assertThrows(ResourceNotFoundException.class, () -> underTest.getPrescriptionSummaryById(9L));
+    }
+
+    @Test
+    void getPrescriptionSummaryPage_hasNextPage() {
+        when(prescriptionRepository.findSummaryPageAfter(0L, PrescriptionStatus.NEW, null, null, 3))
+                .thenReturn(List.of(summary(1L), summary(2L), summary(3L)));
+
+        PrescriptionSummaryPage page = underTest.getPrescriptionSummaryPage(null, 2, PrescriptionStatus.NEW, null, null);
+
+        assertEquals(2, page.getItems().size());
+        assertEquals(2L, KeysetCursor.decode(page.getNextCursor()));
+    }
+
+    @Test
+    void getPrescriptionPage_limitTooLarge() {
+        assertThrows(IllegalArgumentException.class,
+                () -> underTest.getPrescriptionPage(null, PrescriptionService.MAX_PAGE_SIZE + 1, null, null, null));
+        verifyNoInteractions(prescriptionRepository);
+    }
+
+    @Test
+    void exportPrescriptions() {
+        Prescription second = new Prescription(2L, "1234L", medicine, "112L", 10, "take daily", PrescriptionStatus.FILLED, null, null);
+        when(prescriptionRepository.streamAllForExport()).thenReturn(Stream.of(prescription, second));
+        List<PrescriptionResponse> exported = new ArrayList<>();
+
+        long count = underTest.exportPrescriptions(exported::add);
+
+        assertEquals(2, count);
+        assertEquals(List.of(PrescriptionMapper.toResponse(prescription), PrescriptionMapper.toResponse(second)), exported);
+        verify(entityManager, never()).clear();
+    }
+
+    @Test
+    void exportPrescriptions_clearsPersistenceContextAsItGoes() {
+        int rows = PrescriptionRepository.EXPORT_FETCH_SIZE * 2 + 1;
+        when(prescriptionRepository.streamAllForExport()).thenReturn(IntStream.rangeClosed(1, rows)
+                .mapToObj(i -> new Prescription((long) i, "1234L", medicine, "RX-" + i, 10, "take daily", PrescriptionStatus.FILLED, null, null)));
+
+        long count = underTest.exportPrescriptions(response -> { });
+
+        assertEquals(rows, count);
+        verify(entityManager, times(2)).clear();
+    }
+
     @Test
     void getPrescriptionById() {
         when(prescriptionRepository.findById(1L))
@@ -131,7 +250,7 @@ class PrescriptionServiceTest {
                 .thenReturn(Optional.of(prescription));
 
 
-        when(prescriptionRepository.save(any(Prescription.class)))
+        when(prescriptionRepository.saveAndFlush(any(Prescription.class)))
                 .thenReturn(prescription);
 
         // Execute
@@ -140,9 +259,11 @@ class PrescriptionServiceTest {
         // Assert
         assertNotNull(response);
         assertEquals(PrescriptionStatus.FILLED, prescription.getStatus());
-        verify(serviceUtility, times(1)).adjustStockQuantity(eq(1L), eq(-30)); // Verify stock update
+        verify(serviceUtility, times(1)).decrementStockForFill(eq(1L), eq(30)); // Verify atomic stock update
+        verify(serviceUtility, times(1)).recordStatusChange(1L, PrescriptionStatus.NEW, PrescriptionStatus.FILLED, 30);
         verify(serviceUtility, times(1)).publishPickedUpOrFilled(eq("FILLED"), eq("111L")); // Verify notification
-        verify(prescriptionRepository, times(1)).save(any(Prescription.class)); // Verify save
+        verify(prescriptionRepository, times(1)).saveAndFlush(any(Prescription.class)); // Verify save
+        verify(optimisticRetry).execute(eq("prescription.update"), any());
     }
 
     @Test
@@ -156,13 +277,14 @@ class PrescriptionServiceTest {
                 30,
                 "take after meals",
                 PrescriptionStatus.FILLED,
+                null,
                 null
         );
         PrescriptionStatusRequest statusRequest = new PrescriptionStatusRequest(PrescriptionStatus.PICKED_UP);
 
         when(prescriptionRepository.findById(23L))
                 .thenReturn(Optional.of(prescription2));
-        when(prescriptionRepository.save(any(Prescription.class)))
+        when(prescriptionRepository.saveAndFlush(any(Prescription.class)))
                 .thenReturn(prescription2);
 
         PrescriptionResponse response = underTest.updatePrescription(23L, statusRequest);
@@ -182,6 +304,7 @@ class PrescriptionServiceTest {
                 30,
                 "take after meals",
                 PrescriptionStatus.CANCELLED,
+                null,
                 null
         );
         PrescriptionStatusRequest statusRequest = new PrescriptionStatusRequest(PrescriptionStatus.FILLED);
@@ -218,4 +341,90 @@ class PrescriptionServiceTest {
                 thrown.getMessage()
         );
     }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void updatePrescriptionStatuses_appliesValidEntriesAndReportsTheRest() {
+        Prescription filled = new Prescription(2L, "1234L", medicine, "112L", 10, "take daily", PrescriptionStatus.FILLED, null, null);
+        Prescription cancelled = new Prescription(3L, "1234L", medicine, "113L", 10, "take daily", PrescriptionStatus.CANCELLED, null, null);
+        Prescription another = new Prescription(4L, "1234L", medicine, "114L", 30, "take daily", PrescriptionStatus.NEW, null, null);
+        when(prescriptionRepository.findAllById(any())).thenReturn(List.of(prescription, filled, cancelled, another));
+        // 50 pills: enough for the first 30-pill fill, not for the second
+        when(serviceUtility.getStockByMedicineIds(Set.of(1L))).thenReturn(Map.of(1L, 50));
+
+        PrescriptionBulkStatusResponse response = underTest.updatePrescriptionStatuses(List.of(
+                new PrescriptionTransition(1L, PrescriptionStatus.FILLED),
+                new PrescriptionTransition(2L, PrescriptionStatus.PICKED_UP),
+                new PrescriptionTransition(3L, PrescriptionStatus.FILLED),
+                new PrescriptionTransition(99L, PrescriptionStatus.FILLED),
+                new PrescriptionTransition(4L, PrescriptionStatus.FILLED)));
+
+        assertEquals(2, response.getUpdated());
+        assertEquals(3, response.getRejected());
+        assertEquals(List.of(true, true, false, false, false),
+                response.getResults().stream().map(PrescriptionTransitionResult::isUpdated).toList());
+        assertEquals("Prescription cannot be marked as FILLED from the current state: CANCELLED", response.getResults().get(2).getError());
+        assertEquals("Prescription with id 99 not found", response.getResults().get(3).getError());
+        assertEquals("Cannot reduce stock below 0", response.getResults().get(4).getError());
+        assertEquals(PrescriptionStatus.FILLED, prescription.getStatus());
+        assertEquals(PrescriptionStatus.PICKED_UP, filled.getStatus());
+        assertEquals(PrescriptionStatus.NEW, another.getStatus());
+
+        // One stock update for the medicine, one demand change, one flush and one outbox batch
+        verify(serviceUtility).decrementStockForFills(Map.of(1L, 30));
+        ArgumentCaptor<DemandChange> demandChange = ArgumentCaptor.forClass(DemandChange.class);
+        verify(serviceUtility).recordStatusChanges(demandChange.capture());
+        assertEquals(-30, demandChange.getValue().getDelta(1L).getClaimedQuantity());
+        verify(prescriptionRepository).flush();
+        ArgumentCaptor<List<ProducerEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(serviceUtility).publishStatusUpdates(events.capture());
+        assertEquals(List.of("FILLED", "PICKED_UP"), events.getValue().stream().map(ProducerEvent::getEventType).toList());
+        verify(serviceUtility, never()).decrementStockForFill(any(), anyInt());
+        verify(prescriptionRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    void updatePrescriptionStatuses_appliesEntriesInOrder() {
+        when(prescriptionRepository.findAllById(any())).thenReturn(List.of(prescription));
+        when(serviceUtility.getStockByMedicineIds(Set.of(1L))).thenReturn(Map.of(1L, 100));
+
+        PrescriptionBulkStatusResponse response = underTest.updatePrescriptionStatuses(List.of(
+                new PrescriptionTransition(1L, PrescriptionStatus.FILLED),
+                new PrescriptionTransition(1L, PrescriptionStatus.PICKED_UP),
+                new PrescriptionTransition(1L, PrescriptionStatus.FILLED)));
+
+        // Filled then picked up; filling it again is rejected against the status it has by then
+        assertEquals(2, response.getUpdated());
+        assertEquals("Prescription cannot be marked as FILLED from the current state: PICKED_UP", response.getResults().get(2).getError());
+        assertEquals(PrescriptionStatus.PICKED_UP, prescription.getStatus());
+        verify(serviceUtility).decrementStockForFills(Map.of(1L, 30));
+        verify(optimisticRetry).execute(eq("prescription.bulk-update"), any());
+    }
+
+    @Test
+    void updatePrescriptionStatuses_rejectsUnsupportedStatus() {
+        when(prescriptionRepository.findAllById(any())).thenReturn(List.of(prescription));
+
+        PrescriptionBulkStatusResponse response = underTest.updatePrescriptionStatuses(List.of(
+                new PrescriptionTransition(1L, PrescriptionStatus.CANCELLED)));
+
+        assertEquals(0, response.getUpdated());
+        assertEquals("Prescription status can only be set to FILLED or PICKED_UP, not CANCELLED", response.getResults().get(0).getError());
+        verify(serviceUtility, never()).getStockByMedicineIds(any());
+        verify(serviceUtility).publishStatusUpdates(List.of());
+    }
+
+    @Test
+    void updatePrescriptionStatuses_tooManyTransitions() {
+        List<PrescriptionTransition> transitions = IntStream.rangeClosed(1, PrescriptionService.MAX_BULK_TRANSITIONS + 1)
+                .mapToObj(i -> new PrescriptionTransition((long) i, PrescriptionStatus.FILLED))
+                .toList();
+
+        assertThrows(IllegalArgumentException.class, () -> underTest.updatePrescriptionStatuses(transitions));
+        verifyNoInteractions(prescriptionRepository);
+    }
+
+    private static PrescriptionSummary summary(Long id) {
+        return new PrescriptionSummary(id, "RX-" + id, "111L", "MED001", "Aspirin", 30, "take after meals", PrescriptionStatus.NEW);
+    }
 }
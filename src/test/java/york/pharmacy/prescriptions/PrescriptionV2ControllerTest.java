@@ -0,0 +1,62 @@
+package york.pharmacy.prescriptions;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import york.pharmacy.prescriptions.dto.PrescriptionSummary;
+import york.pharmacy.prescriptions.dto.PrescriptionSummaryPage;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class PrescriptionV2ControllerTest {
+
+    private final ObjectMapper objectMapper = JsonMapper.builder().findAndAddModules().build();
+
+    @Mock
+    private PrescriptionService prescriptionService;
+
+    @InjectMocks
+    private PrescriptionV2Controller underTest;
+
+    private final PrescriptionSummary summary = new PrescriptionSummary(
+            1L, "555L", "123L", "XOF03", "Jelly Beans", 30, "Take after Meals", PrescriptionStatus.NEW);
+
+    @Test
+    void getPrescriptionPage() throws Exception {
+        PrescriptionSummaryPage page = new PrescriptionSummaryPage(List.of(summary), "next");
+        when(prescriptionService.getPrescriptionSummaryPage("abc", 10, PrescriptionStatus.NEW, "123L", null))
+                .thenReturn(page);
+
+        ResponseEntity<PrescriptionSummaryPage> response =
+                underTest.getPrescriptionPage("abc", 10, PrescriptionStatus.NEW, "123L", null);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(page, response.getBody());
+        // Flat shape: medicine code and name, no nested medicine object
+        JsonNode json = objectMapper.readTree(objectMapper.writeValueAsString(response.getBody())).get("items").get(0);
+        assertEquals("XOF03", json.get("medicineCode").asText());
+        assertEquals("Jelly Beans", json.get("medicineName").asText());
+        assertFalse(json.has("medicine"));
+    }
+
+    @Test
+    void getPrescriptionById() {
+        when(prescriptionService.getPrescriptionSummaryById(1L)).thenReturn(summary);
+
+        ResponseEntity<PrescriptionSummary> response = underTest.getPrescriptionById(1L);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(summary, response.getBody());
+    }
+}
@@ -0,0 +1,110 @@
+package york.pharmacy.prescriptions;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.ImportAutoConfiguration;
+import org.springframework.boot.autoconfigure.jackson.JacksonAutoConfiguration;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineRepository;
+import york.pharmacy.utilities.OptimisticRetry;
+import york.pharmacy.utilities.ServiceUtility;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Compares the v1 (entity graph mapped to PrescriptionResponse) and v2 (PrescriptionSummary projection)
+// keyset pages of the same full-size page of prescriptions: bytes on the wire and bytes allocated per request.
+// Run with: gradlew benchmark --tests "*ResponseShapeBenchmarkTest"
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@ImportAutoConfiguration(JacksonAutoConfiguration.class)
+@Import(PrescriptionService.class)
+class ResponseShapeBenchmarkTest {
+
+    private static final int ROWS = PrescriptionService.MAX_PAGE_SIZE;
+    private static final int WARMUP = 5;
+    private static final int RUNS = 20;
+
+    @MockitoBean
+    private ServiceUtility serviceUtility;
+
+    @MockitoBean
+    private OptimisticRetry optimisticRetry;
+
+    @Autowired
+    private PrescriptionService prescriptionService;
+
+    @Autowired
+    private MedicineRepository medicineRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Test
+    void v2PageIsSmallerAndAllocatesLess() {
+        Medicine medicine = medicineRepository.save(new Medicine("Shape Tabs", "SHP-001"));
+        jdbcTemplate.update("INSERT INTO prescription " +
+                "(id, patient_id, medicine_id, prescription_number, quantity, instructions, status) " +
+                "SELECT X, 'PID-' || (X % 500), ?, 'RX-' || X, 30, 'Take once daily', 'NEW' " +
+                "FROM SYSTEM_RANGE(1, ?)", medicine.getId(), ROWS);
+        try {
+            Result v1 = measure(() -> prescriptionService.getPrescriptionPage(null, ROWS, null, null, null));
+            Result v2 = measure(() -> prescriptionService.getPrescriptionSummaryPage(null, ROWS, null, null, null));
+
+            print("v1 /api/prescriptions/page", v1);
+            print("v2 /api/v2/prescriptions/page", v2);
+            assertTrue(v2.bytes < v1.bytes, "v2 response should be smaller than v1");
+            assertTrue(v2.allocatedBytes < v1.allocatedBytes, "v2 request should allocate less than v1");
+        } finally {
+            jdbcTemplate.update("DELETE FROM prescription");
+            jdbcTemplate.update("DELETE FROM medicine");
+        }
+    }
+
+    // Average bytes allocated by this thread to read and serialize the page, after a warm-up
+    private Result measure(Supplier<?> read) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        int bytes = 0;
+        for (int i = 0; i < WARMUP; i++) {
+            bytes = serialize(read.get()).length;
+        }
+        long before = threads.getThreadAllocatedBytes(threadId);
+        for (int i = 0; i < RUNS; i++) {
+            serialize(read.get());
+        }
+        long allocated = (threads.getThreadAllocatedBytes(threadId) - before) / RUNS;
+        return new Result(bytes, allocated);
+    }
+
+    private byte[] serialize(Object body) {
+        try {
+            return objectMapper.writeValueAsBytes(body);
+        } catch (JsonProcessingException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private void print(String name, Result result) {
+        System.out.printf("%s: %,d rows %,d KB per response | %,d KB allocated per request%n",
+                name, ROWS, result.bytes >> 10, result.allocatedBytes >> 10);
+    }
+
+    private record Result(long bytes, long allocatedBytes) {
+    }
+}
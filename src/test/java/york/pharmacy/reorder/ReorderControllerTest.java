@@ -0,0 +1,48 @@
+package york.pharmacy.reorder;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import york.pharmacy.reorder.dto.ReorderPlan;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReorderControllerTest {
+
+    @Mock
+    private ReorderPlanner reorderPlanner;
+
+    @InjectMocks
+    private ReorderController underTest;
+
+    @Test
+    void getPlan_onlyProposes() {
+        ReorderPlan plan = new ReorderPlan(List.of(), 0, List.of());
+        when(reorderPlanner.plan()).thenReturn(plan);
+
+        ResponseEntity<ReorderPlan> response = underTest.getPlan();
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertSame(plan, response.getBody());
+        verify(reorderPlanner, never()).planAndSubmit();
+    }
+
+    @Test
+    void submitPlan() {
+        ReorderPlan plan = new ReorderPlan(List.of(), 0, List.of());
+        when(reorderPlanner.planAndSubmit()).thenReturn(plan);
+
+        ResponseEntity<ReorderPlan> response = underTest.submitPlan();
+
+        assertEquals(HttpStatus.CREATED, response.getStatusCode());
+        assertSame(plan, response.getBody());
+    }
+}
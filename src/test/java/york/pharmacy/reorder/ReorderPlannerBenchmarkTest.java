@@ -0,0 +1,83 @@
+package york.pharmacy.reorder;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.context.annotation.Import;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import york.pharmacy.orders.OrderService;
+import york.pharmacy.reorder.dto.ReorderPlan;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Plans reorders for 50k SKUs with a couple of open orders each and checks the whole plan
+// (one query plus the in-memory rounding) stays well under a second.
+// Run with: gradlew benchmark --tests "*ReorderPlannerBenchmarkTest"
+@Tag("benchmark")
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+@Transactional(propagation = Propagation.NOT_SUPPORTED)
+@Import(ReorderPlanner.class)
+class ReorderPlannerBenchmarkTest {
+
+    private static final int SKUS = 50_000;
+    private static final int RUNS = 5;
+
+    @MockitoBean
+    private OrderService orderService;
+
+    @Autowired
+    private ReorderPlanner reorderPlanner;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @Test
+    void fiftyThousandSkusPlanUnderASecond() {
+        seed();
+        try {
+            reorderPlanner.plan(); // warm-up
+
+            long best = Long.MAX_VALUE;
+            ReorderPlan plan = null;
+            for (int i = 0; i < RUNS; i++) {
+                long start = System.nanoTime();
+                plan = reorderPlanner.plan();
+                best = Math.min(best, System.nanoTime() - start);
+            }
+
+            System.out.printf("Reorder plan: %,d SKUs, %,d lines, %,d pills | best of %d: %,.1f ms%n",
+                    SKUS, plan.getLines().size(), plan.getTotalQuantity(), RUNS, best / 1_000_000.0);
+            // Stock is X % 200 against a demand of 250 and every other SKU has 100 on order
+            long expectedLines = jdbcTemplate.queryForObject("SELECT COUNT(*) FROM SYSTEM_RANGE(1, ?) " +
+                    "WHERE 250 > MOD(X, 200) + CASE WHEN MOD(X, 2) = 0 THEN 100 ELSE 0 END", Long.class, SKUS);
+            assertEquals(expectedLines, plan.getLines().size());
+            assertTrue(best < 1_000_000_000L, "Planning 50k SKUs should take well under a second");
+        } finally {
+            jdbcTemplate.update("DELETE FROM orders");
+            jdbcTemplate.update("DELETE FROM medicine_demand");
+            jdbcTemplate.update("DELETE FROM inventory");
+            jdbcTemplate.update("DELETE FROM medicine");
+        }
+    }
+
+    private void seed() {
+        jdbcTemplate.update("INSERT INTO medicine (id, name, code, created_at, updated_at) " +
+                "SELECT X, 'Bench Medicine ' || X, 'RO-' || X, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+                "FROM SYSTEM_RANGE(1, ?)", SKUS);
+        jdbcTemplate.update("INSERT INTO inventory (id, medicine_id, stock_quantity) " +
+                "SELECT X, X, MOD(X, 200) FROM SYSTEM_RANGE(1, ?)", SKUS);
+        jdbcTemplate.update("INSERT INTO medicine_demand " +
+                "(medicine_id, new_quantity, out_of_stock_quantity, stock_received_quantity, awaiting_shipment_quantity) " +
+                "SELECT X, 100, 50, 0, 100 FROM SYSTEM_RANGE(1, ?)", SKUS);
+        // Two ORDERED orders of 50 on every other SKU, plus a RECEIVED one that mustn't count
+        jdbcTemplate.update("INSERT INTO orders (id, inventory_id, quantity, delivery_date, status, created_at, updated_at) " +
+                "SELECT X, MOD(X, ?) + 1, CASE WHEN X > ? THEN 500 ELSE 50 END, CURRENT_DATE + 5, " +
+                "CASE WHEN X > ? THEN 'RECEIVED' ELSE 'ORDERED' END, CURRENT_TIMESTAMP, CURRENT_TIMESTAMP " +
+                "FROM SYSTEM_RANGE(1, ?) WHERE MOD(MOD(X, ?) + 1, 2) = 0",
+                SKUS, SKUS * 2, SKUS * 2, SKUS * 3, SKUS);
+    }
+}
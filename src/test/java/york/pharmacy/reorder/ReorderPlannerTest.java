@@ -0,0 +1,120 @@
+package york.pharmacy.reorder;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import york.pharmacy.orders.OrderService;
+import york.pharmacy.orders.dto.OrderRequest;
+import york.pharmacy.orders.dto.OrderResponse;
+import york.pharmacy.reorder.dto.ReorderLine;
+import york.pharmacy.reorder.dto.ReorderPlan;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class ReorderPlannerTest {
+
+    @Mock
+    private ReorderRepository reorderRepository;
+
+    @Mock
+    private OrderService orderService;
+
+    private ReorderPlanner underTest;
+
+    @BeforeEach
+    void setUp() {
+        ReorderProperties properties = new ReorderProperties();
+        properties.setDefaultPackSize(10);
+        properties.setDefaultLeadTimeDays(7);
+        properties.setPackSizes(Map.of("BIG-001", 100));
+        properties.setLeadTimeDays(Map.of("BIG-001", 2));
+        underTest = new ReorderPlanner(reorderRepository, properties, orderService);
+    }
+
+    @Test
+    void plan_roundsShortfallsUpToPacks() {
+        when(reorderRepository.findShortfalls()).thenReturn(List.of(
+                candidate(1L, "ABC-001", 20, 95L, 30L),   // short 45 -> 5 packs of 10
+                candidate(2L, "BIG-001", 0, 100L, 0L)));  // short exactly one pack of 100
+
+        ReorderPlan plan = underTest.plan();
+
+        ReorderLine first = plan.getLines().get(0);
+        assertEquals(45, first.getShortfall());
+        assertEquals(10, first.getPackSize());
+        assertEquals(50, first.getOrderQuantity());
+        assertEquals(LocalDate.now().plusDays(7), first.getDeliveryDate());
+
+        ReorderLine second = plan.getLines().get(1);
+        assertEquals(100, second.getOrderQuantity());
+        assertEquals(LocalDate.now().plusDays(2), second.getDeliveryDate());
+
+        assertEquals(150, plan.getTotalQuantity());
+        assertTrue(plan.getSubmittedOrders().isEmpty());
+        verifyNoInteractions(orderService);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void planAndSubmit_createsTheProposedOrdersInOneBatch() {
+        when(reorderRepository.findShortfalls()).thenReturn(List.of(candidate(1L, "ABC-001", 0, 12L, 0L)));
+        OrderResponse created = new OrderResponse();
+        when(orderService.batchCreateOrders(anyList())).thenReturn(List.of(created));
+
+        ReorderPlan plan = underTest.planAndSubmit();
+
+        ArgumentCaptor<List<OrderRequest>> requests = ArgumentCaptor.forClass(List.class);
+        verify(orderService).batchCreateOrders(requests.capture());
+        assertEquals(List.of(new OrderRequest(1L, 20, LocalDate.now().plusDays(7))), requests.getValue());
+        assertEquals(List.of(created), plan.getSubmittedOrders());
+    }
+
+    @Test
+    void planAndSubmit_nothingShortCreatesNothing() {
+        when(reorderRepository.findShortfalls()).thenReturn(List.of());
+
+        ReorderPlan plan = underTest.planAndSubmit();
+
+        assertTrue(plan.getLines().isEmpty());
+        verifyNoInteractions(orderService);
+    }
+
+    private static ReorderCandidate candidate(Long inventoryId, String code, int stock, Long demand, Long onOrder) {
+        return new ReorderCandidate() {
+            @Override
+            public Long getInventoryId() {
+                return inventoryId;
+            }
+
+            @Override
+            public String getMedicineCode() {
+                return code;
+            }
+
+            @Override
+            public Integer getStockQuantity() {
+                return stock;
+            }
+
+            @Override
+            public Long getDemandQuantity() {
+                return demand;
+            }
+
+            @Override
+            public Long getOnOrderQuantity() {
+                return onOrder;
+            }
+        };
+    }
+}
@@ -0,0 +1,77 @@
+package york.pharmacy.reorder;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import york.pharmacy.demand.MedicineDemand;
+import york.pharmacy.inventory.Inventory;
+import york.pharmacy.medicines.Medicine;
+import york.pharmacy.orders.Order;
+import york.pharmacy.orders.OrderStatus;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@DataJpaTest(properties = "spring.jpa.show-sql=false")
+class ReorderRepositoryTest {
+
+    @Autowired
+    private TestEntityManager entityManager;
+
+    @Autowired
+    private ReorderRepository reorderRepository;
+
+    @Test
+    void findShortfalls_demandMinusStockMinusOrdered() {
+        // Owes 100 (every unfilled bucket counts), has 20 and 30 on order; the received order doesn't count
+        Inventory shortInventory = inventory("SHORT-01", 20, new MedicineDemand(null, 40, 20, 10, 30));
+        order(shortInventory, 30, OrderStatus.ORDERED);
+        order(shortInventory, 500, OrderStatus.RECEIVED);
+        // Covered by stock alone
+        inventory("STOCKED-01", 60, new MedicineDemand(null, 50, 0, 0, 0));
+        // Covered exactly by stock plus what's on order
+        Inventory coveredInventory = inventory("COVERED-01", 10, new MedicineDemand(null, 20, 30, 0, 0));
+        order(coveredInventory, 40, OrderStatus.ORDERED);
+        // No demand row at all
+        inventory("QUIET-01", 0, null);
+        // Nothing in stock or on order
+        Inventory emptyInventory = inventory("EMPTY-01", 0, new MedicineDemand(null, 0, 10, 0, 0));
+        entityManager.flush();
+        entityManager.clear();
+
+        List<ReorderCandidate> shortfalls = reorderRepository.findShortfalls();
+
+        assertEquals(List.of(shortInventory.getId(), emptyInventory.getId()),
+                shortfalls.stream().map(ReorderCandidate::getInventoryId).toList());
+        ReorderCandidate first = shortfalls.get(0);
+        assertEquals("SHORT-01", first.getMedicineCode());
+        assertEquals(20, first.getStockQuantity());
+        assertEquals(100L, first.getDemandQuantity());
+        assertEquals(30L, first.getOnOrderQuantity());
+        assertEquals(0L, shortfalls.get(1).getOnOrderQuantity());
+    }
+
+    private Inventory inventory(String code, int stock, MedicineDemand demand) {
+        Medicine medicine = entityManager.persist(new Medicine("Reorder " + code, code));
+        if (demand != null) {
+            demand.setMedicineId(medicine.getId());
+            entityManager.persist(demand);
+        }
+        return entityManager.persist(Inventory.builder()
+                .medicine(medicine)
+                .stockQuantity(stock)
+                .build());
+    }
+
+    private void order(Inventory inventory, int quantity, OrderStatus status) {
+        Order order = new Order();
+        order.setInventory(inventory);
+        order.setQuantity(quantity);
+        order.setDeliveryDate(LocalDate.now().plusDays(5));
+        order.setStatus(status);
+        entityManager.persist(order);
+    }
+}
@@ -0,0 +1,35 @@
+package york.pharmacy.utilities;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KeysetCursorTest {
+
+    @Test
+    void roundTrip() {
+        String cursor = KeysetCursor.encode(12345L);
+
+        assertEquals(12345L, KeysetCursor.decode(cursor));
+    }
+
+    @Test
+    void missingCursorStartsAtTheBeginning() {
+        assertEquals(0L, KeysetCursor.decode(null));
+        assertEquals(0L, KeysetCursor.decode(""));
+    }
+
+    @Test
+    void rejectsInvalidCursors() {
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("not a cursor!"));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.decode("aGVsbG8")); // "hello"
+    }
+
+    @Test
+    void pageSize() {
+        assertEquals(50, KeysetCursor.pageSize(null, 50, 500));
+        assertEquals(10, KeysetCursor.pageSize(10, 50, 500));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.pageSize(0, 50, 500));
+        assertThrows(IllegalArgumentException.class, () -> KeysetCursor.pageSize(501, 50, 500));
+    }
+}
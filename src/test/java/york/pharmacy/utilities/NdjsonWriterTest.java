@@ -0,0 +1,48 @@
+package york.pharmacy.utilities;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NdjsonWriterTest {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void writesOneObjectPerLine() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+            writer.write(Map.of("id", 1));
+            writer.write(Map.of("id", 2));
+        }
+
+        assertEquals("{\"id\":1}\n{\"id\":2}\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void leavesTheResponseStreamOpen() throws Exception {
+        TrackingOutputStream out = new TrackingOutputStream();
+
+        try (NdjsonWriter writer = new NdjsonWriter(objectMapper, out)) {
+            writer.write(Map.of("id", 1));
+        }
+
+        assertFalse(out.closed);
+        assertEquals("{\"id\":1}\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    private static class TrackingOutputStream extends ByteArrayOutputStream {
+        private boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
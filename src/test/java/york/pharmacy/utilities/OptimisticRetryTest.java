@@ -0,0 +1,97 @@
+package york.pharmacy.utilities;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.persistence.OptimisticLockException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+import york.pharmacy.prescriptions.Prescription;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class OptimisticRetryTest {
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private SimpleMeterRegistry meterRegistry;
+    private OptimisticRetry underTest;
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(transactionManager.getTransaction(any())).thenAnswer(invocation -> new SimpleTransactionStatus());
+        meterRegistry = new SimpleMeterRegistry();
+        underTest = new OptimisticRetry(transactionManager, meterRegistry, 3, 0, 0);
+    }
+
+    @Test
+    void conflictIsRetriedInAFreshTransaction() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = underTest.execute("prescription.update", () -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new ObjectOptimisticLockingFailureException(Prescription.class, 1L);
+            }
+            return "filled";
+        });
+
+        assertEquals("filled", result);
+        assertEquals(2, attempts.get());
+        verify(transactionManager, times(2)).getTransaction(any());
+        verify(transactionManager).rollback(any(TransactionStatus.class));
+        verify(transactionManager).commit(any(TransactionStatus.class));
+        assertEquals(1, conflicts("retried"));
+        assertEquals(0, conflicts("exhausted"));
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        // An unwrapped JPA exception still counts as a conflict and is surfaced as Spring's for the 409 handler
+        assertThrows(OptimisticLockingFailureException.class, () -> underTest.execute("order.receive", () -> {
+            attempts.incrementAndGet();
+            throw new OptimisticLockException("stale");
+        }));
+
+        assertEquals(3, attempts.get());
+        assertEquals(2, conflicts("retried"));
+        assertEquals(1, conflicts("exhausted"));
+    }
+
+    @Test
+    void otherFailuresAreNotRetried() {
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThrows(IllegalStateException.class, () -> underTest.execute("prescription.update", () -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("Prescription cannot be marked as FILLED from the current state: CANCELLED");
+        }));
+
+        assertEquals(1, attempts.get());
+        assertNull(meterRegistry.find("pharmacy.optimistic.conflicts").counter());
+    }
+
+    @Test
+    void maxAttemptsMustBePositive() {
+        assertThrows(IllegalArgumentException.class, () -> new OptimisticRetry(transactionManager, meterRegistry, 0, 20, 200));
+    }
+
+    private double conflicts(String outcome) {
+        Counter counter = meterRegistry.find("pharmacy.optimistic.conflicts").tag("outcome", outcome).counter();
+        return counter == null ? 0 : counter.count();
+    }
+}
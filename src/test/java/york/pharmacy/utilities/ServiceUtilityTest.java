@@ -1,35 +1,50 @@
 package york.pharmacy.utilities;
 
+import jakarta.persistence.EntityManager;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Disabled;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.OptimisticLockingFailureException;
+import york.pharmacy.demand.DemandChange;
+import york.pharmacy.demand.MedicineDemand;
+import york.pharmacy.demand.MedicineDemandService;
+import york.pharmacy.exceptions.ResourceNotFoundException;
 import york.pharmacy.inventory.Inventory;
 import york.pharmacy.inventory.InventoryRepository;
 import york.pharmacy.inventory.dto.InventoryResponse;
+import york.pharmacy.kafka.IngestedPrescriptionNumberRepository;
 import york.pharmacy.kafka.KafkaProducer;
 import york.pharmacy.kafka.ProducerEvent;
 import york.pharmacy.medicines.Medicine;
+import york.pharmacy.medicines.MedicineCache;
 import york.pharmacy.medicines.MedicineRepository;
 import york.pharmacy.medicines.MedicineService;
 import york.pharmacy.medicines.dto.MedicineRequest;
 import york.pharmacy.orders.Order;
 import york.pharmacy.orders.OrderRepository;
 import york.pharmacy.orders.OrderStatus;
+import york.pharmacy.prescriptions.BackOrderCandidate;
+import york.pharmacy.prescriptions.MedicineStatusQuantity;
 import york.pharmacy.prescriptions.Prescription;
 import york.pharmacy.prescriptions.PrescriptionRepository;
 import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.prescriptions.dto.PendingPrescription;
 import york.pharmacy.prescriptions.dto.PrescriptionRequest;
 import york.pharmacy.prescriptions.dto.PrescriptionResponse;
 
 import java.time.Instant;
 import java.time.LocalDate;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -53,6 +68,18 @@ class ServiceUtilityTest {
     @Mock
     private KafkaProducer kafkaProducer;
 
+    @Mock
+    private EntityManager entityManager;
+
+    @Mock
+    private MedicineDemandService medicineDemandService;
+
+    @Mock
+    private IngestedPrescriptionNumberRepository ingestedPrescriptionNumberRepository;
+
+    @Spy
+    private MedicineCache medicineCache = new MedicineCache(100);
+
     @InjectMocks
     private ServiceUtility underTest;
 
@@ -79,6 +106,30 @@ class ServiceUtilityTest {
         verify(medicineRepository, times(1)).findMedicineByCode("JBX-001");
     }
 
+    @Test
+    void getMedicineByCode_servedFromCacheAfterFirstLookup() {
+        // Arrange
+        when(medicineRepository.findMedicineByCode("JBX-001")).thenReturn(medicine);
+
+        // Act
+        underTest.getMedicineByCode("JBX-001");
+        Medicine result = underTest.getMedicineByCode("JBX-001");
+
+        // Assert
+        assertEquals(medicine, result);
+        verify(medicineRepository, times(1)).findMedicineByCode("JBX-001");
+        assertEquals(1, medicineCache.getHits());
+    }
+
+    @Test
+    void getMedicineByCode_notFound() {
+        // Arrange
+        when(medicineRepository.findMedicineByCode("NOPE")).thenReturn(null);
+
+        // Act & Assert
+        assertThrows(ResourceNotFoundException.class, () -> underTest.getMedicineByCode("NOPE"));
+    }
+
     @Test
     void fetchMedicineById() {
         // Arrange
@@ -101,22 +152,15 @@ class ServiceUtilityTest {
         int adjustment = 5;
         int testStockQuantity = 10;
 
-        Inventory testInventory = Inventory.builder()
-                .id(testId)
-                .medicine(medicine)
-                .stockQuantity(testStockQuantity)
-                .build();
-
         Inventory adjustedInventory = Inventory.builder()
                 .id(testId)
                 .medicine(medicine)
                 .stockQuantity(testStockQuantity + adjustment)
                 .build();
 
+        when(inventoryRepository.adjustStockQuantity(testId, adjustment)).thenReturn(1);
         when(inventoryRepository.findById(testId))
-                .thenReturn(Optional.of(testInventory));
-        when(inventoryRepository.save(any(Inventory.class)))
-                .thenReturn(adjustedInventory);
+                .thenReturn(Optional.of(adjustedInventory));
 
         // When
         InventoryResponse result = underTest.adjustStockQuantity(testId, adjustment);
@@ -124,8 +168,104 @@ class ServiceUtilityTest {
         // Then
         assertNotNull(result);
         assertEquals(testStockQuantity + adjustment, result.getStockQuantity());
-        verify(inventoryRepository).findById(testId);
-        verify(inventoryRepository).save(any(Inventory.class));
+        verify(inventoryRepository).adjustStockQuantity(testId, adjustment);
+        verify(entityManager).refresh(adjustedInventory);
+        verify(inventoryRepository, never()).save(any(Inventory.class));
+    }
+
+    @Test
+    void adjustStockQuantity_belowZero() {
+        when(inventoryRepository.adjustStockQuantity(1L, -15)).thenReturn(0);
+        when(inventoryRepository.existsById(1L)).thenReturn(true);
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> underTest.adjustStockQuantity(1L, -15));
+
+        assertEquals("Cannot reduce stock below 0", ex.getMessage());
+        verify(inventoryRepository, never()).findById(anyLong());
+    }
+
+    @Test
+    void adjustStockQuantity_notFound() {
+        when(inventoryRepository.adjustStockQuantity(99L, 5)).thenReturn(0);
+        when(inventoryRepository.existsById(99L)).thenReturn(false);
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> underTest.adjustStockQuantity(99L, 5));
+    }
+
+    @Test
+    void decrementStockForFill() {
+        when(inventoryRepository.adjustStockQuantityByMedicineId(1L, -30)).thenReturn(1);
+
+        underTest.decrementStockForFill(1L, 30);
+
+        verify(inventoryRepository).adjustStockQuantityByMedicineId(1L, -30);
+        verify(inventoryRepository, never()).findByMedicineId(anyLong());
+        verify(inventoryRepository, never()).save(any(Inventory.class));
+    }
+
+    @Test
+    void decrementStockForFill_insufficientStock() {
+        when(inventoryRepository.adjustStockQuantityByMedicineId(1L, -30)).thenReturn(0);
+        when(inventoryRepository.existsByMedicineId(1L)).thenReturn(true);
+
+        IllegalArgumentException ex = assertThrows(IllegalArgumentException.class,
+                () -> underTest.decrementStockForFill(1L, 30));
+
+        assertEquals("Cannot reduce stock below 0", ex.getMessage());
+    }
+
+    @Test
+    void decrementStockForFill_noInventory() {
+        when(inventoryRepository.adjustStockQuantityByMedicineId(1L, -30)).thenReturn(0);
+        when(inventoryRepository.existsByMedicineId(1L)).thenReturn(false);
+
+        assertThrows(ResourceNotFoundException.class,
+                () -> underTest.decrementStockForFill(1L, 30));
+    }
+
+    @Test
+    void decrementStockForFills_oneUpdatePerMedicineInIdOrder() {
+        when(inventoryRepository.adjustStockQuantityByMedicineId(anyLong(), anyInt())).thenReturn(1);
+
+        underTest.decrementStockForFills(Map.of(2L, 10, 1L, 60));
+
+        InOrder inOrder = inOrder(inventoryRepository);
+        inOrder.verify(inventoryRepository).adjustStockQuantityByMedicineId(1L, -60);
+        inOrder.verify(inventoryRepository).adjustStockQuantityByMedicineId(2L, -10);
+    }
+
+    @Test
+    void decrementStockForFills_stockTakenConcurrentlyIsAConflict() {
+        when(inventoryRepository.adjustStockQuantityByMedicineId(1L, -60)).thenReturn(0);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> underTest.decrementStockForFills(Map.of(1L, 60)));
+    }
+
+    @Test
+    void incrementStockForReceipts_oneUpdatePerInventoryInIdOrder() {
+        when(inventoryRepository.adjustStockQuantity(anyLong(), anyInt())).thenReturn(1);
+
+        underTest.incrementStockForReceipts(Map.of(9L, 25, 4L, 100));
+
+        InOrder inOrder = inOrder(inventoryRepository);
+        inOrder.verify(inventoryRepository).adjustStockQuantity(4L, 100);
+        inOrder.verify(inventoryRepository).adjustStockQuantity(9L, 25);
+    }
+
+    @Test
+    void incrementStockForReceipts_missingInventory() {
+        when(inventoryRepository.adjustStockQuantity(4L, 100)).thenReturn(0);
+
+        assertThrows(ResourceNotFoundException.class, () -> underTest.incrementStockForReceipts(Map.of(4L, 100)));
+    }
+
+    @Test
+    void getStockByMedicineIds() {
+        when(inventoryRepository.findAllByMedicineIds(Set.of(1L, 2L))).thenReturn(List.of(new Inventory(5L, medicine, 500, null)));
+
+        assertEquals(Map.of(1L, 500), underTest.getStockByMedicineIds(Set.of(1L, 2L)));
     }
 
     @Test
@@ -158,7 +298,7 @@ class ServiceUtilityTest {
         Long inventoryId = 1L;
         LocalDate currentDate = LocalDate.now();
 
-        Inventory inventory = new Inventory(1L, medicine, 500);
+        Inventory inventory = new Inventory(1L, medicine, 500, null);
 
         Order expectedOrder = new Order(
                 1L,
@@ -183,6 +323,17 @@ class ServiceUtilityTest {
                 .findFirstOrderByInventoryIdAndStatusOrderedAndFutureDeliveryDate(currentDate, inventoryId);
     }
 
+    @Test
+    void addPrescriptionIfNew_claimedNumberWritesNothing() {
+        PrescriptionRequest request = new PrescriptionRequest();
+        request.setPrescriptionNumber("RX-1");
+        request.setMedicineCode("MED001");
+        when(ingestedPrescriptionNumberRepository.claim("RX-1")).thenReturn(0);
+
+        assertTrue(underTest.addPrescriptionIfNew(request).isEmpty());
+        verifyNoInteractions(prescriptionRepository, medicineRepository, kafkaProducer, medicineDemandService);
+    }
+
     @Test
     @Disabled
     void addPrescription() {
@@ -204,6 +355,7 @@ class ServiceUtilityTest {
                 30,
                 "take after meals",
                 PrescriptionStatus.NEW,
+                null,
                 null
         );
 
@@ -232,6 +384,7 @@ class ServiceUtilityTest {
                 30,
                 "take after meals",
                 PrescriptionStatus.NEW,
+                null,
                 null
         );
 
@@ -243,21 +396,13 @@ class ServiceUtilityTest {
         underTest.cancelPrescription("PID002");
 
         assertEquals(PrescriptionStatus.CANCELLED, prescription.getStatus());
+        verify(medicineDemandService).recordTransition(1L, PrescriptionStatus.NEW, PrescriptionStatus.CANCELLED, 30);
     }
 
     @Test
+    @SuppressWarnings("unchecked")
     void updateAwaitingShipmentStatus() {
-        Prescription prescription = new Prescription(
-                1L,
-                "1234L",
-                medicine,
-                "PID002",
-                30,
-                "take after meals",
-                PrescriptionStatus.NEW,
-                null
-        );
-        Inventory inventory = new Inventory(1L, medicine, 500);
+        Inventory inventory = new Inventory(1L, medicine, 500, null);
         Order order = new Order(
                 123L,
                 inventory,
@@ -268,43 +413,61 @@ class ServiceUtilityTest {
                 Instant.now()
         );
 
-        List<Prescription> mockPrescriptions = List.of(prescription);
-
-        when(prescriptionRepository.findAllByMedicineIdAndStatus(
+        when(prescriptionRepository.findBackOrderCandidates(
                 1L,
                 List.of(PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK))
-        ).thenReturn(mockPrescriptions);
-
-        when(prescriptionRepository.save(any(Prescription.class)))
-                .thenAnswer(invocation -> invocation.getArgument(0));  // Return the same object
-
-        doNothing().when(kafkaProducer).sendMessage(anyString(), any(ProducerEvent.class));
-
-        List<Prescription> updatedPrescriptions = underTest.updateAwaitingShipmentStatus(order);
-
-
-
-        assertEquals(1, updatedPrescriptions.size());
-        for (Prescription p : updatedPrescriptions) {
-            assertEquals(PrescriptionStatus.AWAITING_SHIPMENT, p.getStatus());
-            assertEquals(order, p.getOrder());
-        }
-
-        verify(kafkaProducer, times(1))
-                .sendMessage(eq("prescription_status_updates"), any(ProducerEvent.class));
-        verify(prescriptionRepository, times(1)).save(any(Prescription.class));
+        ).thenReturn(List.of(
+                backOrderCandidate(1L, "RX-1", 30, PrescriptionStatus.NEW),
+                backOrderCandidate(2L, "RX-2", 20, PrescriptionStatus.OUT_OF_STOCK),
+                backOrderCandidate(3L, "RX-3", 10, PrescriptionStatus.NEW)));
+        when(prescriptionRepository.assignToOrder(List.of(1L, 3L), PrescriptionStatus.NEW, order)).thenReturn(2);
+        when(prescriptionRepository.assignToOrder(List.of(2L), PrescriptionStatus.OUT_OF_STOCK, order)).thenReturn(1);
+
+        int backOrdered = underTest.updateAwaitingShipmentStatus(List.of(order));
+
+        assertEquals(3, backOrdered);
+        verify(prescriptionRepository, never()).save(any(Prescription.class));
+
+        // One outbox write for every BACK_ORDERED event, carrying the order's delivery date
+        ArgumentCaptor<List<ProducerEvent>> events = ArgumentCaptor.forClass(List.class);
+        verify(kafkaProducer).sendMessages(eq("prescription_status_updates"), events.capture());
+        assertEquals(List.of("RX-1", "RX-2", "RX-3"),
+                events.getValue().stream().map(ProducerEvent::getPrescriptionId).toList());
+        assertTrue(events.getValue().stream().allMatch(event -> "BACK_ORDERED".equals(event.getEventType())
+                && LocalDate.of(2025, 2, 27).equals(event.getDeliveryDate())));
+        verify(kafkaProducer, never()).sendMessage(anyString(), any(ProducerEvent.class));
+
+        ArgumentCaptor<DemandChange> change = ArgumentCaptor.forClass(DemandChange.class);
+        verify(medicineDemandService).apply(change.capture());
+        assertEquals(new MedicineDemand(1L, -40, -20, 0, 60), change.getValue().getDelta(1L));
+    }
 
-        ArgumentCaptor<Prescription> captor = ArgumentCaptor.forClass(Prescription.class);
-        verify(prescriptionRepository, times(1)).save(captor.capture());
+    @Test
+    void updateAwaitingShipmentStatus_prescriptionChangedInBetweenIsAConflict() {
+        Order order = new Order(123L, new Inventory(1L, medicine, 500, null), 100,
+                LocalDate.of(2025, 2, 27), OrderStatus.ORDERED, Instant.now(), Instant.now());
+        when(prescriptionRepository.findBackOrderCandidates(eq(1L), anyList()))
+                .thenReturn(List.of(backOrderCandidate(1L, "RX-1", 30, PrescriptionStatus.NEW)));
+        when(prescriptionRepository.assignToOrder(List.of(1L), PrescriptionStatus.NEW, order)).thenReturn(0);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> underTest.updateAwaitingShipmentStatus(List.of(order)));
+        verifyNoInteractions(kafkaProducer, medicineDemandService);
+    }
 
-        List<Prescription> savedPrescriptions = captor.getAllValues();
-        assertEquals(1, savedPrescriptions.size());
-        assertTrue(savedPrescriptions.contains(prescription));
+    @Test
+    void updateAwaitingShipmentStatus_nothingPending() {
+        Order order = new Order(123L, new Inventory(1L, medicine, 500, null), 100,
+                LocalDate.of(2025, 2, 27), OrderStatus.ORDERED, Instant.now(), Instant.now());
+        when(prescriptionRepository.findBackOrderCandidates(eq(1L), anyList())).thenReturn(List.of());
+
+        assertEquals(0, underTest.updateAwaitingShipmentStatus(List.of(order)));
+        verify(prescriptionRepository, never()).assignToOrder(anyList(), any(), any());
+        verifyNoInteractions(kafkaProducer);
     }
 
     @Test
     void updateStockReceivedStatus() {
-        Inventory inventory = new Inventory(1L, medicine, 500);
+        Inventory inventory = new Inventory(1L, medicine, 500, null);
         Order order = new Order(
                 123L,
                 inventory,
@@ -323,7 +486,8 @@ class ServiceUtilityTest {
                 30,
                 "take after meals",
                 PrescriptionStatus.AWAITING_SHIPMENT,
-                order
+                order,
+                null
         );
 
         List<Prescription> mockPrescriptions = List.of(prescription2);
@@ -350,22 +514,38 @@ class ServiceUtilityTest {
         List<Prescription> savedPrescriptions = captor.getAllValues();
         assertEquals(1, savedPrescriptions.size());
         assertTrue(savedPrescriptions.contains(prescription2));
+        verify(medicineDemandService, times(1)).apply(any(DemandChange.class));
+    }
+
+    @Test
+    void updateStockReceivedStatusForOrders_oneUpdateAndDemandMove() {
+        MedicineStatusQuantity awaiting = mock(MedicineStatusQuantity.class);
+        when(awaiting.getMedicineId()).thenReturn(1L);
+        when(awaiting.getQuantity()).thenReturn(90L);
+        when(prescriptionRepository.sumQuantityByOrderIdsAndStatus(Set.of(7L, 8L), PrescriptionStatus.AWAITING_SHIPMENT))
+                .thenReturn(List.of(awaiting));
+        when(prescriptionRepository.updateStatusByOrderIds(Set.of(7L, 8L),
+                PrescriptionStatus.AWAITING_SHIPMENT, PrescriptionStatus.STOCK_RECEIVED)).thenReturn(3);
+
+        assertEquals(3, underTest.updateStockReceivedStatusForOrders(Set.of(7L, 8L)));
+
+        ArgumentCaptor<DemandChange> change = ArgumentCaptor.forClass(DemandChange.class);
+        verify(medicineDemandService).apply(change.capture());
+        assertEquals(new MedicineDemand(1L, 0, 0, 90, -90), change.getValue().getDelta(1L));
+        verify(prescriptionRepository, never()).save(any(Prescription.class));
     }
 
     @Test
     void minOrderCount() {
         Long medicineId = 1L;
-        int expectedCount = 30;
-        List<PrescriptionStatus> statuses = List.of(PrescriptionStatus.NEW, PrescriptionStatus.OUT_OF_STOCK);
-
-        when(prescriptionRepository.findTotalQuantityByMedicineIdAndStatus(medicineId, statuses))
-                .thenReturn(expectedCount);
+        // NEW + OUT_OF_STOCK count; STOCK_RECEIVED and AWAITING_SHIPMENT don't
+        when(medicineDemandService.getDemand(medicineId))
+                .thenReturn(new MedicineDemand(medicineId, 20, 10, 40, 100));
 
         int result = underTest.minOrderCount(medicineId);
 
-        assertEquals(expectedCount, result);
-        verify(prescriptionRepository, times(1))
-                .findTotalQuantityByMedicineIdAndStatus(medicineId, statuses);
+        assertEquals(30, result);
+        verifyNoInteractions(prescriptionRepository);
     }
 
     @Test
@@ -373,14 +553,8 @@ class ServiceUtilityTest {
         Long medicineId = 1L;
         Long prescriptionId = 1L;
 
-        List<PrescriptionStatus> statuses = List.of(
-                PrescriptionStatus.NEW,
-                PrescriptionStatus.OUT_OF_STOCK,
-                PrescriptionStatus.STOCK_RECEIVED
-        );
-
-        when(prescriptionRepository.findTotalQuantityByMedicineIdAndStatus(medicineId, statuses))
-                .thenReturn(50); // Total quantity needed
+        when(medicineDemandService.getDemand(medicineId))
+                .thenReturn(new MedicineDemand(medicineId, 20, 10, 20, 0)); // Total quantity needed: 50
 
         Inventory inventory = new Inventory();
         inventory.setStockQuantity(100);
@@ -393,6 +567,97 @@ class ServiceUtilityTest {
 
         // Assert
         assertTrue(result);
+        verify(prescriptionRepository, never()).findTotalQuantityByMedicineIdAndStatus(anyLong(), anyList());
     }
 
-}
\ No newline at end of file
+    @Test
+    void checkAndUpdatePrescriptionStock_returnsFalseWhenClaimsExceedStock() {
+        when(medicineDemandService.getDemand(1L)).thenReturn(new MedicineDemand(1L, 60, 30, 20, 0));
+        Inventory inventory = new Inventory();
+        inventory.setStockQuantity(100);
+        when(inventoryRepository.findByMedicineId(1L)).thenReturn(Optional.of(inventory));
+
+        assertFalse(underTest.checkAndUpdatePrescriptionStock(1L, 1L));
+    }
+
+    @Test
+    void updatePrescriptionsWithNewStock() {
+        Long medicineId = 1L;
+        List<PrescriptionStatus> statuses = List.of(
+                PrescriptionStatus.NEW,
+                PrescriptionStatus.OUT_OF_STOCK,
+                PrescriptionStatus.STOCK_RECEIVED
+        );
+        List<PendingPrescription> pending = List.of(
+                new PendingPrescription(1L, 30, PrescriptionStatus.OUT_OF_STOCK),
+                new PendingPrescription(2L, 50, PrescriptionStatus.NEW),
+                new PendingPrescription(3L, 40, PrescriptionStatus.OUT_OF_STOCK),
+                new PendingPrescription(4L, 60, PrescriptionStatus.STOCK_RECEIVED)
+        );
+        when(prescriptionRepository.findPendingByMedicineId(medicineId, statuses)).thenReturn(pending);
+        when(prescriptionRepository.updateStatusByIds(anyList(), any(PrescriptionStatus.class), any(PrescriptionStatus.class)))
+                .thenAnswer(invocation -> invocation.<List<Long>>getArgument(0).size());
+
+        underTest.updatePrescriptionsWithNewStock(100, medicineId);
+
+        // One read, then one UPDATE per read and target status - no per-prescription saves or inventory lookups
+        verify(prescriptionRepository, times(1)).findPendingByMedicineId(medicineId, statuses);
+        verify(prescriptionRepository).updateStatusByIds(List.of(1L), PrescriptionStatus.OUT_OF_STOCK, PrescriptionStatus.STOCK_RECEIVED);
+        verify(prescriptionRepository).updateStatusByIds(List.of(4L), PrescriptionStatus.STOCK_RECEIVED, PrescriptionStatus.OUT_OF_STOCK);
+        verify(prescriptionRepository, never()).save(any(Prescription.class));
+        verifyNoInteractions(inventoryRepository);
+
+        // Demand moves with the statuses: 30 OUT_OF_STOCK -> STOCK_RECEIVED, 60 STOCK_RECEIVED -> OUT_OF_STOCK
+        ArgumentCaptor<DemandChange> change = ArgumentCaptor.forClass(DemandChange.class);
+        verify(medicineDemandService).apply(change.capture());
+        MedicineDemand delta = change.getValue().getDelta(medicineId);
+        assertEquals(new MedicineDemand(medicineId, 0, 30, -30, 0), delta);
+    }
+
+    @Test
+    void updatePrescriptionsWithNewStock_noChanges() {
+        when(prescriptionRepository.findPendingByMedicineId(eq(1L), anyList()))
+                .thenReturn(List.of(new PendingPrescription(1L, 30, PrescriptionStatus.NEW)));
+
+        underTest.updatePrescriptionsWithNewStock(100, 1L);
+
+        verify(prescriptionRepository, never())
+                .updateStatusByIds(anyList(), any(PrescriptionStatus.class), any(PrescriptionStatus.class));
+    }
+
+    @Test
+    void updatePrescriptionsWithNewStock_changedSinceReadConflicts() {
+        // Prescription 1 was filled after the pending read, so the guarded UPDATE doesn't match it
+        when(prescriptionRepository.findPendingByMedicineId(eq(1L), anyList()))
+                .thenReturn(List.of(new PendingPrescription(1L, 30, PrescriptionStatus.OUT_OF_STOCK)));
+        when(prescriptionRepository.updateStatusByIds(List.of(1L), PrescriptionStatus.OUT_OF_STOCK,
+                PrescriptionStatus.STOCK_RECEIVED)).thenReturn(0);
+
+        assertThrows(OptimisticLockingFailureException.class, () -> underTest.updatePrescriptionsWithNewStock(100, 1L));
+        verifyNoInteractions(medicineDemandService);
+    }
+
+    private static BackOrderCandidate backOrderCandidate(Long id, String number, int quantity, PrescriptionStatus status) {
+        return new BackOrderCandidate() {
+            @Override
+            public Long getId() {
+                return id;
+            }
+
+            @Override
+            public String getPrescriptionNumber() {
+                return number;
+            }
+
+            @Override
+            public Integer getQuantity() {
+                return quantity;
+            }
+
+            @Override
+            public PrescriptionStatus getStatus() {
+                return status;
+            }
+        };
+    }
+}
@@ -0,0 +1,62 @@
+package york.pharmacy.utilities;
+
+import org.junit.jupiter.api.Test;
+import york.pharmacy.prescriptions.PrescriptionStatus;
+import york.pharmacy.prescriptions.dto.PendingPrescription;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StockAllocationTest {
+
+    @Test
+    void coversPrescriptionsInOrderUntilStockRunsOut() {
+        PendingPrescription first = new PendingPrescription(1L, 30, PrescriptionStatus.OUT_OF_STOCK);
+        PendingPrescription second = new PendingPrescription(2L, 50, PrescriptionStatus.NEW);
+        PendingPrescription third = new PendingPrescription(3L, 40, PrescriptionStatus.NEW);
+        PendingPrescription fourth = new PendingPrescription(4L, 10, PrescriptionStatus.OUT_OF_STOCK);
+
+        StockAllocation allocation = StockAllocation.allocate(100, List.of(first, second, third, fourth));
+
+        // 30 + 50 fit, 40 doesn't, 10 still fits in the remaining 20
+        assertEquals(List.of(first, fourth), allocation.getToStockReceived());
+        assertEquals(List.of(third), allocation.getToOutOfStock());
+        assertEquals(10, allocation.getRemainingStock());
+        assertTrue(allocation.hasChanges());
+    }
+
+    @Test
+    void stopsOnceStockIsExhausted() {
+        PendingPrescription first = new PendingPrescription(1L, 60, PrescriptionStatus.STOCK_RECEIVED);
+        PendingPrescription second = new PendingPrescription(2L, 30, PrescriptionStatus.NEW);
+
+        StockAllocation allocation = StockAllocation.allocate(60, List.of(first, second));
+
+        // Stock hits 0 after the first one, the rest is left alone
+        assertTrue(allocation.getToStockReceived().isEmpty());
+        assertTrue(allocation.getToOutOfStock().isEmpty());
+        assertEquals(0, allocation.getRemainingStock());
+        assertFalse(allocation.hasChanges());
+    }
+
+    @Test
+    void doesNotReportUnchangedStatuses() {
+        PendingPrescription alreadyOutOfStock = new PendingPrescription(1L, 500, PrescriptionStatus.OUT_OF_STOCK);
+        PendingPrescription stillNew = new PendingPrescription(2L, 5, PrescriptionStatus.NEW);
+
+        StockAllocation allocation = StockAllocation.allocate(10, List.of(alreadyOutOfStock, stillNew));
+
+        assertTrue(allocation.getToOutOfStock().isEmpty());
+        assertTrue(allocation.getToStockReceived().isEmpty());
+        assertEquals(5, allocation.getRemainingStock());
+    }
+
+    @Test
+    void emptyQueue() {
+        StockAllocation allocation = StockAllocation.allocate(10, List.of());
+
+        assertFalse(allocation.hasChanges());
+        assertEquals(10, allocation.getRemainingStock());
+    }
+}